@@ -20,6 +20,10 @@ android {
             // Required so Robolectric tests can inflate library layouts /
             // resolve drawable + string resources from this module.
             isIncludeAndroidResources = true
+            // Benchmarks are skipped unless asked for with -Pbenchmarks
+            all {
+                it.systemProperty("fastcomments.benchmarks", project.hasProperty("benchmarks").toString())
+            }
         }
     }
 
@@ -69,6 +73,7 @@ dependencies {
     testImplementation("org.mockito:mockito-core:5.8.0")
     testImplementation("org.robolectric:robolectric:4.11.1")
     testImplementation("com.squareup.okhttp3:okhttp:4.12.0")
+    testImplementation("com.squareup.okhttp3:mockwebserver:4.12.0")
     testImplementation("org.json:json:20231013")
     androidTestImplementation(libs.androidx.junit)
     androidTestImplementation(libs.androidx.espresso.core)
@@ -68,7 +68,7 @@ public class BottomCommentInputView extends FrameLayout {
     private List<UserMention> selectedMentions = new ArrayList<>();
     private int mentionStartPosition = -1;
     private String currentMentionText = "";
-    private boolean isSearchingUsers = false;
+    private MentionSearch mentionSearch;
     private PopupWindow mentionPopup;
 
     // For toolbar functionality
@@ -351,6 +351,10 @@ public class BottomCommentInputView extends FrameLayout {
      */
     public void setSDK(FastCommentsSDK sdk) {
         this.sdk = sdk;
+        if (mentionSearch != null) {
+            mentionSearch.cancel();
+        }
+        mentionSearch = sdk != null ? new MentionSearch(sdk.mentionIndex, sdk.commentsTree, sdk::searchUsers) : null;
         applyTheme();
 
         // Apply global toolbar configuration from SDK
@@ -496,6 +500,9 @@ public class BottomCommentInputView extends FrameLayout {
     private void cancelMention() {
         mentionStartPosition = -1;
         currentMentionText = "";
+        if (mentionSearch != null) {
+            mentionSearch.cancel();
+        }
         hideMentionSuggestions();
     }
 
@@ -503,65 +510,35 @@ public class BottomCommentInputView extends FrameLayout {
      * Search for users by partial name
      */
     private void searchUsers(String searchTerm) {
-        if (sdk == null) {
+        if (mentionSearch == null) {
             return;
         }
         
         // Don't search if the term is empty
         if (searchTerm == null || searchTerm.trim().isEmpty()) {
+            mentionSearch.cancel();
             mentionSuggestions.clear();
             mentionsAdapter.notifyDataSetChanged();
             return;
         }
-        
-        // Don't search if already searching
-        if (isSearchingUsers) {
-            return;
-        }
 
-        isSearchingUsers = true;
-        
-        sdk.searchUsers(searchTerm, new FCCallback<List<UserMention>>() {
-            @Override
-            public boolean onFailure(APIError error) {
-                isSearchingUsers = false;
-                // Use the main thread to update UI
-                post(() -> {
-                    // Clear any previous results
-                    mentionSuggestions.clear();
-                    mentionsAdapter.notifyDataSetChanged();
-                    
-                    // Hide the list on error
-                    hideMentionSuggestions();
-                });
-                return FCCallback.CONSUME;
-            }
-            
-            @Override
-            public boolean onSuccess(List<UserMention> users) {
-                isSearchingUsers = false;
-                // Use the main thread to update UI
-                post(() -> {
-                    // Clear previous suggestions
-                    mentionSuggestions.clear();
-                    
-                    if (users != null && !users.isEmpty()) {
-                        // Add new suggestions
-                        mentionSuggestions.addAll(users);
-                        mentionsAdapter.notifyDataSetChanged();
-                        
-                        // Show the suggestions list
-                        showMentionSuggestions();
-                    } else {
-                        // No results, hide the list
-                        hideMentionSuggestions();
-                    }
-                });
-                return FCCallback.CONSUME;
+        // Local matches come back right away, server results after a short pause in typing
+        mentionSearch.search(searchTerm, (term, users) -> {
+            // Update the suggestions list
+            mentionSuggestions.clear();
+
+            // Only show the list if we have actual results
+            if (!users.isEmpty()) {
+                mentionSuggestions.addAll(users);
+                mentionsAdapter.notifyDataSetChanged();
+                showMentionSuggestions();
+            } else {
+                // If no results, just hide the list
+                hideMentionSuggestions();
             }
         });
     }
-
+    
     /**
      * Select a user mention from the suggestions
      */
@@ -1187,6 +1164,9 @@ public class BottomCommentInputView extends FrameLayout {
         if (mentionPopup != null && mentionPopup.isShowing()) {
             mentionPopup.dismiss();
         }
+        if (mentionSearch != null) {
+            mentionSearch.cancel();
+        }
         // Clear Glide targets
         if (editableImageGetter != null) {
             editableImageGetter.clearTargets();
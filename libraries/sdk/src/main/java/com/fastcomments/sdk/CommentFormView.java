@@ -48,7 +48,7 @@ public class CommentFormView extends LinearLayout {
     private List<UserMention> selectedMentions = new ArrayList<>();
     private int mentionStartPosition = -1;
     private String currentMentionText = "";
-    private boolean isSearchingUsers = false;
+    private MentionSearch mentionSearch;
 
     public interface OnCommentSubmitListener {
         void onCommentSubmit(String commentText, String parentId);
@@ -327,6 +327,10 @@ public class CommentFormView extends LinearLayout {
      */
     public void setSDK(FastCommentsSDK sdk) {
         this.sdk = sdk;
+        if (mentionSearch != null) {
+            mentionSearch.cancel();
+        }
+        mentionSearch = sdk != null ? new MentionSearch(sdk.mentionIndex, sdk.commentsTree, sdk::searchUsers) : null;
         applyTheme();
     }
     
@@ -374,6 +378,9 @@ public class CommentFormView extends LinearLayout {
     private void cancelMention() {
         mentionStartPosition = -1;
         currentMentionText = "";
+        if (mentionSearch != null) {
+            mentionSearch.cancel();
+        }
         hideMentionSuggestions();
     }
     
@@ -383,61 +390,31 @@ public class CommentFormView extends LinearLayout {
      * @param searchTerm The search term (text after @ symbol)
      */
     private void searchUsers(String searchTerm) {
-        if (sdk == null) {
+        if (mentionSearch == null) {
             return;
         }
         
         // Don't search if the term is empty
         if (searchTerm == null || searchTerm.trim().isEmpty()) {
+            mentionSearch.cancel();
             mentionSuggestions.clear();
             mentionsAdapter.notifyDataSetChanged();
             return;
         }
-        
-        // Don't search if already searching
-        if (isSearchingUsers) {
-            return;
-        }
-        
-        isSearchingUsers = true;
-        
-        // Call the API to search for users
-        sdk.searchUsers(searchTerm, new FCCallback<List<UserMention>>() {
-            @Override
-            public boolean onFailure(APIError error) {
-                isSearchingUsers = false;
-                // Use the main thread to update UI
-                post(() -> {
-                    // Clear any previous results
-                    mentionSuggestions.clear();
-                    mentionsAdapter.notifyDataSetChanged();
-                    
-                    // Hide the list on error
-                    hideMentionSuggestions();
-                });
-                return FCCallback.CONSUME;
-            }
 
-            @Override
-            public boolean onSuccess(List<UserMention> users) {
-                isSearchingUsers = false;
-                
-                // Use the main thread to update UI
-                post(() -> {
-                    // Update the suggestions list
-                    mentionSuggestions.clear();
-                    
-                    // Only show the list if we have actual results
-                    if (users != null && !users.isEmpty()) {
-                        mentionSuggestions.addAll(users);
-                        mentionsAdapter.notifyDataSetChanged();
-                        showMentionSuggestions();
-                    } else {
-                        // If no results, just hide the list
-                        hideMentionSuggestions();
-                    }
-                });
-                return FCCallback.CONSUME;
+        // Local matches come back right away, server results after a short pause in typing
+        mentionSearch.search(searchTerm, (term, users) -> {
+            // Update the suggestions list
+            mentionSuggestions.clear();
+
+            // Only show the list if we have actual results
+            if (!users.isEmpty()) {
+                mentionSuggestions.addAll(users);
+                mentionsAdapter.notifyDataSetChanged();
+                showMentionSuggestions();
+            } else {
+                // If no results, just hide the list
+                hideMentionSuggestions();
             }
         });
     }
@@ -0,0 +1,127 @@
+package com.fastcomments.sdk;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import com.fastcomments.model.PublicComment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * LRU cache of parsed comment HTML, so that binding a comment (fast scrolling, notifyItemChanged on votes, etc) doesn't
+ * run Html.fromHtml again for content we've already parsed.
+ * <p>
+ * Entries are keyed by comment id and are only used if the commentHTML hash and theme they were parsed with still match,
+ * so an edited comment is never shown stale even if invalidate() wasn't called. The cache is bounded by an approximate
+ * memory budget rather than an entry count, since comments vary a lot in length.
+ * <p>
+ * Entries are {@link ParsedCommentHtml}, which is context free, so it's attached to the TextView at bind time.
+ */
+public class CommentHtmlCache {
+
+    private static final int DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+    private static final int PREFETCH_LIMIT = 300;
+    private static final int PREFETCH_CHUNK_SIZE = 20;
+
+    private static class Entry {
+        final int htmlHash;
+        final FastCommentsTheme theme;
+        final ParsedCommentHtml parsed;
+        final int sizeBytes;
+
+        Entry(int htmlHash, FastCommentsTheme theme, ParsedCommentHtml parsed) {
+            this.htmlHash = htmlHash;
+            this.theme = theme;
+            this.parsed = parsed;
+            this.sizeBytes = parsed.estimateSizeBytes();
+        }
+    }
+
+    private final LruCache<String, Entry> cache;
+
+    public CommentHtmlCache() {
+        this(Math.min(DEFAULT_MAX_BYTES, (int) (Runtime.getRuntime().maxMemory() / 64)));
+    }
+
+    public CommentHtmlCache(int maxBytes) {
+        this.cache = new LruCache<String, Entry>(Math.max(1, maxBytes)) {
+            @Override
+            protected int sizeOf(String key, Entry value) {
+                return value.sizeBytes;
+            }
+        };
+    }
+
+    /**
+     * Get the parsed content for a comment, parsing and caching it on a miss. Safe to call from any thread.
+     */
+    public ParsedCommentHtml get(PublicComment comment, FastCommentsTheme theme) {
+        final String html = comment.getCommentHTML() != null ? comment.getCommentHTML() : "";
+        final int htmlHash = html.hashCode();
+        final String id = comment.getId();
+        if (id != null) {
+            final Entry entry = cache.get(id);
+            if (entry != null && entry.htmlHash == htmlHash && entry.theme == theme) {
+                return entry.parsed;
+            }
+        }
+        final ParsedCommentHtml parsed = ParsedCommentHtml.parse(html);
+        if (id != null) {
+            cache.put(id, new Entry(htmlHash, theme, parsed));
+        }
+        return parsed;
+    }
+
+    /**
+     * Parse any comments we don't have cached yet on the given executor, so they're ready before they are bound.
+     * Replies are included, in the order they'd be displayed. The work is split into chunks so a pool can parse a page
+     * in parallel, and capped at what the cache could hold anyway.
+     */
+    public void prefetch(List<PublicComment> comments, FastCommentsTheme theme, Executor executor) {
+        if (comments == null || comments.isEmpty()) {
+            return;
+        }
+        final List<PublicComment> toParse = new ArrayList<>(comments.size());
+        collect(comments, toParse);
+        for (int start = 0; start < toParse.size(); start += PREFETCH_CHUNK_SIZE) {
+            final List<PublicComment> chunk = toParse.subList(start, Math.min(toParse.size(), start + PREFETCH_CHUNK_SIZE));
+            executor.execute(() -> {
+                for (PublicComment comment : chunk) {
+                    try {
+                        get(comment, theme);
+                    } catch (Exception e) {
+                        // we'll just parse it again on bind
+                        Log.e("FastCommentsSDK", "Error pre-parsing comment HTML", e);
+                    }
+                }
+            });
+        }
+    }
+
+    private static void collect(List<PublicComment> comments, List<PublicComment> out) {
+        for (PublicComment comment : comments) {
+            if (out.size() >= PREFETCH_LIMIT) {
+                return;
+            }
+            out.add(comment);
+            if (comment.getChildren() != null) {
+                collect(comment.getChildren(), out);
+            }
+        }
+    }
+
+    /**
+     * Drop the cached content for a comment, for when its HTML has changed.
+     */
+    public void invalidate(String commentId) {
+        if (commentId != null) {
+            cache.remove(commentId);
+        }
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+}
@@ -0,0 +1,129 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.APIError;
+import com.fastcomments.model.GetCommentsResponseWithPresencePublicComment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds at most one page of comments fetched ahead of need, so that when the user reaches the end of the list the next
+ * page can be spliced in without waiting on the network.
+ * <p>
+ * A prefetch and a load for the same page share one request: {@link #take} on a page that is still being prefetched
+ * waits for that request instead of starting another, and repeated prefetches for the same page are ignored.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class CommentPagePrefetcher {
+
+    private final CommentPageStream.PageRequester requester;
+    // the page being fetched or held, skip is -1 for none
+    private int skip = -1;
+    private int limit = 0;
+    private boolean inFlight = false;
+    private GetCommentsResponseWithPresencePublicComment ready;
+    private final List<FCCallback<GetCommentsResponseWithPresencePublicComment>> waiting = new ArrayList<>(1);
+    // bumped by clear() so responses for dropped requests are ignored
+    private int generation = 0;
+
+    public CommentPagePrefetcher(CommentPageStream.PageRequester requester) {
+        this.requester = requester;
+    }
+
+    /**
+     * Start fetching the page at skip in the background, unless it's already fetched or being fetched.
+     */
+    public void prefetch(int skip, int limit) {
+        if (isPage(skip, limit) && (inFlight || ready != null)) {
+            return;
+        }
+        fetch(skip, limit);
+    }
+
+    /**
+     * Get the page at skip, from what was prefetched if possible. The page is handed over, so a second take() of the
+     * same page fetches it again. Asking for a different page than the one in flight drops the old request, callers
+     * waiting on it included.
+     */
+    public void take(int skip, int limit, FCCallback<GetCommentsResponseWithPresencePublicComment> callback) {
+        if (isPage(skip, limit) && ready != null) {
+            final GetCommentsResponseWithPresencePublicComment page = ready;
+            reset();
+            callback.onSuccess(page);
+            return;
+        }
+        if (!isPage(skip, limit) || !inFlight) {
+            fetch(skip, limit);
+        }
+        waiting.add(callback);
+    }
+
+    public boolean hasPage(int skip, int limit) {
+        return isPage(skip, limit) && ready != null;
+    }
+
+    public boolean isFetching(int skip, int limit) {
+        return isPage(skip, limit) && inFlight;
+    }
+
+    /**
+     * Drop whatever is held or in flight, for when the list is reloaded. Anyone waiting in take() is not called back.
+     */
+    public void clear() {
+        generation++;
+        reset();
+    }
+
+    private void reset() {
+        skip = -1;
+        inFlight = false;
+        ready = null;
+        waiting.clear();
+    }
+
+    private boolean isPage(int skip, int limit) {
+        return this.skip == skip && this.limit == limit;
+    }
+
+    private void fetch(int skip, int limit) {
+        // a different page was asked for, so whatever we had is out of date
+        clear();
+        this.skip = skip;
+        this.limit = limit;
+        this.inFlight = true;
+        final int requestGeneration = generation;
+        requester.request(skip, limit, new FCCallback<GetCommentsResponseWithPresencePublicComment>() {
+            @Override
+            public boolean onFailure(APIError error) {
+                if (requestGeneration != generation) {
+                    return CONSUME;
+                }
+                final List<FCCallback<GetCommentsResponseWithPresencePublicComment>> callbacks = new ArrayList<>(waiting);
+                reset();
+                for (FCCallback<GetCommentsResponseWithPresencePublicComment> callback : callbacks) {
+                    callback.onFailure(error);
+                }
+                return CONSUME;
+            }
+
+            @Override
+            public boolean onSuccess(GetCommentsResponseWithPresencePublicComment page) {
+                if (requestGeneration != generation) {
+                    return CONSUME;
+                }
+                inFlight = false;
+                if (waiting.isEmpty()) {
+                    ready = page;
+                    return CONSUME;
+                }
+                final List<FCCallback<GetCommentsResponseWithPresencePublicComment>> callbacks = new ArrayList<>(waiting);
+                reset();
+                for (FCCallback<GetCommentsResponseWithPresencePublicComment> callback : callbacks) {
+                    callback.onSuccess(page);
+                }
+                return CONSUME;
+            }
+        });
+    }
+}
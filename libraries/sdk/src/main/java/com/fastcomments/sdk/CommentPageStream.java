@@ -0,0 +1,141 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.APIError;
+import com.fastcomments.model.GetCommentsResponseWithPresencePublicComment;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads every remaining page of comments with a bounded number of concurrent requests, handing pages to the listener
+ * in order as soon as each one (and all pages before it) has arrived.
+ * <p>
+ * This replaces "Load All" fetching up to 1000 comments in one request and rebuilding the whole tree from it, which
+ * made a large allocation spike, stalled the main thread, and didn't work at all for bigger threads. Pages are parsed
+ * on OkHttp's threads and only the append happens on the main thread, one page at a time.
+ * <p>
+ * The number of pages isn't known up front, so requests are issued ahead until a page says there's nothing after it.
+ * At most maxConcurrentRequests - 1 requests past the end are wasted.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class CommentPageStream {
+
+    public interface PageRequester {
+        /**
+         * Fetch the root comments from skip to skip + limit. Must call back on the main thread.
+         */
+        void request(int skip, int limit, FCCallback<GetCommentsResponseWithPresencePublicComment> callback);
+    }
+
+    public interface Listener {
+        /**
+         * Called for each page, in order.
+         */
+        void onPage(GetCommentsResponseWithPresencePublicComment page, int skip);
+
+        /**
+         * Called once after the last page.
+         */
+        void onComplete(GetCommentsResponseWithPresencePublicComment lastPage, int lastSkip);
+
+        /**
+         * Called if a request fails. Pages before nextSkip were delivered, nothing after it will be.
+         */
+        void onFailure(APIError error, int nextSkip);
+    }
+
+    private final PageRequester requester;
+    private final Listener listener;
+    private final int pageSize;
+    private final int maxConcurrentRequests;
+    // pages that arrived before the ones in front of them, by skip
+    private final Map<Integer, GetCommentsResponseWithPresencePublicComment> arrived = new HashMap<>();
+    private int nextSkipToRequest;
+    private int nextSkipToDeliver;
+    // skip of the first page known to be the last one, so nothing after it is requested
+    private int endSkip = Integer.MAX_VALUE;
+    private int inFlight = 0;
+    private boolean stopped = false;
+
+    public CommentPageStream(PageRequester requester, Listener listener, int pageSize, int maxConcurrentRequests) {
+        this.requester = requester;
+        this.listener = listener;
+        this.pageSize = Math.max(pageSize, 1);
+        this.maxConcurrentRequests = Math.max(maxConcurrentRequests, 1);
+    }
+
+    public void start(int startSkip) {
+        nextSkipToRequest = startSkip;
+        nextSkipToDeliver = startSkip;
+        requestMore();
+    }
+
+    /**
+     * Stop delivering pages. Requests already in flight are ignored when they return.
+     */
+    public void cancel() {
+        stopped = true;
+        arrived.clear();
+    }
+
+    public boolean isRunning() {
+        return !stopped;
+    }
+
+    private void requestMore() {
+        while (!stopped && inFlight < maxConcurrentRequests && nextSkipToRequest <= endSkip) {
+            final int skip = nextSkipToRequest;
+            nextSkipToRequest += pageSize;
+            inFlight++;
+            requester.request(skip, pageSize, new FCCallback<GetCommentsResponseWithPresencePublicComment>() {
+                @Override
+                public boolean onFailure(APIError error) {
+                    inFlight--;
+                    // a page past the end failing doesn't matter
+                    if (!stopped && skip <= endSkip) {
+                        stopped = true;
+                        arrived.clear();
+                        listener.onFailure(error, nextSkipToDeliver);
+                    }
+                    return CONSUME;
+                }
+
+                @Override
+                public boolean onSuccess(GetCommentsResponseWithPresencePublicComment page) {
+                    inFlight--;
+                    onPageArrived(skip, page);
+                    return CONSUME;
+                }
+            });
+        }
+    }
+
+    private void onPageArrived(int skip, GetCommentsResponseWithPresencePublicComment page) {
+        if (stopped) {
+            return;
+        }
+        if (isLast(page)) {
+            endSkip = Math.min(endSkip, skip);
+        }
+        arrived.put(skip, page);
+
+        GetCommentsResponseWithPresencePublicComment next;
+        while (!stopped && nextSkipToDeliver <= endSkip && (next = arrived.remove(nextSkipToDeliver)) != null) {
+            final int deliveredSkip = nextSkipToDeliver;
+            nextSkipToDeliver += pageSize;
+            listener.onPage(next, deliveredSkip);
+            if (deliveredSkip == endSkip) {
+                stopped = true;
+                arrived.clear();
+                listener.onComplete(next, deliveredSkip);
+                return;
+            }
+        }
+        requestMore();
+    }
+
+    private static boolean isLast(GetCommentsResponseWithPresencePublicComment page) {
+        return !Boolean.TRUE.equals(page.getHasMore()) || page.getComments() == null || page.getComments().isEmpty();
+    }
+}
@@ -6,7 +6,6 @@ import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.text.Html;
-import android.text.format.DateUtils;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
@@ -29,8 +28,6 @@ import com.fastcomments.core.VoteStyle;
 import com.fastcomments.model.CommentUserBadgeInfo;
 
 import java.time.OffsetDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.FormatStyle;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -148,6 +145,8 @@ public class CommentViewHolder extends RecyclerView.ViewHolder {
     }
 
     private boolean liveChatStyle = false;
+    // what dateTextView is showing
+    private String dateLabel;
     
     /**
      * Set whether this view is using live chat styling
@@ -261,8 +260,9 @@ public class CommentViewHolder extends RecyclerView.ViewHolder {
             contentTextView.setLinksClickable(true);
 
             // Display the comment content with clickable links
-            String htmlContent = comment.getComment().getCommentHTML();
-            contentTextView.setText(HtmlLinkHandler.parseHtml(context, htmlContent, contentTextView));
+            // Usually already parsed on a worker thread when the page arrived, so this just attaches it
+            ParsedCommentHtml content = sdk.htmlCache.get(comment.getComment(), sdk.getTheme());
+            contentTextView.setText(content.attach(context, contentTextView));
         }
         
         // No need for special handling for live chat - we're using a dedicated layout
@@ -433,41 +433,45 @@ public class CommentViewHolder extends RecyclerView.ViewHolder {
         btnLoadMoreReplies.setOnClickListener(clickListener);
     }
 
+    /**
+     * Only touch the TextView when the text is different, since the minute tick calls this for every visible comment
+     * and most labels don't change from one minute to the next.
+     */
+    private void setDateLabel(String label) {
+        if (!label.equals(dateLabel)) {
+            dateLabel = label;
+            dateTextView.setText(label);
+        }
+    }
+
     /**
      * Updates the date display based on the current comment and configuration
      */
     public void updateDateDisplay() {
         if (currentComment == null || currentComment.getComment() == null) {
-            dateTextView.setText("");
+            setDateLabel("");
             return;
         }
 
         OffsetDateTime date = currentComment.getComment().getDate();
         if (date == null) {
-            dateTextView.setText("");
+            setDateLabel("");
             return;
         }
 
         // Check if we should use absolute dates based on config
         final boolean useAbsoluteDates = Boolean.TRUE.equals(sdk.getConfig().absoluteDates);
 
+        final String label;
         if (useAbsoluteDates) {
             // Use system's locale-aware date formatting
             Locale currentLocale = context.getResources().getConfiguration().getLocales().get(0);
-            DateTimeFormatter formatter = DateTimeFormatter
-                    .ofLocalizedDateTime(FormatStyle.MEDIUM, FormatStyle.SHORT)
-                    .withLocale(currentLocale);
-
-            dateTextView.setText(date.format(formatter));
+            label = TimeLabels.absolute(date, currentLocale);
         } else {
             // Format as relative date: 2 minutes ago, 1 hour ago, etc.
-            CharSequence relativeTime = DateUtils.getRelativeTimeSpanString(
-                    date.toInstant().toEpochMilli(),
-                    System.currentTimeMillis(),
-                    DateUtils.MINUTE_IN_MILLIS
-            );
-            dateTextView.setText(relativeTime);
+            label = TimeLabels.relative(date, System.currentTimeMillis());
         }
+        setDateLabel(label);
     }
     
     /**
@@ -1,17 +1,28 @@
 package com.fastcomments.sdk;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.recyclerview.widget.DiffUtil;
+
 import com.fastcomments.model.PublicComment;
 import com.fastcomments.model.SortDirections;
 
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -21,27 +32,98 @@ import java.util.Set;
  * for live sessions would drain the user's battery with rebuilding the tree all the time.
  * <p>
  * So we have efficient implements for each common operation (toggling replies, adding/removing comments).
+ * <p>
+ * The reverse lookup (node -> position), which every vote/presence/update notification needs, is handled by
+ * {@link VisibleNodeList} so visibleNodes.indexOf() is a hash lookup rather than a scan.
+ * <p>
+ * By default every comment loaded stays in memory until the tree is rebuilt or cleared, which for an all-day live chat
+ * is without bound. Setting {@link #maxRetainedComments} or {@link #maxRetainedBytes} makes the tree evict whole
+ * threads from whichever end of the list is furthest off screen (see {@link #setVisibleRange}), leaving a
+ * {@link Tombstone} for each so they can be fetched again and put back with {@link #restoreEvicted} when the reader
+ * scrolls back to them.
+ * <p>
+ * allComments and the per-user lists are {@link RingBuffer}s, and visibleNodes is a {@link VisibleNodeList}, so a live
+ * chat at its limit, where each new message at the bottom eventually pushes the oldest off the top, doesn't get slower
+ * per message however long it runs.
  */
 public class CommentsTree {
 
     public Map<String, RenderableComment> commentsById; // all data including invisible
     public Map<String, List<RenderableComment>> commentsByUserId;
+    // userId and anonUserId -> the user's ids and comments, for presence
+    private final UserIdentityIndex identityIndex = new UserIdentityIndex();
     // Note that lots of operations have to do N-time lookups in these lists. We may want to replace these
     // with some sort of ordered map.
-    public List<RenderableComment> allComments = new ArrayList<>(0); // in any order
-    public List<RenderableNode> visibleNodes = new ArrayList<>(0); // in view order - can include comments and buttons
+    public List<RenderableComment> allComments = new RingBuffer<>(0); // in any order, though usually view order
+    public List<RenderableNode> visibleNodes = new VisibleNodeList(0); // in view order - can include comments and buttons
     private CommentsAdapter adapter;
     public boolean liveChatStyle = false;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // bumped by every build, so a background build that finishes after a newer one started is dropped
+    private final AtomicInteger buildGeneration = new AtomicInteger(0);
+    // live changes made while buildAsync is running, to apply again to the new tree. Null when no build is running.
+    private List<Runnable> replayAfterBuild = null;
 
     // Separate collections for easier lookup
     private RenderableButton newRootCommentsButton; // Only one of these at most
     private final Map<String, RenderableButton> newChildCommentsButtons; // Keyed by parent comment ID
     private final List<PublicComment> newRootComments; // Buffer for new root comments when showLiveRightAway is false
 
+    /**
+     * Most comments to keep in memory, or 0 for no limit. Over it, threads off screen are evicted until 10% under.
+     */
+    public int maxRetainedComments = 0;
+    /**
+     * Roughly how much memory comments may use, or 0 for no limit. Estimated from the length of their text.
+     */
+    public long maxRetainedBytes = 0;
+    /**
+     * Rows either side of the visible range that are never evicted, so a short scroll never needs a fetch.
+     */
+    public int evictionMarginRows = 50;
+    /**
+     * Most tombstones to keep for threads evicted above the loaded comments, or 0 for no limit. In a chat that runs for
+     * days even tombstones add up, so past this the oldest are dropped, and scrolling back stops at them until the
+     * tree is rebuilt.
+     */
+    public int maxTombstones = 0;
+    private static final double RETENTION_TRIM_TARGET = 0.9;
+    // what was evicted above and below the loaded comments, in view order
+    private final List<Tombstone> evictedBefore = new RingBuffer<>(0);
+    // root threads above evictedBefore whose tombstones were dropped
+    private int droppedBefore = 0;
+    private final List<Tombstone> evictedAfter = new ArrayList<>(0);
+    // estimated size of the comments in commentsById
+    private long retainedBytes = 0;
+    private int visibleFirst = -1;
+    private int visibleLast = -1;
+    // in live chat, the separator for the newest date, see lastVisibleDate()
+    private RenderableNode.DateSeparator lastDateSeparator;
+
+    // Nodes changed during a beginUpdate()/endUpdate() group, dispatched together when the group ends
+    private int updateDepth = 0;
+    private final Set<RenderableNode> pendingChangedNodes = new HashSet<>();
+
+    /**
+     * What's kept of an evicted thread: enough to fetch it again and put it back where it was.
+     */
+    public static class Tombstone {
+        public final String id;
+        public final OffsetDateTime date;
+        // the root comment plus the replies evicted with it
+        public final int commentCount;
+
+        Tombstone(String id, OffsetDateTime date, int commentCount) {
+            this.id = id;
+            this.date = date;
+            this.commentCount = commentCount;
+        }
+    }
+
     public CommentsTree() {
         this.commentsById = new HashMap<>(30);
         this.commentsByUserId = new HashMap<>(30);
-        this.visibleNodes = new ArrayList<>(30);
+        this.visibleNodes = new VisibleNodeList(30);
         this.newChildCommentsButtons = new HashMap<>();
         this.newRootComments = new ArrayList<>();
     }
@@ -67,25 +149,179 @@ public class CommentsTree {
     }
 
     public void notifyItemChanged(RenderableNode node) {
+        if (updateDepth > 0) {
+            pendingChangedNodes.add(node);
+            return;
+        }
         final int index = this.visibleNodes.indexOf(node);
         if (index >= 0) {
             adapter.notifyItemChanged(index);
         }
     }
 
+    /**
+     * Start a group of changes. Until the matching {@link #endUpdate()}, calls to {@link #notifyItemChanged(RenderableNode)}
+     * are collected instead of dispatched, so a node changed many times is only re-bound once.
+     * Structural changes (inserts/removes) are still dispatched immediately. Calls can be nested.
+     */
+    public void beginUpdate() {
+        updateDepth++;
+    }
+
+    /**
+     * End a group of changes started with {@link #beginUpdate()}. When the outermost group ends, the changed nodes
+     * are resolved to their current positions and dispatched as range notifications.
+     */
+    public void endUpdate() {
+        if (updateDepth == 0) {
+            return;
+        }
+        updateDepth--;
+        if (updateDepth > 0 || pendingChangedNodes.isEmpty()) {
+            return;
+        }
+        final BitSet changed = new BitSet(visibleNodes.size());
+        for (RenderableNode node : pendingChangedNodes) {
+            final int index = visibleNodes.indexOf(node);
+            if (index >= 0) {
+                changed.set(index);
+            }
+        }
+        pendingChangedNodes.clear();
+        notifyPositionsChanged(changed);
+    }
+
     public void build(List<PublicComment> comments) {
-        List<RenderableComment> allComments = new ArrayList<>(commentsById.size());
-        List<RenderableNode> visibleNodes = new ArrayList<>(commentsById.size());
+        // anything still being built in the background is now out of date
+        buildGeneration.incrementAndGet();
+        replayAfterBuild = null;
+        List<RenderableComment> allComments = new RingBuffer<>(commentsById.size());
+        List<RenderableNode> visibleNodes = new VisibleNodeList(commentsById.size());
+        resetIndexes();
+        this.allComments = allComments;
         if (comments == null || comments.isEmpty()) {
             this.visibleNodes = visibleNodes;
             return;
         }
 
+        flatten(comments, allComments, visibleNodes);
+        for (RenderableComment renderableComment : allComments) {
+            addToMapAndRelated(renderableComment);
+        }
+
+        this.visibleNodes = visibleNodes;
+        this.newRootCommentsButton = null;
+        this.newChildCommentsButtons.clear();
+        this.newRootComments.clear();
+        trimToRetention();
+    }
+
+    /**
+     * Same result as {@link #build(List)}, but the tree is flattened and diffed against the current visibleNodes on a
+     * background thread. Only the minimal set of adapter notifications is dispatched on the main thread, so existing
+     * rows keep their view holders and animations instead of everything being rebound by notifyDataSetChanged().
+     * <p>
+     * If visibleNodes is structurally changed while the diff is being computed (a live comment arrived, etc) the
+     * diff is thrown away and we fall back to notifyDataSetChanged(). Either way, live changes made since this was
+     * called are applied again to the new tree, as the comments given don't have them.
+     * <p>
+     * Must be called on the main thread, like every other change to the tree, or live changes made around the call can
+     * be missed.
+     *
+     * @param comments  The comments to build the tree from
+     * @param onApplied Called on the main thread once the new tree is in place and the adapter has been notified,
+     *                  or once the result has been dropped because a newer build was started in the meantime
+     */
+    public void buildAsync(List<PublicComment> comments, Runnable onApplied) {
+        final int generation = buildGeneration.incrementAndGet();
+        replayAfterBuild = new ArrayList<>(0);
+        final Executor executor = FastCommentsExecutors.computation();
+        executor.execute(() -> {
+            final List<RenderableComment> newAllComments = new RingBuffer<>(comments != null ? comments.size() : 0);
+            final VisibleNodeList newVisibleNodes = new VisibleNodeList(comments != null ? comments.size() : 0);
+            if (comments != null) {
+                flatten(comments, newAllComments, newVisibleNodes);
+            }
+            mainHandler.post(() -> {
+                // the snapshot has to be taken on the main thread since that's where visibleNodes is mutated
+                final List<RenderableNode> snapshot = new ArrayList<>(visibleNodes);
+                final int snapshotModCount = modificationCount();
+                final List<RenderableNode> snapshotList = visibleNodes;
+                executor.execute(() -> {
+                    final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new RenderableNodeDiffCallback(snapshot, newVisibleNodes), false);
+                    mainHandler.post(() -> {
+                        if (generation != buildGeneration.get()) {
+                            // a newer build was started while we were working, it wins
+                            if (onApplied != null) {
+                                onApplied.run();
+                            }
+                            return;
+                        }
+                        final boolean unchanged = snapshotList == visibleNodes && snapshotModCount == modificationCount();
+                        final List<Runnable> replays = replayAfterBuild;
+                        replayAfterBuild = null;
+                        resetIndexes();
+                        for (RenderableComment renderableComment : newAllComments) {
+                            addToMapAndRelated(renderableComment);
+                        }
+                        this.allComments = newAllComments;
+                        this.visibleNodes = newVisibleNodes;
+                        this.newRootCommentsButton = null;
+                        this.newChildCommentsButtons.clear();
+                        this.newRootComments.clear();
+                        if (adapter != null) {
+                            if (unchanged) {
+                                diff.dispatchUpdatesTo(adapter);
+                            } else {
+                                adapter.notifyDataSetChanged();
+                            }
+                        }
+                        // the comments we were given are older than anything that happened since, so do it again
+                        for (Runnable replay : replays) {
+                            replay.run();
+                        }
+                        trimToRetention();
+                        if (onApplied != null) {
+                            onApplied.run();
+                        }
+                    });
+                });
+            });
+        });
+    }
+
+    /**
+     * While {@link #buildAsync} is running, remember op so it's run again once the new tree is in place, since the
+     * comments being built don't include the change. For live changes that update comments in place, as adds and
+     * removes through the tree are already remembered.
+     */
+    public void replayAfterBuild(Runnable op) {
+        if (replayAfterBuild != null) {
+            replayAfterBuild.add(op);
+        }
+    }
+
+    private int modificationCount() {
+        return visibleNodes instanceof VisibleNodeList ? ((VisibleNodeList) visibleNodes).modificationCount() : visibleNodes.size();
+    }
+
+    /**
+     * Turn the comments into RenderableComments and work out which are visible, in view order.
+     * Doesn't touch any of the tree's state, so this is safe to run off the main thread.
+     */
+    private void flatten(List<PublicComment> comments, List<RenderableComment> allComments, List<RenderableNode> visibleNodes) {
+        flatten(comments, allComments, visibleNodes, null);
+    }
+
+    /**
+     * @param lastDate In live chat mode, the date of the comment these will be shown after, so a separator is only
+     *                 added if the date changes. Null to start with a separator.
+     */
+    private void flatten(List<PublicComment> comments, List<RenderableComment> allComments, List<RenderableNode> visibleNodes, java.time.LocalDate lastDate) {
         if (!liveChatStyle) {
             // Standard mode - process all comments and create RenderableComment objects
             for (PublicComment comment : comments) {
                 final RenderableComment renderableComment = new RenderableComment(comment);
-                addToMapAndRelated(renderableComment);
                 allComments.add(renderableComment);
                 visibleNodes.add(renderableComment);
                 if (comment.getChildren() != null) {
@@ -94,11 +330,10 @@ public class CommentsTree {
             }
         } else {
             // Live chat mode - insert date separators
-            java.time.LocalDate currentDate = null;
+            java.time.LocalDate currentDate = lastDate;
 
             for (PublicComment comment : comments) {
                 final RenderableComment renderableComment = new RenderableComment(comment);
-                addToMapAndRelated(renderableComment);
                 allComments.add(renderableComment);
                 
                 // Check if we need a date separator
@@ -121,16 +356,13 @@ public class CommentsTree {
                 }
             }
         }
-
-        this.allComments = allComments;
-        this.visibleNodes = visibleNodes;
-        this.newRootCommentsButton = null;
-        this.newChildCommentsButtons.clear();
-        this.newRootComments.clear();
     }
 
     /**
      * Append new comments to the existing tree (for pagination)
+     * <p>
+     * Only the new segment is flattened (including visible replies and, in live chat mode, date separators), and the
+     * adapter gets a single range insert for it, so existing rows aren't rebound.
      *
      * @param comments The new comments to append
      */
@@ -139,27 +371,138 @@ public class CommentsTree {
             return;
         }
 
-        int initialSize = visibleNodes.size();
-
-        // Process all comments and create RenderableComment objects
+        // a page can overlap what we have if comments were added on the server since the last page was fetched
+        final List<PublicComment> newComments = new ArrayList<>(comments.size());
+        final Set<String> newIds = new HashSet<>(comments.size());
         for (PublicComment comment : comments) {
-            if (!commentsById.containsKey(comment.getId())) {
-                final RenderableComment renderableComment = new RenderableComment(comment);
-                addToMapAndRelated(renderableComment);
-                allComments.add(renderableComment);
-                visibleNodes.add(renderableComment);
-                if (comment.getChildren() != null) {
-                    handleChildren(allComments, visibleNodes, comment.getChildren(), renderableComment.isRepliesShown);
+            if (!commentsById.containsKey(comment.getId()) && newIds.add(comment.getId())) {
+                newComments.add(comment);
+            }
+        }
+        if (newComments.isEmpty()) {
+            return;
+        }
+
+        final List<RenderableComment> segmentComments = new ArrayList<>(newComments.size());
+        final List<RenderableNode> segmentNodes = new ArrayList<>(newComments.size());
+        flatten(newComments, segmentComments, segmentNodes, liveChatStyle ? lastVisibleDate() : null);
+        for (RenderableComment renderableComment : segmentComments) {
+            addToMapAndRelated(renderableComment);
+        }
+        allComments.addAll(segmentComments);
+
+        final int start = visibleNodes.size();
+        visibleNodes.addAll(segmentNodes);
+        noteAppended(segmentNodes);
+        if (adapter != null && !segmentNodes.isEmpty()) {
+            adapter.notifyItemRangeInserted(start, segmentNodes.size());
+        }
+        trimToRetention();
+    }
+
+    /**
+     * The date of the last separator, so appended messages know whether they start a new day. The separator is
+     * remembered rather than searched for, and only looked for again when it's no longer in visibleNodes.
+     */
+    private java.time.LocalDate lastVisibleDate() {
+        if (lastDateSeparator == null || !visibleNodes.contains(lastDateSeparator)) {
+            lastDateSeparator = null;
+            for (int i = visibleNodes.size() - 1; i >= 0; i--) {
+                final RenderableNode node = visibleNodes.get(i);
+                if (node instanceof RenderableNode.DateSeparator) {
+                    lastDateSeparator = (RenderableNode.DateSeparator) node;
+                    break;
                 }
             }
         }
+        return lastDateSeparator != null ? lastDateSeparator.getDate() : null;
+    }
+
+    /**
+     * Call after appending rows, in case they include a separator that is now the last.
+     */
+    private void noteAppended(List<RenderableNode> appended) {
+        for (int i = appended.size() - 1; i >= 0; i--) {
+            if (appended.get(i) instanceof RenderableNode.DateSeparator) {
+                lastDateSeparator = (RenderableNode.DateSeparator) appended.get(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * The date of the separator or comment nearest above row, which a message put at row would follow.
+     */
+    private java.time.LocalDate dateAbove(int row) {
+        if (row == visibleNodes.size()) {
+            // the usual case, a message arriving at the bottom
+            final RenderableNode last = row > 0 ? visibleNodes.get(row - 1) : null;
+            if (last instanceof RenderableComment && ((RenderableComment) last).getComment().getDate() != null) {
+                return ((RenderableComment) last).getComment().getDate().toLocalDate();
+            }
+            return lastVisibleDate();
+        }
+        for (int i = row - 1; i >= 0; i--) {
+            final RenderableNode node = visibleNodes.get(i);
+            if (node instanceof RenderableNode.DateSeparator) {
+                return ((RenderableNode.DateSeparator) node).getDate();
+            } else if (node instanceof RenderableComment && ((RenderableComment) node).getComment().getDate() != null) {
+                return ((RenderableComment) node).getComment().getDate().toLocalDate();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Where a chat message sent at date goes: after every message sent at or before it. That's nearly always the
+     * end, but messages can arrive late, and then it's a binary search, since the rows are in date order.
+     */
+    private int chatInsertionRow(OffsetDateTime date) {
+        final int size = visibleNodes.size();
+        final int firstRow = firstThreadRow();
+        final int lastRoot = rootRowAtOrAbove(size - 1, firstRow);
+        if (date == null || lastRoot < 0 || !sentAfter(lastRoot, date)) {
+            return size;
+        }
+        // the first root message sent after date is somewhere in [low, high], and high always is one
+        int low = firstRow;
+        int high = lastRoot;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final int root = rootRowAtOrAbove(mid, low);
+            if (root >= 0 && sentAfter(root, date)) {
+                high = root;
+            } else {
+                low = mid + 1;
+            }
+        }
+        // go above the separator for the newer message's date, unless it's for this message's date too
+        if (high > 0 && visibleNodes.get(high - 1) instanceof RenderableNode.DateSeparator
+                && !((RenderableNode.DateSeparator) visibleNodes.get(high - 1)).getDate().equals(date.toLocalDate())) {
+            return high - 1;
+        }
+        return high;
+    }
+
+    /**
+     * The nearest row at or above row, but not above floor, that's a root comment, or -1.
+     */
+    private int rootRowAtOrAbove(int row, int floor) {
+        for (int i = row; i >= floor; i--) {
+            final RenderableNode node = visibleNodes.get(i);
+            if (node instanceof RenderableComment && ((RenderableComment) node).getComment().getParentId() == null) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-        // Notify the adapter of exactly what changed (the newly added comments) TODO doesn't work right
-//        int itemCount = visibleNodes.size() - initialSize;
-//        adapter.notifyItemRangeInserted(initialSize, itemCount);
-        adapter.notifyDataSetChanged();
+    private boolean sentAfter(int row, OffsetDateTime date) {
+        final OffsetDateTime sent = ((RenderableComment) visibleNodes.get(row)).getComment().getDate();
+        return sent != null && sent.isAfter(date);
     }
 
+
     public void addForParent(String parentId, List<PublicComment> comments) {
         // this is structured this way to limit pointer indirection/hashmap lookups.
         final RenderableComment parent = parentId != null ? commentsById.get(parentId) : null;
@@ -198,7 +541,6 @@ public class CommentsTree {
     private void handleChildren(List<RenderableComment> allComments, List<RenderableNode> visibleNodes, List<PublicComment> comments, boolean visible) {
         for (PublicComment child : comments) {
             final RenderableComment childRenderable = new RenderableComment(child);
-            addToMapAndRelated(childRenderable);
             allComments.add(childRenderable);
             final boolean childrenVisible = visible && childRenderable.isRepliesShown;
             if (childrenVisible) {
@@ -302,7 +644,7 @@ public class CommentsTree {
                 );
 
                 final String parentId = renderableComment.getComment().getId();
-                getChildren.get(request, (asyncFetchedChildren) -> {
+                final Callback<List<PublicComment>> onChildren = (asyncFetchedChildren) -> {
                     renderableComment.isLoadingChildren = false;
                     insertChildrenAfter(renderableComment, asyncFetchedChildren);
 
@@ -333,7 +675,19 @@ public class CommentsTree {
                     }
                     // Note: No need to call checkAndRequestUserPresenceStatuses() here anymore
                     // because it's already called inside insertChildrenAfter
-                });
+                };
+
+                final List<PublicComment> prefetched = renderableComment.prefetchedChildren;
+                if (prefetched != null) {
+                    // ReplyPrefetcher already has the first page, so do what the request would have done right away
+                    renderableComment.prefetchedChildren = null;
+                    addForParent(parentId, prefetched);
+                    renderableComment.isLoadingChildren = false;
+                    renderableComment.hasMoreChildren = renderableComment.prefetchedHasMoreChildren;
+                    onChildren.call(prefetched);
+                } else {
+                    getChildren.get(request, onChildren);
+                }
             }
         } else {
             // Remove any "new child comments" button for this parent
@@ -402,13 +756,14 @@ public class CommentsTree {
 
     public void insertChildrenAfter(RenderableComment renderableComment, List<PublicComment> children) {
         int myIndex = visibleNodes.indexOf(renderableComment);
-        int indexer = myIndex + 1;
-        for (int i = children.size() - 1; i >= 0; i--) {
-            final PublicComment child = children.get(i);
+        final List<RenderableNode> toInsert = new ArrayList<>(children.size());
+        for (PublicComment child : children) {
             final RenderableComment childRenderable = commentsById.get(child.getId());
             // see explanation at top of class
-            visibleNodes.add(indexer, childRenderable);
+            toInsert.add(childRenderable);
         }
+        // one shift of the tail instead of one per child
+        visibleNodes.addAll(myIndex + 1, toInsert);
         adapter.notifyItemRangeInserted(myIndex + 1, children.size()); // everything after me has changed/moved since it's a flat list
         
         // Check if we need to fetch presence status for newly visible comments
@@ -418,7 +773,12 @@ public class CommentsTree {
 
     private void addToMapAndRelated(RenderableComment renderableComment) {
         final PublicComment publicComment = renderableComment.getComment();
-        commentsById.put(publicComment.getId(), renderableComment);
+        final RenderableComment previous = commentsById.put(publicComment.getId(), renderableComment);
+        if (previous != null) {
+            retainedBytes -= estimateBytes(previous.getComment());
+        }
+        retainedBytes += estimateBytes(publicComment);
+        identityIndex.add(renderableComment);
         final String userId = publicComment.getUserId();
         if (userId != null) {
             addForUser(userId, renderableComment);
@@ -432,7 +792,7 @@ public class CommentsTree {
     private void addForUser(String userId, RenderableComment renderableComment) {
         List<RenderableComment> commentsForUser = commentsByUserId.get(userId);
         if (commentsForUser == null) {
-            commentsForUser = new ArrayList<>(1);
+            commentsForUser = new RingBuffer<>(1);
             commentsByUserId.put(userId, commentsForUser);
         }
         commentsForUser.add(renderableComment);
@@ -464,6 +824,7 @@ public class CommentsTree {
         if (comment == null || commentsById.containsKey(comment.getId())) {
             return;
         }
+        replayAfterBuild(() -> addComment(comment, displayNow, sortDirection));
 
         // Create a new renderable comment
         RenderableComment renderableComment = new RenderableComment(comment);
@@ -488,44 +849,25 @@ public class CommentsTree {
                     position = 0;
                     visibleNodes.add(0, renderableComment);
                 } else {
-                    // For oldest first (like chat), add at the bottom
-                    position = visibleNodes.size();
-                    
-                    // Check if we need to add a date separator in live chat mode
+                    // For oldest first (like chat), add at the bottom, or in date order if it arrived late
+                    position = liveChatStyle ? chatInsertionRow(comment.getDate()) : visibleNodes.size();
+
                     if (liveChatStyle && comment.getDate() != null) {
                         java.time.LocalDate commentDate = comment.getDate().toLocalDate();
-                        boolean needDateSeparator = true;
-                        
-                        // Check if there are any comments already with the same date
-                        for (int i = visibleNodes.size() - 1; i >= 0; i--) {
-                            RenderableNode node = visibleNodes.get(i);
-                            if (node instanceof RenderableNode.DateSeparator) {
-                                RenderableNode.DateSeparator separator = (RenderableNode.DateSeparator) node;
-                                if (separator.getDate().equals(commentDate)) {
-                                    // We already have a separator for this date
-                                    needDateSeparator = false;
-                                }
-                                break; // Exit after finding the most recent date separator
-                            } else if (node instanceof RenderableComment) {
-                                RenderableComment lastComment = (RenderableComment) node;
-                                if (lastComment.getComment().getDate() != null && 
-                                    lastComment.getComment().getDate().toLocalDate().equals(commentDate)) {
-                                    // The previous comment is from the same date
-                                    needDateSeparator = false;
-                                    break;
-                                }
-                            }
-                        }
-                        
-                        if (needDateSeparator) {
+                        if (!commentDate.equals(dateAbove(position))) {
                             RenderableNode.DateSeparator separator = new RenderableNode.DateSeparator(commentDate);
-                            visibleNodes.add(separator);
+                            if (position == visibleNodes.size()) {
+                                lastDateSeparator = separator;
+                            }
+                            visibleNodes.add(position, separator);
+                            shiftVisibleRange(position, 1);
                             adapter.notifyItemInserted(position);
                             position++;
                         }
                     }
-                    
-                    visibleNodes.add(renderableComment);
+
+                    visibleNodes.add(position, renderableComment);
+                    shiftVisibleRange(position, 1);
                 }
                 adapter.notifyItemInserted(position);
                 
@@ -639,6 +981,7 @@ public class CommentsTree {
                 }
             }
         }
+        trimToRetention();
     }
 
     /**
@@ -738,6 +1081,27 @@ public class CommentsTree {
 
     // Store known user presence status to avoid unnecessary API calls
     private Map<String, Boolean> userPresenceCache = new HashMap<>();
+    // When each user's status was last set or confirmed, so callers can decide whether it's worth re-fetching
+    private final Map<String, Long> userPresenceCheckedAt = new HashMap<>();
+
+    /**
+     * @return true if we've had a status for this user within the last maxAgeMs
+     */
+    public boolean isPresenceFresh(String userId, long maxAgeMs) {
+        final Long checkedAt = userPresenceCheckedAt.get(userId);
+        return checkedAt != null && SystemClock.elapsedRealtime() - checkedAt < maxAgeMs;
+    }
+
+    /**
+     * Record that the status of these users was just fetched, including those the server didn't return
+     * (which are offline), so they aren't re-requested until they go stale.
+     */
+    public void markPresenceChecked(Collection<String> userIds) {
+        final long now = SystemClock.elapsedRealtime();
+        for (String userId : userIds) {
+            userPresenceCheckedAt.put(userId, now);
+        }
+    }
 
     /**
      * Reset all presence state — clears the cache and marks all comments as offline.
@@ -745,12 +1109,15 @@ public class CommentsTree {
      */
     public void resetPresence() {
         userPresenceCache.clear();
+        userPresenceCheckedAt.clear();
+        final BitSet changed = new BitSet(visibleNodes.size());
         for (RenderableComment comment : allComments) {
             if (comment.isOnline) {
                 comment.isOnline = false;
-                notifyItemChanged(comment);
+                markChanged(changed, comment);
             }
         }
+        notifyPositionsChanged(changed);
     }
 
     /**
@@ -762,56 +1129,75 @@ public class CommentsTree {
      * @param isOnline Whether the user is online or offline
      */
     public void updateUserPresence(String userId, boolean isOnline) {
-        // Cache the presence status
-        userPresenceCache.put(userId, isOnline);
+        updateUserPresence(Collections.singletonMap(userId, isOnline));
+    }
 
-        // Track which comments were updated to minimize UI updates
-        final List<RenderableComment> usersComments = commentsByUserId.get(userId);
-        if (usersComments == null) {
-            return;
-        }
-        List<RenderableComment> updatedComments = new ArrayList<>();
-        Set<String> crossSyncedIds = new HashSet<>();
-
-        // Update all comments by this user, and cross-sync the other ID
-        for (RenderableComment comment : usersComments) {
-            // Cross-sync: if event was for userId, also cache anonUserId (and vice versa)
-            String otherUserId = comment.getComment().getUserId();
-            String otherAnonUserId = comment.getComment().getAnonUserId();
-            if (otherUserId != null && !otherUserId.isEmpty() && !otherUserId.equals(userId)) {
-                userPresenceCache.put(otherUserId, isOnline);
-                crossSyncedIds.add(otherUserId);
+    /**
+     * Update the online status for many users at once, for example after a reconnect or a presence fetch.
+     * Any id a user is known by (userId or anonUserId) can be used, and all of their ids are kept in sync.
+     * Changed rows are dispatched as coalesced range notifications once all statuses have been applied.
+     *
+     * @param statuses Online status by user id
+     */
+    public void updateUserPresence(Map<String, Boolean> statuses) {
+        final long now = SystemClock.elapsedRealtime();
+        final BitSet changed = new BitSet(visibleNodes.size());
+        for (Map.Entry<String, Boolean> entry : statuses.entrySet()) {
+            final String userId = entry.getKey();
+            final boolean isOnline = entry.getValue() != null && entry.getValue();
+            // Cache the presence status
+            userPresenceCache.put(userId, isOnline);
+            userPresenceCheckedAt.put(userId, now);
+
+            final UserIdentityIndex.Identity identity = identityIndex.get(userId);
+            if (identity == null) {
+                continue;
             }
-            if (otherAnonUserId != null && !otherAnonUserId.isEmpty() && !otherAnonUserId.equals(userId)) {
-                userPresenceCache.put(otherAnonUserId, isOnline);
-                crossSyncedIds.add(otherAnonUserId);
+            // Cross-sync: if the event was for the userId, also cache the anonUserId (and vice versa)
+            for (String otherId : identity.ids) {
+                userPresenceCache.put(otherId, isOnline);
+                userPresenceCheckedAt.put(otherId, now);
             }
-
-            if (comment.isOnline != isOnline) {
-                comment.isOnline = isOnline;
-                updatedComments.add(comment);
+            for (RenderableComment comment : identity.comments) {
+                if (comment.isOnline != isOnline) {
+                    comment.isOnline = isOnline;
+                    markChanged(changed, comment);
+                }
             }
         }
+        notifyPositionsChanged(changed);
+    }
 
-        // Also update comments indexed under the cross-synced IDs
-        for (String crossId : crossSyncedIds) {
-            final List<RenderableComment> crossComments = commentsByUserId.get(crossId);
-            if (crossComments != null) {
-                for (RenderableComment comment : crossComments) {
-                    if (comment.isOnline != isOnline) {
-                        comment.isOnline = isOnline;
-                        updatedComments.add(comment);
-                    }
-                }
-            }
+    /**
+     * Record the position of a changed node. Inside a {@link #beginUpdate()} group the node is collected with the
+     * group's other changes instead, since positions may move before the group ends.
+     */
+    private void markChanged(BitSet changed, RenderableNode node) {
+        if (updateDepth > 0) {
+            pendingChangedNodes.add(node);
+            return;
+        }
+        final int index = visibleNodes.indexOf(node);
+        if (index >= 0) {
+            changed.set(index);
         }
+    }
 
-        // Update UI for visible comments only
-        for (RenderableComment comment : updatedComments) {
-            notifyItemChanged(comment);
+    /**
+     * Dispatch change notifications for the set positions, coalescing consecutive positions into ranges.
+     */
+    private void notifyPositionsChanged(BitSet changed) {
+        if (adapter == null) {
+            return;
+        }
+        int start = changed.nextSetBit(0);
+        while (start >= 0) {
+            final int end = changed.nextClearBit(start); // exclusive
+            adapter.notifyItemRangeChanged(start, end - start);
+            start = changed.nextSetBit(end);
         }
     }
-    
+
     /**
      * Check for newly visible comments and return any user IDs we need to fetch presence for
      * 
@@ -946,6 +1332,7 @@ public class CommentsTree {
      * @return true if the comment was found and removed, false otherwise
      */
     public boolean removeComment(String commentId) {
+        replayAfterBuild(() -> removeComment(commentId));
         final RenderableComment comment = commentsById.get(commentId);
         if (comment == null) {
             return false;
@@ -956,9 +1343,11 @@ public class CommentsTree {
 
         // Remove from main collections
         commentsById.remove(commentId);
+        retainedBytes -= estimateBytes(comment.getComment());
         allComments.remove(comment);
 
         // Remove this from the cached list of user's comments.
+        identityIndex.remove(comment);
         if (comment.getComment().getUserId() != null) {
             final List<RenderableComment> usersComments = commentsByUserId.get(comment.getComment().getUserId());
             if (usersComments != null) {
@@ -1040,6 +1429,409 @@ public class CommentsTree {
         }
     }
 
+    /**
+     * Tell the tree which rows are on screen, so eviction leaves them alone. Evicts if over the retention limits.
+     */
+    public void setVisibleRange(int firstVisiblePosition, int lastVisiblePosition) {
+        visibleFirst = firstVisiblePosition;
+        visibleLast = lastVisiblePosition;
+        trimToRetention();
+    }
+
+    /**
+     * Threads evicted above the loaded comments, oldest evicted first. Each is one root comment.
+     */
+    public List<Tombstone> getEvictedBefore() {
+        return Collections.unmodifiableList(evictedBefore);
+    }
+
+    /**
+     * How many root threads are above the loaded comments: those in {@link #getEvictedBefore()} plus any whose
+     * tombstones were dropped. This is where the loaded comments start on the server.
+     */
+    public int evictedBeforeCount() {
+        return droppedBefore + evictedBefore.size();
+    }
+
+    /**
+     * Threads evicted below the loaded comments, in view order.
+     */
+    public List<Tombstone> getEvictedAfter() {
+        return Collections.unmodifiableList(evictedAfter);
+    }
+
+    /**
+     * How many root comments are loaded. Walks every comment, so don't call it per bind.
+     */
+    public int rootCount() {
+        int count = 0;
+        for (RenderableComment comment : allComments) {
+            if (comment.getComment().getParentId() == null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Put back threads fetched again for the tombstones nearest the loaded comments, on one side.
+     * Threads are found by id, since comments added or deleted on the server since can shift the page they were on.
+     * They're restored nearest first, stopping at the first tombstone the fetch didn't include, so the order is kept
+     * and that one can be fetched again with a wider window. Unless dropMissing is set, when tombstones not found are
+     * given up on (the comment was probably deleted) and the ones past them are still restored.
+     *
+     * @param before      Whether they were evicted from above the loaded comments
+     * @param count       How many tombstones the fetch was for
+     * @param comments    The fetched root comments, with replies. Any not for those tombstones are ignored.
+     * @param dropMissing Whether to give up on tombstones the fetch didn't include
+     * @return How many tombstones were used up, restored or given up on
+     */
+    public int restoreEvicted(boolean before, int count, List<PublicComment> comments, boolean dropMissing) {
+        final List<Tombstone> side = before ? evictedBefore : evictedAfter;
+        count = Math.min(count, side.size());
+        final List<Tombstone> requested = before ? side.subList(side.size() - count, side.size()) : side.subList(0, count);
+        final Map<String, PublicComment> fetched = new HashMap<>(comments != null ? comments.size() : 0);
+        if (comments != null) {
+            for (PublicComment comment : comments) {
+                if (!commentsById.containsKey(comment.getId())) {
+                    fetched.put(comment.getId(), comment);
+                }
+            }
+        }
+        // walk out from the loaded comments
+        final PublicComment[] found = new PublicComment[count];
+        int consumed = 0;
+        for (; consumed < count; consumed++) {
+            final int slot = before ? count - 1 - consumed : consumed;
+            found[slot] = fetched.get(requested.get(slot).id);
+            if (found[slot] == null && !dropMissing) {
+                break;
+            }
+        }
+        if (before) {
+            requested.subList(count - consumed, count).clear();
+        } else {
+            requested.subList(0, consumed).clear();
+        }
+        final List<PublicComment> restored = new ArrayList<>(consumed);
+        for (PublicComment comment : found) {
+            if (comment != null) {
+                restored.add(comment);
+            }
+        }
+        if (restored.isEmpty()) {
+            return consumed;
+        }
+
+        final List<RenderableComment> segmentComments = new ArrayList<>(restored.size());
+        final List<RenderableNode> segmentNodes = new ArrayList<>(restored.size());
+        flatten(restored, segmentComments, segmentNodes, before || !liveChatStyle ? null : lastVisibleDate());
+        for (RenderableComment renderableComment : segmentComments) {
+            addToMapAndRelated(renderableComment);
+        }
+        // keep allComments in view order, so the same threads can come off its ends again if they're evicted again
+        allComments.addAll(before ? 0 : allComments.size(), segmentComments);
+        if (!before) {
+            final int start = visibleNodes.size();
+            visibleNodes.addAll(segmentNodes);
+            noteAppended(segmentNodes);
+            if (adapter != null) {
+                adapter.notifyItemRangeInserted(start, segmentNodes.size());
+            }
+            return consumed;
+        }
+        final int start = firstThreadRow();
+        visibleNodes.addAll(start, segmentNodes);
+        shiftVisibleRange(start, segmentNodes.size());
+        if (adapter != null) {
+            adapter.notifyItemRangeInserted(start, segmentNodes.size());
+        }
+        // the first comment that was already here may now have a separator for its date right above it
+        final int after = start + segmentNodes.size();
+        if (liveChatStyle && after < visibleNodes.size() && visibleNodes.get(after) instanceof RenderableNode.DateSeparator) {
+            final java.time.LocalDate date = ((RenderableNode.DateSeparator) visibleNodes.get(after)).getDate();
+            for (int i = after - 1; i >= start; i--) {
+                if (visibleNodes.get(i) instanceof RenderableNode.DateSeparator) {
+                    if (((RenderableNode.DateSeparator) visibleNodes.get(i)).getDate().equals(date)) {
+                        removeRows(after, after + 1);
+                    }
+                    break;
+                }
+            }
+        }
+        return consumed;
+    }
+
+    /**
+     * Rough size of a comment in memory: its strings, as UTF-16, plus the objects around them.
+     */
+    static long estimateBytes(PublicComment comment) {
+        long chars = 0;
+        chars += length(comment.getCommentHTML());
+        chars += length(comment.getCommenterName());
+        chars += length(comment.getAvatarSrc());
+        chars += length(comment.getId()) + length(comment.getParentId()) + length(comment.getUserId()) + length(comment.getAnonUserId());
+        // PublicComment, RenderableComment, map entries and the dates
+        return 2 * chars + 600;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    private boolean exceedsRetention(double fraction) {
+        return (maxRetainedComments > 0 && commentsById.size() > maxRetainedComments * fraction)
+                || (maxRetainedBytes > 0 && retainedBytes > maxRetainedBytes * fraction);
+    }
+
+    /**
+     * The first row that belongs to a thread, after the "new comments" button if it's there.
+     */
+    private int firstThreadRow() {
+        int row = 0;
+        while (row < visibleNodes.size() && visibleNodes.get(row) instanceof RenderableButton) {
+            row++;
+        }
+        return row;
+    }
+
+    /**
+     * If over the retention limits, evict whole threads that are off screen, starting with the ones furthest away,
+     * until 10% under. Rows within {@link #evictionMarginRows} of the visible range are kept.
+     */
+    private void trimToRetention() {
+        if (!exceedsRetention(1) || visibleNodes.isEmpty()) {
+            return;
+        }
+        final int size = visibleNodes.size();
+        int first = visibleFirst;
+        int last = visibleLast;
+        if (first < 0 || last < first || last >= size) {
+            // not told yet, so assume the end new comments arrive at is what's on screen
+            first = liveChatStyle ? size - 1 : 0;
+            last = first;
+        }
+        final int keepFrom = Math.max(first - evictionMarginRows, 0);
+        final int keepTo = Math.min(last + evictionMarginRows + 1, size);
+
+        // each thread is a root comment, the separator right above it if any, and the rows after it up to the next
+        final List<Integer> threadStarts = new ArrayList<>();
+        for (int row = firstThreadRow(); row < size; row++) {
+            final RenderableNode node = visibleNodes.get(row);
+            if (node instanceof RenderableComment && ((RenderableComment) node).getComment().getParentId() == null) {
+                threadStarts.add(row > 0 && visibleNodes.get(row - 1) instanceof RenderableNode.DateSeparator ? row - 1 : row);
+            }
+        }
+        if (threadStarts.isEmpty()) {
+            return;
+        }
+
+        final long[] planned = new long[2]; // comments, bytes
+        final List<RenderableComment> evicted = new ArrayList<>();
+        final List<Tombstone> headTombstones = new ArrayList<>();
+        final List<Tombstone> tailTombstones = new ArrayList<>();
+        int headThreads = 0;
+        int tailThreads = 0;
+        final boolean headFirst = keepFrom >= size - keepTo;
+        for (int pass = 0; pass < 2; pass++) {
+            final boolean head = (pass == 0) == headFirst;
+            if (head) {
+                while (headThreads < threadStarts.size() - tailThreads
+                        && threadEnd(threadStarts, headThreads, size) <= keepFrom
+                        && overAfter(planned)) {
+                    headTombstones.add(plan(visibleNodes.get(rootRow(threadStarts.get(headThreads))), evicted, planned));
+                    headThreads++;
+                }
+            } else {
+                while (tailThreads < threadStarts.size() - headThreads
+                        && threadStarts.get(threadStarts.size() - 1 - tailThreads) >= keepTo
+                        && overAfter(planned)) {
+                    final int thread = threadStarts.size() - 1 - tailThreads;
+                    tailTombstones.add(0, plan(visibleNodes.get(rootRow(threadStarts.get(thread))), evicted, planned));
+                    tailThreads++;
+                }
+            }
+        }
+        if (evicted.isEmpty()) {
+            return;
+        }
+
+        for (RenderableComment comment : evicted) {
+            forget(comment);
+        }
+        removeFromAllComments(evicted);
+        // the tail first, so the head's rows don't move
+        if (tailThreads > 0) {
+            removeRows(threadStarts.get(threadStarts.size() - tailThreads), size);
+            evictedAfter.addAll(0, tailTombstones);
+        }
+        if (headThreads > 0) {
+            final int from = threadStarts.get(0);
+            final int to = threadEnd(threadStarts, headThreads - 1, size);
+            int keptSeparator = -1;
+            if (liveChatStyle && to < visibleNodes.size() && !(visibleNodes.get(to) instanceof RenderableNode.DateSeparator)) {
+                // the first comment kept still needs the separator for its date
+                for (int row = to - 1; row >= from; row--) {
+                    if (visibleNodes.get(row) instanceof RenderableNode.DateSeparator) {
+                        keptSeparator = row;
+                        break;
+                    }
+                }
+            }
+            if (keptSeparator >= 0) {
+                // rather than removing the rows either side of it, which would shift the rows below twice, remove
+                // one row fewer and put the separator in the row left over, then tell the adapter what that amounts to
+                final RenderableNode separator = visibleNodes.get(keptSeparator);
+                visibleNodes.subList(from, to - 1).clear();
+                visibleNodes.set(from, separator);
+                rowsRemoved(keptSeparator + 1, to);
+                rowsRemoved(from, keptSeparator);
+            } else {
+                removeRows(from, to);
+            }
+            evictedBefore.addAll(headTombstones);
+            if (maxTombstones > 0 && evictedBefore.size() > maxTombstones) {
+                final int drop = evictedBefore.size() - maxTombstones;
+                evictedBefore.subList(0, drop).clear();
+                droppedBefore += drop;
+            }
+        }
+    }
+
+    /**
+     * Evicted threads are nearly always the oldest or newest loaded, so in the usual case they come off the ends of
+     * allComments without touching the rest. Anything else, like a reply added by a live event, is looked for after.
+     */
+    private void removeFromAllComments(List<RenderableComment> evicted) {
+        final Set<RenderableComment> remaining = new HashSet<>(evicted);
+        int from = 0;
+        while (from < allComments.size() && remaining.remove(allComments.get(from))) {
+            from++;
+        }
+        int to = allComments.size();
+        while (to > from && remaining.remove(allComments.get(to - 1))) {
+            to--;
+        }
+        allComments.subList(to, allComments.size()).clear();
+        allComments.subList(0, from).clear();
+        if (!remaining.isEmpty()) {
+            allComments.removeAll(remaining);
+        }
+    }
+
+    private boolean overAfter(long[] planned) {
+        return (maxRetainedComments > 0 && commentsById.size() - planned[0] > maxRetainedComments * RETENTION_TRIM_TARGET)
+                || (maxRetainedBytes > 0 && retainedBytes - planned[1] > maxRetainedBytes * RETENTION_TRIM_TARGET);
+    }
+
+    private static int threadEnd(List<Integer> threadStarts, int thread, int size) {
+        return thread + 1 < threadStarts.size() ? threadStarts.get(thread + 1) : size;
+    }
+
+    private int rootRow(int threadStart) {
+        return visibleNodes.get(threadStart) instanceof RenderableNode.DateSeparator ? threadStart + 1 : threadStart;
+    }
+
+    /**
+     * Add the thread under root to evicted and to the planned totals.
+     */
+    private Tombstone plan(RenderableNode root, List<RenderableComment> evicted, long[] planned) {
+        final RenderableComment rootComment = (RenderableComment) root;
+        final int before = evicted.size();
+        collectThread(rootComment.getComment(), evicted);
+        for (int i = before; i < evicted.size(); i++) {
+            planned[0]++;
+            planned[1] += estimateBytes(evicted.get(i).getComment());
+        }
+        return new Tombstone(rootComment.getComment().getId(), rootComment.getComment().getDate(), evicted.size() - before);
+    }
+
+    private void collectThread(PublicComment comment, List<RenderableComment> into) {
+        final RenderableComment renderableComment = commentsById.get(comment.getId());
+        if (renderableComment != null) {
+            into.add(renderableComment);
+        }
+        if (comment.getChildren() != null) {
+            for (PublicComment child : comment.getChildren()) {
+                collectThread(child, into);
+            }
+        }
+    }
+
+    /**
+     * Drop a comment from every index.
+     */
+    private void forget(RenderableComment renderableComment) {
+        final PublicComment comment = renderableComment.getComment();
+        if (commentsById.remove(comment.getId()) != null) {
+            retainedBytes -= estimateBytes(comment);
+        }
+        identityIndex.remove(renderableComment);
+        forgetForUser(comment.getUserId(), renderableComment);
+        forgetForUser(comment.getAnonUserId(), renderableComment);
+        newChildCommentsButtons.remove(comment.getId());
+        pendingChangedNodes.remove(renderableComment);
+    }
+
+    private void forgetForUser(String userId, RenderableComment renderableComment) {
+        if (userId == null) {
+            return;
+        }
+        final List<RenderableComment> usersComments = commentsByUserId.get(userId);
+        if (usersComments == null) {
+            return;
+        }
+        usersComments.remove(renderableComment);
+        if (usersComments.isEmpty()) {
+            commentsByUserId.remove(userId);
+            userPresenceCache.remove(userId);
+            userPresenceCheckedAt.remove(userId);
+        }
+    }
+
+    private void removeRows(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        visibleNodes.subList(from, to).clear();
+        rowsRemoved(from, to);
+    }
+
+    private void rowsRemoved(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        shiftVisibleRange(from, from - to);
+        if (adapter != null) {
+            adapter.notifyItemRangeRemoved(from, to - from);
+        }
+    }
+
+    /**
+     * Keep the last reported visible range pointing at the same rows when rows are added or removed above it, until
+     * the view reports it again.
+     */
+    private void shiftVisibleRange(int row, int delta) {
+        if (visibleFirst >= 0 && row <= visibleFirst) {
+            visibleFirst = Math.max(visibleFirst + delta, 0);
+            visibleLast = Math.max(visibleLast + delta, 0);
+        }
+    }
+
+    /**
+     * Forget every comment, keeping the adapter and presence state, for when the whole tree is replaced.
+     */
+    private void resetIndexes() {
+        commentsById.clear();
+        commentsByUserId.clear();
+        identityIndex.clear();
+        evictedBefore.clear();
+        droppedBefore = 0;
+        evictedAfter.clear();
+        retainedBytes = 0;
+        lastDateSeparator = null;
+    }
+
     /**
      * Clears all data from the comments tree.
      * Use this when switching fragments to avoid memory leaks.
@@ -1047,12 +1839,23 @@ public class CommentsTree {
     public void clear() {
         commentsById.clear();
         commentsByUserId.clear();
+        identityIndex.clear();
         allComments.clear();
         visibleNodes.clear();
         newChildCommentsButtons.clear();
         newRootComments.clear();
         newRootCommentsButton = null;
         userPresenceCache.clear();
+        userPresenceCheckedAt.clear();
+        pendingChangedNodes.clear();
+        updateDepth = 0;
+        evictedBefore.clear();
+        droppedBefore = 0;
+        evictedAfter.clear();
+        retainedBytes = 0;
+        visibleFirst = -1;
+        visibleLast = -1;
+        lastDateSeparator = null;
         if (adapter != null) {
             adapter = null;
         }
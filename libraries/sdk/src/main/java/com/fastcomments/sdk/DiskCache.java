@@ -0,0 +1,182 @@
+package com.fastcomments.sdk;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A small file-per-entry cache in the app's cache directory, for responses we want to show instantly on the next start.
+ * <p>
+ * Entries older than maxAgeMs are never returned. When the total size goes over maxBytes, the least recently written
+ * entries are deleted. Writes go to a temp file that is renamed into place, so a crash mid-write never leaves a
+ * truncated entry. Since the OS may clear the cache directory at any time, a miss is always fine.
+ * <p>
+ * Does disk IO, so don't call it on the main thread.
+ */
+public class DiskCache {
+
+    public static class Entry {
+        public final String value;
+        // how long ago the entry was written
+        public final long ageMs;
+
+        Entry(String value, long ageMs) {
+            this.value = value;
+            this.ageMs = ageMs;
+        }
+    }
+
+    private final File dir;
+    private final long maxBytes;
+    private final long maxAgeMs;
+
+    public DiskCache(File dir, long maxBytes, long maxAgeMs) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * @param name A directory name under the app's cache directory, one per kind of data
+     */
+    public static DiskCache create(Context context, String name, long maxBytes, long maxAgeMs) {
+        return new DiskCache(new File(new File(context.getCacheDir(), "fastcomments"), name), maxBytes, maxAgeMs);
+    }
+
+    public synchronized Entry get(String key) {
+        final File file = fileFor(key);
+        final long ageMs = System.currentTimeMillis() - file.lastModified();
+        final byte[] bytes = getBytes(key);
+        if (bytes == null) {
+            return null;
+        }
+        return new Entry(new String(bytes, StandardCharsets.UTF_8), Math.max(ageMs, 0));
+    }
+
+    public synchronized void put(String key, String value) {
+        putBytes(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Same as {@link #get(String)}, for binary entries.
+     */
+    public synchronized byte[] getBytes(String key) {
+        final File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        final long ageMs = System.currentTimeMillis() - file.lastModified();
+        if (ageMs > maxAgeMs) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            final byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                final int count = in.read(bytes, read, bytes.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            return read == bytes.length ? bytes : Arrays.copyOf(bytes, read);
+        } catch (IOException e) {
+            Log.w("FastCommentsSDK", "Failed to read cache entry", e);
+            return null;
+        }
+    }
+
+    /**
+     * Same as {@link #put(String, String)}, for binary entries.
+     */
+    public synchronized void putBytes(String key, byte[] value) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        final File file = fileFor(key);
+        final File temp = new File(dir, file.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(value);
+        } catch (IOException e) {
+            Log.w("FastCommentsSDK", "Failed to write cache entry", e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        trim();
+    }
+
+    public synchronized void remove(String key) {
+        //noinspection ResultOfMethodCallIgnored
+        fileFor(key).delete();
+    }
+
+    public synchronized void clear() {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private void trim() {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            total -= file.length();
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(dir, hash(key));
+    }
+
+    private static String hash(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Android device has SHA-1, but fall back to something file name safe anyway
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.fastcomments.sdk;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide background threads used by the SDK for work that shouldn't run on the main thread
+ * (flattening/diffing large comment trees, etc). Network calls don't go through here, OkHttp has its own dispatcher.
+ */
+public class FastCommentsExecutors {
+
+    private static volatile ExecutorService computation;
+    private static volatile ExecutorService io;
+
+    /**
+     * A small pool for CPU bound work, sized to the device. Threads are daemons so they never keep the process alive.
+     */
+    public static ExecutorService computation() {
+        ExecutorService executor = computation;
+        if (executor == null) {
+            synchronized (FastCommentsExecutors.class) {
+                executor = computation;
+                if (executor == null) {
+                    final int threads = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+                    executor = Executors.newFixedThreadPool(threads, namedDaemonThreads("fastcomments-compute-"));
+                    computation = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * A single thread for small file reads and writes. Being one thread, writes happen in the order they were submitted,
+     * so a later snapshot of some state never gets overwritten by an earlier one.
+     */
+    public static ExecutorService io() {
+        ExecutorService executor = io;
+        if (executor == null) {
+            synchronized (FastCommentsExecutors.class) {
+                executor = io;
+                if (executor == null) {
+                    executor = Executors.newSingleThreadExecutor(namedDaemonThreads("fastcomments-io-"));
+                    io = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static ThreadFactory namedDaemonThreads(String prefix) {
+        final AtomicInteger count = new AtomicInteger(0);
+        return runnable -> {
+            final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+    }
+}
@@ -35,6 +35,7 @@ import com.fastcomments.model.UserSessionInfo;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -43,19 +44,13 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.net.Uri;
 import android.content.Context;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
 
-import android.provider.OpenableColumns;
-import android.database.Cursor;
 
 /**
  * SDK class for handling FastComments Feed functionality
@@ -79,6 +74,35 @@ public class FastCommentsFeedSDK {
     public int newPostsCount = 0;
     private NewPostsAvailableListener newPostsAvailableListener;
     private Map<String, Map<String, Boolean>> myReacts = new HashMap<>(); // Map of postId to reaction types
+    private FeedCache feedCache;
+    private static final long FEED_CACHE_MAX_BYTES = 2 * 1024 * 1024;
+    private static final long FEED_CACHE_MAX_AGE_MS = 24L * 60 * 60 * 1000;
+    /**
+     * Shares identical post stats requests made at the same time, for example overlapping polls. See {@link SingleFlight}.
+     */
+    public final SingleFlight singleFlight = new SingleFlight();
+    /**
+     * How long post stats are reused for. 0 only shares requests already in flight.
+     */
+    public long postStatsCacheTtlMs = 0;
+    /**
+     * Prepares and sends images for {@link #uploadImages}. Tune its concurrency and size limits here.
+     */
+    public final ImageUploadPipeline uploadPipeline = new ImageUploadPipeline(this::uploadFile);
+    private UploadQueue uploadQueue;
+    // images uploaded for posts that then failed to be created, by batch id, so trying again doesn't upload them again
+    private final Map<String, UploadedMedia> uploadedMediaByBatchId = new HashMap<>(0);
+
+    private static class UploadedMedia {
+        // what was uploaded, so it's only reused for the same images
+        final List<Uri> uris;
+        final List<FeedPostMediaItem> media;
+
+        UploadedMedia(List<Uri> uris, List<FeedPostMediaItem> media) {
+            this.uris = uris;
+            this.media = media;
+        }
+    }
 
     public interface NewPostsAvailableListener {
         void onNewPostsAvailable(int count);
@@ -105,11 +129,13 @@ public class FastCommentsFeedSDK {
      * @param config CommentWidgetConfig object containing credentials and other settings
      */
     public FastCommentsFeedSDK(CommentWidgetConfig config) {
-        this.api = new PublicApi();
+        this(config, FastCommentsSDK.getAPIBasePath(config));
+    }
+
+    FastCommentsFeedSDK(CommentWidgetConfig config, String apiBasePath) {
+        this.api = FastCommentsTransport.createApi(apiBasePath);
         this.mainHandler = new Handler(Looper.getMainLooper());
         this.config = config;
-        this.api.getApiClient().setBasePath(FastCommentsSDK.getAPIBasePath(config));
-        this.api.getApiClient().setLenientOnJson(true);
         this.broadcastIdsSent = new HashSet<>(0);
         this.liveEventSubscriber = new com.fastcomments.pubsub.LiveEventSubscriber();
     }
@@ -301,7 +327,8 @@ public class FastCommentsFeedSDK {
     }
 
     /**
-     * A class to hold feed pagination and state information
+     * A class to hold feed pagination and state information.
+     * Still Serializable for existing callers; {@link FeedStateSnapshot} is a faster, smaller format.
      */
     public static class FeedState implements Serializable {
         private static final long serialVersionUID = 1L;
@@ -441,8 +468,20 @@ public class FastCommentsFeedSDK {
      * @param callback Callback to receive the response
      */
     public void load(FCCallback<PublicFeedPostsResponse> callback) {
+        load(callback, null);
+    }
+
+    /**
+     * Same as {@link #load(FCCallback)}, but if the feed cache is enabled (see {@link #enableFeedCache(Context)}) the
+     * cached start of the feed is restored and shown right away, then revalidated by the network request.
+     *
+     * @param callback     Called once the network response has been applied
+     * @param onCachedFeed Called on the main thread if cached posts were restored first. getFeedPosts() has them. May be null.
+     */
+    public void load(FCCallback<PublicFeedPostsResponse> callback, Runnable onCachedFeed) {
         // Reset pagination for initial load
         lastPostId = null;  // Reset the cursor for pagination
+        singleFlight.clear();
 
         // Reset any existing error message
         blockingErrorMessage = null;
@@ -450,7 +489,111 @@ public class FastCommentsFeedSDK {
         // Reset new posts count
         newPostsCount = 0;
 
-        loadFeedPosts(callback);
+        // the same tags are sent, looked up in the cache, and saved with the response
+        final List<String> tags = tagSupplier != null ? tagSupplier.getTags(currentUser) : null;
+        final AtomicBoolean networkResponded = new AtomicBoolean(false);
+        if (feedCache != null && onCachedFeed != null) {
+            showCachedFeed(tags, currentUser, config.getSSOToken(), networkResponded, onCachedFeed);
+        }
+
+        loadFeedPosts(tags, new FCCallback<PublicFeedPostsResponse>() {
+            @Override
+            public boolean onFailure(APIError error) {
+                networkResponded.set(true);
+                callback.onFailure(error);
+                return CONSUME;
+            }
+
+            @Override
+            public boolean onSuccess(PublicFeedPostsResponse response) {
+                networkResponded.set(true);
+                callback.onSuccess(response);
+                return CONSUME;
+            }
+        });
+    }
+
+    /**
+     * Keep the start of the feed on disk, so the next load() can show it before the network responds. Off unless this
+     * is called. It's kept per signed in user, since it includes their reactions. The user is their id, so the feed is
+     * still found after the SSO token is renewed, see {@link UserKey#lastKnown}.
+     * Cached feeds are considered for up to a day, after which they're not shown at all.
+     *
+     * @param context Any context, only used to find the app's cache directory
+     */
+    public void enableFeedCache(Context context) {
+        if (feedCache == null) {
+            feedCache = new FeedCache(DiskCache.create(context.getApplicationContext(), "feed", FEED_CACHE_MAX_BYTES, FEED_CACHE_MAX_AGE_MS));
+        }
+    }
+
+    String feedCacheKey(List<String> tags, String userKey) {
+        return config.tenantId + "|" + (tags != null ? String.join(",", tags) : "") + "|" + userKey;
+    }
+
+    private void showCachedFeed(List<String> tags, UserSessionInfo user, String sso, AtomicBoolean networkResponded,
+                                Runnable onCachedFeed) {
+        final FeedCache cache = feedCache;
+        final String tenantId = config.tenantId;
+        FastCommentsExecutors.computation().execute(() -> {
+            if (networkResponded.get()) {
+                return;
+            }
+            final String userKey = UserKey.lastKnown(cache.diskCache(), tenantId, user, sso);
+            final FeedCache.Snapshot snapshot = cache.read(feedCacheKey(tags, userKey));
+            if (snapshot == null || snapshot.feedPosts.isEmpty()) {
+                return;
+            }
+            mainHandler.post(() -> {
+                // If the network got here first, its posts are newer than ours
+                if (networkResponded.get()) {
+                    return;
+                }
+                feedPosts.clear();
+                postsById.clear();
+                feedPosts.addAll(snapshot.feedPosts);
+                for (FeedPost post : snapshot.feedPosts) {
+                    if (post.getId() != null) {
+                        postsById.put(post.getId(), post);
+                    }
+                }
+                likeCounts.clear();
+                likeCounts.putAll(snapshot.likeCounts);
+                myReacts.clear();
+                myReacts.putAll(snapshot.myReacts);
+                lastPostId = snapshot.lastPostId;
+                hasMore = snapshot.hasMore;
+                onCachedFeed.run();
+            });
+        });
+    }
+
+    /**
+     * Write the current start of the feed to the cache. Called on the main thread, the copy is taken here and the
+     * write happens in the background.
+     *
+     * @param tags The tags the feed was fetched with
+     * @param user Who it was fetched as
+     */
+    void saveFeedToCache(List<String> tags, UserSessionInfo user) {
+        final FeedCache cache = feedCache;
+        if (cache == null) {
+            return;
+        }
+        final FeedCache.Snapshot snapshot = new FeedCache.Snapshot();
+        // all of them, FeedCache trims to its limit and moves lastPostId back to match
+        snapshot.feedPosts = new ArrayList<>(feedPosts);
+        snapshot.likeCounts = new HashMap<>(likeCounts);
+        snapshot.myReacts = new HashMap<>(myReacts);
+        snapshot.lastPostId = lastPostId;
+        snapshot.hasMore = hasMore;
+        final String userKey = UserKey.forCache(user, config.getSSOToken());
+        final String cacheKey = feedCacheKey(tags, userKey);
+        final String tenantId = config.tenantId;
+        FastCommentsExecutors.computation().execute(() -> {
+            UserKey.remember(cache.diskCache(), tenantId, userKey);
+            cache.write(cacheKey, snapshot);
+        });
     }
 
     /**
@@ -459,13 +602,17 @@ public class FastCommentsFeedSDK {
      * @param callback Callback to receive the response
      */
     private void loadFeedPosts(FCCallback<PublicFeedPostsResponse> callback) {
+        // Get tags from TagSupplier if available
+        loadFeedPosts(tagSupplier != null ? tagSupplier.getTags(currentUser) : null, callback);
+    }
+
+    /**
+     * @param tags The tags to filter by, also used to key the feed cache
+     */
+    private void loadFeedPosts(List<String> tags, FCCallback<PublicFeedPostsResponse> callback) {
+        // Decided now, since the cursor can change while the request is in flight (a cached feed being restored, etc)
+        final boolean initialLoad = lastPostId == null;
         try {
-            // Get tags from TagSupplier if available
-            List<String> tags = null;
-            if (tagSupplier != null) {
-                tags = tagSupplier.getTags(currentUser);
-            }
-            
             api.getFeedPostsPublic(config.tenantId)
                     .afterId(lastPostId)
                     .limit(pageSize)
@@ -548,7 +695,7 @@ public class FastCommentsFeedSDK {
                                     // Process the myReacts from the response if available
                                     if (publicResponse.getMyReacts() != null) {
                                         // Only clear reactions if this is an initial load
-                                        if (lastPostId == null) {
+                                        if (initialLoad) {
                                             myReacts.clear();
                                         }
                                         // Add all the myReacts for the posts
@@ -557,7 +704,7 @@ public class FastCommentsFeedSDK {
 
                                     // Only clear the list if this is an initial load (no lastPostId)
                                     // This ensures we don't clear when paginating or loading more
-                                    if (lastPostId == null) {
+                                    if (initialLoad) {
                                         feedPosts.clear();
                                         postsById.clear();
                                         likeCounts.clear();
@@ -591,6 +738,10 @@ public class FastCommentsFeedSDK {
                                     // If we got posts back and size equals page size, assume more posts are available
                                     hasMore = !posts.isEmpty() && posts.size() >= pageSize;
 
+                                    if (initialLoad || feedPosts.size() <= FeedCache.MAX_POSTS) {
+                                        saveFeedToCache(tags, currentUser);
+                                    }
+
                                     callback.onSuccess(publicResponse);
                                 });
                             }
@@ -826,6 +977,7 @@ public class FastCommentsFeedSDK {
         if (broadcastIdsSent != null) {
             broadcastIdsSent.clear();
         }
+        singleFlight.clear();
     }
 
     /**
@@ -878,149 +1030,56 @@ public class FastCommentsFeedSDK {
      *
      * @param context  Android context needed for file operations
      * @param imageUri URI of the image to upload
-     * @param callback Callback to receive the uploaded media item
+     * @param callback Callback to receive the uploaded media item. onUploadProgress is called as it's sent.
      */
     public void uploadImage(Context context, Uri imageUri, FCCallback<FeedPostMediaItem> callback) {
-        try {
-            if (imageUri == null) {
-                APIError error = new APIError();
-                error.setReason("Invalid image URI");
-                callback.onFailure(error);
-                return;
-            }
-
-            if (context == null) {
-                APIError error = new APIError();
-                error.setReason("Context must not be null");
-                callback.onFailure(error);
-                return;
-            }
-
-            // Create a temporary file from the URI
-            final File imageFile;
-            try {
-                // Get filename from URI
-                String fileName = getFileNameFromUri(context, imageUri);
-                if (fileName == null) {
-                    fileName = "image_" + System.currentTimeMillis();
-                }
-
-                // Get extension
-                String extension = getFileExtension(fileName);
-                if (extension == null || extension.isEmpty()) {
-                    extension = "jpg"; // Default extension
-                }
-
-                // Create temp file
-                File tempFile = File.createTempFile("upload_", "." + extension, context.getCacheDir());
-                imageFile = tempFile;
-
-                // Copy the image content from URI to the file
-                copyUriToFile(context, imageUri, imageFile);
-            } catch (IOException e) {
-                APIError error = new APIError();
-                error.setReason("Failed to prepare image for upload: " + e.getMessage());
-                callback.onFailure(error);
-                return;
-            }
-
-            if (!imageFile.exists()) {
-                APIError error = new APIError();
-                error.setReason("Failed to create image file for upload");
-                callback.onFailure(error);
-                return;
-            }
-
-            try {
-                api.uploadImage(config.tenantId, imageFile)
-                        .urlId("FEEDS")
-                        .sizePreset(SizePreset.CROSS_PLATFORM)
-                        .executeAsync(new ApiCallback<UploadImageResponse>() {
-                            @Override
-                            public void onFailure(ApiException e, int statusCode, Map<String, List<String>> responseHeaders) {
-                                // Clean up the temp file
-                                imageFile.delete();
-
-                                APIError error = CallbackWrapper.createErrorFromException(e);
-                                callback.onFailure(error);
-                            }
-
-                            @Override
-                            public void onSuccess(UploadImageResponse result, int statusCode, Map<String, List<String>> responseHeaders) {
-                                // Clean up the temp file
-                                imageFile.delete();
-
-                                mainHandler.post(() -> {
-                                    if (result == null) {
-                                        APIError error = new APIError();
-                                        error.setReason("Empty response from server");
-                                        callback.onFailure(error);
-                                        return;
-                                    }
-
-                                    try {
-                                        FeedPostMediaItem mediaItem = new FeedPostMediaItem();
-                                        List<FeedPostMediaItemAsset> assets = new ArrayList<>();
-                                        if (result.getMedia() != null) {
-                                            for (MediaAsset media : result.getMedia()) {
-                                                assets.add(
-                                                        new FeedPostMediaItemAsset()
-                                                                .h(media.getH())
-                                                                .w(media.getW())
-                                                                .src(media.getSrc())
-                                                );
-                                            }
-                                        } else if (result.getUrl() != null) {
-                                            assets.add(
-                                                    new FeedPostMediaItemAsset()
-                                                            .h(1000)
-                                                            .w(1000)
-                                                            .src(result.getUrl())
-                                            );
-                                        }
-
-                                        mediaItem.setSizes(assets);
-
-                                        callback.onSuccess(mediaItem);
-                                    } catch (Exception e) {
-                                        APIError error = new APIError();
-                                        error.setReason("Failed to parse upload response: " + e.getMessage());
-                                        callback.onFailure(error);
-                                    }
-                                });
-                            }
-
-                            @Override
-                            public void onUploadProgress(long bytesWritten, long contentLength, boolean done) {
-                                // Could notify about upload progress if needed
-                            }
-
-                            @Override
-                            public void onDownloadProgress(long bytesRead, long contentLength, boolean done) {
-                                // Not needed for upload
-                            }
-                        });
-            } catch (ApiException e) {
-                // Clean up the temp file
-                imageFile.delete();
+        if (imageUri == null) {
+            APIError error = new APIError();
+            error.setReason("Invalid image URI");
+            callback.onFailure(error);
+            return;
+        }
 
-                CallbackWrapper.handleAPIException(mainHandler, callback, e);
-            }
-        } catch (Exception e) {
+        if (context == null) {
             APIError error = new APIError();
-            error.setReason("Failed to upload image: " + e.getMessage());
+            error.setReason("Context must not be null");
             callback.onFailure(error);
+            return;
         }
+
+        uploadPipeline.upload(context, Collections.singletonList(imageUri),
+                (index, bytesWritten, contentLength) -> callback.onUploadProgress(bytesWritten, contentLength, bytesWritten >= contentLength),
+                new FCCallback<List<FeedPostMediaItem>>() {
+                    @Override
+                    public boolean onFailure(APIError error) {
+                        return callback.onFailure(error);
+                    }
+
+                    @Override
+                    public boolean onSuccess(List<FeedPostMediaItem> items) {
+                        return callback.onSuccess(items.get(0));
+                    }
+                });
     }
 
     /**
-     * Uploads multiple images with CrossPlatform preset
+     * Uploads multiple images with CrossPlatform preset, a few at a time. See {@link ImageUploadPipeline}.
      *
      * @param context   Android context needed for file operations
      * @param imageUris List of image URIs to upload
-     * @param callback  Callback to receive the uploaded media items
+     * @param callback  Callback to receive the uploaded media items, in the same order as imageUris
      */
     public void uploadImages(Context context, List<Uri> imageUris, FCCallback<List<FeedPostMediaItem>> callback) {
+        uploadImages(context, imageUris, null, callback);
+    }
+
+    /**
+     * Same as {@link #uploadImages(Context, List, FCCallback)}, reporting how far along each image is.
+     *
+     * @param progressListener Called on the main thread with the index of the image in imageUris. May be null.
+     */
+    public void uploadImages(Context context, List<Uri> imageUris, ImageUploadPipeline.ProgressListener progressListener,
+                             FCCallback<List<FeedPostMediaItem>> callback) {
         if (imageUris == null || imageUris.isEmpty()) {
             APIError error = new APIError();
             error.setReason("No images to upload");
@@ -1028,93 +1087,195 @@ public class FastCommentsFeedSDK {
             return;
         }
 
-        final List<FeedPostMediaItem> uploadedItems = new ArrayList<>();
-        final AtomicReference<APIError> uploadError = new AtomicReference<>();
-        int[] countRemaining = new int[]{imageUris.size()};
-
-        for (Uri uri : imageUris) {
-            uploadImage(context, uri, new FCCallback<FeedPostMediaItem>() {
-                @Override
-                public boolean onFailure(APIError error) {
-                    uploadError.set(error);
-                    countRemaining[0]--;
-                    if (countRemaining[0] == 0) {
-                        mainHandler.post(() -> callback.onFailure(error));
-                    }
-                    return CONSUME;
-                }
+        uploadPipeline.upload(context, imageUris, progressListener, callback);
+    }
 
-                @Override
-                public boolean onSuccess(FeedPostMediaItem mediaItem) {
-                    synchronized (uploadedItems) {
-                        uploadedItems.add(mediaItem);
-                    }
-                    countRemaining[0]--;
-                    if (countRemaining[0] == 0) {
-                        mainHandler.post(() -> callback.onSuccess(uploadedItems));
-                    }
-                    return CONSUME;
-                }
-            });
+    /**
+     * The queue behind {@link #createPostWithUploads}, created on first use. Tune its retries and size limits here.
+     */
+    public UploadQueue getUploadQueue(Context context) {
+        if (uploadQueue == null) {
+            uploadQueue = new UploadQueue(context, this::uploadFile);
+            uploadQueue.sweep();
         }
+        return uploadQueue;
     }
 
     /**
-     * Get filename from URI
+     * Creates a post once its images are uploaded, through the {@link UploadQueue}. Each image is retried on its own,
+     * and the post is created as soon as every image has its media.
+     * <p>
+     * If posting fails, pass the returned id back as previousBatchId when the user tries again. Images that were
+     * uploaded already are then not sent again, as long as imageUris hasn't changed. If it has, the earlier batch is
+     * cancelled and everything is uploaded again.
+     *
+     * @param params          The post to create. Uploaded media goes before any media it already has.
+     * @param previousBatchId The id returned by an earlier call for the same post, or null
+     * @param callback        Called on the main thread once the post is created, or the uploads or the post failed
+     * @return The id of the upload batch, for retrying or {@link UploadQueue#cancel}
      */
-    private String getFileNameFromUri(Context context, Uri uri) {
-        String result = null;
-        if (uri.getScheme().equals("content")) {
-            try (Cursor cursor = context.getContentResolver().query(uri, null, null, null, null)) {
-                if (cursor != null && cursor.moveToFirst()) {
-                    int nameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
-                    if (nameIndex != -1) {
-                        result = cursor.getString(nameIndex);
-                    }
-                }
-            } catch (Exception e) {
-                Log.e("FastCommentsFeedSDK", "Failed to get filename from URI", e);
-            }
-        }
-        if (result == null) {
-            result = uri.getPath();
-            int cut = result.lastIndexOf('/');
-            if (cut != -1) {
-                result = result.substring(cut + 1);
-            }
-        }
-        return result;
+    public String createPostWithUploads(Context context, CreateFeedPostParams params, List<Uri> imageUris,
+                                        String previousBatchId, FCCallback<FeedPost> callback) {
+        final UploadQueue queue = getUploadQueue(context);
+        final List<Uri> uris = new ArrayList<>(imageUris);
+        final UploadQueue.Listener listener = new PostUploadListener(uris, callback);
+        final String payload = params.toJson();
+        final UploadedMedia uploaded = previousBatchId != null ? uploadedMediaByBatchId.get(previousBatchId) : null;
+        if (uploaded != null && uploaded.uris.equals(uris)) {
+            listener.onComplete(previousBatchId, payload, uploaded.media);
+            return previousBatchId;
+        }
+        uploadedMediaByBatchId.remove(previousBatchId);
+        if (queue.retry(previousBatchId, payload, uris, listener)) {
+            return previousBatchId;
+        }
+        queue.cancel(previousBatchId);
+        return queue.enqueue(uris, payload, uploadOwner(), listener);
     }
 
     /**
-     * Get file extension from filename
+     * Finish posts whose images were still uploading when the app was last closed. Call once the user is known, for
+     * example after the first load(). {@link FastCommentsFeedView} does. Only the signed in user's posts are resumed,
+     * any others are left until that user signs in again, or they expire.
+     *
+     * @param callback Called for each post created, or that could not be
      */
-    private String getFileExtension(String fileName) {
-        if (fileName == null) {
-            return null;
-        }
-        int lastDot = fileName.lastIndexOf('.');
-        if (lastDot >= 0) {
-            return fileName.substring(lastDot + 1).toLowerCase();
+    public void resumePendingPosts(Context context, FCCallback<FeedPost> callback) {
+        getUploadQueue(context).resume(uploadOwner(), new PostUploadListener(null, callback));
+    }
+
+    /**
+     * Who queued uploads are for, so a post is never resumed as someone else. The user id once a load has told us who
+     * that is, since an SSO token can change between sessions for the same user.
+     */
+    private String uploadOwner() {
+        if (currentUser != null && currentUser.getId() != null) {
+            return "user:" + currentUser.getId();
         }
-        return null;
+        return UserKey.of(config.getSSOToken());
     }
 
     /**
-     * Copy content from URI to file
+     * Creates the post held in the payload once its batch of images is uploaded.
      */
-    private void copyUriToFile(Context context, Uri uri, File destFile) throws IOException {
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             OutputStream outputStream = new FileOutputStream(destFile)) {
-            if (inputStream == null) {
-                throw new IOException("Failed to open input stream from URI");
+    private class PostUploadListener implements UploadQueue.Listener {
+        // null for batches resumed from disk, whose uploads aren't kept for retrying
+        private final List<Uri> uris;
+        private final FCCallback<FeedPost> callback;
+
+        PostUploadListener(List<Uri> uris, FCCallback<FeedPost> callback) {
+            this.uris = uris;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onComplete(String batchId, String payload, List<FeedPostMediaItem> media) {
+            final CreateFeedPostParams params;
+            try {
+                params = CreateFeedPostParams.fromJson(payload);
+            } catch (Exception e) {
+                APIError error = new APIError();
+                error.setReason("Failed to read pending post: " + e.getMessage());
+                callback.onFailure(error);
+                return;
             }
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
+            final List<FeedPostMediaItem> allMedia = new ArrayList<>(media);
+            if (params.getMedia() != null) {
+                allMedia.addAll(params.getMedia());
             }
-            outputStream.flush();
+            params.setMedia(allMedia);
+            createPost(params, new FCCallback<FeedPost>() {
+                @Override
+                public boolean onFailure(APIError error) {
+                    if (uris != null) {
+                        mainHandler.post(() -> uploadedMediaByBatchId.put(batchId, new UploadedMedia(uris, media)));
+                    }
+                    return callback.onFailure(error);
+                }
+
+                @Override
+                public boolean onSuccess(FeedPost post) {
+                    uploadedMediaByBatchId.remove(batchId);
+                    return callback.onSuccess(post);
+                }
+            });
+        }
+
+        @Override
+        public void onFailed(String batchId, String payload, APIError error) {
+            callback.onFailure(error);
+        }
+    }
+
+    /**
+     * Send one prepared image file. Calls back on the network thread, except for onSuccess which is on the main thread.
+     */
+    private void uploadFile(File imageFile, FCCallback<FeedPostMediaItem> callback) {
+        try {
+            api.uploadImage(config.tenantId, imageFile)
+                    .urlId("FEEDS")
+                    .sizePreset(SizePreset.CROSS_PLATFORM)
+                    .executeAsync(new ApiCallback<UploadImageResponse>() {
+                        @Override
+                        public void onFailure(ApiException e, int statusCode, Map<String, List<String>> responseHeaders) {
+                            APIError error = CallbackWrapper.createErrorFromException(e);
+                            callback.onFailure(error);
+                        }
+
+                        @Override
+                        public void onSuccess(UploadImageResponse result, int statusCode, Map<String, List<String>> responseHeaders) {
+                            mainHandler.post(() -> {
+                                if (result == null) {
+                                    APIError error = new APIError();
+                                    error.setReason("Empty response from server");
+                                    callback.onFailure(error);
+                                    return;
+                                }
+
+                                try {
+                                    FeedPostMediaItem mediaItem = new FeedPostMediaItem();
+                                    List<FeedPostMediaItemAsset> assets = new ArrayList<>();
+                                    if (result.getMedia() != null) {
+                                        for (MediaAsset media : result.getMedia()) {
+                                            assets.add(
+                                                    new FeedPostMediaItemAsset()
+                                                            .h(media.getH())
+                                                            .w(media.getW())
+                                                            .src(media.getSrc())
+                                            );
+                                        }
+                                    } else if (result.getUrl() != null) {
+                                        assets.add(
+                                                new FeedPostMediaItemAsset()
+                                                        .h(1000)
+                                                        .w(1000)
+                                                        .src(result.getUrl())
+                                        );
+                                    }
+
+                                    mediaItem.setSizes(assets);
+
+                                    callback.onSuccess(mediaItem);
+                                } catch (Exception e) {
+                                    APIError error = new APIError();
+                                    error.setReason("Failed to parse upload response: " + e.getMessage());
+                                    callback.onFailure(error);
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onUploadProgress(long bytesWritten, long contentLength, boolean done) {
+                            callback.onUploadProgress(bytesWritten, contentLength, done);
+                        }
+
+                        @Override
+                        public void onDownloadProgress(long bytesRead, long contentLength, boolean done) {
+                            // Not needed for upload
+                        }
+                    });
+        } catch (ApiException e) {
+            CallbackWrapper.handleAPIException(mainHandler, callback, e);
         }
     }
 
@@ -1311,6 +1472,12 @@ public class FastCommentsFeedSDK {
             return;
         }
 
+        singleFlight.execute("postStats:" + String.join(",", postIds), postStatsCacheTtlMs,
+                shared -> requestFeedPostsStats(postIds, shared),
+                callback);
+    }
+
+    private void requestFeedPostsStats(List<String> postIds, FCCallback<GetFeedPostsStats200Response> callback) {
         try {
             api.getFeedPostsStats(config.tenantId, postIds)
                     .sso(config.getSSOToken())
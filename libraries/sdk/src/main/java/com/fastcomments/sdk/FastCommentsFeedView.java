@@ -3,6 +3,7 @@ package com.fastcomments.sdk;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.AttributeSet;
@@ -40,7 +41,9 @@ import java.util.Map;
 public class FastCommentsFeedView extends FrameLayout {
     
     /**
-     * Class to store view state information
+     * Class to store view state information.
+     * For onSaveInstanceState, prefer {@link #saveInstanceState(Bundle)}, which avoids Java serialization and keeps
+     * large feeds out of the Bundle.
      */
     public static class ViewState implements Serializable {
         private static final long serialVersionUID = 1L;
@@ -412,6 +415,32 @@ public class FastCommentsFeedView extends FrameLayout {
         }
     }
     
+    /**
+     * Save the view state into a Bundle, for use from onSaveInstanceState.
+     * Large feeds are written to the cache directory and only a handle is kept in the Bundle.
+     * @param outState The Bundle to save into
+     */
+    public void saveInstanceState(Bundle outState) {
+        outState.putInt("fastcomments.feed.scrollPosition", saveScrollPosition());
+        if (sdk != null) {
+            FeedStateSnapshot.save(getContext(), outState, "fastcomments.feed.state", sdk.savePaginationState());
+        }
+    }
+
+    /**
+     * Restore the view state saved by {@link #saveInstanceState(Bundle)}
+     * @param savedInstanceState The Bundle to restore from
+     */
+    public void restoreInstanceState(Bundle savedInstanceState) {
+        if (savedInstanceState == null) {
+            return;
+        }
+        ViewState state = new ViewState();
+        state.setScrollPosition(savedInstanceState.getInt("fastcomments.feed.scrollPosition", 0));
+        state.setFeedState(FeedStateSnapshot.restore(getContext(), savedInstanceState, "fastcomments.feed.state"));
+        restoreViewState(state);
+    }
+
     /**
      * Save just the scroll position (use saveViewState for complete state)
      * @return The first visible item position
@@ -543,6 +572,42 @@ public class FastCommentsFeedView extends FrameLayout {
                     
                     // Start polling for stats updates
                     startPolling();
+
+                    // Now that we know who's signed in, finish their posts left uploading last time
+                    resumePendingPosts();
+                });
+                return CONSUME;
+            }
+        }, () -> {
+            // Restored from the feed cache, the network response will replace it when it arrives
+            showLoading(false);
+            List<FeedPost> posts = sdk.getFeedPosts();
+            showEmptyState(false);
+            adapter.updatePosts(posts);
+        });
+    }
+
+    /**
+     * Only does anything the first time, see {@link FastCommentsFeedSDK#resumePendingPosts}.
+     */
+    private void resumePendingPosts() {
+        sdk.resumePendingPosts(getContext(), new FCCallback<FeedPost>() {
+            @Override
+            public boolean onFailure(APIError error) {
+                Log.w("FastCommentsFeedView", "Failed to finish a pending post: "
+                        + (error != null ? error.getReason() : "unknown error"));
+                return CONSUME;
+            }
+
+            @Override
+            public boolean onSuccess(FeedPost post) {
+                handler.post(() -> {
+                    if (sdk == null) {
+                        return;
+                    }
+                    // createPost already put it at the top of the feed
+                    showEmptyState(false);
+                    adapter.updatePosts(sdk.getFeedPosts());
                 });
                 return CONSUME;
             }
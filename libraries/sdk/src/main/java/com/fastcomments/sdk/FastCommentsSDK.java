@@ -16,6 +16,7 @@ import com.fastcomments.pubsub.LiveEventSubscriber;
 import com.fastcomments.pubsub.SubscribeToChangesResult;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -24,6 +25,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
@@ -37,6 +39,9 @@ public class FastCommentsSDK {
     private final PublicApi api;
     private final Handler mainHandler;
     public final CommentsTree commentsTree;
+    public final CommentHtmlCache htmlCache;
+    public final PresenceFetcher presenceFetcher;
+    public final ReplyPrefetcher replyPrefetcher;
     public int commentCountOnServer;
     public int newRootCommentCount;
     public boolean isSiteAdmin;
@@ -45,9 +50,41 @@ public class FastCommentsSDK {
     public boolean commentsVisible;
     public boolean isDemo;
     public boolean hasMore;
+    // waiting on a fetch of comments the tree evicted, null when there's none in flight
+    private List<FCCallback<GetCommentsResponseWithPresencePublicComment>> restoreCallbacks;
+    // fetches of evicted threads in a row, per side, that didn't find the nearest one
+    private int restoreMissesBefore;
+    private int restoreMissesAfter;
+    // after this many misses the missing threads are given up on, they were probably deleted
+    private static final int RESTORE_MAX_MISSES = 3;
     public int currentPage;
     public int currentSkip;
     public int pageSize = 30;
+    /**
+     * When true (the default) load() builds the comment tree on a background thread and dispatches a DiffUtil
+     * result to the adapter before calling back, on the main thread. The views don't need to call notifyDataSetChanged().
+     * When false the tree is built synchronously on the network thread, the old behavior.
+     */
+    public boolean asyncTreeBuild = true;
+    /**
+     * Page size and parallelism for {@link #loadAll}.
+     */
+    public int loadAllPageSize = 100;
+    public int loadAllMaxConcurrentRequests = 3;
+    /**
+     * Shares identical reply, mention search and presence requests made at the same time. See {@link SingleFlight}.
+     */
+    public final SingleFlight singleFlight = new SingleFlight();
+    /**
+     * How long mention search results and prefetched reply pages are reused for. 0 only shares requests already in
+     * flight.
+     */
+    public long searchUsersCacheTtlMs = 30000;
+    /**
+     * Users we know about for mention suggestions, shared by every input using this SDK. See {@link MentionSearch}.
+     */
+    public final MentionIndex mentionIndex = new MentionIndex();
+    public long repliesCacheTtlMs = 0;
     public Set<String> broadcastIdsSent;
     public String blockingErrorMessage;
 
@@ -61,6 +98,13 @@ public class FastCommentsSDK {
     private Runnable presencePollingRunnable;
     private PresenceUpdateListener presenceUpdateListener;
     private ConnectionStatusListener connectionStatusListener;
+    private final LiveEventBatcher liveEventBatcher;
+    private DiskCache pageCache;
+    private CommentPageStream loadAllStream;
+    private final CommentPagePrefetcher pagePrefetcher;
+    private final List<FCCallback<GetCommentsResponseWithPresencePublicComment>> loadMoreCallbacks = new ArrayList<>(1);
+    private static final long PAGE_CACHE_MAX_BYTES = 4 * 1024 * 1024;
+    private static final long PAGE_CACHE_MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
 
     public interface PresenceUpdateListener {
         void onSubscriberCountChanged(int subscriberCount);
@@ -75,19 +119,19 @@ public class FastCommentsSDK {
     }
 
     public FastCommentsSDK(@NonNull CommentWidgetConfig config, boolean testMode) {
-        this.api = new PublicApi();
+        this(config, testMode, getAPIBasePath(config));
+    }
+
+    FastCommentsSDK(@NonNull CommentWidgetConfig config, boolean testMode, String apiBasePath) {
+        // borrows the process-wide connection pool and dispatcher
+        this.api = FastCommentsTransport.createApi(apiBasePath);
         this.mainHandler = new Handler(Looper.getMainLooper());
         this.broadcastIdsSent = new HashSet<>(0);
         this.config = config;
-        this.api.getApiClient().setLenientOnJson(true);
-        // Force HTTP/1.1 on the API client to prevent H2 interference with WebSocket
-        this.api.getApiClient().setHttpClient(
-                this.api.getApiClient().getHttpClient().newBuilder()
-                        .protocols(java.util.Collections.singletonList(okhttp3.Protocol.HTTP_1_1))
-                        .build()
-        );
-        this.api.getApiClient().setBasePath(getAPIBasePath(config));
         this.commentsTree = new CommentsTree();
+        this.htmlCache = new CommentHtmlCache();
+        this.liveEventBatcher = new LiveEventBatcher(mainHandler, this::applyLiveEventBatch);
+        this.pagePrefetcher = new CommentPagePrefetcher((skip, limit, callback) -> requestPage(skip, limit, 0, callback));
         this.currentSkip = 0;
         this.currentPage = 0;
         this.hasMore = false;
@@ -97,6 +141,8 @@ public class FastCommentsSDK {
         Log.d("FastCommentsSDK", "Constructor: testMode=" + testMode);
 
         // Set up the presence status listener on the comments tree
+        this.presenceFetcher = new PresenceFetcher(commentsTree, this::requestPresence);
+        this.replyPrefetcher = new ReplyPrefetcher(commentsTree, this::requestReplies);
         this.commentsTree.setPresenceStatusListener(this::fetchPresenceForUsers);
     }
 
@@ -148,16 +194,43 @@ public class FastCommentsSDK {
      * setup any other required state.
      */
     public void load(FCCallback<GetCommentsResponseWithPresencePublicComment> callback) {
+        load(callback, null);
+    }
+
+    /**
+     * Same as {@link #load(FCCallback)}, but if the page cache is enabled (see {@link #enablePageCache(Context)}) and
+     * has a copy of the first page, it's rendered right away while the network request is in flight. The network
+     * response then replaces it, with only the differences dispatched to the adapter.
+     *
+     * @param callback     Called once the network response has been applied
+     * @param onCachedPage Called on the main thread if a cached page was rendered first. May be null.
+     */
+    public void load(FCCallback<GetCommentsResponseWithPresencePublicComment> callback,
+                     Consumer<GetCommentsResponseWithPresencePublicComment> onCachedPage) {
+        // A reload replaces whatever Load All or loadMore() was fetching
+        cancelLoadAll();
+        dropPendingPages();
+        singleFlight.clear();
+
         // Reset pagination for initial load
         currentSkip = 0;
         currentPage = 0;
+        restoreMissesBefore = 0;
+        restoreMissesAfter = 0;
 
         // Reset any existing error message
         blockingErrorMessage = null;
 
+        final int page = currentPage;
+        final AtomicBoolean networkResponded = new AtomicBoolean(false);
+        if (pageCache != null && onCachedPage != null) {
+            showCachedPage(page, currentUser, config.getSSOToken(), networkResponded, onCachedPage);
+        }
+
         getCommentsAndRelatedData(new FCCallback<GetCommentsResponseWithPresencePublicComment>() {
             @Override
             public boolean onFailure(APIError error) {
+                networkResponded.set(true);
                 // Set blockingErrorMessage from translatedError or reason
                 if (error.getTranslatedError() != null && !error.getTranslatedError().isEmpty()) {
                     blockingErrorMessage = error.getTranslatedError();
@@ -172,6 +245,7 @@ public class FastCommentsSDK {
 
             @Override
             public boolean onSuccess(GetCommentsResponseWithPresencePublicComment response) {
+                networkResponded.set(true);
                 // If the response has a custom config, merge it with our config
                 if (response.getCustomConfig() != null) {
                     config.mergeWith(response.getCustomConfig());
@@ -208,7 +282,9 @@ public class FastCommentsSDK {
 
                 presencePollState = response.getPresencePollState();
 
-                commentsTree.build(response.getComments());
+                // Start turning the HTML into spans now so the first bind doesn't have to
+                htmlCache.prefetch(response.getComments(), theme, FastCommentsExecutors.computation());
+                savePageToCache(page, currentUser, config.getSSOToken(), response);
 
                 // Subscribe to live events if we have all required parameters
                 // or if we need to reconnect due to userIdWS change
@@ -220,12 +296,93 @@ public class FastCommentsSDK {
                 // Start presence polling if backend requests it
                 startPresencePolling();
 
-                callback.onSuccess(response);
+                // this runs on OkHttp's thread, and the tree, with its record of live changes to replay, is main thread only
+                mainHandler.post(() -> {
+                    if (asyncTreeBuild) {
+                        commentsTree.buildAsync(response.getComments(), () -> callback.onSuccess(response));
+                    } else {
+                        commentsTree.build(response.getComments());
+                        callback.onSuccess(response);
+                    }
+                });
                 return CONSUME;
             }
         });
     }
 
+    /**
+     * Keep a copy of the first page of comments on disk, so the next load() can render it before the network responds.
+     * Off unless this is called. Pages are keyed by tenant, URL id, sort direction, page and the signed in user, since
+     * they include the user's votes and, for moderators, comments others can't see. The user is their id, so pages are
+     * still found after the SSO token is renewed, see {@link UserKey#lastKnown}. They expire after a week.
+     *
+     * @param context Any context, only used to find the app's cache directory
+     */
+    public void enablePageCache(Context context) {
+        if (pageCache == null) {
+            pageCache = DiskCache.create(context.getApplicationContext(), "pages", PAGE_CACHE_MAX_BYTES, PAGE_CACHE_MAX_AGE_MS);
+        }
+    }
+
+    String pageCacheKey(int page, String userKey) {
+        return config.tenantId + "|" + config.urlId + "|" + config.defaultSortDirection + "|" + page + "|" + userKey;
+    }
+
+    private void showCachedPage(int page, UserSessionInfo user, String sso, AtomicBoolean networkResponded,
+                                Consumer<GetCommentsResponseWithPresencePublicComment> onCachedPage) {
+        final DiskCache cache = pageCache;
+        final String tenantId = config.tenantId;
+        FastCommentsExecutors.computation().execute(() -> {
+            final String cacheKey = pageCacheKey(page, UserKey.lastKnown(cache, tenantId, user, sso));
+            final DiskCache.Entry entry = cache.get(cacheKey);
+            if (entry == null || networkResponded.get()) {
+                return;
+            }
+            final GetCommentsResponseWithPresencePublicComment cached;
+            try {
+                cached = GetCommentsResponseWithPresencePublicComment.fromJson(entry.value);
+            } catch (Exception e) {
+                Log.w("FastCommentsSDK", "Discarding unreadable cached page", e);
+                cache.remove(cacheKey);
+                return;
+            }
+            if (cached.getComments() == null || cached.getComments().isEmpty()) {
+                return;
+            }
+            htmlCache.prefetch(cached.getComments(), theme, FastCommentsExecutors.computation());
+            mainHandler.post(() -> {
+                if (networkResponded.get()) {
+                    return;
+                }
+                // If the network responds while this is building, its build is newer and this result is dropped.
+                commentsTree.buildAsync(cached.getComments(), () -> {
+                    if (!networkResponded.get()) {
+                        onCachedPage.accept(cached);
+                    }
+                });
+            });
+        });
+    }
+
+    void savePageToCache(int page, UserSessionInfo user, String sso,
+                         GetCommentsResponseWithPresencePublicComment response) {
+        final DiskCache cache = pageCache;
+        if (cache == null) {
+            return;
+        }
+        final String userKey = UserKey.forCache(user, sso);
+        final String cacheKey = pageCacheKey(page, userKey);
+        final String tenantId = config.tenantId;
+        FastCommentsExecutors.computation().execute(() -> {
+            try {
+                UserKey.remember(cache, tenantId, userKey);
+                cache.put(cacheKey, response.toJson());
+            } catch (Exception e) {
+                Log.w("FastCommentsSDK", "Failed to cache page", e);
+            }
+        });
+    }
+
     /**
      * Load comments asynchronously
      *
@@ -314,9 +471,37 @@ public class FastCommentsSDK {
             Integer maxTreeDepth,
             String parentId,
             final FCCallback<GetCommentsResponseWithPresencePublicComment> callback) {
+        getCommentsForParent(skip, limit, maxTreeDepth, parentId, true, callback);
+    }
 
-        SortDirections direction = config.defaultSortDirection;
+    /**
+     * @param addToTree false to only fetch the comments, for example when prefetching
+     */
+    private void getCommentsForParent(
+            Integer skip,
+            Integer limit,
+            Integer maxTreeDepth,
+            String parentId,
+            boolean addToTree,
+            final FCCallback<GetCommentsResponseWithPresencePublicComment> callback) {
 
+        final SortDirections direction = config.defaultSortDirection;
+        // Adding to the tree happens once per request, in the request itself. So addToTree is part of the key, and
+        // those responses are never cached, otherwise a cache hit would skip the add.
+        final String key = "replies:" + parentId + ":" + direction + ":" + skip + ":" + limit + ":" + maxTreeDepth + ":" + addToTree;
+        singleFlight.execute(key, addToTree ? 0 : repliesCacheTtlMs,
+                shared -> requestCommentsForParent(direction, skip, limit, maxTreeDepth, parentId, addToTree, shared),
+                callback);
+    }
+
+    private void requestCommentsForParent(
+            SortDirections direction,
+            Integer skip,
+            Integer limit,
+            Integer maxTreeDepth,
+            String parentId,
+            boolean addToTree,
+            final FCCallback<GetCommentsResponseWithPresencePublicComment> callback) {
         try {
             // Make the API call asynchronously
             api.getCommentsPublic(config.tenantId, config.urlId)
@@ -343,7 +528,9 @@ public class FastCommentsSDK {
                                 callback.onFailure((APIError) response.getActualInstance());
                             } else {
                                 final GetCommentsResponseWithPresencePublicComment commentsResponse = response.getGetCommentsResponseWithPresencePublicComment();
-                                commentsTree.addForParent(parentId, commentsResponse.getComments());
+                                if (addToTree) {
+                                    commentsTree.addForParent(parentId, commentsResponse.getComments());
+                                }
                                 callback.onSuccess(commentsResponse);
                             }
                         }
@@ -531,27 +718,39 @@ public class FastCommentsSDK {
     }
 
     /**
-     * Load more comments for pagination
+     * Load more comments for pagination.
+     * If the page was prefetched with {@link #prefetchNextPage()} it's appended right away, and if it is still being
+     * prefetched this waits for that request. Calls made while a page is already loading share its result.
      *
      * @param callback Callback to receive the response
      */
     public void loadMore(FCCallback<GetCommentsResponseWithPresencePublicComment> callback) {
-        // Increment skip value to get the next page
-        currentSkip += pageSize;
-        currentPage++;
-
-        getCommentsAndRelatedData(currentSkip, pageSize, 0, false, false, new FCCallback<GetCommentsResponseWithPresencePublicComment>() {
+        if (!commentsTree.getEvictedAfter().isEmpty()) {
+            // what comes next was loaded before and evicted, it goes back before any new page
+            restoreEvicted(false, callback);
+            return;
+        }
+        loadMoreCallbacks.add(callback);
+        if (loadMoreCallbacks.size() > 1) {
+            return;
+        }
+        final int skip = currentSkip + pageSize;
+        pagePrefetcher.take(skip, pageSize, new FCCallback<GetCommentsResponseWithPresencePublicComment>() {
             @Override
             public boolean onFailure(APIError error) {
-                // If there's a failure, reset the pagination values to the previous state
-                currentSkip -= pageSize;
-                currentPage--;
-                callback.onFailure(error);
+                final List<FCCallback<GetCommentsResponseWithPresencePublicComment>> callbacks = new ArrayList<>(loadMoreCallbacks);
+                loadMoreCallbacks.clear();
+                for (FCCallback<GetCommentsResponseWithPresencePublicComment> waiting : callbacks) {
+                    waiting.onFailure(error);
+                }
                 return CONSUME;
             }
 
             @Override
             public boolean onSuccess(GetCommentsResponseWithPresencePublicComment response) {
+                currentSkip = skip;
+                currentPage++;
+
                 // Update the total server count
                 commentCountOnServer = response.getCommentCount() != null ? response.getCommentCount() : commentCountOnServer;
 
@@ -559,63 +758,142 @@ public class FastCommentsSDK {
                 hasMore = response.getHasMore() != null ? response.getHasMore() : false;
 
                 // Append the new comments to the existing ones
-                mainHandler.post(() -> {
-                    commentsTree.appendComments(response.getComments());
-                    callback.onSuccess(response);
-                });
+                commentsTree.appendComments(response.getComments());
+                final List<FCCallback<GetCommentsResponseWithPresencePublicComment>> callbacks = new ArrayList<>(loadMoreCallbacks);
+                loadMoreCallbacks.clear();
+                for (FCCallback<GetCommentsResponseWithPresencePublicComment> waiting : callbacks) {
+                    waiting.onSuccess(response);
+                }
                 return CONSUME;
             }
         });
     }
 
     /**
-     * Load all remaining comments at once
+     * Start fetching the next page in the background, so a later {@link #loadMore} doesn't wait on the network.
+     * Does nothing if there are no more pages, or the page is already fetched or being fetched. Call on the main thread.
+     */
+    public void prefetchNextPage() {
+        if (!hasMore || !loadMoreCallbacks.isEmpty() || loadAllStream != null) {
+            return;
+        }
+        pagePrefetcher.prefetch(currentSkip + pageSize, pageSize);
+    }
+
+    /**
+     * Load all remaining comments, streaming them in page by page.
+     * Pages of {@link #loadAllPageSize} are fetched with up to {@link #loadAllMaxConcurrentRequests} in flight, and each
+     * is appended to the tree as soon as every page before it has been appended. The callback gets the last page.
      *
      * @param callback Callback to receive the response
      */
     public void loadAll(FCCallback<GetCommentsResponseWithPresencePublicComment> callback) {
-        // Temporarily set the pageSize to a large number to get all comments
-        int originalPageSize = pageSize;
-        pageSize = 1000; // A large enough value to get all comments
+        cancelLoadAll();
+        dropPendingPages();
+        if (!commentsTree.getEvictedAfter().isEmpty()) {
+            // what comes next was loaded before and evicted, it goes back before any new page, same as loadMore()
+            restoreEvicted(false, new FCCallback<GetCommentsResponseWithPresencePublicComment>() {
+                @Override
+                public boolean onFailure(APIError error) {
+                    return callback.onFailure(error);
+                }
 
-        // Reset skip to ensure we get all comments from the beginning
-        currentSkip = 0;
+                @Override
+                public boolean onSuccess(GetCommentsResponseWithPresencePublicComment response) {
+                    loadAll(callback);
+                    return CONSUME;
+                }
+            });
+            return;
+        }
 
-        getCommentsAndRelatedData(new FCCallback<GetCommentsResponseWithPresencePublicComment>() {
+        // continue after what's already loaded
+        final int startSkip = commentsTree.totalSize() > 0 ? currentSkip + pageSize : 0;
+        final CommentPageStream stream = new CommentPageStream(
+                (skip, limit, pageCallback) -> requestPage(skip, limit, 1, pageCallback),
+                new CommentPageStream.Listener() {
+                    @Override
+                    public void onPage(GetCommentsResponseWithPresencePublicComment page, int skip) {
+                        if (page.getCommentCount() != null) {
+                            commentCountOnServer = page.getCommentCount();
+                        }
+                        commentsTree.appendComments(page.getComments());
+                    }
+
+                    @Override
+                    public void onComplete(GetCommentsResponseWithPresencePublicComment lastPage, int lastSkip) {
+                        loadAllStream = null;
+                        // We loaded all comments, so there are no more
+                        hasMore = false;
+                        currentSkip = lastSkip;
+                        currentPage = currentSkip / pageSize;
+                        callback.onSuccess(lastPage);
+                    }
+
+                    @Override
+                    public void onFailure(APIError error, int nextSkip) {
+                        loadAllStream = null;
+                        // what was appended stays, loadMore() picks up from the first missing page
+                        currentSkip = Math.max(nextSkip - pageSize, 0);
+                        currentPage = currentSkip / pageSize;
+                        callback.onFailure(error);
+                    }
+                },
+                loadAllPageSize,
+                loadAllMaxConcurrentRequests);
+        loadAllStream = stream;
+        mainHandler.post(() -> {
+            if (loadAllStream == stream) {
+                stream.start(startSkip);
+            }
+        });
+    }
+
+    /**
+     * Fetch a page for pagination, calling back on the main thread.
+     */
+    private void requestPage(int skip, int limit, int maxTreeDepth, FCCallback<GetCommentsResponseWithPresencePublicComment> callback) {
+        getCommentsAndRelatedData(skip, limit, maxTreeDepth, false, false, new FCCallback<GetCommentsResponseWithPresencePublicComment>() {
             @Override
             public boolean onFailure(APIError error) {
-                // Restore original page size
-                pageSize = originalPageSize;
-                callback.onFailure(error);
+                mainHandler.post(() -> callback.onFailure(error));
                 return CONSUME;
             }
 
             @Override
             public boolean onSuccess(GetCommentsResponseWithPresencePublicComment response) {
-                // Restore original page size
-                pageSize = originalPageSize;
-
-                // Update the total server count
-                commentCountOnServer = response.getCommentCount() != null ? response.getCommentCount() : 0;
-
-                // We loaded all comments, so there are no more
-                hasMore = false;
-
-                // Replace all comments with the new ones
-                commentsTree.build(response.getComments());
-                callback.onSuccess(response);
+                // still on the network thread, so start on the HTML before the page reaches the main thread
+                htmlCache.prefetch(response.getComments(), theme, FastCommentsExecutors.computation());
+                mainHandler.post(() -> callback.onSuccess(response));
                 return CONSUME;
             }
         });
     }
 
+    private void cancelLoadAll() {
+        if (loadAllStream != null) {
+            loadAllStream.cancel();
+            loadAllStream = null;
+        }
+    }
+
+    /**
+     * Forget prefetched or loading pages, since they were fetched for a list that's being replaced.
+     */
+    private void dropPendingPages() {
+        pagePrefetcher.clear();
+        loadMoreCallbacks.clear();
+        replyPrefetcher.clear();
+    }
+
     /**
-     * Check if we should show the "Load All" button based on total comment count
+     * Check if we should show the "Load All" button.
+     * Load All streams pages in, so unlike before this no longer depends on how many comments there are.
      *
-     * @return true if "Load All" should be shown (less than 1000 comments)
+     * @return true if "Load All" should be shown
      */
     public boolean shouldShowLoadAll() {
-        return commentCountOnServer < 1000;
+        return true;
     }
 
     /**
@@ -851,45 +1129,118 @@ public class FastCommentsSDK {
     }
 
     /**
-     * Fetch presence statuses for users in visible comments
+     * Fetch presence statuses for users in and around the visible comments
      */
     private void fetchUserPresenceStatuses() {
         if (isPresenceDisabled()) {
             return;
         }
-        // Extract user IDs from visible comments
-        Set<String> userIds = new HashSet<>();
-
-        for (RenderableNode node : commentsTree.visibleNodes) {
-            if (node instanceof RenderableComment) {
-                RenderableComment comment = (RenderableComment) node;
-                String userId = comment.getComment().getUserId();
-                String anonUserId = comment.getComment().getAnonUserId();
+        mainHandler.post(presenceFetcher::fetchVisibleWindow);
+    }
 
-                if (userId != null) {
-                    userIds.add(userId);
-                }
-                if (anonUserId != null) {
-                    userIds.add(anonUserId);
-                }
-            }
+    /**
+     * Tell the SDK which adapter positions are currently on screen, so presence is only fetched for users the
+     * reader can actually see (plus a margin), and replies are prefetched for the threads they're likely to open.
+     * Should be called on the main thread when scrolling settles.
+     *
+     * @param firstVisiblePosition The first visible adapter position
+     * @param lastVisiblePosition  The last visible adapter position
+     */
+    public void setVisibleRange(int firstVisiblePosition, int lastVisiblePosition) {
+        commentsTree.setVisibleRange(firstVisiblePosition, lastVisiblePosition);
+        restoreEvictedNear(firstVisiblePosition, lastVisiblePosition);
+        replyPrefetcher.setVisibleRange(firstVisiblePosition, lastVisiblePosition);
+        if (isPresenceDisabled()) {
+            return;
         }
+        presenceFetcher.setVisibleRange(firstVisiblePosition, lastVisiblePosition);
+    }
 
-        // If no users found, no need to proceed
-        if (userIds.isEmpty()) {
+    /**
+     * If the reader has scrolled close to comments the tree evicted, fetch them again.
+     */
+    private void restoreEvictedNear(int firstVisiblePosition, int lastVisiblePosition) {
+        if (restoreCallbacks != null || firstVisiblePosition < 0) {
             return;
         }
+        final int margin = commentsTree.evictionMarginRows / 2;
+        if (!commentsTree.getEvictedBefore().isEmpty() && firstVisiblePosition <= margin) {
+            restoreEvicted(true, null);
+        } else if (!commentsTree.getEvictedAfter().isEmpty() && lastVisiblePosition >= commentsTree.visibleSize() - 1 - margin) {
+            restoreEvicted(false, null);
+        }
+    }
 
-        // Create a comma-separated string of user IDs
-        StringBuilder userIdsCSV = new StringBuilder();
-        for (String userId : userIds) {
-            if (userIdsCSV.length() > 0) {
-                userIdsCSV.append(",");
+    /**
+     * Fetch up to a page of the threads evicted on one side of the loaded comments and put them back. The tree's
+     * evicted threads were a contiguous run of root comments, so their position on the server follows from how many
+     * are evicted above and loaded. Comments added or deleted since shift that, so the threads are matched by id, and
+     * each fetch that misses the nearest one widens the window around the estimate by a page either way. After
+     * {@link #RESTORE_MAX_MISSES} the threads still missing are given up on, so loadMore() can't get stuck on them.
+     *
+     * @param callback May be null. If a fetch is already in flight, called when it finishes instead.
+     */
+    private void restoreEvicted(boolean before, FCCallback<GetCommentsResponseWithPresencePublicComment> callback) {
+        if (restoreCallbacks != null) {
+            if (callback != null) {
+                restoreCallbacks.add(callback);
             }
-            userIdsCSV.append(userId);
+            return;
         }
+        restoreCallbacks = new ArrayList<>(1);
+        if (callback != null) {
+            restoreCallbacks.add(callback);
+        }
+        final int evictedBefore = commentsTree.evictedBeforeCount();
+        final int count = Math.min(before ? commentsTree.getEvictedBefore().size() : commentsTree.getEvictedAfter().size(), pageSize);
+        final int estimate = before ? evictedBefore - count : evictedBefore + commentsTree.rootCount();
+        final int misses = before ? restoreMissesBefore : restoreMissesAfter;
+        final int skip = Math.max(0, estimate - misses * pageSize);
+        final int limit = count + (estimate - skip) + misses * pageSize;
+        requestPage(skip, limit, 0, new FCCallback<GetCommentsResponseWithPresencePublicComment>() {
+            @Override
+            public boolean onFailure(APIError error) {
+                final List<FCCallback<GetCommentsResponseWithPresencePublicComment>> callbacks = restoreCallbacks;
+                restoreCallbacks = null;
+                for (FCCallback<GetCommentsResponseWithPresencePublicComment> waiting : callbacks) {
+                    waiting.onFailure(error);
+                }
+                return CONSUME;
+            }
 
-        fetchPresenceForUsers(userIdsCSV.toString());
+            @Override
+            public boolean onSuccess(GetCommentsResponseWithPresencePublicComment response) {
+                final List<FCCallback<GetCommentsResponseWithPresencePublicComment>> callbacks = restoreCallbacks;
+                restoreCallbacks = null;
+                final int consumed = commentsTree.restoreEvicted(before, count, response.getComments(), misses >= RESTORE_MAX_MISSES);
+                if (before) {
+                    restoreMissesBefore = consumed > 0 ? 0 : restoreMissesBefore + 1;
+                } else {
+                    restoreMissesAfter = consumed > 0 ? 0 : restoreMissesAfter + 1;
+                }
+                for (FCCallback<GetCommentsResponseWithPresencePublicComment> waiting : callbacks) {
+                    waiting.onSuccess(response);
+                }
+                return CONSUME;
+            }
+        });
+    }
+
+    private void requestReplies(String parentId, int limit, FCCallback<GetCommentsResponseWithPresencePublicComment> callback) {
+        getCommentsForParent(0, limit, 0, parentId, false, new FCCallback<GetCommentsResponseWithPresencePublicComment>() {
+            @Override
+            public boolean onFailure(APIError error) {
+                mainHandler.post(() -> callback.onFailure(error));
+                return CONSUME;
+            }
+
+            @Override
+            public boolean onSuccess(GetCommentsResponseWithPresencePublicComment response) {
+                htmlCache.prefetch(response.getComments(), theme, FastCommentsExecutors.computation());
+                mainHandler.post(() -> callback.onSuccess(response));
+                return CONSUME;
+            }
+        });
     }
 
     /**
@@ -898,10 +1249,46 @@ public class FastCommentsSDK {
      * @param userIdsCSV Comma-separated list of user IDs
      */
     private void fetchPresenceForUsers(String userIdsCSV) {
-        if (userIdsCSV == null || userIdsCSV.isEmpty()) {
+        if (userIdsCSV == null || userIdsCSV.isEmpty() || isPresenceDisabled()) {
             return;
         }
+        final List<String> userIds = Arrays.asList(userIdsCSV.split(","));
+        mainHandler.post(() -> presenceFetcher.fetchUsers(userIds));
+    }
+
+    /**
+     * Make a single presence request for the PresenceFetcher.
+     */
+    private void requestPresence(List<String> userIds, Runnable onDone) {
+        final String userIdsCSV = String.join(",", userIds);
+        singleFlight.execute("presence:" + urlIdWS + ":" + userIdsCSV, 0,
+                shared -> requestPresenceStatuses(userIdsCSV, shared),
+                new FCCallback<Map<String, Boolean>>() {
+                    @Override
+                    public boolean onFailure(APIError error) {
+                        // already logged, this is not critical functionality
+                        mainHandler.post(onDone);
+                        return CONSUME;
+                    }
+
+                    @Override
+                    public boolean onSuccess(Map<String, Boolean> statuses) {
+                        mainHandler.post(() -> {
+                            if (statuses != null) {
+                                commentsTree.updateUserPresence(statuses);
+                            }
+                            commentsTree.markPresenceChecked(userIds);
+                            onDone.run();
+                        });
+                        return CONSUME;
+                    }
+                });
+    }
 
+    /**
+     * Get which of the given users are online. Calls back on the network thread.
+     */
+    private void requestPresenceStatuses(String userIdsCSV, FCCallback<Map<String, Boolean>> callback) {
         // Call the API to get presence statuses
         try {
             api.getUserPresenceStatuses(config.tenantId, urlIdWS, userIdsCSV)
@@ -910,26 +1297,20 @@ public class FastCommentsSDK {
                         public void onFailure(ApiException e, int statusCode, Map<String, List<String>> responseHeaders) {
                             // Log error but continue - this is not critical functionality
                             Log.e("FastCommentsSDK", "Failed to get user presence statuses: " + e.getMessage());
+                            callback.onFailure(CallbackWrapper.createErrorFromException(e));
                         }
 
                         @Override
                         public void onSuccess(GetUserPresenceStatuses200Response result, int statusCode, Map<String, List<String>> responseHeaders) {
                             if (result.getActualInstance() instanceof APIError) {
                                 // Log error but continue
-                                Log.e("FastCommentsSDK", "API error when getting user presence statuses: " +
-                                        ((APIError) result.getActualInstance()).getReason());
+                                final APIError error = (APIError) result.getActualInstance();
+                                Log.e("FastCommentsSDK", "API error when getting user presence statuses: " + error.getReason());
+                                callback.onFailure(error);
                                 return;
                             }
 
-                            // Process presence statuses
-                            final Map<String, Boolean> statuses = result.getGetUserPresenceStatusesResponse().getUserIdsOnline();
-                            mainHandler.post(() -> {
-                                for (Map.Entry<String, Boolean> entry : statuses.entrySet()) {
-                                    String userId = entry.getKey();
-                                    boolean isOnline = entry.getValue();
-                                    commentsTree.updateUserPresence(userId, isOnline);
-                                }
-                            });
+                            callback.onSuccess(result.getGetUserPresenceStatusesResponse().getUserIdsOnline());
                         }
 
                         @Override
@@ -945,6 +1326,7 @@ public class FastCommentsSDK {
         } catch (ApiException e) {
             // Log error but continue - this is not critical functionality
             Log.e("FastCommentsSDK", "Failed to get user presence statuses: " + e.getMessage());
+            callback.onFailure(CallbackWrapper.createErrorFromException(e));
         }
     }
 
@@ -977,39 +1359,63 @@ public class FastCommentsSDK {
                 return;
             }
 
-            mainHandler.post(() -> {
-                switch (eventType) {
-                    case NEW_COMMENT:
-                        handleNewComment(eventData);
-                        break;
-                    case UPDATED_COMMENT:
-                        handleUpdatedComment(eventData);
-                        break;
-                    case DELETED_COMMENT:
-                        handleDeletedComment(eventData);
-                        break;
-                    case NEW_VOTE:
-                        handleNewVote(eventData);
-                        break;
-                    case DELETED_VOTE:
-                        handleDeletedVote(eventData);
-                        break;
-                    case THREAD_STATE_CHANGE:
-                        handleThreadStateChange(eventData);
-                        break;
-                    case P_U:
-                        handlePresenceChange(eventData);
-                        break;
-                    case UPDATE_BADGES:
-                        handleBadgeUpdate(eventData);
-                        break;
-                    default:
-                        // Ignore other event types for now
-                        break;
+            // Applied on the next frame together with anything else that arrives before then
+            liveEventBatcher.enqueue(eventData);
+        } catch (Exception e) {
+            System.err.println("FastComments: Error handling live event: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Apply one frame's worth of live events as a single tree transaction, so each changed row is only notified once
+     */
+    private void applyLiveEventBatch(LiveEventBatcher.Batch batch) {
+        commentsTree.beginUpdate();
+        try {
+            for (LiveEvent eventData : batch.events) {
+                try {
+                    applyLiveEvent(eventData);
+                } catch (Exception e) {
+                    System.err.println("FastComments: Error handling live event: " + e.getMessage());
                 }
-            });
+            }
+            // Votes go after comments so votes on a comment that arrived in the same batch aren't lost
+            for (Map.Entry<String, LiveEventBatcher.VoteDelta> entry : batch.voteDeltas.entrySet()) {
+                applyVoteDelta(entry.getKey(), entry.getValue());
+            }
+            commentsTree.updateUserPresence(batch.presence);
         } catch (Exception e) {
             System.err.println("FastComments: Error handling live event: " + e.getMessage());
+        } finally {
+            commentsTree.endUpdate();
+        }
+
+        // Notify subscriber count changes
+        if (batch.subscriberCount != null && presenceUpdateListener != null) {
+            presenceUpdateListener.onSubscriberCountChanged(Math.max(batch.subscriberCount, 1));
+        }
+    }
+
+    private void applyLiveEvent(LiveEvent eventData) {
+        switch (eventData.getType()) {
+            case NEW_COMMENT:
+                handleNewComment(eventData);
+                break;
+            case UPDATED_COMMENT:
+                handleUpdatedComment(eventData);
+                break;
+            case DELETED_COMMENT:
+                handleDeletedComment(eventData);
+                break;
+            case THREAD_STATE_CHANGE:
+                handleThreadStateChange(eventData);
+                break;
+            case UPDATE_BADGES:
+                handleBadgeUpdate(eventData);
+                break;
+            default:
+                // Ignore other event types for now
+                break;
         }
     }
 
@@ -1087,11 +1493,13 @@ public class FastCommentsSDK {
 
         // Get the comment from the event
         PubSubComment pubSubComment = eventData.getComment();
+        commentsTree.replayAfterBuild(() -> handleUpdatedComment(eventData));
 
         // Find and update the comment in our tree
         PublicComment existingComment = commentsTree.getPublicComment(pubSubComment.getId());
         if (existingComment != null) {
             copyEventToComment(pubSubComment, existingComment);
+            htmlCache.invalidate(pubSubComment.getId());
             // Notify adapter so the ViewHolder re-renders with updated data
             RenderableComment renderable = commentsTree.commentsById.get(pubSubComment.getId());
             if (renderable != null) {
@@ -1121,64 +1529,25 @@ public class FastCommentsSDK {
     }
 
     /**
-     * Handle a new vote event
+     * Apply the net result of the vote events for a comment
      */
-    private void handleNewVote(LiveEvent eventData) {
-        if (eventData.getVote() == null) {
-            return;
-        }
-
-        // Get vote data using the appropriate type
-        PubSubVote vote = eventData.getVote();
-        String commentId = vote.getCommentId();
-        Integer direction = vote.getDirection();
-
-        if (commentId == null) {
+    private void applyVoteDelta(String commentId, LiveEventBatcher.VoteDelta delta) {
+        if (delta.up == 0 && delta.down == 0) {
             return;
         }
-
-        final boolean isUpvote = direction > 0;
+        commentsTree.replayAfterBuild(() -> applyVoteDelta(commentId, delta));
 
         // Find and update the comment's vote count
         final RenderableComment renderableComment = commentsTree.commentsById.get(commentId);
         if (renderableComment != null) {
             final PublicComment comment = renderableComment.getComment();
-            if (isUpvote) {
-                comment.setVotesUp((comment.getVotesUp() != null ? comment.getVotesUp() : 0) + 1);
-            } else {
-                comment.setVotesDown((comment.getVotesDown() != null ? comment.getVotesDown() : 0) + 1);
+            if (delta.up != 0) {
+                final int votesUp = comment.getVotesUp() != null ? comment.getVotesUp() : 0;
+                comment.setVotesUp(Math.max(votesUp + delta.up, 0));
             }
-            commentsTree.notifyItemChanged(renderableComment);
-        }
-    }
-
-    /**
-     * Handle a deleted vote event
-     */
-    private void handleDeletedVote(LiveEvent eventData) {
-        if (eventData.getVote() == null) {
-            return;
-        }
-
-        // Get vote data using the appropriate type
-        PubSubVote vote = eventData.getVote();
-        String commentId = vote.getCommentId();
-        Integer direction = vote.getDirection();
-
-        if (commentId == null) {
-            return;
-        }
-
-        final boolean isUpvote = direction > 0;
-
-        // Find and update the comment's vote count
-        final RenderableComment renderableComment = commentsTree.commentsById.get(commentId);
-        if (renderableComment != null) {
-            final PublicComment comment = renderableComment.getComment();
-            if (isUpvote && comment.getVotesUp() != null && comment.getVotesUp() > 0) {
-                comment.setVotesUp(comment.getVotesUp() - 1);
-            } else if (!isUpvote && comment.getVotesDown() != null && comment.getVotesDown() > 0) {
-                comment.setVotesDown(comment.getVotesDown() - 1);
+            if (delta.down != 0) {
+                final int votesDown = comment.getVotesDown() != null ? comment.getVotesDown() : 0;
+                comment.setVotesDown(Math.max(votesDown + delta.down, 0));
             }
             commentsTree.notifyItemChanged(renderableComment);
         }
@@ -1204,32 +1573,6 @@ public class FastCommentsSDK {
         this.connectionStatusListener = listener;
     }
 
-    private void handlePresenceChange(LiveEvent eventData) {
-        List<String> usersJoined = eventData.getUj();
-        List<String> usersLeft = eventData.getUl();
-
-        // Process leaves BEFORE joins — when a user reconnects, the server may
-        // batch the leave and join into the same event. Processing ul first then
-        // uj ensures the net state is "online".
-        if (usersLeft != null && !usersLeft.isEmpty()) {
-            for (String userId : usersLeft) {
-                commentsTree.updateUserPresence(userId, false);
-            }
-        }
-
-        if (usersJoined != null && !usersJoined.isEmpty()) {
-            for (String userId : usersJoined) {
-                commentsTree.updateUserPresence(userId, true);
-            }
-        }
-
-        // Notify subscriber count changes
-        Integer sc = eventData.getSc();
-        if (sc != null && presenceUpdateListener != null) {
-            presenceUpdateListener.onSubscriberCountChanged(Math.max(sc, 1));
-        }
-    }
-
     public void cleanup() {
         Log.w("FastCommentsSDK", "cleanup() called", new Throwable("cleanup stack trace"));
         stopPresencePolling();
@@ -1238,6 +1581,11 @@ public class FastCommentsSDK {
             liveEventSubscription.close();
             liveEventSubscription = null;
         }
+        liveEventBatcher.clear();
+        presenceFetcher.clear();
+        cancelLoadAll();
+        dropPendingPages();
+        singleFlight.clear();
 
         if (liveEventSubscriber != null) {
             liveEventSubscriber = null;
@@ -1250,6 +1598,7 @@ public class FastCommentsSDK {
         if (commentsTree != null) {
             commentsTree.clear();
         }
+        htmlCache.clear();
     }
     
     /**
@@ -1257,18 +1606,47 @@ public class FastCommentsSDK {
      * 
      * @param searchTerm The search term (usually the text after the @ symbol)
      * @param callback Callback to receive search results
+     * @return Cancels the search, after which callback won't be called
      */
-    public void searchUsers(String searchTerm, final FCCallback<List<UserMention>> callback) {
+    public Runnable searchUsers(String searchTerm, final FCCallback<List<UserMention>> callback) {
         if (searchTerm == null || searchTerm.trim().isEmpty()) {
             callback.onSuccess(new ArrayList<>());
-            return;
+            return () -> {
+            };
         }
+        final String sso = config.getSSOToken();
+        return singleFlight.executeCancellable(searchUsersKey(searchTerm), searchUsersCacheTtlMs, shared -> requestSearchUsers(searchTerm, sso, shared), new FCCallback<List<UserMention>>() {
+            @Override
+            public boolean onFailure(APIError error) {
+                return callback.onFailure(error);
+            }
+
+            @Override
+            public boolean onSuccess(List<UserMention> mentions) {
+                // the shared list may be cached, and mentions are modified once picked, so each caller gets its own
+                final List<UserMention> copy = new ArrayList<>(mentions.size());
+                for (UserMention mention : mentions) {
+                    copy.add(new UserMention(mention.getId(), mention.getUsername(), mention.getAvatarUrl()));
+                }
+                return callback.onSuccess(copy);
+            }
+        });
+    }
+
+    /**
+     * Results depend on who is searching, so they're keyed by a digest of the SSO token rather than the token itself.
+     */
+    String searchUsersKey(String searchTerm) {
+        return "searchUsers:" + UserKey.of(config.getSSOToken()) + ":" + searchTerm;
+    }
+
+    private Runnable requestSearchUsers(String searchTerm, String sso, final FCCallback<List<UserMention>> callback) {
         Log.i("FastCommentsSDK", "Searching for users: " + searchTerm);
 
         try {
             // Create the search users request with the proper parameters
-            api.searchUsers(config.tenantId, config.urlId).usernameStartsWith(searchTerm)
-                .sso(config.getSSOToken())
+            final okhttp3.Call call = api.searchUsers(config.tenantId, config.urlId).usernameStartsWith(searchTerm)
+                .sso(sso)
                 .executeAsync(new ApiCallback<SearchUsers200Response>() {
                     @Override
                     public void onFailure(ApiException e, int statusCode, Map<String, List<String>> responseHeaders) {
@@ -1322,8 +1700,10 @@ public class FastCommentsSDK {
                         // Not used
                     }
                 });
+            return call::cancel;
         } catch (ApiException e) {
             CallbackWrapper.handleAPIException(mainHandler, callback, e);
+            return null;
         }
     }
 
@@ -1479,6 +1859,7 @@ public class FastCommentsSDK {
                             } else {
                                 PublicAPISetCommentTextResponse response = result.getPublicAPISetCommentTextResponse();
                                 if (response.getComment() != null) {
+                                    htmlCache.invalidate(commentId);
                                     callback.onSuccess(response.getComment());
                                 } else {
                                     callback.onFailure(new APIError()
@@ -0,0 +1,134 @@
+package com.fastcomments.sdk;
+
+import android.content.Context;
+
+import com.fastcomments.api.PublicApi;
+import com.fastcomments.invoker.ApiClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * The process-wide HTTP client used by every SDK instance for REST calls.
+ * <p>
+ * Each FastCommentsSDK used to build its own OkHttp client, and the feed creates a new SDK for every post opened, so
+ * every one of them had its own connection pool and dispatcher and paid for its own TLS handshakes. Now there is one
+ * connection pool, one dispatcher (so per-host concurrency is limited across all instances), and optionally one disk
+ * cache for GETs, see {@link #enableHttpCache}. SDK instances only borrow the client and never shut it down.
+ * <p>
+ * REST calls use HTTP/2 when the server supports it, so parallel requests (presence, stats, reply pages, uploads) are
+ * multiplexed over one connection instead of each opening their own. Live events don't go through this client: the
+ * pubsub library has its own for the WebSocket, which stays on HTTP/1.1. See {@link #setHttp2Enabled}.
+ * <p>
+ * Configure before creating SDK instances: clients already handed out keep the cache and protocols they were created
+ * with, though they do pick up changes to the request limits since the dispatcher is shared.
+ */
+public class FastCommentsTransport {
+
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 6;
+    private static final String HTTP_CACHE_DIR = "fastcomments-http";
+
+    private static OkHttpClient httpClient;
+    private static boolean http2Enabled = true;
+
+    /**
+     * The shared client. Derive from it with newBuilder() rather than building a new one, so the pool and dispatcher
+     * stay shared.
+     */
+    public static synchronized OkHttpClient getHttpClient() {
+        if (httpClient == null) {
+            final Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(DEFAULT_MAX_REQUESTS);
+            dispatcher.setMaxRequestsPerHost(DEFAULT_MAX_REQUESTS_PER_HOST);
+            httpClient = new OkHttpClient.Builder()
+                    .dispatcher(dispatcher)
+                    .connectionPool(new ConnectionPool())
+                    .protocols(protocols())
+                    .build();
+        }
+        return httpClient;
+    }
+
+    /**
+     * Create an API for one SDK instance. Each instance gets its own ApiClient, since the base path and other settings
+     * are per instance, but they all use the shared http client.
+     */
+    public static PublicApi createApi(String basePath) {
+        final ApiClient apiClient = new ApiClient();
+        apiClient.setHttpClient(getHttpClient());
+        apiClient.setBasePath(basePath);
+        apiClient.setLenientOnJson(true);
+        return new PublicApi(apiClient);
+    }
+
+    /**
+     * Cache GET responses on disk, as far as their cache headers allow. Off by default. Only the first call has an
+     * effect, since OkHttp doesn't allow two caches on one directory.
+     *
+     * @param maxBytes Size of the cache, the least recently used responses are evicted past this
+     */
+    public static synchronized void enableHttpCache(Context context, long maxBytes) {
+        if (getHttpClient().cache() != null) {
+            return;
+        }
+        final Cache cache = new Cache(new File(context.getApplicationContext().getCacheDir(), HTTP_CACHE_DIR), maxBytes);
+        httpClient = getHttpClient().newBuilder().cache(cache).build();
+    }
+
+    /**
+     * Whether REST calls may use HTTP/2. On by default, turn it off to force HTTP/1.1 like older versions did.
+     */
+    public static synchronized void setHttp2Enabled(boolean enabled) {
+        http2Enabled = enabled;
+        httpClient = getHttpClient().newBuilder().protocols(protocols()).build();
+    }
+
+    public static synchronized boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    /**
+     * Limit how many requests can be in flight at once to one host, across all SDK instances.
+     */
+    public static synchronized void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        getHttpClient().dispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    /**
+     * Limit how many requests can be in flight at once, across all SDK instances.
+     */
+    public static synchronized void setMaxRequests(int maxRequests) {
+        getHttpClient().dispatcher().setMaxRequests(maxRequests);
+    }
+
+    /**
+     * For tests, forget the shared client so the next call starts from the defaults.
+     */
+    static synchronized void reset() {
+        if (httpClient != null && httpClient.cache() != null) {
+            try {
+                httpClient.cache().close();
+            } catch (IOException ignored) {
+            }
+        }
+        httpClient = null;
+        http2Enabled = true;
+    }
+
+    private static List<Protocol> protocols() {
+        // HTTP/2 is negotiated with ALPN during the TLS handshake, and we fall back to HTTP/1.1 if the server says no
+        return http2Enabled
+                ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                : Collections.singletonList(Protocol.HTTP_1_1);
+    }
+}
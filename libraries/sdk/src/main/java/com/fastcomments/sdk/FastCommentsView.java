@@ -55,9 +55,9 @@ public class FastCommentsView extends FrameLayout {
     private Button btnLoadAll;
     private ProgressBar paginationProgressBar;
     private OnBackPressedCallback backPressedCallback;
-    private Handler dateUpdateHandler;
-    private Runnable dateUpdateRunnable;
-    private static final long DATE_UPDATE_INTERVAL = 60000; // Update every minute
+    private Handler uiHandler;
+    // registered with TimeLabels while relative dates are shown, to refresh them every minute
+    private final Runnable dateTickListener = this::updateDates;
     private CommentPostListener commentPostListener;
     private OnReplyClickListener replyClickListener;
     private OnUserClickListener userClickListener;
@@ -142,17 +142,6 @@ public class FastCommentsView extends FrameLayout {
     private void init(Context context, AttributeSet attrs, FastCommentsSDK sdk) {
         LayoutInflater.from(context).inflate(R.layout.fast_comments_view, this, true);
 
-        // Initialize the date update handler and runnable
-        dateUpdateHandler = new Handler(Looper.getMainLooper());
-        dateUpdateRunnable = new Runnable() {
-            @Override
-            public void run() {
-                updateDates();
-                // Schedule the next update
-                dateUpdateHandler.postDelayed(this, DATE_UPDATE_INTERVAL);
-            }
-        };
-
         recyclerView = findViewById(R.id.recyclerViewComments);
         progressBar = findViewById(R.id.commentsProgressBar);
         emptyStateView = findViewById(R.id.emptyStateView);
@@ -225,6 +214,16 @@ public class FastCommentsView extends FrameLayout {
         adapter = new CommentsAdapter(getContext(), sdk);
         recyclerView.setAdapter(adapter);
 
+        // Presence is only fetched for what's on screen, so keep the SDK up to date as scrolling settles
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    reportVisibleRange();
+                }
+            }
+        });
+
         // Toggle empty state when live events add/remove comments
         adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
             @Override
@@ -247,21 +246,28 @@ public class FastCommentsView extends FrameLayout {
                 sdk.getConfig().enableInfiniteScrolling;
 
         if (isInfiniteScrollingEnabled) {
+            final ScrollPrefetchPolicy prefetchPolicy = new ScrollPrefetchPolicy(getContext());
             recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
                 @Override
                 public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
                     super.onScrolled(recyclerView, dx, dy);
 
-                    if (dy > 0) { // Scrolling down
+                    if (dy > 0 && sdk.hasMore) { // Scrolling down
                         LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
                         if (layoutManager != null) {
                             int visibleItemCount = layoutManager.getChildCount();
                             int totalItemCount = layoutManager.getItemCount();
-                            int firstVisibleItemPosition = layoutManager.findFirstVisibleItemPosition();
+                            int lastVisibleItemPosition = layoutManager.findLastVisibleItemPosition();
+                            int rowsRemaining = totalItemCount - lastVisibleItemPosition - 1;
+                            float rowHeight = visibleItemCount > 0 ? recyclerView.getHeight() / (float) visibleItemCount : 0;
 
-                            // Load more when user is near the end (last 5 items)
-                            if ((visibleItemCount + firstVisibleItemPosition + 5) >= totalItemCount
-                                    && sdk.hasMore) {
+                            // Fetch the next page ahead of time, so it's ready when the user gets there
+                            if (prefetchPolicy.onScrolled(dy, rowsRemaining, rowHeight)) {
+                                sdk.prefetchNextPage();
+                            }
+
+                            // Splice it in when the user is near the end (last 5 items)
+                            if (rowsRemaining <= 5) {
                                 loadMoreComments();
                             }
                         }
@@ -1016,17 +1022,27 @@ public class FastCommentsView extends FrameLayout {
                         paginationControls.setVisibility(View.GONE);
                     } else {
                         setIsEmpty(false);
-                        adapter.notifyDataSetChanged();
+                        if (!sdk.asyncTreeBuild) {
+                            // otherwise the tree already dispatched a diff to the adapter
+                            adapter.notifyDataSetChanged();
+                        }
 
                         // Update pagination controls
                         updatePaginationControls();
 
                         // Start the date update timer
                         startDateUpdateTimer();
+
+                        // Once laid out, fetch presence for whatever ended up on screen
+                        recyclerView.post(() -> reportVisibleRange());
                     }
                 });
                 return CONSUME;
             }
+        }, cachedResponse -> {
+            // Rendered from the page cache, the network response will replace it when it arrives
+            showLoading(false);
+            setIsEmpty(false);
         });
     }
 
@@ -1531,6 +1547,16 @@ public class FastCommentsView extends FrameLayout {
         }
     }
 
+    /**
+     * Tell the SDK which comments are on screen, for presence fetching
+     */
+    private void reportVisibleRange() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        if (sdk != null && layoutManager != null) {
+            sdk.setVisibleRange(layoutManager.findFirstVisibleItemPosition(), layoutManager.findLastVisibleItemPosition());
+        }
+    }
+
     /**
      * Starts the timer for updating relative dates
      */
@@ -1540,7 +1566,7 @@ public class FastCommentsView extends FrameLayout {
 
         // Only start the timer if we have comments and absolute dates are not enabled
         if (adapter.getItemCount() > 0 && (sdk.getConfig().absoluteDates == null || !sdk.getConfig().absoluteDates)) {
-            dateUpdateHandler.postDelayed(dateUpdateRunnable, DATE_UPDATE_INTERVAL);
+            TimeLabels.addTickListener(dateTickListener);
         }
     }
 
@@ -1548,7 +1574,7 @@ public class FastCommentsView extends FrameLayout {
      * Stops the timer for updating relative dates
      */
     private void stopDateUpdateTimer() {
-        dateUpdateHandler.removeCallbacks(dateUpdateRunnable);
+        TimeLabels.removeTickListener(dateTickListener);
     }
 
     /**
@@ -1557,10 +1583,10 @@ public class FastCommentsView extends FrameLayout {
      * @return Handler for UI updates
      */
     public Handler getHandler() {
-        if (dateUpdateHandler == null) {
-            dateUpdateHandler = new Handler(Looper.getMainLooper());
+        if (uiHandler == null) {
+            uiHandler = new Handler(Looper.getMainLooper());
         }
-        return dateUpdateHandler;
+        return uiHandler;
     }
 
     /**
@@ -1735,12 +1761,9 @@ public class FastCommentsView extends FrameLayout {
 
 
         // Clear handler callbacks
-        if (dateUpdateHandler != null) {
-            dateUpdateHandler.removeCallbacksAndMessages(null);
+        if (uiHandler != null) {
+            uiHandler.removeCallbacksAndMessages(null);
         }
-
-        // Clear runnables
-        dateUpdateRunnable = null;
     }
 
     /**
@@ -0,0 +1,139 @@
+package com.fastcomments.sdk;
+
+import android.util.Log;
+
+import com.fastcomments.model.APIStatus;
+import com.fastcomments.model.FeedPost;
+import com.fastcomments.model.PublicFeedPostsResponse;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the start of the feed on disk so {@link FastCommentsFeedSDK} can show it instantly on a cold start, while the
+ * network request revalidates it (stale-while-revalidate).
+ * <p>
+ * Only the first {@link #MAX_POSTS} posts are kept. If the feed was longer, the cursor is moved back so that loadMore()
+ * continues right after the last cached post. Expiry and size bounds come from the underlying {@link DiskCache}.
+ * <p>
+ * Does disk IO, so don't call it on the main thread.
+ */
+public class FeedCache {
+
+    public static final int MAX_POSTS = 50;
+    private static final int VERSION = 1;
+
+    /**
+     * The part of the feed state worth persisting.
+     */
+    public static class Snapshot {
+        public List<FeedPost> feedPosts = new ArrayList<>(0);
+        public Map<String, Integer> likeCounts = new HashMap<>(0);
+        public Map<String, Map<String, Boolean>> myReacts = new HashMap<>(0);
+        public String lastPostId;
+        public boolean hasMore;
+        // how old the cached copy is, only set when read
+        public long ageMs;
+    }
+
+    private final DiskCache diskCache;
+    private final Gson gson = new Gson();
+
+    public FeedCache(DiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * The underlying cache, which also remembers the last signed in user, see {@link UserKey#lastKnown}.
+     */
+    DiskCache diskCache() {
+        return diskCache;
+    }
+
+    public Snapshot read(String key) {
+        final DiskCache.Entry entry = diskCache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            final Snapshot snapshot = decode(entry.value);
+            if (snapshot == null) {
+                diskCache.remove(key);
+                return null;
+            }
+            snapshot.ageMs = entry.ageMs;
+            return snapshot;
+        } catch (Exception e) {
+            Log.w("FastCommentsFeedSDK", "Discarding unreadable cached feed", e);
+            diskCache.remove(key);
+            return null;
+        }
+    }
+
+    public void write(String key, Snapshot snapshot) {
+        try {
+            diskCache.put(key, encode(snapshot));
+        } catch (Exception e) {
+            Log.w("FastCommentsFeedSDK", "Failed to cache feed", e);
+        }
+    }
+
+    public void clear() {
+        diskCache.clear();
+    }
+
+    String encode(Snapshot snapshot) {
+        List<FeedPost> posts = snapshot.feedPosts;
+        String lastPostId = snapshot.lastPostId;
+        boolean hasMore = snapshot.hasMore;
+        if (posts.size() > MAX_POSTS) {
+            posts = posts.subList(0, MAX_POSTS);
+            lastPostId = posts.get(posts.size() - 1).getId();
+            hasMore = true;
+        }
+
+        // The generated model knows how to serialize its own date types, so let it write the posts.
+        final PublicFeedPostsResponse response = new PublicFeedPostsResponse();
+        response.setStatus(APIStatus.SUCCESS);
+        response.setFeedPosts(new ArrayList<>(posts));
+        response.setMyReacts(snapshot.myReacts);
+
+        final JsonObject root = new JsonObject();
+        root.addProperty("v", VERSION);
+        root.addProperty("lastPostId", lastPostId);
+        root.addProperty("hasMore", hasMore);
+        root.add("likeCounts", gson.toJsonTree(snapshot.likeCounts));
+        root.add("response", JsonParser.parseString(response.toJson()));
+        return root.toString();
+    }
+
+    Snapshot decode(String value) throws Exception {
+        final JsonObject root = JsonParser.parseString(value).getAsJsonObject();
+        if (!root.has("v") || root.get("v").getAsInt() != VERSION) {
+            return null;
+        }
+        final PublicFeedPostsResponse response = PublicFeedPostsResponse.fromJson(root.get("response").toString());
+        final Snapshot snapshot = new Snapshot();
+        if (response.getFeedPosts() != null) {
+            snapshot.feedPosts = response.getFeedPosts();
+        }
+        if (response.getMyReacts() != null) {
+            snapshot.myReacts = response.getMyReacts();
+        }
+        if (root.has("likeCounts")) {
+            final Map<String, Integer> likeCounts = gson.fromJson(root.get("likeCounts"), new TypeToken<Map<String, Integer>>() {}.getType());
+            if (likeCounts != null) {
+                snapshot.likeCounts = likeCounts;
+            }
+        }
+        snapshot.lastPostId = root.has("lastPostId") && !root.get("lastPostId").isJsonNull() ? root.get("lastPostId").getAsString() : null;
+        snapshot.hasMore = root.has("hasMore") && root.get("hasMore").getAsBoolean();
+        return snapshot;
+    }
+}
@@ -75,6 +75,8 @@ public class FeedPostCreateView extends FrameLayout {
     private final List<FeedPostMediaItem> remoteMediaItems = new ArrayList<>(0);
     private SelectedMediaAdapter mediaAdapter;
     private FeedPostLink attachedLink;
+    // the images being uploaded for this post, kept after a failure so trying again only sends what's missing
+    private String uploadBatchId;
     private final Handler mainHandler;
     private FastCommentsFeedSDK sdk;
     private OnPostCreateListener listener;
@@ -439,6 +441,10 @@ public class FeedPostCreateView extends FrameLayout {
         mediaPreviewContainer.setVisibility(GONE);
         removeLink();
         postErrorTextView.setVisibility(GONE);
+        if (sdk != null && uploadBatchId != null) {
+            sdk.getUploadQueue(getContext()).cancel(uploadBatchId);
+        }
+        uploadBatchId = null;
 
         // Notify listener
         if (listener != null) {
@@ -536,7 +542,7 @@ public class FeedPostCreateView extends FrameLayout {
                 final CreateFeedPostParams params = convertToParams(feedPost);
 
                 if (sdk != null) {
-                    sdk.createPost(params, new FCCallback<FeedPost>() {
+                    final FCCallback<FeedPost> postCallback = new FCCallback<FeedPost>() {
                         @Override
                         public boolean onFailure(APIError error) {
                             Log.e("FeedPostCreateView", "Post creation failed: " +
@@ -577,7 +583,14 @@ public class FeedPostCreateView extends FrameLayout {
                             });
                             return CONSUME;
                         }
-                    });
+                    };
+                    if (!selectedMediaUris.isEmpty()) {
+                        // images go through the upload queue, which retries each one and creates the post once all are up
+                        uploadBatchId = sdk.createPostWithUploads(getContext(), params, new ArrayList<>(selectedMediaUris),
+                                uploadBatchId, postCallback);
+                    } else {
+                        sdk.createPost(params, postCallback);
+                    }
                 } else {
                     // SDK not available, show error
                     setSubmitting(false);
@@ -613,36 +626,11 @@ public class FeedPostCreateView extends FrameLayout {
             post.setLinks(Collections.singletonList(attachedLink));
         }
 
-        // Handle media items (both local uploads and remote URLs)
-        if (!selectedMediaUris.isEmpty()) {
-            // Upload local images first
-            sdk.uploadImages(getContext(), selectedMediaUris, new FCCallback<List<FeedPostMediaItem>>() {
-                @Override
-                public boolean onFailure(APIError error) {
-                    Log.e("FeedPostCreateView", "Image upload failed: " +
-                        (error != null ? error.getReason() : "Unknown error"));
-                    mainHandler.post(() -> feedPostCallback.onFailure(error));
-                    return CONSUME;
-                }
-
-                @Override
-                public boolean onSuccess(List<FeedPostMediaItem> uploadedItems) {
-                    // Combine uploaded items with remote media items
-                    List<FeedPostMediaItem> allMediaItems = new ArrayList<>(uploadedItems);
-                    allMediaItems.addAll(remoteMediaItems);
-                    post.setMedia(allMediaItems);
-                    mainHandler.post(() -> feedPostCallback.onSuccess(post));
-                    return CONSUME;
-                }
-            });
-        } else if (!remoteMediaItems.isEmpty()) {
-            // Only remote media, no uploads needed
+        // Local images are uploaded when the post is submitted, only remote media goes on the post here
+        if (!remoteMediaItems.isEmpty()) {
             post.setMedia(new ArrayList<>(remoteMediaItems));
-            feedPostCallback.onSuccess(post);
-        } else {
-            // No media at all
-            feedPostCallback.onSuccess(post);
         }
+        feedPostCallback.onSuccess(post);
     }
 
     /**
@@ -686,6 +674,7 @@ public class FeedPostCreateView extends FrameLayout {
         mediaAdapter.clearMedia();
         selectedMediaUris.clear();
         remoteMediaItems.clear();
+        uploadBatchId = null;
         mediaPreviewContainer.setVisibility(GONE);
         removeLink();
         hideError();
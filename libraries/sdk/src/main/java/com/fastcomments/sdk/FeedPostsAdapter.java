@@ -5,7 +5,6 @@ import android.content.res.ColorStateList;
 import android.os.Handler;
 import android.os.Looper;
 import android.text.Html;
-import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -35,8 +34,6 @@ import com.fastcomments.model.FeedPostMediaItem;
 import com.fastcomments.model.FeedPostMediaItemAsset;
 
 import java.time.OffsetDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.FormatStyle;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -1600,19 +1597,10 @@ public class FeedPostsAdapter extends RecyclerView.Adapter<FeedPostsAdapter.Feed
             if (useAbsoluteDates) {
                 // Use system's locale-aware date formatting
                 Locale currentLocale = context.getResources().getConfiguration().getLocales().get(0);
-                DateTimeFormatter formatter = DateTimeFormatter
-                        .ofLocalizedDateTime(FormatStyle.MEDIUM, FormatStyle.SHORT)
-                        .withLocale(currentLocale);
-
-                return date.format(formatter);
+                return TimeLabels.absolute(date, currentLocale);
             } else {
                 // Format as relative date: 2 minutes ago, 1 hour ago, etc.
-                CharSequence relativeTime = DateUtils.getRelativeTimeSpanString(
-                        date.toInstant().toEpochMilli(),
-                        System.currentTimeMillis(),
-                        DateUtils.MINUTE_IN_MILLIS
-                );
-                return relativeTime.toString();
+                return TimeLabels.relative(date, System.currentTimeMillis());
             }
         }
     }
@@ -0,0 +1,264 @@
+package com.fastcomments.sdk;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.fastcomments.model.FeedPost;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A compact, versioned binary format for {@link FastCommentsFeedSDK.FeedState}, meant for onSaveInstanceState.
+ * <p>
+ * Java serialization of a FeedState walks the whole FeedPost object graph, writes class descriptors for every model
+ * type, and is slow on both ends. This format writes the cursor, counters and reaction maps as plain length-prefixed
+ * fields, and each post as the generated model's own JSON (which already knows how to write its date types).
+ * <p>
+ * A Bundle is sent across Binder, which fails above roughly 1MB for the whole transaction. So {@link #save} only puts
+ * small snapshots in the Bundle directly. Larger ones are written to the cache directory, in the background, and only a
+ * token goes in the Bundle. There's one file per key, overwritten by each save, so they don't pile up. The token tells
+ * the save a Bundle refers to from a later one, for example by another view using the same key.
+ */
+public final class FeedStateSnapshot {
+
+    private static final int MAGIC = 0x46434653; // "FCFS"
+    private static final int VERSION = 1;
+
+    // snapshots above this size are written to disk instead of the Bundle
+    static final int MAX_INLINE_BYTES = 64 * 1024;
+    private static final long SPILL_MAX_BYTES = 8 * 1024 * 1024;
+    private static final long SPILL_MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+    // spills still being written, by key, so a restore in the same process doesn't read a file that isn't there yet
+    private static final Map<String, byte[]> pendingSpills = new HashMap<>();
+
+    private FeedStateSnapshot() {
+    }
+
+    public static byte[] encode(FastCommentsFeedSDK.FeedState state) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+
+        writeString(out, state.getLastPostId());
+        out.writeBoolean(state.isHasMore());
+        out.writeInt(state.getPageSize());
+        out.writeInt(state.getNewPostsCount());
+
+        final List<FeedPost> posts = state.getFeedPosts();
+        out.writeInt(posts != null ? posts.size() : -1);
+        if (posts != null) {
+            for (FeedPost post : posts) {
+                writeString(out, post.toJson());
+            }
+        }
+
+        final Map<String, Integer> likeCounts = state.getLikeCounts();
+        out.writeInt(likeCounts != null ? likeCounts.size() : -1);
+        if (likeCounts != null) {
+            for (Map.Entry<String, Integer> entry : likeCounts.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue() != null ? entry.getValue() : 0);
+            }
+        }
+
+        final Map<String, Map<String, Boolean>> myReacts = state.getMyReacts();
+        out.writeInt(myReacts != null ? myReacts.size() : -1);
+        if (myReacts != null) {
+            for (Map.Entry<String, Map<String, Boolean>> entry : myReacts.entrySet()) {
+                writeString(out, entry.getKey());
+                final Map<String, Boolean> reacts = entry.getValue();
+                out.writeInt(reacts != null ? reacts.size() : 0);
+                if (reacts != null) {
+                    for (Map.Entry<String, Boolean> react : reacts.entrySet()) {
+                        writeString(out, react.getKey());
+                        out.writeBoolean(Boolean.TRUE.equals(react.getValue()));
+                    }
+                }
+            }
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IOException if the bytes are not a snapshot, or were written by a version we don't understand
+     */
+    public static FastCommentsFeedSDK.FeedState decode(byte[] data) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a feed state snapshot");
+        }
+        final int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported feed state snapshot version " + version);
+        }
+
+        final FastCommentsFeedSDK.FeedState state = new FastCommentsFeedSDK.FeedState();
+        state.setLastPostId(readString(in));
+        state.setHasMore(in.readBoolean());
+        state.setPageSize(in.readInt());
+        state.setNewPostsCount(in.readInt());
+
+        final int postCount = in.readInt();
+        if (postCount >= 0) {
+            final List<FeedPost> posts = new ArrayList<>(postCount);
+            for (int i = 0; i < postCount; i++) {
+                posts.add(FeedPost.fromJson(readString(in)));
+            }
+            state.setFeedPosts(posts);
+        }
+
+        final int likeCountsSize = in.readInt();
+        if (likeCountsSize >= 0) {
+            final Map<String, Integer> likeCounts = new HashMap<>(likeCountsSize * 2);
+            for (int i = 0; i < likeCountsSize; i++) {
+                likeCounts.put(readString(in), in.readInt());
+            }
+            state.setLikeCounts(likeCounts);
+        }
+
+        final int myReactsSize = in.readInt();
+        if (myReactsSize >= 0) {
+            final Map<String, Map<String, Boolean>> myReacts = new HashMap<>(myReactsSize * 2);
+            for (int i = 0; i < myReactsSize; i++) {
+                final String postId = readString(in);
+                final int reactCount = in.readInt();
+                final Map<String, Boolean> reacts = new HashMap<>(reactCount * 2);
+                for (int j = 0; j < reactCount; j++) {
+                    reacts.put(readString(in), in.readBoolean());
+                }
+                myReacts.put(postId, reacts);
+            }
+            state.setMyReacts(myReacts);
+        }
+        return state;
+    }
+
+    /**
+     * Save the state into a Bundle, spilling it to the cache directory if it is too large to send across Binder.
+     */
+    public static void save(Context context, Bundle outState, String key, FastCommentsFeedSDK.FeedState state) {
+        final byte[] data;
+        try {
+            data = encode(state);
+        } catch (IOException e) {
+            Log.w("FastCommentsFeedSDK", "Failed to encode feed state", e);
+            return;
+        }
+        if (data.length <= MAX_INLINE_BYTES) {
+            outState.putByteArray(key, data);
+            return;
+        }
+        final String token = UUID.randomUUID().toString();
+        final byte[] spill = withToken(token, data);
+        synchronized (pendingSpills) {
+            pendingSpills.put(key, spill);
+        }
+        final DiskCache cache = spillCache(context);
+        FastCommentsExecutors.io().execute(() -> {
+            cache.putBytes(key, spill);
+            synchronized (pendingSpills) {
+                pendingSpills.remove(key, spill);
+            }
+        });
+        outState.putString(key + ".file", token);
+    }
+
+    /**
+     * @return The state saved by {@link #save}, or null if there is none or it could not be read (for example if the OS
+     * cleared the cache directory in the meantime).
+     */
+    public static FastCommentsFeedSDK.FeedState restore(Context context, Bundle savedState, String key) {
+        if (savedState == null) {
+            return null;
+        }
+        byte[] data = savedState.getByteArray(key);
+        if (data == null) {
+            final String token = savedState.getString(key + ".file");
+            if (token == null) {
+                return null;
+            }
+            byte[] spill;
+            synchronized (pendingSpills) {
+                spill = pendingSpills.get(key);
+            }
+            if (spill == null) {
+                spill = spillCache(context).getBytes(key);
+            }
+            data = withoutToken(token, spill);
+            if (data == null) {
+                // cleared by the OS, or overwritten by a later save
+                return null;
+            }
+        }
+        try {
+            return decode(data);
+        } catch (Exception e) {
+            Log.w("FastCommentsFeedSDK", "Discarding unreadable feed state", e);
+            return null;
+        }
+    }
+
+    private static byte[] withToken(String token, byte[] data) {
+        final byte[] tokenBytes = token.getBytes(StandardCharsets.UTF_8);
+        final byte[] spill = new byte[tokenBytes.length + data.length];
+        System.arraycopy(tokenBytes, 0, spill, 0, tokenBytes.length);
+        System.arraycopy(data, 0, spill, tokenBytes.length, data.length);
+        return spill;
+    }
+
+    /**
+     * @return The data saved with token, or null if spill is missing or from a different save
+     */
+    private static byte[] withoutToken(String token, byte[] spill) {
+        final byte[] tokenBytes = token.getBytes(StandardCharsets.UTF_8);
+        if (spill == null || spill.length < tokenBytes.length) {
+            return null;
+        }
+        for (int i = 0; i < tokenBytes.length; i++) {
+            if (spill[i] != tokenBytes[i]) {
+                return null;
+            }
+        }
+        return Arrays.copyOfRange(spill, tokenBytes.length, spill.length);
+    }
+
+    private static DiskCache spillCache(Context context) {
+        return DiskCache.create(context, "state", SPILL_MAX_BYTES, SPILL_MAX_AGE_MS);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        // not writeUTF, which is limited to 64KB and post HTML can be larger
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,423 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.PublicComment;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A comment tree kept in primitive arrays, for threads with tens of thousands of comments.
+ * <p>
+ * {@link CommentsTree} has an object per row and works out structure from the comments themselves: nesting levels are
+ * found by walking up commentsById, and showing replies walks PublicComment.getChildren(). Here every comment is a
+ * node numbered in preorder, with its parent, depth and subtree size in int arrays. A node's descendants are then the
+ * subtreeSize - 1 nodes right after it, so:
+ * <ul>
+ * <li>the depth of any node is an array read,</li>
+ * <li>the visible rows are an int array of node numbers in ascending order, so finding a node's row is a binary
+ * search, and</li>
+ * <li>expanding, collapsing or removing a subtree is one contiguous range of rows, found by binary search and moved
+ * with a single arraycopy.</li>
+ * </ul>
+ * Removed nodes are only marked, and the arrays are compacted once more than half of them are removed. Compacting and
+ * {@link #insertChildren} renumber nodes, so hold on to comment ids, not node numbers, across those.
+ * <p>
+ * Not thread safe. Like CommentsTree, use it from the main thread.
+ */
+public class FlatCommentTree {
+
+    private static final byte EXPANDED = 1;
+    private static final byte REMOVED = 2;
+
+    private PublicComment[] comments = new PublicComment[0];
+    private int[] parents = new int[0];
+    private int[] depths = new int[0];
+    private int[] subtreeSizes = new int[0];
+    private byte[] flags = new byte[0];
+    private int nodeCount = 0;
+    private int removedCount = 0;
+    private final Map<String, Integer> nodeById = new HashMap<>();
+
+    // node numbers of the visible rows, in view order, which is also ascending
+    private int[] rows = new int[0];
+    private int rowCount = 0;
+
+    /**
+     * Replace the tree with these root comments and their loaded replies. All replies start collapsed.
+     */
+    public void build(List<PublicComment> roots) {
+        nodeById.clear();
+        nodeCount = 0;
+        removedCount = 0;
+        final int total = countNodes(roots);
+        comments = new PublicComment[total];
+        parents = new int[total];
+        depths = new int[total];
+        subtreeSizes = new int[total];
+        flags = new byte[total];
+        writeNodes(roots, -1, 0, 0);
+        nodeCount = total;
+
+        rows = new int[Math.max(roots.size(), 1)];
+        rowCount = 0;
+        for (int node = 0; node < nodeCount; node += subtreeSizes[node]) {
+            rows[rowCount++] = node;
+        }
+    }
+
+    /**
+     * Add root comments, and their loaded replies, after the existing ones.
+     *
+     * @return The row the first one was put at. They take one row each.
+     */
+    public int appendRoots(List<PublicComment> roots) {
+        final int added = countNodes(roots);
+        final int firstRow = rowCount;
+        if (added == 0) {
+            return firstRow;
+        }
+        ensureNodeCapacity(nodeCount + added);
+        final int first = nodeCount;
+        writeNodes(roots, -1, 0, first);
+        nodeCount += added;
+        ensureRowCapacity(rowCount + roots.size());
+        for (int node = first; node < nodeCount; node += subtreeSizes[node]) {
+            rows[rowCount++] = node;
+        }
+        return firstRow;
+    }
+
+    /**
+     * Add replies, and their loaded replies, as the last children of parent. Nodes after them are renumbered. If
+     * parent is visible and expanded, the new children become visible.
+     *
+     * @return How many rows were added, after the last visible row of parent's subtree
+     */
+    public int insertChildren(int parent, List<PublicComment> children) {
+        final int added = countNodes(children);
+        if (added == 0 || isRemoved(parent)) {
+            return 0;
+        }
+        final int at = parent + subtreeSizes[parent];
+        ensureNodeCapacity(nodeCount + added);
+        final int moved = nodeCount - at;
+        System.arraycopy(comments, at, comments, at + added, moved);
+        System.arraycopy(parents, at, parents, at + added, moved);
+        System.arraycopy(depths, at, depths, at + added, moved);
+        System.arraycopy(subtreeSizes, at, subtreeSizes, at + added, moved);
+        System.arraycopy(flags, at, flags, at + added, moved);
+        for (int node = at + added; node < nodeCount + added; node++) {
+            if (parents[node] >= at) {
+                parents[node] += added;
+            }
+            if (comments[node] != null) {
+                nodeById.put(comments[node].getId(), node);
+            }
+        }
+        final int firstMovedRow = lowerBound(at);
+        for (int row = firstMovedRow; row < rowCount; row++) {
+            rows[row] += added;
+        }
+
+        writeNodes(children, parent, depths[parent] + 1, at);
+        nodeCount += added;
+        for (int ancestor = parent; ancestor >= 0; ancestor = parents[ancestor]) {
+            subtreeSizes[ancestor] += added;
+        }
+
+        if (!isExpanded(parent) || rowOf(parent) < 0) {
+            return 0;
+        }
+        final int[] newRows = new int[children.size()];
+        int count = 0;
+        for (int node = at; node < at + added; node += subtreeSizes[node]) {
+            newRows[count++] = node;
+        }
+        insertRows(firstMovedRow, newRows, count);
+        return count;
+    }
+
+    /**
+     * Show node's replies, and theirs if they were expanded before.
+     *
+     * @return How many rows were added, right after node's row. 0 if it was already expanded or isn't visible.
+     */
+    public int expand(int node) {
+        if (isRemoved(node) || isExpanded(node)) {
+            return 0;
+        }
+        flags[node] |= EXPANDED;
+        final int row = rowOf(node);
+        if (row < 0) {
+            // remembered for when an ancestor is expanded
+            return 0;
+        }
+        final int[] shown = new int[subtreeSizes[node] - 1];
+        final int count = collectVisible(node, shown, 0);
+        insertRows(row + 1, shown, count);
+        return count;
+    }
+
+    /**
+     * Hide node's replies.
+     *
+     * @return How many rows were removed, right after node's row
+     */
+    public int collapse(int node) {
+        if (isRemoved(node) || !isExpanded(node)) {
+            return 0;
+        }
+        flags[node] &= ~EXPANDED;
+        final int row = rowOf(node);
+        if (row < 0) {
+            return 0;
+        }
+        final int end = lowerBound(node + subtreeSizes[node]);
+        removeRows(row + 1, end);
+        return end - row - 1;
+    }
+
+    /**
+     * Remove node and everything under it.
+     *
+     * @return The row it was at and how many rows were removed from there, or null if it wasn't visible
+     */
+    public int[] remove(int node) {
+        if (isRemoved(node)) {
+            return null;
+        }
+        final int end = node + subtreeSizes[node];
+        final int row = rowOf(node);
+        int[] removedRows = null;
+        if (row >= 0) {
+            final int endRow = lowerBound(end);
+            removeRows(row, endRow);
+            removedRows = new int[]{row, endRow - row};
+        }
+        for (int i = node; i < end; i++) {
+            if (comments[i] != null) {
+                nodeById.remove(comments[i].getId());
+                comments[i] = null;
+                removedCount++;
+            }
+        }
+        flags[node] |= REMOVED;
+        if (removedCount > nodeCount / 2) {
+            compact();
+        }
+        return removedRows;
+    }
+
+    public int visibleCount() {
+        return rowCount;
+    }
+
+    public int nodeAtRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Rows: " + rowCount);
+        }
+        return rows[row];
+    }
+
+    /**
+     * @return The row node is shown at, or -1 if it's hidden or removed. O(log rows).
+     */
+    public int rowOf(int node) {
+        final int row = Arrays.binarySearch(rows, 0, rowCount, node);
+        return row >= 0 ? row : -1;
+    }
+
+    /**
+     * @return The node for a comment id, or -1
+     */
+    public int nodeOf(String commentId) {
+        final Integer node = nodeById.get(commentId);
+        return node != null ? node : -1;
+    }
+
+    public PublicComment comment(int node) {
+        return comments[node];
+    }
+
+    /**
+     * How deeply node is nested, 0 for root comments.
+     */
+    public int depth(int node) {
+        return depths[node];
+    }
+
+    /**
+     * @return node's parent, or -1 for root comments
+     */
+    public int parent(int node) {
+        return parents[node];
+    }
+
+    /**
+     * How many comments are loaded under node, not counting removed ones' places until the next compaction.
+     */
+    public int descendantCount(int node) {
+        return subtreeSizes[node] - 1;
+    }
+
+    public boolean isExpanded(int node) {
+        return (flags[node] & EXPANDED) != 0;
+    }
+
+    /**
+     * How many comments are in the tree.
+     */
+    public int size() {
+        return nodeCount - removedCount;
+    }
+
+    private boolean isRemoved(int node) {
+        return node < 0 || node >= nodeCount || comments[node] == null;
+    }
+
+    private static int countNodes(List<PublicComment> comments) {
+        if (comments == null) {
+            return 0;
+        }
+        int count = comments.size();
+        for (PublicComment comment : comments) {
+            count += countNodes(comment.getChildren());
+        }
+        return count;
+    }
+
+    /**
+     * Write comments and their replies in preorder starting at node position at.
+     *
+     * @return The position after the last one written
+     */
+    private int writeNodes(List<PublicComment> list, int parent, int depth, int at) {
+        if (list == null) {
+            return at;
+        }
+        for (PublicComment comment : list) {
+            final int node = at++;
+            comments[node] = comment;
+            parents[node] = parent;
+            depths[node] = depth;
+            flags[node] = 0;
+            nodeById.put(comment.getId(), node);
+            at = writeNodes(comment.getChildren(), node, depth + 1, at);
+            subtreeSizes[node] = at - node;
+        }
+        return at;
+    }
+
+    /**
+     * Add the nodes under an expanded node that are visible, in order, to into from count.
+     *
+     * @return The new count
+     */
+    private int collectVisible(int node, int[] into, int count) {
+        final int end = node + subtreeSizes[node];
+        for (int child = node + 1; child < end; child += subtreeSizes[child]) {
+            if (comments[child] == null) {
+                // removed, and so is everything under it
+                continue;
+            }
+            into[count++] = child;
+            if (isExpanded(child)) {
+                count = collectVisible(child, into, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The first row whose node is at or after node.
+     */
+    private int lowerBound(int node) {
+        final int row = Arrays.binarySearch(rows, 0, rowCount, node);
+        return row >= 0 ? row : -row - 1;
+    }
+
+    private void insertRows(int at, int[] toInsert, int count) {
+        if (count == 0) {
+            return;
+        }
+        ensureRowCapacity(rowCount + count);
+        System.arraycopy(rows, at, rows, at + count, rowCount - at);
+        System.arraycopy(toInsert, 0, rows, at, count);
+        rowCount += count;
+    }
+
+    private void removeRows(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        System.arraycopy(rows, to, rows, from, rowCount - to);
+        rowCount -= to - from;
+    }
+
+    /**
+     * Drop removed nodes from the arrays, renumbering the rest.
+     */
+    private void compact() {
+        final int live = nodeCount - removedCount;
+        final int[] renumbered = new int[nodeCount];
+        final PublicComment[] newComments = new PublicComment[live];
+        final int[] newParents = new int[live];
+        final int[] newDepths = new int[live];
+        final int[] newSizes = new int[live];
+        final byte[] newFlags = new byte[live];
+        int next = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (comments[node] == null) {
+                renumbered[node] = -1;
+                continue;
+            }
+            renumbered[node] = next;
+            newComments[next] = comments[node];
+            newParents[next] = parents[node] >= 0 ? renumbered[parents[node]] : -1;
+            newDepths[next] = depths[node];
+            newSizes[next] = 1;
+            newFlags[next] = flags[node];
+            next++;
+        }
+        // children come after their parents, so going backwards each subtree is complete before it's added up
+        for (int node = live - 1; node >= 0; node--) {
+            if (newParents[node] >= 0) {
+                newSizes[newParents[node]] += newSizes[node];
+            }
+        }
+        for (int row = 0; row < rowCount; row++) {
+            rows[row] = renumbered[rows[row]];
+        }
+        comments = newComments;
+        parents = newParents;
+        depths = newDepths;
+        subtreeSizes = newSizes;
+        flags = newFlags;
+        nodeCount = live;
+        removedCount = 0;
+        nodeById.clear();
+        for (int node = 0; node < live; node++) {
+            nodeById.put(comments[node].getId(), node);
+        }
+    }
+
+    private void ensureNodeCapacity(int needed) {
+        if (needed <= comments.length) {
+            return;
+        }
+        final int capacity = Math.max(needed, comments.length * 2);
+        comments = Arrays.copyOf(comments, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        subtreeSizes = Arrays.copyOf(subtreeSizes, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    private void ensureRowCapacity(int needed) {
+        if (needed > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(needed, rows.length * 2));
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.net.Uri;
 import android.text.Editable;
 import android.text.Html;
+import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.style.ClickableSpan;
 import android.text.style.URLSpan;
@@ -37,6 +38,51 @@ public class HtmlLinkHandler {
         return makeLinkClickable(context, spanned);
     }
     
+    /**
+     * Parse the HTML without binding it to a Context or TextView, so the result can be cached and reused across binds.
+     * Links become clickable spans that open with the clicked view's context, and images are left as placeholder
+     * ImageSpans (see {@link ParsedCommentHtml}).
+     * Safe to call off the main thread.
+     * @param html The HTML string
+     * @return Spanned content with clickable links
+     */
+    public static SpannableStringBuilder parseHtml(String html) {
+        Spanned spanned = Html.fromHtml(html, Html.FROM_HTML_MODE_LEGACY, null, null);
+        SpannableStringBuilder text = new SpannableStringBuilder(spanned);
+        for (URLSpan span : text.getSpans(0, text.length(), URLSpan.class)) {
+            int start = text.getSpanStart(span);
+            int end = text.getSpanEnd(span);
+            int flags = text.getSpanFlags(span);
+            text.removeSpan(span);
+            text.setSpan(new LinkSpan(span.getURL()), start, end, flags);
+        }
+        return text;
+    }
+
+    /**
+     * Opens the link in the external browser. Uses the clicked view's context so it can be shared between views.
+     */
+    private static class LinkSpan extends ClickableSpan {
+        private final String url;
+
+        LinkSpan(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public void onClick(@NonNull View widget) {
+            widget.getContext().startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(withScheme(url))));
+        }
+    }
+
+    private static String withScheme(String url) {
+        if (!url.toLowerCase(Locale.US).startsWith("http://") &&
+                !url.toLowerCase(Locale.US).startsWith("https://")) {
+            return "https://" + url;
+        }
+        return url;
+    }
+
     /**
      * Makes links in text clickable and opens them in external browser
      * @param context Context for opening links
@@ -0,0 +1,356 @@
+package com.fastcomments.sdk;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.fastcomments.model.APIError;
+import com.fastcomments.model.FeedPostMediaItem;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Uploads a batch of images, a few at a time, shrinking each one before it's sent.
+ * <p>
+ * Images used to be copied at full size into a temp file and all uploaded at once, so picking ten photos meant ten
+ * full-resolution uploads fighting over the connection. The server resizes everything to the CrossPlatform preset
+ * anyway, so now each image is decoded on a worker thread straight from the ContentResolver, downsampled during
+ * decode to at most {@link #maxDimensionPx} on its long edge and re-encoded. Images already small enough are sent as
+ * they are, directly from disk for file:// uris. GIFs are never re-encoded, so they stay animated.
+ * <p>
+ * At most {@link #maxConcurrentUploads} images are prepared or uploading at once. Results are in the order the uris
+ * were given, and every temp file is deleted once its upload finishes either way.
+ * <p>
+ * Call upload() on the main thread. The listener and callback are called on the main thread.
+ */
+public class ImageUploadPipeline {
+
+    public interface Uploader {
+        /**
+         * Upload the file, reporting progress through callback.onUploadProgress. May call back on any thread.
+         */
+        void upload(File file, FCCallback<FeedPostMediaItem> callback);
+    }
+
+    public interface ProgressListener {
+        /**
+         * @param index Which of the uris this is about
+         */
+        void onProgress(int index, long bytesWritten, long contentLength);
+    }
+
+    interface Preparer {
+        /**
+         * @param dir Where to put the file, if one has to be made
+         */
+        PreparedImage prepare(Context context, Uri uri, File dir) throws IOException;
+    }
+
+    static class PreparedImage {
+        final File file;
+        // whether we made the file, and so must delete it
+        final boolean temporary;
+
+        PreparedImage(File file, boolean temporary) {
+            this.file = file;
+            this.temporary = temporary;
+        }
+    }
+
+    public int maxConcurrentUploads = 3;
+    public int maxDimensionPx = 2048;
+    public int jpegQuality = 85;
+
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+
+    private final Uploader uploader;
+    private final Preparer preparer;
+    private final Executor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public ImageUploadPipeline(Uploader uploader) {
+        this.uploader = uploader;
+        this.preparer = (context, uri, dir) -> prepareImage(context, uri, dir, maxDimensionPx, jpegQuality);
+        this.executor = FastCommentsExecutors.computation();
+    }
+
+    ImageUploadPipeline(Uploader uploader, Preparer preparer, Executor executor) {
+        this.uploader = uploader;
+        this.preparer = preparer;
+        this.executor = executor;
+    }
+
+    /**
+     * @param listener May be null
+     * @param callback Gets the uploaded items in the same order as uris, or the first error. Either way, only once
+     *                 every upload that was started has finished.
+     */
+    public void upload(Context context, List<Uri> uris, ProgressListener listener, FCCallback<List<FeedPostMediaItem>> callback) {
+        new Batch(context.getApplicationContext(), uris, listener, callback).start();
+    }
+
+    /**
+     * Tracks one call to upload(). Only touched on the main thread.
+     */
+    private class Batch {
+        final Context context;
+        final List<Uri> uris;
+        final ProgressListener listener;
+        final FCCallback<List<FeedPostMediaItem>> callback;
+        final FeedPostMediaItem[] results;
+        int nextIndex = 0;
+        int inFlight = 0;
+        APIError error;
+
+        Batch(Context context, List<Uri> uris, ProgressListener listener, FCCallback<List<FeedPostMediaItem>> callback) {
+            this.context = context;
+            this.uris = uris;
+            this.listener = listener;
+            this.callback = callback;
+            this.results = new FeedPostMediaItem[uris.size()];
+        }
+
+        void start() {
+            startMore();
+            if (inFlight == 0) {
+                // nothing to upload
+                finish();
+            }
+        }
+
+        void startMore() {
+            while (error == null && inFlight < Math.max(maxConcurrentUploads, 1) && nextIndex < uris.size()) {
+                final int index = nextIndex++;
+                inFlight++;
+                final Uri uri = uris.get(index);
+                executor.execute(() -> {
+                    final PreparedImage image;
+                    try {
+                        image = preparer.prepare(context, uri, context.getCacheDir());
+                    } catch (IOException | RuntimeException e) {
+                        final APIError prepareError = new APIError();
+                        prepareError.setReason("Failed to prepare image for upload: " + e.getMessage());
+                        mainHandler.post(() -> onDone(index, null, prepareError));
+                        return;
+                    }
+                    send(index, image);
+                });
+            }
+        }
+
+        void send(int index, PreparedImage image) {
+            uploader.upload(image.file, new FCCallback<FeedPostMediaItem>() {
+                // progress comes in small chunks, only pass it on when the percentage moves
+                int lastPercent = -1;
+
+                @Override
+                public boolean onFailure(APIError uploadError) {
+                    deleteIfTemporary(image);
+                    mainHandler.post(() -> onDone(index, null, uploadError));
+                    return CONSUME;
+                }
+
+                @Override
+                public boolean onSuccess(FeedPostMediaItem item) {
+                    deleteIfTemporary(image);
+                    mainHandler.post(() -> onDone(index, item, null));
+                    return CONSUME;
+                }
+
+                @Override
+                public void onUploadProgress(long bytesWritten, long contentLength, boolean done) {
+                    if (listener == null || contentLength <= 0) {
+                        return;
+                    }
+                    final int percent = (int) (bytesWritten * 100 / contentLength);
+                    if (percent != lastPercent) {
+                        lastPercent = percent;
+                        mainHandler.post(() -> listener.onProgress(index, bytesWritten, contentLength));
+                    }
+                }
+            });
+        }
+
+        void onDone(int index, FeedPostMediaItem item, APIError itemError) {
+            inFlight--;
+            if (itemError != null) {
+                if (error == null) {
+                    error = itemError;
+                }
+            } else {
+                results[index] = item;
+            }
+            startMore();
+            if (inFlight == 0 && (error != null || nextIndex >= uris.size())) {
+                finish();
+            }
+        }
+
+        void finish() {
+            if (error != null) {
+                callback.onFailure(error);
+            } else {
+                callback.onSuccess(new ArrayList<>(Arrays.asList(results)));
+            }
+        }
+    }
+
+    private static void deleteIfTemporary(PreparedImage image) {
+        if (image.temporary) {
+            //noinspection ResultOfMethodCallIgnored
+            image.file.delete();
+        }
+    }
+
+    /**
+     * Get a file to upload for uri, shrunk to maxDimensionPx if needed. Files we have to make go in dir.
+     */
+    static PreparedImage prepareImage(Context context, Uri uri, File dir, int maxDimensionPx, int jpegQuality) throws IOException {
+        final ContentResolver resolver = context.getContentResolver();
+        final BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = open(resolver, uri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        final boolean isGif = "image/gif".equals(bounds.outMimeType);
+        final boolean needsShrinking = bounds.outWidth > 0 && bounds.outHeight > 0
+                && Math.max(bounds.outWidth, bounds.outHeight) > maxDimensionPx;
+        if (isGif || !needsShrinking) {
+            if ("file".equals(uri.getScheme()) && uri.getPath() != null) {
+                return new PreparedImage(new File(uri.getPath()), false);
+            }
+            // the API client needs a file, so content uris have to be copied, but only when we can't shrink them
+            final File copy = File.createTempFile("upload_", extensionFor(bounds.outMimeType), dir);
+            try (InputStream in = open(resolver, uri); OutputStream out = new FileOutputStream(copy)) {
+                final byte[] buffer = new byte[COPY_BUFFER_BYTES];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                //noinspection ResultOfMethodCallIgnored
+                copy.delete();
+                throw e;
+            }
+            return new PreparedImage(copy, true);
+        }
+
+        final int longEdge = Math.max(bounds.outWidth, bounds.outHeight);
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(longEdge, maxDimensionPx);
+        // the decoder scales the rest of the way itself, so the full size bitmap is never in memory
+        options.inScaled = true;
+        options.inDensity = longEdge / options.inSampleSize;
+        options.inTargetDensity = maxDimensionPx;
+        Bitmap bitmap;
+        try (InputStream in = open(resolver, uri)) {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Could not decode image");
+        }
+        bitmap = applyExifOrientation(resolver, uri, bitmap);
+
+        final boolean png = bitmap.hasAlpha();
+        final File out = File.createTempFile("upload_", png ? ".png" : ".jpg", dir);
+        try (OutputStream stream = new FileOutputStream(out)) {
+            if (!bitmap.compress(png ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, jpegQuality, stream)) {
+                throw new IOException("Could not encode image");
+            }
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            out.delete();
+            throw e;
+        } finally {
+            bitmap.recycle();
+        }
+        return new PreparedImage(out, true);
+    }
+
+    /**
+     * The largest power of two that keeps the long edge at or above maxDimensionPx.
+     */
+    static int sampleSize(int longEdge, int maxDimensionPx) {
+        int sampleSize = 1;
+        while (longEdge / (sampleSize * 2) >= maxDimensionPx) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Re-encoding drops the EXIF data, so rotate the pixels the way the orientation tag says or the photo would come
+     * out sideways.
+     */
+    private static Bitmap applyExifOrientation(ContentResolver resolver, Uri uri, Bitmap bitmap) {
+        final int orientation;
+        try (InputStream in = open(resolver, uri)) {
+            orientation = new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            return bitmap;
+        }
+        final Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.postRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.postRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.postRotate(270);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.postScale(1, -1);
+                break;
+            default:
+                return bitmap;
+        }
+        final Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (rotated != bitmap) {
+            bitmap.recycle();
+        }
+        return rotated;
+    }
+
+    private static InputStream open(ContentResolver resolver, Uri uri) throws IOException {
+        final InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new IOException("Failed to open input stream from URI");
+        }
+        return in;
+    }
+
+    private static String extensionFor(String mimeType) {
+        if (mimeType == null) {
+            return ".jpg";
+        }
+        switch (mimeType) {
+            case "image/gif":
+                return ".gif";
+            case "image/png":
+                return ".png";
+            case "image/webp":
+                return ".webp";
+            default:
+                return ".jpg";
+        }
+    }
+}
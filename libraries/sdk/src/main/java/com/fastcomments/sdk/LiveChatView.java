@@ -64,9 +64,11 @@ public class LiveChatView extends FrameLayout {
     private Button btnLoadAll;
     private ProgressBar paginationProgressBar;
     private OnBackPressedCallback backPressedCallback;
-    private Handler dateUpdateHandler;
-    private Runnable dateUpdateRunnable;
-    private static final long DATE_UPDATE_INTERVAL = 60000; // Update every minute
+    private Handler uiHandler;
+    // registered with TimeLabels while relative dates are shown, to refresh them every minute
+    private final Runnable dateTickListener = this::updateDates;
+    private static final int MAX_RETAINED_MESSAGES = 2000;
+    private static final int MAX_SCROLLBACK_MESSAGES = 20000;
     private boolean autoScrollToBottom = true;
     private LinearLayoutManager layoutManager;
     private View liveChatHeader;
@@ -149,17 +151,6 @@ public class LiveChatView extends FrameLayout {
     private void init(Context context, AttributeSet attrs, FastCommentsSDK sdk) {
         LayoutInflater.from(context).inflate(R.layout.fast_comments_view, this, true);
 
-        // Initialize the date update handler and runnable
-        dateUpdateHandler = new Handler(Looper.getMainLooper());
-        dateUpdateRunnable = new Runnable() {
-            @Override
-            public void run() {
-                updateDates();
-                // Schedule the next update
-                dateUpdateHandler.postDelayed(this, DATE_UPDATE_INTERVAL);
-            }
-        };
-
         recyclerView = findViewById(R.id.recyclerViewComments);
         progressBar = findViewById(R.id.commentsProgressBar);
         emptyStateView = findViewById(R.id.emptyStateView);
@@ -321,6 +312,16 @@ public class LiveChatView extends FrameLayout {
         adapter = new CommentsAdapter(getContext(), sdk);
         recyclerView.setAdapter(adapter);
 
+        // Presence is only fetched for what's on screen, so keep the SDK up to date as scrolling settles
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    reportVisibleRange();
+                }
+            }
+        });
+
         // When items are added (live message or own post), clear the empty state
         adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
             @Override
@@ -336,6 +337,14 @@ public class LiveChatView extends FrameLayout {
 
         // Enable live chat style in the comment tree
         sdk.commentsTree.setLiveChatStyle(true);
+        // An all-day chat would otherwise keep every message in memory. Messages scrolled far past are evicted and
+        // fetched again if the user scrolls back to them.
+        if (sdk.commentsTree.maxRetainedComments == 0) {
+            sdk.commentsTree.maxRetainedComments = MAX_RETAINED_MESSAGES;
+        }
+        if (sdk.commentsTree.maxTombstones == 0) {
+            sdk.commentsTree.maxTombstones = MAX_SCROLLBACK_MESSAGES;
+        }
 
         // Add live chat header bar above the comments container
         if (liveChatHeader == null) {
@@ -1085,13 +1094,19 @@ public class LiveChatView extends FrameLayout {
                         paginationControls.setVisibility(View.GONE);
                     } else {
                         setIsEmpty(false);
-                        adapter.notifyDataSetChanged();
+                        if (!sdk.asyncTreeBuild) {
+                            // otherwise the tree already dispatched a diff to the adapter
+                            adapter.notifyDataSetChanged();
+                        }
 
                         // Update pagination controls
                         updatePaginationControls();
 
                         // Start the date update timer
                         startDateUpdateTimer();
+
+                        // Once laid out, fetch presence for whatever ended up on screen
+                        recyclerView.post(() -> reportVisibleRange());
                         
                         // For chat view, always scroll to bottom after loading
                         if (autoScrollToBottom) {
@@ -1560,6 +1575,15 @@ public class LiveChatView extends FrameLayout {
         }
     }
 
+    /**
+     * Tell the SDK which comments are on screen, for presence fetching
+     */
+    private void reportVisibleRange() {
+        if (sdk != null && layoutManager != null) {
+            sdk.setVisibleRange(layoutManager.findFirstVisibleItemPosition(), layoutManager.findLastVisibleItemPosition());
+        }
+    }
+
     /**
      * Starts the timer for updating relative dates
      */
@@ -1569,7 +1593,7 @@ public class LiveChatView extends FrameLayout {
 
         // Only start the timer if we have comments and absolute dates are not enabled
         if (adapter.getItemCount() > 0 && (sdk.getConfig().absoluteDates == null || !sdk.getConfig().absoluteDates)) {
-            dateUpdateHandler.postDelayed(dateUpdateRunnable, DATE_UPDATE_INTERVAL);
+            TimeLabels.addTickListener(dateTickListener);
         }
     }
 
@@ -1577,9 +1601,7 @@ public class LiveChatView extends FrameLayout {
      * Stops the timer for updating relative dates
      */
     private void stopDateUpdateTimer() {
-        if (dateUpdateHandler != null) {
-            dateUpdateHandler.removeCallbacks(dateUpdateRunnable);
-        }
+        TimeLabels.removeTickListener(dateTickListener);
     }
 
     /**
@@ -1588,10 +1610,10 @@ public class LiveChatView extends FrameLayout {
      * @return Handler for UI updates
      */
     public Handler getHandler() {
-        if (dateUpdateHandler == null) {
-            dateUpdateHandler = new Handler(Looper.getMainLooper());
+        if (uiHandler == null) {
+            uiHandler = new Handler(Looper.getMainLooper());
         }
-        return dateUpdateHandler;
+        return uiHandler;
     }
 
     /**
@@ -1650,11 +1672,10 @@ public class LiveChatView extends FrameLayout {
     public void cleanup() {
         stopDateUpdateTimer();
         
-        if (dateUpdateHandler != null) {
-            dateUpdateHandler.removeCallbacksAndMessages(null);
-            dateUpdateHandler = null;
+        if (uiHandler != null) {
+            uiHandler.removeCallbacksAndMessages(null);
+            uiHandler = null;
         }
-        dateUpdateRunnable = null;
         
         if (backPressedCallback != null) {
             backPressedCallback.setEnabled(false);
@@ -0,0 +1,185 @@
+package com.fastcomments.sdk;
+
+import android.os.Handler;
+import android.view.Choreographer;
+
+import com.fastcomments.model.LiveEvent;
+import com.fastcomments.model.LiveEventType;
+import com.fastcomments.model.PubSubVote;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects live events as they come off the WebSocket thread and hands them to the main thread at most once per frame.
+ * <p>
+ * During busy live sessions we can get hundreds of votes and comments a second. Posting a Runnable per event meant a tree
+ * mutation and an adapter notification per event, which is what made the UI stutter. Instead, events are buffered until
+ * the next Choreographer frame and folded:
+ * - N NEW_VOTE/DELETED_VOTE events for a comment become one net up/down change.
+ * - Presence joins/leaves become one online state per user (last event wins).
+ * - Repeated UPDATED_COMMENT events for a comment keep only the latest one.
+ * Everything else is kept in arrival order.
+ */
+public class LiveEventBatcher implements Choreographer.FrameCallback {
+
+    public interface BatchListener {
+        void onBatch(Batch batch);
+    }
+
+    /**
+     * Net vote change for a single comment within one batch.
+     */
+    public static class VoteDelta {
+        public int up = 0;
+        public int down = 0;
+    }
+
+    /**
+     * The folded result of all events received during one frame.
+     */
+    public static class Batch {
+        // Events that can't be folded, in arrival order (votes and presence events are not in here).
+        public final List<LiveEvent> events = new ArrayList<>();
+        // Keyed by comment id, in the order the comments were first voted on.
+        public final Map<String, VoteDelta> voteDeltas = new LinkedHashMap<>();
+        // Keyed by user id (or anon user id).
+        public final Map<String, Boolean> presence = new LinkedHashMap<>();
+        // Latest subscriber count reported by a presence event, if any.
+        public Integer subscriberCount;
+
+        public boolean isEmpty() {
+            return events.isEmpty() && voteDeltas.isEmpty() && presence.isEmpty() && subscriberCount == null;
+        }
+    }
+
+    private final Handler mainHandler;
+    private final BatchListener listener;
+    private final Object lock = new Object();
+    private List<LiveEvent> pending = new ArrayList<>();
+    private boolean frameScheduled = false;
+
+    public LiveEventBatcher(Handler mainHandler, BatchListener listener) {
+        this.mainHandler = mainHandler;
+        this.listener = listener;
+    }
+
+    /**
+     * Queue an event for the next frame. Safe to call from any thread.
+     */
+    public void enqueue(LiveEvent event) {
+        synchronized (lock) {
+            pending.add(event);
+            if (frameScheduled) {
+                return;
+            }
+            frameScheduled = true;
+        }
+        // Choreographer is per-Looper, so the callback has to be registered from the main thread.
+        mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(this));
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        final List<LiveEvent> events;
+        synchronized (lock) {
+            events = pending;
+            pending = new ArrayList<>();
+            frameScheduled = false;
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        final Batch batch = fold(events);
+        if (!batch.isEmpty()) {
+            listener.onBatch(batch);
+        }
+    }
+
+    /**
+     * Drop anything queued but not yet applied.
+     */
+    public void clear() {
+        synchronized (lock) {
+            pending = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Fold a list of events (in arrival order) into a single batch.
+     */
+    public static Batch fold(List<LiveEvent> events) {
+        final Batch batch = new Batch();
+
+        // Only the last update for a comment matters, since each update carries the full comment.
+        final Map<String, Integer> lastUpdateIndex = new HashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            final LiveEvent event = events.get(i);
+            if (event.getType() == LiveEventType.UPDATED_COMMENT && event.getComment() != null) {
+                lastUpdateIndex.put(event.getComment().getId(), i);
+            }
+        }
+
+        for (int i = 0; i < events.size(); i++) {
+            final LiveEvent event = events.get(i);
+            final LiveEventType type = event.getType();
+            if (type == null) {
+                continue;
+            }
+            switch (type) {
+                case NEW_VOTE:
+                case DELETED_VOTE:
+                    foldVote(batch, event.getVote(), type == LiveEventType.NEW_VOTE ? 1 : -1);
+                    break;
+                case P_U:
+                    // Leaves before joins, same as the server intends when it batches a reconnect into one event.
+                    if (event.getUl() != null) {
+                        for (String userId : event.getUl()) {
+                            batch.presence.put(userId, false);
+                        }
+                    }
+                    if (event.getUj() != null) {
+                        for (String userId : event.getUj()) {
+                            batch.presence.put(userId, true);
+                        }
+                    }
+                    if (event.getSc() != null) {
+                        batch.subscriberCount = event.getSc();
+                    }
+                    break;
+                case UPDATED_COMMENT:
+                    if (event.getComment() != null) {
+                        final Integer last = lastUpdateIndex.get(event.getComment().getId());
+                        if (last != null && last != i) {
+                            break;
+                        }
+                    }
+                    batch.events.add(event);
+                    break;
+                default:
+                    batch.events.add(event);
+                    break;
+            }
+        }
+        return batch;
+    }
+
+    private static void foldVote(Batch batch, PubSubVote vote, int sign) {
+        if (vote == null || vote.getCommentId() == null || vote.getDirection() == null) {
+            return;
+        }
+        VoteDelta delta = batch.voteDeltas.get(vote.getCommentId());
+        if (delta == null) {
+            delta = new VoteDelta();
+            batch.voteDeltas.put(vote.getCommentId(), delta);
+        }
+        if (vote.getDirection() > 0) {
+            delta.up += sign;
+        } else {
+            delta.down += sign;
+        }
+    }
+}
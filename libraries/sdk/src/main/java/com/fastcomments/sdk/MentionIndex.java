@@ -0,0 +1,164 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.PublicComment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A prefix trie of users we know about, from earlier mention searches and from comments on the page, so mention
+ * suggestions can be shown as the user types without waiting on the network.
+ * <p>
+ * Names are matched case-insensitively from their start, like the server's search. Each user is indexed once, under
+ * the latest name seen for them. Comments only carry a display name, which can differ from the username a mention
+ * needs, so commenters are only indexed until a search has returned their username.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class MentionIndex {
+
+    private static class Node {
+        // sorted, so results come out in alphabetical order
+        final TreeMap<Character, Node> children = new TreeMap<>();
+        // users whose name ends at this node
+        List<UserMention> users;
+    }
+
+    private final Node root = new Node();
+    private final Map<String, UserMention> usersById = new HashMap<>();
+    // ids indexed under a username from the server, rather than a commenter's display name
+    private final Set<String> usernameIds = new HashSet<>();
+
+    /**
+     * Index a user from a mention search, under their username.
+     */
+    public void add(UserMention user) {
+        if (index(user)) {
+            usernameIds.add(user.getId());
+        }
+    }
+
+    private boolean index(UserMention user) {
+        if (user == null || user.getId() == null || user.getUsername() == null || user.getUsername().isEmpty()) {
+            return false;
+        }
+        final UserMention existing = usersById.get(user.getId());
+        if (existing != null) {
+            if (existing.getUsername().equals(user.getUsername())) {
+                if (user.getAvatarUrl() != null) {
+                    existing.setAvatarUrl(user.getAvatarUrl());
+                }
+                return true;
+            }
+            // renamed, move them
+            remove(existing);
+        }
+        final UserMention copy = new UserMention(user.getId(), user.getUsername(), user.getAvatarUrl());
+        usersById.put(copy.getId(), copy);
+        Node node = root;
+        for (char c : key(copy.getUsername()).toCharArray()) {
+            Node child = node.children.get(c);
+            if (child == null) {
+                child = new Node();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        if (node.users == null) {
+            node.users = new ArrayList<>(1);
+        }
+        node.users.add(copy);
+        return true;
+    }
+
+    public void addAll(List<UserMention> users) {
+        for (UserMention user : users) {
+            add(user);
+        }
+    }
+
+    /**
+     * Index everyone who has commented on the page, by display name, unless a search already gave us their username.
+     * Anonymous commenters can't be mentioned, so they're skipped.
+     */
+    public void addCommenters(CommentsTree commentsTree) {
+        for (List<RenderableComment> comments : commentsTree.commentsByUserId.values()) {
+            if (comments.isEmpty()) {
+                continue;
+            }
+            final PublicComment comment = comments.get(0).getComment();
+            if (comment.getUserId() != null && !usernameIds.contains(comment.getUserId())) {
+                index(new UserMention(comment.getUserId(), comment.getCommenterName(), comment.getAvatarSrc()));
+            }
+        }
+    }
+
+    /**
+     * Users whose name starts with prefix, alphabetically. Each result is a new object, so callers may modify them.
+     */
+    public List<UserMention> search(String prefix, int limit) {
+        final List<UserMention> results = new ArrayList<>();
+        Node node = root;
+        for (char c : key(prefix).toCharArray()) {
+            node = node.children.get(c);
+            if (node == null) {
+                return results;
+            }
+        }
+        collect(node, results, limit);
+        return results;
+    }
+
+    public int size() {
+        return usersById.size();
+    }
+
+    public void clear() {
+        root.children.clear();
+        root.users = null;
+        usersById.clear();
+        usernameIds.clear();
+    }
+
+    private static void collect(Node node, List<UserMention> results, int limit) {
+        if (node.users != null) {
+            for (UserMention user : node.users) {
+                if (results.size() >= limit) {
+                    return;
+                }
+                results.add(new UserMention(user.getId(), user.getUsername(), user.getAvatarUrl()));
+            }
+        }
+        for (Node child : node.children.values()) {
+            if (results.size() >= limit) {
+                return;
+            }
+            collect(child, results, limit);
+        }
+    }
+
+    private void remove(UserMention user) {
+        usersById.remove(user.getId());
+        Node node = root;
+        for (char c : key(user.getUsername()).toCharArray()) {
+            node = node.children.get(c);
+            if (node == null) {
+                return;
+            }
+        }
+        if (node.users != null) {
+            node.users.remove(user);
+        }
+        // empty branches are left in place, renames are rare
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
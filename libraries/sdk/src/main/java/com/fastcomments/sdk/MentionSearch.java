@@ -0,0 +1,172 @@
+package com.fastcomments.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.fastcomments.model.APIError;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Mention suggestions for one input, as the user types after an @.
+ * <p>
+ * Each keystroke first answers from the {@link MentionIndex} (users from earlier searches and commenters on the page),
+ * so suggestions usually show up right away. Only when that doesn't give {@link #maxResults} users do we ask the
+ * server, once typing has paused for {@link #debounceMs}, and a newer keystroke cancels the search in flight rather
+ * than being dropped while it runs. Terms the server found nobody for are remembered, so typing more after them
+ * doesn't search again.
+ * <p>
+ * All methods must be called on the main thread, and the listener is called on it.
+ */
+public class MentionSearch {
+
+    public interface Requester {
+        /**
+         * Search the server for users whose name starts with term. May call back on any thread.
+         *
+         * @return Cancels the search, or null if it can't be cancelled
+         */
+        Runnable search(String term, FCCallback<List<UserMention>> callback);
+    }
+
+    public interface Listener {
+        /**
+         * The suggestions for term, which may be empty. Called one or more times per search as results come in.
+         */
+        void onResults(String term, List<UserMention> users);
+    }
+
+    public long debounceMs = 250;
+    public int maxResults = 10;
+
+    private final MentionIndex index;
+    private final CommentsTree commentsTree;
+    private final Requester requester;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // terms the server found nobody for, so nobody matches anything starting with them either
+    private final Set<String> emptyTerms = new HashSet<>();
+    private Runnable pendingSearch;
+    private Runnable cancelRequest;
+    // bumped for every search so results for older terms are ignored
+    private int generation = 0;
+    private boolean commentersIndexed = false;
+
+    public MentionSearch(MentionIndex index, CommentsTree commentsTree, Requester requester) {
+        this.index = index;
+        this.commentsTree = commentsTree;
+        this.requester = requester;
+    }
+
+    public void search(String term, Listener listener) {
+        stop();
+        final int searchGeneration = ++generation;
+        if (!commentersIndexed) {
+            // once per mention, so people who commented since the last one are picked up
+            index.addCommenters(commentsTree);
+            commentersIndexed = true;
+        }
+        final List<UserMention> local = index.search(term, maxResults);
+        final boolean needsServer = local.size() < maxResults && !isKnownEmpty(term);
+        if (!local.isEmpty() || !needsServer) {
+            listener.onResults(term, local);
+        }
+        if (!needsServer) {
+            return;
+        }
+        pendingSearch = () -> {
+            pendingSearch = null;
+            cancelRequest = requester.search(term, new FCCallback<List<UserMention>>() {
+                @Override
+                public boolean onFailure(APIError error) {
+                    handler.post(() -> {
+                        if (searchGeneration != generation) {
+                            return;
+                        }
+                        cancelRequest = null;
+                        // keep showing what we found locally, or nothing
+                        if (local.isEmpty()) {
+                            listener.onResults(term, local);
+                        }
+                    });
+                    return CONSUME;
+                }
+
+                @Override
+                public boolean onSuccess(List<UserMention> users) {
+                    handler.post(() -> {
+                        if (searchGeneration != generation) {
+                            return;
+                        }
+                        cancelRequest = null;
+                        if (users.isEmpty()) {
+                            emptyTerms.add(key(term));
+                        }
+                        index.addAll(users);
+                        listener.onResults(term, merge(term, users));
+                    });
+                    return CONSUME;
+                }
+            });
+        };
+        handler.postDelayed(pendingSearch, debounceMs);
+    }
+
+    /**
+     * Stop searching, for when the mention is finished or abandoned. The listener won't be called again until the
+     * next search.
+     */
+    public void cancel() {
+        stop();
+        generation++;
+        commentersIndexed = false;
+    }
+
+    private void stop() {
+        if (pendingSearch != null) {
+            handler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+        if (cancelRequest != null) {
+            cancelRequest.run();
+            cancelRequest = null;
+        }
+    }
+
+    /**
+     * What the index has for term, now including the server's results, then any server results the index can't match
+     * by name (the server also matches on other fields).
+     */
+    private List<UserMention> merge(String term, List<UserMention> fromServer) {
+        final List<UserMention> results = index.search(term, maxResults);
+        final Set<String> ids = new HashSet<>();
+        for (UserMention user : results) {
+            ids.add(user.getId());
+        }
+        for (UserMention user : fromServer) {
+            if (results.size() >= maxResults) {
+                break;
+            }
+            if (ids.add(user.getId())) {
+                results.add(user);
+            }
+        }
+        return results;
+    }
+
+    private boolean isKnownEmpty(String term) {
+        final String key = key(term);
+        for (int end = 1; end <= key.length(); end++) {
+            if (emptyTerms.contains(key.substring(0, end))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(String term) {
+        return term.toLowerCase(Locale.ROOT);
+    }
+}
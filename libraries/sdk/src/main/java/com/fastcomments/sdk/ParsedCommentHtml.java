@@ -0,0 +1,94 @@
+package com.fastcomments.sdk;
+
+import android.content.Context;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.ImageSpan;
+import android.widget.TextView;
+
+/**
+ * Comment HTML parsed ahead of time, so binding a comment only has to attach it to the TextView.
+ * <p>
+ * Holds the styled text with clickable link spans already in place, and the ranges/sources of any images.
+ * Images are kept out of the text since loading one needs the TextView it will be displayed in.
+ * Immutable once parsed, so it can be built on a worker thread and shared between binds.
+ */
+public class ParsedCommentHtml {
+
+    private static final int[] NO_RANGES = new int[0];
+    private static final String[] NO_SOURCES = new String[0];
+
+    private final Spanned text;
+    private final int[] imageStarts;
+    private final int[] imageEnds;
+    private final int[] imageFlags;
+    private final String[] imageSources;
+
+    private ParsedCommentHtml(Spanned text, int[] imageStarts, int[] imageEnds, int[] imageFlags, String[] imageSources) {
+        this.text = text;
+        this.imageStarts = imageStarts;
+        this.imageEnds = imageEnds;
+        this.imageFlags = imageFlags;
+        this.imageSources = imageSources;
+    }
+
+    /**
+     * Parse comment HTML. Safe to call off the main thread.
+     */
+    public static ParsedCommentHtml parse(String html) {
+        final SpannableStringBuilder text = HtmlLinkHandler.parseHtml(html);
+        final ImageSpan[] placeholders = text.getSpans(0, text.length(), ImageSpan.class);
+        if (placeholders.length == 0) {
+            return new ParsedCommentHtml(text, NO_RANGES, NO_RANGES, NO_RANGES, NO_SOURCES);
+        }
+        final int[] starts = new int[placeholders.length];
+        final int[] ends = new int[placeholders.length];
+        final int[] flags = new int[placeholders.length];
+        final String[] sources = new String[placeholders.length];
+        for (int i = 0; i < placeholders.length; i++) {
+            final ImageSpan placeholder = placeholders[i];
+            starts[i] = text.getSpanStart(placeholder);
+            ends[i] = text.getSpanEnd(placeholder);
+            flags[i] = text.getSpanFlags(placeholder);
+            sources[i] = placeholder.getSource();
+            text.removeSpan(placeholder);
+        }
+        return new ParsedCommentHtml(text, starts, ends, flags, sources);
+    }
+
+    /**
+     * The parsed text, with links but without images.
+     */
+    public Spanned getText() {
+        return text;
+    }
+
+    public int getImageCount() {
+        return imageSources.length;
+    }
+
+    /**
+     * Get the content to display in the given TextView. Without images this is the shared parsed text, otherwise it's
+     * a copy with images that load into this view.
+     */
+    public Spanned attach(Context context, TextView textView) {
+        if (imageSources.length == 0) {
+            return text;
+        }
+        final CustomImageGetter imageGetter = new CustomImageGetter(context, textView);
+        final SpannableStringBuilder withImages = new SpannableStringBuilder(text);
+        for (int i = 0; i < imageSources.length; i++) {
+            withImages.setSpan(new ImageSpan(imageGetter.getDrawable(imageSources[i]), imageSources[i]), imageStarts[i], imageEnds[i], imageFlags[i]);
+        }
+        return withImages;
+    }
+
+    /**
+     * Rough retained size, for the cache's memory budget.
+     */
+    int estimateSizeBytes() {
+        return 64 + text.length() * 2
+                + text.getSpans(0, text.length(), Object.class).length * 48
+                + imageSources.length * 80;
+    }
+}
@@ -0,0 +1,160 @@
+package com.fastcomments.sdk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which user ids we actually need presence for, and fetches them in bounded, concurrent requests.
+ * <p>
+ * Previously every poll sent every user id in visibleNodes (which includes everything off screen) as one CSV, so large
+ * threads produced huge URLs for results nobody would see. Now:
+ * - Only ids within the RecyclerView's visible range, plus a margin either side, are considered.
+ * - Ids whose status was checked within {@link #freshnessMs} are skipped (see {@link CommentsTree#isPresenceFresh}).
+ * - Ids already being fetched are skipped.
+ * - What's left is split into requests of at most {@link #maxIdsPerRequest} ids, with at most
+ * {@link #maxConcurrentRequests} in flight at once.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class PresenceFetcher {
+
+    public interface Requester {
+        /**
+         * Fetch presence for the given ids and apply the result to the tree. Must call onDone on the main thread
+         * when the request finishes, whether it succeeded or not.
+         */
+        void request(List<String> userIds, Runnable onDone);
+    }
+
+    // how many nodes either side of the visible range to include
+    public int marginNodes = 20;
+    // how long a fetched status is considered good, kept under the 30-40s poll interval so polls refresh the window
+    public long freshnessMs = 25000;
+    public int maxIdsPerRequest = 50;
+    public int maxConcurrentRequests = 3;
+
+    private final CommentsTree commentsTree;
+    private final Requester requester;
+    private final Deque<List<String>> queued = new ArrayDeque<>();
+    private final Set<String> pendingIds = new HashSet<>();
+    private int inFlight = 0;
+    // -1 until a view tells us what's on screen
+    private int firstVisible = -1;
+    private int lastVisible = -1;
+
+    public PresenceFetcher(CommentsTree commentsTree, Requester requester) {
+        this.commentsTree = commentsTree;
+        this.requester = requester;
+    }
+
+    /**
+     * Tell the fetcher which adapter positions are on screen, and fetch anything newly in range.
+     */
+    public void setVisibleRange(int first, int last) {
+        if (first == firstVisible && last == lastVisible) {
+            return;
+        }
+        firstVisible = first;
+        lastVisible = last;
+        fetchVisibleWindow();
+    }
+
+    /**
+     * Fetch presence for users in the visible window whose status is missing or stale.
+     */
+    public void fetchVisibleWindow() {
+        final List<RenderableNode> nodes = commentsTree.visibleNodes;
+        if (nodes.isEmpty()) {
+            return;
+        }
+        final int from;
+        final int to;
+        if (firstVisible < 0 || lastVisible < firstVisible) {
+            // nothing reported yet, assume we're at the top
+            from = 0;
+            to = Math.min(nodes.size() - 1, marginNodes * 2);
+        } else {
+            from = Math.max(0, firstVisible - marginNodes);
+            to = Math.min(nodes.size() - 1, lastVisible + marginNodes);
+        }
+        final Set<String> userIds = new LinkedHashSet<>();
+        for (int i = from; i <= to; i++) {
+            final RenderableNode node = nodes.get(i);
+            if (node instanceof RenderableComment) {
+                final RenderableComment comment = (RenderableComment) node;
+                addIfNeeded(userIds, comment.getComment().getUserId());
+                addIfNeeded(userIds, comment.getComment().getAnonUserId());
+            }
+        }
+        enqueue(userIds);
+    }
+
+    /**
+     * Fetch presence for specific users (for example the authors of comments that just arrived), skipping any we have
+     * fresh statuses for.
+     */
+    public void fetchUsers(Collection<String> userIds) {
+        final Set<String> toFetch = new LinkedHashSet<>();
+        for (String userId : userIds) {
+            addIfNeeded(toFetch, userId);
+        }
+        enqueue(toFetch);
+    }
+
+    /**
+     * Drop queued requests. Requests already in flight still complete.
+     */
+    public void clear() {
+        for (List<String> chunk : queued) {
+            pendingIds.removeAll(chunk);
+        }
+        queued.clear();
+        firstVisible = -1;
+        lastVisible = -1;
+    }
+
+    private void addIfNeeded(Set<String> userIds, String userId) {
+        if (userId != null && !userId.isEmpty()
+                && !pendingIds.contains(userId)
+                && !commentsTree.isPresenceFresh(userId, freshnessMs)) {
+            userIds.add(userId);
+        }
+    }
+
+    private void enqueue(Set<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        List<String> chunk = new ArrayList<>(Math.min(userIds.size(), maxIdsPerRequest));
+        for (String userId : userIds) {
+            chunk.add(userId);
+            pendingIds.add(userId);
+            if (chunk.size() == maxIdsPerRequest) {
+                queued.add(chunk);
+                chunk = new ArrayList<>(maxIdsPerRequest);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            queued.add(chunk);
+        }
+        pump();
+    }
+
+    private void pump() {
+        while (inFlight < maxConcurrentRequests && !queued.isEmpty()) {
+            final List<String> chunk = queued.poll();
+            inFlight++;
+            requester.request(chunk, () -> {
+                inFlight--;
+                pendingIds.removeAll(chunk);
+                pump();
+            });
+        }
+    }
+}
@@ -26,6 +26,9 @@ public class RenderableComment extends RenderableNode {
     // Tracks new child comments that haven't been shown due to showLiveRightAway=false
     // Only initialized when needed to save memory
     public List<PublicComment> newChildComments = null;
+    // First page of replies fetched ahead of time by ReplyPrefetcher, used instead of a request when replies are shown
+    public List<PublicComment> prefetchedChildren = null;
+    public boolean prefetchedHasMoreChildren = false;
 
     public PublicComment getComment() {
         return comment;
@@ -40,17 +43,31 @@ public class RenderableComment extends RenderableNode {
         this.comment = comment;
     }
 
+    /**
+     * The nesting level, once every parent up to the root is known to commentMap, since it can't change after that.
+     * Saves walking the parents on every bind in deep threads.
+     */
+    private int nestingLevel = -1;
+
     @Override
     public int determineNestingLevel(Map<String, RenderableComment> commentMap) {
+        if (nestingLevel >= 0) {
+            return nestingLevel;
+        }
         final String parentId = getComment().getParentId();
         if (parentId == null) {
+            nestingLevel = 0;
             return 0;
         }
         final RenderableComment parent = commentMap.get(parentId);
         if (parent == null) {
             return 1;
         }
-        return 1 + parent.determineNestingLevel(commentMap);
+        final int level = 1 + parent.determineNestingLevel(commentMap);
+        if (parent.nestingLevel >= 0) {
+            nestingLevel = level;
+        }
+        return level;
     }
     
     /**
@@ -3,6 +3,7 @@ package com.fastcomments.sdk;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
@@ -27,11 +28,33 @@ public abstract class RenderableNode {
         }
         
         public String getFormattedDate() {
+            return format(date);
+        }
+
+        // Called for every bind, and a chat only ever shows a few dates, so the formatter and what it made are kept.
+        // Cleared when the locale changes.
+        private static final int MAX_FORMATTED_DATES = 366;
+        private static final Map<LocalDate, String> formattedDates = new HashMap<>();
+        private static Locale formattedLocale;
+        private static DateTimeFormatter formatter;
+
+        static synchronized String format(LocalDate date) {
             // Format date based on user's locale
-            DateTimeFormatter formatter = DateTimeFormatter
-                    .ofLocalizedDate(FormatStyle.MEDIUM)
-                    .withLocale(Locale.getDefault());
-            return date.format(formatter);
+            final Locale locale = Locale.getDefault();
+            if (!locale.equals(formattedLocale)) {
+                formattedLocale = locale;
+                formatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM).withLocale(locale);
+                formattedDates.clear();
+            }
+            String formatted = formattedDates.get(date);
+            if (formatted == null) {
+                if (formattedDates.size() >= MAX_FORMATTED_DATES) {
+                    formattedDates.clear();
+                }
+                formatted = date.format(formatter);
+                formattedDates.put(date, formatted);
+            }
+            return formatted;
         }
         
         @Override
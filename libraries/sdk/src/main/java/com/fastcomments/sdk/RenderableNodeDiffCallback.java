@@ -0,0 +1,64 @@
+package com.fastcomments.sdk;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Diffs two flattened views of the comment tree, so a rebuild can be dispatched to the adapter as the minimal set of
+ * inserts/removes/changes instead of notifyDataSetChanged().
+ * <p>
+ * A rebuild creates new RenderableComment objects, so comments are matched by id. They're never the same contents
+ * though: bound rows hold on to their node in click listeners and CommentViewHolder.currentComment, so every row whose
+ * node was replaced is rebound to the new one. It still keeps its view holder, instead of everything being recreated.
+ */
+public class RenderableNodeDiffCallback extends DiffUtil.Callback {
+
+    private final List<RenderableNode> oldNodes;
+    private final List<RenderableNode> newNodes;
+
+    public RenderableNodeDiffCallback(List<RenderableNode> oldNodes, List<RenderableNode> newNodes) {
+        this.oldNodes = oldNodes;
+        this.newNodes = newNodes;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return oldNodes.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return newNodes.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        final RenderableNode oldNode = oldNodes.get(oldItemPosition);
+        final RenderableNode newNode = newNodes.get(newItemPosition);
+        if (oldNode == newNode) {
+            return true;
+        }
+        if (oldNode instanceof RenderableComment && newNode instanceof RenderableComment) {
+            return Objects.equals(((RenderableComment) oldNode).getComment().getId(), ((RenderableComment) newNode).getComment().getId());
+        }
+        if (oldNode instanceof RenderableNode.DateSeparator && newNode instanceof RenderableNode.DateSeparator) {
+            return Objects.equals(((RenderableNode.DateSeparator) oldNode).getDate(), ((RenderableNode.DateSeparator) newNode).getDate());
+        }
+        if (oldNode instanceof RenderableButton && newNode instanceof RenderableButton) {
+            final RenderableButton oldButton = (RenderableButton) oldNode;
+            final RenderableButton newButton = (RenderableButton) newNode;
+            return oldButton.getButtonType() == newButton.getButtonType() && Objects.equals(oldButton.getParentId(), newButton.getParentId());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        final RenderableNode oldNode = oldNodes.get(oldItemPosition);
+        final RenderableNode newNode = newNodes.get(newItemPosition);
+        // date separators only have their date, which areItemsTheSame already compared
+        return oldNode == newNode || oldNode instanceof RenderableNode.DateSeparator;
+    }
+}
@@ -0,0 +1,171 @@
+package com.fastcomments.sdk;
+
+import android.os.SystemClock;
+
+import com.fastcomments.model.APIError;
+import com.fastcomments.model.GetCommentsResponseWithPresencePublicComment;
+import com.fastcomments.model.PublicComment;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fetches the first page of replies for collapsed comments on screen that are likely to be expanded, and keeps them in
+ * {@link RenderableComment#prefetchedChildren} so that tapping "show replies" renders them without a round-trip (see
+ * {@link CommentsTree#setRepliesVisible}).
+ * <p>
+ * Comments within the visible range (plus {@link #marginNodes}) are ranked by reply count and votes, closest to the
+ * top of the screen first on ties. At most {@link #maxRequestsPerMinute} requests are made in any minute, and at most
+ * {@link #maxConcurrentRequests} at once, so this only spends a small, fixed amount of bandwidth on guesses.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class ReplyPrefetcher {
+
+    public interface Requester {
+        /**
+         * Fetch the first page of replies for parentId without adding them to the tree. Must call back on the main
+         * thread.
+         */
+        void request(String parentId, int limit, FCCallback<GetCommentsResponseWithPresencePublicComment> callback);
+    }
+
+    public int maxRequestsPerMinute = 12;
+    public int maxConcurrentRequests = 2;
+    // how many nodes below the visible range to consider
+    public int marginNodes = 5;
+    public boolean enabled = true;
+
+    private static final long BUDGET_WINDOW_MS = 60000;
+
+    private final CommentsTree commentsTree;
+    private final Requester requester;
+    // when each request in the last minute was made, oldest first
+    private final Deque<Long> requestTimes = new ArrayDeque<>();
+    // parents being fetched or already tried, so a failure isn't retried on every scroll
+    private final Set<String> attempted = new HashSet<>();
+    private int inFlight = 0;
+    private int firstVisible = -1;
+    private int lastVisible = -1;
+
+    public ReplyPrefetcher(CommentsTree commentsTree, Requester requester) {
+        this.commentsTree = commentsTree;
+        this.requester = requester;
+    }
+
+    public void setVisibleRange(int first, int last) {
+        if (first == firstVisible && last == lastVisible) {
+            return;
+        }
+        firstVisible = first;
+        lastVisible = last;
+        prefetchVisible();
+    }
+
+    /**
+     * Prefetch replies for the best candidates on screen, as far as the budget allows.
+     */
+    public void prefetchVisible() {
+        if (!enabled || firstVisible < 0 || lastVisible < firstVisible) {
+            return;
+        }
+        final long now = SystemClock.elapsedRealtime();
+        while (!requestTimes.isEmpty() && now - requestTimes.peekFirst() >= BUDGET_WINDOW_MS) {
+            requestTimes.pollFirst();
+        }
+        int available = Math.min(maxRequestsPerMinute - requestTimes.size(), maxConcurrentRequests - inFlight);
+        if (available <= 0) {
+            return;
+        }
+        for (RenderableComment candidate : candidates()) {
+            if (available-- <= 0) {
+                break;
+            }
+            fetch(candidate, now);
+        }
+    }
+
+    /**
+     * Forget what was tried, for when the list is reloaded. Requests already in flight still complete.
+     */
+    public void clear() {
+        attempted.clear();
+        firstVisible = -1;
+        lastVisible = -1;
+    }
+
+    private List<RenderableComment> candidates() {
+        final List<RenderableNode> nodes = commentsTree.visibleNodes;
+        final int to = Math.min(nodes.size() - 1, lastVisible + marginNodes);
+        final List<RenderableComment> candidates = new ArrayList<>();
+        for (int i = Math.max(firstVisible, 0); i <= to; i++) {
+            final RenderableNode node = nodes.get(i);
+            if (node instanceof RenderableComment && needsPrefetch((RenderableComment) node)) {
+                candidates.add((RenderableComment) node);
+            }
+        }
+        // stable, so equal scores stay in screen order
+        Collections.sort(candidates, (a, b) -> Integer.compare(score(b), score(a)));
+        return candidates;
+    }
+
+    private boolean needsPrefetch(RenderableComment renderableComment) {
+        final PublicComment comment = renderableComment.getComment();
+        return Boolean.TRUE.equals(comment.getHasChildren())
+                && !attempted.contains(comment.getId())
+                && canHoldPrefetch(renderableComment);
+    }
+
+    /**
+     * Whether expanding the comment would have to fetch its replies, so prefetched ones would be used.
+     */
+    private static boolean canHoldPrefetch(RenderableComment renderableComment) {
+        final PublicComment comment = renderableComment.getComment();
+        return !renderableComment.isRepliesShown
+                && !renderableComment.isLoadingChildren
+                && renderableComment.prefetchedChildren == null
+                && (comment.getChildren() == null || comment.getChildren().isEmpty());
+    }
+
+    /**
+     * Threads with more replies and more votes are more likely to be opened.
+     */
+    static int score(RenderableComment renderableComment) {
+        final PublicComment comment = renderableComment.getComment();
+        final int childCount = comment.getChildCount() != null ? comment.getChildCount() : 1;
+        final int votes = comment.getVotes() != null ? Math.max(comment.getVotes(), 0) : 0;
+        return childCount * 4 + votes;
+    }
+
+    private void fetch(RenderableComment renderableComment, long now) {
+        final String parentId = renderableComment.getComment().getId();
+        attempted.add(parentId);
+        requestTimes.addLast(now);
+        inFlight++;
+        requester.request(parentId, renderableComment.childPageSize, new FCCallback<GetCommentsResponseWithPresencePublicComment>() {
+            @Override
+            public boolean onFailure(APIError error) {
+                inFlight--;
+                return CONSUME;
+            }
+
+            @Override
+            public boolean onSuccess(GetCommentsResponseWithPresencePublicComment response) {
+                inFlight--;
+                // the tree may have been rebuilt, or the user may have opened the thread, while we were waiting
+                final RenderableComment current = commentsTree.commentsById.get(parentId);
+                if (current != null && canHoldPrefetch(current) && response.getComments() != null) {
+                    current.prefetchedChildren = response.getComments();
+                    current.prefetchedHasMoreChildren = Boolean.TRUE.equals(response.getHasMore());
+                }
+                prefetchVisible();
+                return CONSUME;
+            }
+        });
+    }
+}
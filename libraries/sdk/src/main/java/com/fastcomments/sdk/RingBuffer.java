@@ -0,0 +1,181 @@
+package com.fastcomments.sdk;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * A list stored in a circular array, so adding or removing at either end is O(1) instead of shifting everything
+ * after it like ArrayList does. That's the shape of a live chat: messages arrive at one end and, once the tree is over
+ * its retention limit, the oldest are trimmed from the other.
+ * <p>
+ * Inserting or removing in the middle shifts whichever side is shorter. The array doubles when full and never shrinks
+ * on its own, so a chat that stays at its retention limit settles at a fixed size and stops allocating.
+ * <p>
+ * Not thread safe, same as ArrayList.
+ */
+public class RingBuffer<E> extends AbstractList<E> implements RandomAccess {
+
+    private Object[] elements;
+    // slot of element 0
+    private int head = 0;
+    private int size = 0;
+
+    public RingBuffer() {
+        this(10);
+    }
+
+    public RingBuffer(int initialCapacity) {
+        this.elements = new Object[Math.max(initialCapacity, 1)];
+    }
+
+    public RingBuffer(Collection<? extends E> from) {
+        this(from.size());
+        addAll(from);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index, size);
+        return (E) elements[slot(index)];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        checkIndex(index, size);
+        final int slot = slot(index);
+        final E previous = (E) elements[slot];
+        elements[slot] = element;
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(E element) {
+        ensureCapacity(size + 1);
+        elements[slot(size)] = element;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        checkIndex(index, size + 1);
+        if (index == size) {
+            add(element);
+            return;
+        }
+        openGap(index, 1);
+        elements[slot(index)] = element;
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> toAdd) {
+        return addAll(size, toAdd);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends E> toAdd) {
+        checkIndex(index, size + 1);
+        final int count = toAdd.size();
+        if (count == 0) {
+            return false;
+        }
+        openGap(index, count);
+        int i = index;
+        for (E element : toAdd) {
+            elements[slot(i++)] = element;
+        }
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public E remove(int index) {
+        final E removed = get(index);
+        removeRange(index, index + 1);
+        return removed;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        final int count = toIndex - fromIndex;
+        if (count <= 0) {
+            return;
+        }
+        if (fromIndex < size - toIndex) {
+            // fewer before the range than after it, so move those forward
+            for (int i = fromIndex - 1; i >= 0; i--) {
+                elements[slot(i + count)] = elements[slot(i)];
+            }
+            for (int i = 0; i < count; i++) {
+                elements[slot(i)] = null;
+            }
+            head = slot(count);
+        } else {
+            for (int i = toIndex; i < size; i++) {
+                elements[slot(i - count)] = elements[slot(i)];
+            }
+            for (int i = size - count; i < size; i++) {
+                elements[slot(i)] = null;
+            }
+        }
+        size -= count;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        removeRange(0, size);
+        head = 0;
+    }
+
+    /**
+     * Make room for count elements at index, moving whichever side of it is shorter.
+     */
+    private void openGap(int index, int count) {
+        ensureCapacity(size + count);
+        if (index < size - index) {
+            head = slot(elements.length - count);
+            for (int i = 0; i < index; i++) {
+                elements[slot(i)] = elements[slot(i + count)];
+            }
+        } else {
+            for (int i = size - 1; i >= index; i--) {
+                elements[slot(i + count)] = elements[slot(i)];
+            }
+        }
+        size += count;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= elements.length) {
+            return;
+        }
+        final Object[] grown = new Object[Math.max(needed, elements.length * 2)];
+        for (int i = 0; i < size; i++) {
+            grown[i] = elements[slot(i)];
+        }
+        elements = grown;
+        head = 0;
+    }
+
+    private int slot(int index) {
+        final int slot = head + index;
+        return slot < elements.length ? slot : slot - elements.length;
+    }
+
+    private void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.fastcomments.sdk;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+/**
+ * Decides when to prefetch the next page while scrolling: when, at the current scroll speed, the user would reach the
+ * end of the list within {@link #leadTimeMs}. Distance to the end is estimated from the rows left and their average
+ * height.
+ * <p>
+ * On a metered connection or in battery saver the lead time drops to {@link #constrainedLeadTimeMs}, so we only fetch
+ * pages the user is about to see anyway. The metered check needs ACCESS_NETWORK_STATE, which the SDK doesn't declare
+ * so it isn't forced on every app. Apps that want it should add it to their own manifest; without it only battery
+ * saver is checked.
+ */
+public class ScrollPrefetchPolicy {
+
+    public long leadTimeMs = 2500;
+    public long constrainedLeadTimeMs = 500;
+    // always prefetch this close to the end, even when not moving
+    public int minRowsAhead = 5;
+
+    // checking the network and power state is a binder call, so don't do it every scroll tick
+    private static final long CONSTRAINT_CHECK_INTERVAL_MS = 10000;
+    // how much each scroll event moves the smoothed velocity
+    private static final float VELOCITY_SMOOTHING = 0.3f;
+
+    private final Context context;
+    private long lastScrollAt = 0;
+    private float velocityPxPerMs = 0;
+    private long constraintCheckedAt = -CONSTRAINT_CHECK_INTERVAL_MS;
+    private boolean constrained = false;
+
+    public ScrollPrefetchPolicy(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Call from onScrolled.
+     *
+     * @param dy            Pixels scrolled towards the end since the last call
+     * @param rowsRemaining Rows after the last visible one
+     * @param rowHeightPx   Average height of the rows on screen
+     * @return true if the next page should be prefetched now
+     */
+    public boolean onScrolled(int dy, int rowsRemaining, float rowHeightPx) {
+        final long now = SystemClock.uptimeMillis();
+        final long elapsed = now - lastScrollAt;
+        lastScrollAt = now;
+        if (elapsed > 0 && elapsed < 1000) {
+            final float instant = Math.max(dy, 0) / (float) elapsed;
+            velocityPxPerMs += (instant - velocityPxPerMs) * VELOCITY_SMOOTHING;
+        } else {
+            // first event of a new gesture, nothing to smooth against
+            velocityPxPerMs = 0;
+        }
+        if (now - constraintCheckedAt > CONSTRAINT_CHECK_INTERVAL_MS) {
+            constraintCheckedAt = now;
+            constrained = isConstrained(context);
+        }
+        return shouldPrefetch(rowsRemaining, rowHeightPx, velocityPxPerMs, constrained);
+    }
+
+    boolean shouldPrefetch(int rowsRemaining, float rowHeightPx, float velocityPxPerMs, boolean constrained) {
+        if (rowsRemaining <= minRowsAhead) {
+            return true;
+        }
+        if (velocityPxPerMs <= 0 || rowHeightPx <= 0) {
+            return false;
+        }
+        final float msToEnd = rowsRemaining * rowHeightPx / velocityPxPerMs;
+        return msToEnd <= (constrained ? constrainedLeadTimeMs : leadTimeMs);
+    }
+
+    static boolean isConstrained(Context context) {
+        final PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null && powerManager.isPowerSaveMode()) {
+            return true;
+        }
+        if (context.checkSelfPermission(Manifest.permission.ACCESS_NETWORK_STATE) != PackageManager.PERMISSION_GRANTED) {
+            // can't tell if the network is metered, assume the best
+            return false;
+        }
+        try {
+            final ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            return connectivityManager != null && connectivityManager.isActiveNetworkMetered();
+        } catch (SecurityException e) {
+            // some OEM builds throw even with the permission
+            return false;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.fastcomments.sdk;
+
+import android.os.SystemClock;
+
+import com.fastcomments.model.APIError;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares one request between every caller asking for the same thing at the same time, and optionally keeps the
+ * result around for a short time so repeat calls don't hit the network at all.
+ * <p>
+ * Things like a double tap on "show replies", a mention search re-run for the same text, or two overlapping polls
+ * used to each send their own identical request. Now the first caller for a key starts the request, later callers for
+ * that key wait on it, and all of them are called back with the one result. Failures are passed to every waiter and
+ * never cached.
+ * <p>
+ * A caller that no longer wants the result can drop out with the Runnable returned by execute(). Once every caller for
+ * a request has dropped out, the request itself is cancelled if it was started with a {@link #executeCancellable}.
+ * <p>
+ * Callbacks are made on whatever thread the request finished on, same as calling the API directly. Cached and shared
+ * results are the same object for every caller, so callers must not modify them.
+ * <p>
+ * Safe to use from any thread.
+ */
+public class SingleFlight {
+
+    public interface Request<T> {
+        /**
+         * Start the request, calling back exactly once when it finishes.
+         */
+        void execute(FCCallback<T> callback);
+    }
+
+    public interface CancellableRequest<T> {
+        /**
+         * Start the request, calling back exactly once when it finishes unless cancelled.
+         *
+         * @return Cancels the request, or null if it can't be cancelled
+         */
+        Runnable execute(FCCallback<T> callback);
+    }
+
+    private static class Flight {
+        final List<FCCallback<?>> callbacks = new ArrayList<>(2);
+        final int generation;
+        Runnable cancel;
+
+        Flight(int generation) {
+            this.generation = generation;
+        }
+    }
+
+    private static class Cached {
+        final Object value;
+        final long expiresAt;
+
+        Cached(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<String, Flight> inFlight = new HashMap<>();
+    private final Map<String, Cached> cache = new HashMap<>();
+    // bumped by clear() so requests started before it don't fill the cache with old results
+    private int generation = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long coalesced = 0;
+
+    /**
+     * @param key      What makes two requests the same, including every argument that affects the result
+     * @param ttlMs    How long to cache a successful result for, 0 to only share requests already in flight
+     * @param request  Makes the actual request, only called if there's nothing cached or in flight for key
+     * @param callback Called with the result
+     * @return Drops this caller out, after which callback won't be called
+     */
+    public <T> Runnable execute(String key, long ttlMs, Request<T> request, FCCallback<T> callback) {
+        return executeCancellable(key, ttlMs, shared -> {
+            request.execute(shared);
+            return null;
+        }, callback);
+    }
+
+    /**
+     * Same as {@link #execute(String, long, Request, FCCallback)}, for requests that can be cancelled.
+     */
+    public <T> Runnable executeCancellable(String key, long ttlMs, CancellableRequest<T> request, FCCallback<T> callback) {
+        final Flight flight;
+        Object hit = null;
+        synchronized (this) {
+            final Cached cached = cache.get(key);
+            if (cached != null) {
+                if (SystemClock.elapsedRealtime() < cached.expiresAt) {
+                    hits++;
+                    hit = cached.value;
+                } else {
+                    cache.remove(key);
+                }
+            }
+            if (hit == null) {
+                final Flight existing = inFlight.get(key);
+                if (existing != null) {
+                    coalesced++;
+                    existing.callbacks.add(callback);
+                    return () -> drop(key, existing, callback);
+                }
+                misses++;
+                flight = new Flight(generation);
+                flight.callbacks.add(callback);
+                inFlight.put(key, flight);
+            } else {
+                flight = null;
+            }
+        }
+        if (hit != null) {
+            // outside the lock, the callback may well call back into us
+            deliver(callback, hit);
+            return () -> {
+            };
+        }
+        final Runnable cancel = request.execute(new FCCallback<T>() {
+            @Override
+            public boolean onFailure(APIError error) {
+                for (FCCallback<?> waiter : finish(key, flight, null, 0)) {
+                    waiter.onFailure(error);
+                }
+                return CONSUME;
+            }
+
+            @Override
+            public boolean onSuccess(T response) {
+                for (FCCallback<?> waiter : finish(key, flight, response, ttlMs)) {
+                    deliver(waiter, response);
+                }
+                return CONSUME;
+            }
+        });
+        synchronized (this) {
+            flight.cancel = cancel;
+        }
+        return () -> drop(key, flight, callback);
+    }
+
+    /**
+     * Drop cached results whose key starts with prefix, for when we know they're out of date.
+     */
+    public synchronized void invalidate(String prefix) {
+        final Iterator<String> keys = cache.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().startsWith(prefix)) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop everything cached. Requests in flight still call back their waiters, but their results aren't cached.
+     */
+    public synchronized void clear() {
+        generation++;
+        cache.clear();
+    }
+
+    /**
+     * Calls answered from the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Calls that made a request.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Calls that waited on a request someone else had already made.
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    private synchronized List<FCCallback<?>> finish(String key, Flight flight, Object response, long ttlMs) {
+        // the key may have been taken over by a newer request if this one was abandoned
+        if (inFlight.get(key) == flight) {
+            inFlight.remove(key);
+        }
+        if (response != null && ttlMs > 0 && flight.generation == generation) {
+            cache.put(key, new Cached(response, SystemClock.elapsedRealtime() + ttlMs));
+        }
+        final List<FCCallback<?>> callbacks = new ArrayList<>(flight.callbacks);
+        flight.callbacks.clear();
+        return callbacks;
+    }
+
+    private void drop(String key, Flight flight, FCCallback<?> callback) {
+        final Runnable cancel;
+        synchronized (this) {
+            if (!flight.callbacks.remove(callback) || !flight.callbacks.isEmpty()) {
+                return;
+            }
+            // nobody wants the result anymore, so the next caller starts a fresh request
+            if (inFlight.get(key) == flight) {
+                inFlight.remove(key);
+            }
+            cancel = flight.cancel;
+        }
+        if (cancel != null) {
+            cancel.run();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void deliver(FCCallback<T> callback, Object value) {
+        callback.onSuccess((T) value);
+    }
+}
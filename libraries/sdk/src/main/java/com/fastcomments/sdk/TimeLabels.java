@@ -0,0 +1,144 @@
+package com.fastcomments.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The "5 minutes ago" and absolute date labels shown on comments, and the clock that keeps them current.
+ * <p>
+ * Every comments view used to run its own once-a-minute timer, and each visible comment rebuilt its label with
+ * DateUtils (or a new DateTimeFormatter) on every bind and every tick. Now there is one tick for the whole process,
+ * on each minute boundary, that only runs while something is listening. At minute resolution a relative label only
+ * depends on which bucket the time falls in (how many minutes, hours or days ago, or the date once it's over a week),
+ * so each bucket is formatted once and then shared, and the same String comes back until the bucket changes. That lets
+ * a view holder skip setText() unless its label really changed.
+ * <p>
+ * Everything here must be used on the main thread.
+ */
+public final class TimeLabels {
+
+    private static final long MINUTE = DateUtils.MINUTE_IN_MILLIS;
+    private static final int MAX_CACHED_LABELS = 512;
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static final Set<Runnable> tickListeners = new LinkedHashSet<>();
+    private static final Runnable tick = TimeLabels::tick;
+    private static final Map<Long, String> relativeLabels = new HashMap<>();
+    private static final Map<Locale, DateTimeFormatter> absoluteFormatters = new HashMap<>(2);
+    private static Locale relativeLocale;
+
+    private TimeLabels() {
+    }
+
+    /**
+     * Call listener at the start of every minute until it's removed. Adding it again does nothing.
+     */
+    public static void addTickListener(Runnable listener) {
+        if (tickListeners.add(listener) && tickListeners.size() == 1) {
+            scheduleTick();
+        }
+    }
+
+    public static void removeTickListener(Runnable listener) {
+        if (tickListeners.remove(listener) && tickListeners.isEmpty()) {
+            handler.removeCallbacks(tick);
+        }
+    }
+
+    /**
+     * Relative label for date, like "5 minutes ago", the same as DateUtils.getRelativeTimeSpanString with minute
+     * resolution.
+     */
+    public static String relative(OffsetDateTime date, long nowMs) {
+        final long timeMs = date.toInstant().toEpochMilli();
+        final Locale locale = Locale.getDefault();
+        if (!locale.equals(relativeLocale) || relativeLabels.size() >= MAX_CACHED_LABELS) {
+            relativeLocale = locale;
+            relativeLabels.clear();
+        }
+        final Long bucket = bucket(timeMs, nowMs, ZoneId.systemDefault());
+        String label = relativeLabels.get(bucket);
+        if (label == null) {
+            label = DateUtils.getRelativeTimeSpanString(timeMs, nowMs, MINUTE).toString();
+            relativeLabels.put(bucket, label);
+        }
+        return label;
+    }
+
+    /**
+     * Absolute label for date, like "Jan 15, 2024, 10:00 AM", in locale.
+     */
+    public static String absolute(OffsetDateTime date, Locale locale) {
+        DateTimeFormatter formatter = absoluteFormatters.get(locale);
+        if (formatter == null) {
+            formatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM, FormatStyle.SHORT).withLocale(locale);
+            absoluteFormatters.put(locale, formatter);
+        }
+        return date.format(formatter);
+    }
+
+    /**
+     * Which label a time gets at minute resolution, following DateUtils: whole minutes under an hour, whole hours
+     * under a day, calendar days under a week, and after that the date itself, with the year if it isn't this year.
+     */
+    static long bucket(long timeMs, long nowMs, ZoneId zone) {
+        final boolean past = timeMs <= nowMs;
+        final long duration = Math.abs(nowMs - timeMs);
+        final long unit;
+        final long count;
+        if (duration < DateUtils.HOUR_IN_MILLIS) {
+            unit = 0;
+            count = duration / MINUTE;
+        } else if (duration < DateUtils.DAY_IN_MILLIS) {
+            unit = 1;
+            count = duration / DateUtils.HOUR_IN_MILLIS;
+        } else if (duration < DateUtils.WEEK_IN_MILLIS) {
+            unit = 2;
+            count = Math.abs(epochDay(nowMs, zone) - epochDay(timeMs, zone));
+        } else {
+            unit = 3;
+            final long year = Instant.ofEpochMilli(nowMs).atZone(zone).getYear();
+            count = epochDay(timeMs, zone) * 100000 + year;
+        }
+        return (unit * 2 + (past ? 1 : 0)) << 56 | (count & 0xFFFFFFFFFFFFFFL);
+    }
+
+    private static long epochDay(long ms, ZoneId zone) {
+        return Instant.ofEpochMilli(ms).atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    private static void scheduleTick() {
+        handler.removeCallbacks(tick);
+        final long now = System.currentTimeMillis();
+        handler.postAtTime(tick, SystemClock.uptimeMillis() + MINUTE - now % MINUTE);
+    }
+
+    private static void tick() {
+        if (tickListeners.isEmpty()) {
+            return;
+        }
+        // a listener may remove itself
+        final List<Runnable> listeners = new ArrayList<>(tickListeners);
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+        if (!tickListeners.isEmpty()) {
+            scheduleTick();
+        }
+    }
+}
@@ -0,0 +1,630 @@
+package com.fastcomments.sdk;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.fastcomments.model.APIError;
+import com.fastcomments.model.FeedPostMediaItem;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Uploads the images for a post in the background, retrying each image on its own, and remembers where it got to on
+ * disk so the work survives the app being killed.
+ * <p>
+ * {@link ImageUploadPipeline} gives up on the whole batch when one upload fails, so on a flaky network every attempt
+ * to post started over from the first image. Here each image is retried with exponential backoff, starting at
+ * {@link #baseRetryDelayMs}, up to {@link #maxAttempts} times. Images that made it keep their uploaded media, so a
+ * later {@link #retry} only sends what's missing.
+ * <p>
+ * Each batch has a small JSON manifest in the app's files directory, rewritten whenever an image is prepared or
+ * uploaded. Images are prepared one at a time as soon as they're queued, copying them into the same directory, so a
+ * retry after a restart doesn't need permission to read the original uri any more. Each copy is deleted as soon as its
+ * upload succeeds or its batch is cancelled, and {@link #resume} deletes anything older that nothing refers to.
+ * Unfinished batches older than {@link #maxBatchAgeMs} are dropped on resume, or by {@link #sweep}.
+ * <p>
+ * Each batch carries a payload string, for example the post to create once the images are up, which is handed back to
+ * the listener along with the uploaded media, and an owner, for example the user the post is by, so a batch is only
+ * resumed for them.
+ * <p>
+ * All methods must be called on the main thread, and listeners are called on it.
+ */
+public class UploadQueue {
+
+    public interface Listener {
+        /**
+         * Every image in the batch is uploaded. The media is in the same order as the uris. The batch is forgotten.
+         */
+        void onComplete(String batchId, String payload, List<FeedPostMediaItem> media);
+
+        /**
+         * An image ran out of attempts. The batch is kept, with whatever was uploaded, until it's retried or cancelled.
+         */
+        void onFailed(String batchId, String payload, APIError error);
+
+        /**
+         * @param index Which of the batch's uris this is about
+         */
+        default void onProgress(String batchId, int index, long bytesWritten, long contentLength) {
+        }
+    }
+
+    public int maxConcurrentUploads = 3;
+    public int maxAttempts = 5;
+    public long baseRetryDelayMs = 2000;
+    public long maxRetryDelayMs = 60000;
+    public long maxBatchAgeMs = 24 * 60 * 60 * 1000L;
+    public int maxDimensionPx = 2048;
+    public int jpegQuality = 85;
+
+    private static final int VERSION = 1;
+    private static final String MANIFEST_SUFFIX = ".json";
+
+    private static class Item {
+        final String uri;
+        // the file to send, once prepared
+        String file;
+        // whether we made the file, and so must delete it
+        boolean ownsFile;
+        // the uploaded media, as JSON
+        String media;
+        int attempts;
+        // not persisted
+        boolean uploading;
+        boolean waitingToRetry;
+
+        Item(String uri) {
+            this.uri = uri;
+        }
+    }
+
+    private static class Batch {
+        final String id;
+        final long createdAt;
+        final List<Item> items;
+        String owner;
+        String payload;
+        boolean failed;
+        // not persisted
+        Listener listener;
+
+        Batch(String id, long createdAt, List<Item> items) {
+            this.id = id;
+            this.createdAt = createdAt;
+            this.items = items;
+        }
+
+        boolean isDone() {
+            for (Item item : items) {
+                if (item.media == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final Context context;
+    private final File dir;
+    private final ImageUploadPipeline.Uploader uploader;
+    private final ImageUploadPipeline.Preparer preparer;
+    private final Executor prepareExecutor;
+    // one thread, so manifest writes and deletes happen in order
+    private final Executor diskExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // only files last modified before this can be left over from an earlier run
+    private final long createdAt = System.currentTimeMillis();
+    private final Map<String, Batch> batches = new LinkedHashMap<>();
+    private int uploading = 0;
+    private boolean preparing = false;
+    private boolean resumed = false;
+
+    public UploadQueue(Context context, ImageUploadPipeline.Uploader uploader) {
+        this.context = context.getApplicationContext();
+        this.dir = new File(new File(this.context.getFilesDir(), "fastcomments"), "uploads");
+        this.uploader = uploader;
+        this.preparer = (ctx, uri, dir) -> ImageUploadPipeline.prepareImage(ctx, uri, dir, maxDimensionPx, jpegQuality);
+        this.prepareExecutor = FastCommentsExecutors.computation();
+        this.diskExecutor = FastCommentsExecutors.io();
+    }
+
+    UploadQueue(Context context, File dir, ImageUploadPipeline.Uploader uploader, ImageUploadPipeline.Preparer preparer,
+                Executor prepareExecutor, Executor diskExecutor) {
+        this.context = context;
+        this.dir = dir;
+        this.uploader = uploader;
+        this.preparer = preparer;
+        this.prepareExecutor = prepareExecutor;
+        this.diskExecutor = diskExecutor;
+    }
+
+    /**
+     * Start uploading uris, with no owner.
+     *
+     * @param payload Handed back to the listener, and kept across restarts. May be null.
+     * @return The batch id, for {@link #retry} and {@link #cancel}
+     */
+    public String enqueue(List<Uri> uris, String payload, Listener listener) {
+        return enqueue(uris, payload, null, listener);
+    }
+
+    /**
+     * Start uploading uris.
+     *
+     * @param payload Handed back to the listener, and kept across restarts. May be null.
+     * @param owner   Who the batch is for. After a restart it's only resumed for the same owner. May be null.
+     * @return The batch id, for {@link #retry} and {@link #cancel}
+     */
+    public String enqueue(List<Uri> uris, String payload, String owner, Listener listener) {
+        final List<Item> items = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            items.add(new Item(uri.toString()));
+        }
+        final Batch batch = new Batch(UUID.randomUUID().toString(), System.currentTimeMillis(), items);
+        batch.owner = owner;
+        batch.payload = payload;
+        batch.listener = listener;
+        batches.put(batch.id, batch);
+        persist(batch);
+        pump();
+        return batch.id;
+    }
+
+    /**
+     * Try a batch again, only sending the images that haven't been uploaded. Each gets a fresh set of attempts.
+     *
+     * @return false if the batch is gone or was for different uris, in which case enqueue them again instead
+     */
+    public boolean retry(String batchId, String payload, List<Uri> uris, Listener listener) {
+        final Batch batch = batchId != null ? batches.get(batchId) : null;
+        if (batch == null || batch.items.size() != uris.size()) {
+            return false;
+        }
+        for (int i = 0; i < uris.size(); i++) {
+            if (!batch.items.get(i).uri.equals(uris.get(i).toString())) {
+                return false;
+            }
+        }
+        batch.payload = payload;
+        batch.listener = listener;
+        batch.failed = false;
+        for (Item item : batch.items) {
+            item.attempts = 0;
+        }
+        if (batch.isDone()) {
+            complete(batch);
+            return true;
+        }
+        persist(batch);
+        pump();
+        return true;
+    }
+
+    /**
+     * Stop a batch and delete everything kept for it. Uploads already running finish, but their results are ignored.
+     */
+    public void cancel(String batchId) {
+        final Batch batch = batchId != null ? batches.remove(batchId) : null;
+        if (batch == null) {
+            return;
+        }
+        final List<File> files = ownedFiles(batch);
+        final File manifest = manifestFor(batch.id);
+        diskExecutor.execute(() -> {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+            //noinspection ResultOfMethodCallIgnored
+            manifest.delete();
+        });
+    }
+
+    public boolean has(String batchId) {
+        return batchId != null && batches.containsKey(batchId);
+    }
+
+    /**
+     * Same as {@link #resume(String, Listener)} for batches with no owner.
+     */
+    public void resume(Listener listener) {
+        resume(null, listener);
+    }
+
+    /**
+     * Pick up batches left unfinished by an earlier run, and delete files nothing needs any more. Batches that had
+     * failed, or are older than {@link #maxBatchAgeMs}, are dropped. Batches for a different owner are left on disk, for
+     * when they resume, until they're too old. Only does anything the first time it's called.
+     *
+     * @param owner    Only batches enqueued for this owner are resumed
+     * @param listener Gets the results of the resumed batches
+     */
+    public void resume(String owner, Listener listener) {
+        if (resumed) {
+            return;
+        }
+        resumed = true;
+        diskExecutor.execute(() -> {
+            final List<Batch> found = readLeftovers();
+            mainHandler.post(() -> {
+                for (Batch batch : found) {
+                    if (Objects.equals(batch.owner, owner) && !batches.containsKey(batch.id)) {
+                        batch.listener = listener;
+                        batches.put(batch.id, batch);
+                    }
+                }
+                pump();
+            });
+        });
+    }
+
+    /**
+     * Delete what earlier runs left behind that will never be resumed: failed, unreadable or too old batches, and
+     * prepared copies no batch refers to. Without waiting for {@link #resume}, which may never be called.
+     */
+    public void sweep() {
+        diskExecutor.execute(this::readLeftovers);
+    }
+
+    /**
+     * Start whatever can be started: the next image to prepare, and uploads up to {@link #maxConcurrentUploads}.
+     */
+    private void pump() {
+        for (Batch batch : batches.values()) {
+            if (batch.failed) {
+                continue;
+            }
+            for (int i = 0; i < batch.items.size(); i++) {
+                final Item item = batch.items.get(i);
+                if (item.media != null || item.uploading || item.waitingToRetry) {
+                    continue;
+                }
+                if (item.file == null) {
+                    if (!preparing) {
+                        prepare(batch, item);
+                    }
+                } else if (uploading < Math.max(maxConcurrentUploads, 1)) {
+                    send(batch, i, item);
+                }
+            }
+        }
+    }
+
+    /**
+     * Images are prepared one at a time, since each may need a decoded bitmap in memory.
+     */
+    private void prepare(Batch batch, Item item) {
+        preparing = true;
+        final Uri uri = Uri.parse(item.uri);
+        prepareExecutor.execute(() -> {
+            ImageUploadPipeline.PreparedImage image = null;
+            String failure = null;
+            try {
+                if (!dir.exists() && !dir.mkdirs()) {
+                    throw new IOException("Could not create " + dir);
+                }
+                image = preparer.prepare(context, uri, dir);
+            } catch (IOException | RuntimeException e) {
+                failure = e.getMessage();
+            }
+            final ImageUploadPipeline.PreparedImage prepared = image;
+            final String reason = failure;
+            mainHandler.post(() -> {
+                preparing = false;
+                if (batches.get(batch.id) != batch) {
+                    // cancelled meanwhile
+                    if (prepared != null && prepared.temporary) {
+                        deleteLater(prepared.file);
+                    }
+                } else if (prepared == null) {
+                    final APIError error = new APIError();
+                    error.setReason("Failed to prepare image for upload: " + reason);
+                    onAttemptFailed(batch, item, error);
+                } else {
+                    item.file = prepared.file.getAbsolutePath();
+                    item.ownsFile = prepared.temporary;
+                    persist(batch);
+                }
+                pump();
+            });
+        });
+    }
+
+    private void send(Batch batch, int index, Item item) {
+        item.uploading = true;
+        uploading++;
+        uploader.upload(new File(item.file), new FCCallback<FeedPostMediaItem>() {
+            // progress comes in small chunks, only pass it on when the percentage moves
+            int lastPercent = -1;
+
+            @Override
+            public boolean onFailure(APIError error) {
+                mainHandler.post(() -> onUploaded(batch, item, null, error));
+                return CONSUME;
+            }
+
+            @Override
+            public boolean onSuccess(FeedPostMediaItem media) {
+                mainHandler.post(() -> onUploaded(batch, item, media, null));
+                return CONSUME;
+            }
+
+            @Override
+            public void onUploadProgress(long bytesWritten, long contentLength, boolean done) {
+                if (contentLength <= 0) {
+                    return;
+                }
+                final int percent = (int) (bytesWritten * 100 / contentLength);
+                if (percent != lastPercent) {
+                    lastPercent = percent;
+                    mainHandler.post(() -> {
+                        if (batch.listener != null && batches.get(batch.id) == batch) {
+                            batch.listener.onProgress(batch.id, index, bytesWritten, contentLength);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void onUploaded(Batch batch, Item item, FeedPostMediaItem media, APIError error) {
+        uploading--;
+        item.uploading = false;
+        if (batches.get(batch.id) != batch) {
+            // cancelled meanwhile, cancel() already deleted the file
+            pump();
+            return;
+        }
+        if (media == null) {
+            onAttemptFailed(batch, item, error);
+        } else {
+            if (item.ownsFile) {
+                deleteLater(new File(item.file));
+            }
+            item.file = null;
+            item.ownsFile = false;
+            item.media = media.toJson();
+            if (batch.isDone()) {
+                complete(batch);
+            } else {
+                persist(batch);
+            }
+        }
+        pump();
+    }
+
+    private void onAttemptFailed(Batch batch, Item item, APIError error) {
+        item.attempts++;
+        if (item.attempts >= maxAttempts) {
+            Log.w("FastCommentsFeedSDK", "Giving up on upload after " + item.attempts + " attempts: "
+                    + (error != null ? error.getReason() : "unknown error"));
+            final boolean wasFailed = batch.failed;
+            batch.failed = true;
+            persist(batch);
+            if (!wasFailed && batch.listener != null) {
+                batch.listener.onFailed(batch.id, batch.payload, error);
+            }
+            return;
+        }
+        item.waitingToRetry = true;
+        persist(batch);
+        mainHandler.postDelayed(() -> {
+            item.waitingToRetry = false;
+            pump();
+        }, retryDelayMs(item.attempts));
+    }
+
+    long retryDelayMs(int attempts) {
+        final long delay = baseRetryDelayMs << Math.min(Math.max(attempts - 1, 0), 20);
+        return Math.min(delay, maxRetryDelayMs);
+    }
+
+    private void complete(Batch batch) {
+        batches.remove(batch.id);
+        final File manifest = manifestFor(batch.id);
+        diskExecutor.execute(() -> {
+            //noinspection ResultOfMethodCallIgnored
+            manifest.delete();
+        });
+        final List<FeedPostMediaItem> media = new ArrayList<>(batch.items.size());
+        for (Item item : batch.items) {
+            media.add(FeedPostMediaItem.fromJson(item.media));
+        }
+        if (batch.listener != null) {
+            batch.listener.onComplete(batch.id, batch.payload, media);
+        }
+    }
+
+    /**
+     * Write the batch's manifest in the background. The JSON is made here so later changes don't race the write.
+     */
+    private void persist(Batch batch) {
+        final String json = encode(batch);
+        final File manifest = manifestFor(batch.id);
+        diskExecutor.execute(() -> writeAtomically(manifest, json));
+    }
+
+    private void deleteLater(File file) {
+        diskExecutor.execute(() -> {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        });
+    }
+
+    private File manifestFor(String batchId) {
+        return new File(dir, batchId + MANIFEST_SUFFIX);
+    }
+
+    private static List<File> ownedFiles(Batch batch) {
+        final List<File> files = new ArrayList<>();
+        for (Item item : batch.items) {
+            if (item.ownsFile && item.file != null) {
+                files.add(new File(item.file));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Read the manifests on disk, deleting the ones not worth resuming and any file that isn't part of a batch.
+     * Runs on the disk executor.
+     */
+    private List<Batch> readLeftovers() {
+        final List<Batch> found = new ArrayList<>();
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return found;
+        }
+        final Set<String> keep = new HashSet<>();
+        final long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (!file.getName().endsWith(MANIFEST_SUFFIX)) {
+                continue;
+            }
+            Batch batch = null;
+            try {
+                batch = decode(readFile(file));
+            } catch (Exception e) {
+                Log.w("FastCommentsFeedSDK", "Discarding unreadable upload manifest", e);
+            }
+            if (batch == null || batch.failed || now - batch.createdAt > maxBatchAgeMs) {
+                if (batch != null) {
+                    for (File owned : ownedFiles(batch)) {
+                        //noinspection ResultOfMethodCallIgnored
+                        owned.delete();
+                    }
+                }
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                continue;
+            }
+            keep.add(file.getAbsolutePath());
+            for (File owned : ownedFiles(batch)) {
+                keep.add(owned.getAbsolutePath());
+            }
+            found.add(batch);
+        }
+        for (File file : files) {
+            // newer files belong to batches queued since we started
+            if (!keep.contains(file.getAbsolutePath()) && file.exists() && file.lastModified() < createdAt) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        return found;
+    }
+
+    private static String encode(Batch batch) {
+        final JsonObject root = new JsonObject();
+        root.addProperty("v", VERSION);
+        root.addProperty("id", batch.id);
+        root.addProperty("createdAt", batch.createdAt);
+        root.addProperty("owner", batch.owner);
+        root.addProperty("payload", batch.payload);
+        root.addProperty("failed", batch.failed);
+        final JsonArray items = new JsonArray();
+        for (Item item : batch.items) {
+            final JsonObject json = new JsonObject();
+            json.addProperty("uri", item.uri);
+            json.addProperty("file", item.file);
+            json.addProperty("ownsFile", item.ownsFile);
+            json.addProperty("attempts", item.attempts);
+            if (item.media != null) {
+                json.add("media", JsonParser.parseString(item.media));
+            }
+            items.add(json);
+        }
+        root.add("items", items);
+        return root.toString();
+    }
+
+    private static Batch decode(String value) {
+        final JsonObject root = JsonParser.parseString(value).getAsJsonObject();
+        if (!root.has("v") || root.get("v").getAsInt() != VERSION) {
+            return null;
+        }
+        final List<Item> items = new ArrayList<>();
+        for (JsonElement element : root.getAsJsonArray("items")) {
+            final JsonObject json = element.getAsJsonObject();
+            final Item item = new Item(json.get("uri").getAsString());
+            item.file = getString(json, "file");
+            item.ownsFile = json.has("ownsFile") && json.get("ownsFile").getAsBoolean();
+            item.attempts = json.has("attempts") ? json.get("attempts").getAsInt() : 0;
+            if (json.has("media") && !json.get("media").isJsonNull()) {
+                item.media = json.get("media").toString();
+            }
+            if (item.file != null && !new File(item.file).exists()) {
+                // prepare it again
+                item.file = null;
+                item.ownsFile = false;
+            }
+            items.add(item);
+        }
+        final Batch batch = new Batch(root.get("id").getAsString(), root.get("createdAt").getAsLong(), items);
+        batch.owner = getString(root, "owner");
+        batch.payload = getString(root, "payload");
+        batch.failed = root.has("failed") && root.get("failed").getAsBoolean();
+        return batch;
+    }
+
+    private static String getString(JsonObject json, String name) {
+        return json.has(name) && !json.get(name).isJsonNull() ? json.get(name).getAsString() : null;
+    }
+
+    private static void writeAtomically(File file, String value) {
+        final File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        final File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w("FastCommentsFeedSDK", "Failed to write upload manifest", e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            final byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                final int count = in.read(bytes, read, bytes.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            return new String(bytes, 0, read, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.PublicComment;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps any id a user can appear under (userId or anonUserId) to a single identity holding all of their ids and all of
+ * their comments.
+ * <p>
+ * Presence events may only mention one of a user's ids. Before, every update had to walk the user's comments to find
+ * their other ids, then walk the comments for those. With this index a presence update is one lookup, and then a
+ * single pass over the identity's comments.
+ */
+class UserIdentityIndex {
+
+    static class Identity {
+        final Set<String> ids = new HashSet<>(2);
+        // oldest first, so evicting the oldest comments takes them off the front without shifting the rest
+        final List<RenderableComment> comments = new RingBuffer<>(1);
+    }
+
+    private final Map<String, Identity> byId = new HashMap<>(30);
+
+    Identity get(String id) {
+        return byId.get(id);
+    }
+
+    void add(RenderableComment renderableComment) {
+        final PublicComment comment = renderableComment.getComment();
+        final String userId = nonEmpty(comment.getUserId());
+        final String anonUserId = nonEmpty(comment.getAnonUserId());
+        if (userId == null && anonUserId == null) {
+            return;
+        }
+        Identity identity = userId != null ? identityFor(userId) : null;
+        if (anonUserId != null) {
+            final Identity anonIdentity = identityFor(anonUserId);
+            identity = identity == null ? anonIdentity : merge(identity, anonIdentity);
+        }
+        identity.comments.add(renderableComment);
+    }
+
+    void remove(RenderableComment renderableComment) {
+        final PublicComment comment = renderableComment.getComment();
+        String id = nonEmpty(comment.getUserId());
+        if (id == null) {
+            id = nonEmpty(comment.getAnonUserId());
+        }
+        if (id == null) {
+            return;
+        }
+        final Identity identity = byId.get(id);
+        if (identity != null) {
+            identity.comments.remove(renderableComment);
+            if (identity.comments.isEmpty()) {
+                // nothing left to update, so don't keep the user around
+                for (String identityId : identity.ids) {
+                    byId.remove(identityId);
+                }
+            }
+        }
+    }
+
+    void clear() {
+        byId.clear();
+    }
+
+    private Identity identityFor(String id) {
+        Identity identity = byId.get(id);
+        if (identity == null) {
+            identity = new Identity();
+            identity.ids.add(id);
+            byId.put(id, identity);
+        }
+        return identity;
+    }
+
+    /**
+     * Join two identities, folding the smaller into the larger.
+     */
+    private Identity merge(Identity a, Identity b) {
+        if (a == b) {
+            return a;
+        }
+        final Identity into = a.comments.size() >= b.comments.size() ? a : b;
+        final Identity from = into == a ? b : a;
+        for (String id : from.ids) {
+            into.ids.add(id);
+            byId.put(id, into);
+        }
+        into.comments.addAll(from.comments);
+        return into;
+    }
+
+    private static String nonEmpty(String id) {
+        return id != null && !id.isEmpty() ? id : null;
+    }
+}
@@ -0,0 +1,81 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.UserSessionInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identifies who requests are made as, for keying caches of responses that include per-user data (votes, reactions,
+ * comments only a moderator can see), without keeping the SSO token itself in memory or on disk.
+ */
+final class UserKey {
+
+    static final String ANONYMOUS = "anon";
+    private static final String USER_PREFIX = "user:";
+    // where the last signed in user is kept, per tenant, in each cache keyed by user
+    private static final String LAST_USER_KEY = "lastUser|";
+
+    private UserKey() {
+    }
+
+    /**
+     * @return A SHA-256 hex digest of ssoToken, or {@link #ANONYMOUS} without one
+     */
+    static String of(String ssoToken) {
+        if (ssoToken == null || ssoToken.isEmpty()) {
+            return ANONYMOUS;
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(ssoToken.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM and Android device has SHA-256, and a weaker key could share one user's data with another
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Who a response fetched as user, with ssoToken, is for. The user id once the server has told us, since an SSO token
+     * can change between sessions for the same user, otherwise a digest of the token.
+     */
+    static String forCache(UserSessionInfo user, String ssoToken) {
+        if (ssoToken == null || ssoToken.isEmpty()) {
+            return ANONYMOUS;
+        }
+        if (user != null && user.getId() != null) {
+            return USER_PREFIX + user.getId();
+        }
+        return of(ssoToken);
+    }
+
+    /**
+     * Like {@link #forCache}, but on a cold start, before the server has said who the token is for, assumes it's the
+     * last user {@link #remember}ed, so a returning user still finds their cached data. Reads the disk.
+     */
+    static String lastKnown(DiskCache cache, String tenantId, UserSessionInfo user, String ssoToken) {
+        final String key = forCache(user, ssoToken);
+        if (key.equals(ANONYMOUS) || key.startsWith(USER_PREFIX)) {
+            return key;
+        }
+        final DiskCache.Entry last = cache.get(LAST_USER_KEY + tenantId);
+        return last != null ? last.value : key;
+    }
+
+    /**
+     * Remember who a response was for. Signing out forgets them, so whoever signs in next isn't assumed to be them.
+     * Writes the disk.
+     */
+    static void remember(DiskCache cache, String tenantId, String userKey) {
+        if (userKey.startsWith(USER_PREFIX)) {
+            cache.put(LAST_USER_KEY + tenantId, userKey);
+        } else if (userKey.equals(ANONYMOUS)) {
+            cache.remove(LAST_USER_KEY + tenantId);
+        }
+    }
+}
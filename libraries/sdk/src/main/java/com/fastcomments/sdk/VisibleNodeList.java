@@ -0,0 +1,371 @@
+package com.fastcomments.sdk;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The list backing {@link CommentsTree#visibleNodes}. Behaves like an ArrayList, but also keeps a node -> position
+ * index so that indexOf() (and therefore contains()/remove(Object)) doesn't have to scan the whole list.
+ * <p>
+ * The nodes are kept in an implicit treap: a balanced binary tree in list order where each entry knows the size of its
+ * subtree and its parent. A node's position is the number of entries before it, which is counted by walking up from
+ * its entry, so positions are never stored and nothing has to be re-indexed when the list changes. Inserting or
+ * removing anywhere, and indexOf(), are O(log n). For live sessions that means a reply inserted mid-thread followed by
+ * vote and presence lookups stays logarithmic per event, instead of re-indexing the rest of the list.
+ * <p>
+ * get() is O(log n) too, except when stepping through the list in order (iterating, binding rows as they scroll in)
+ * which moves from the last entry returned to its neighbour in O(1) amortized.
+ * <p>
+ * Nodes don't override equals()/hashCode(), so lookups are by identity, same as ArrayList.indexOf() was.
+ */
+public class VisibleNodeList extends AbstractList<RenderableNode> implements RandomAccess {
+
+    private static final class Entry {
+        final int priority;
+        RenderableNode node;
+        Entry left;
+        Entry right;
+        Entry parent;
+        // entries in this subtree, this one included
+        int size = 1;
+
+        Entry(RenderableNode node, int priority) {
+            this.node = node;
+            this.priority = priority;
+        }
+    }
+
+    private final Map<RenderableNode, Entry> entries;
+    private Entry root;
+    // seed for entry priorities, a fixed one is fine since the list order doesn't depend on user input
+    private int seed = 0x2545F491;
+    // the entry get() last returned, so in-order access doesn't descend from the root every time
+    private Entry lastEntry;
+    private int lastIndex = -1;
+
+    public VisibleNodeList() {
+        this(10);
+    }
+
+    public VisibleNodeList(int initialCapacity) {
+        this.entries = new HashMap<>(initialCapacity);
+    }
+
+    @Override
+    public RenderableNode get(int index) {
+        checkIndex(index, size());
+        final Entry entry;
+        if (lastEntry != null && index == lastIndex + 1) {
+            entry = successor(lastEntry);
+        } else if (lastEntry != null && index == lastIndex - 1) {
+            entry = predecessor(lastEntry);
+        } else if (lastEntry != null && index == lastIndex) {
+            entry = lastEntry;
+        } else {
+            entry = entryAt(index);
+        }
+        lastEntry = entry;
+        lastIndex = index;
+        return entry.node;
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public boolean add(RenderableNode node) {
+        add(size(), node);
+        return true;
+    }
+
+    @Override
+    public void add(int index, RenderableNode node) {
+        checkIndex(index, size() + 1);
+        final Entry entry = newEntry(node);
+        final Entry[] split = split(root, index);
+        root = merge(merge(split[0], entry), split[1]);
+        structureChanged();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends RenderableNode> toAdd) {
+        return addAll(size(), toAdd);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends RenderableNode> toAdd) {
+        checkIndex(index, size() + 1);
+        if (toAdd.isEmpty()) {
+            return false;
+        }
+        final Entry added = build(toAdd);
+        final Entry[] split = split(root, index);
+        root = merge(merge(split[0], added), split[1]);
+        structureChanged();
+        return true;
+    }
+
+    @Override
+    public RenderableNode set(int index, RenderableNode node) {
+        checkIndex(index, size());
+        final Entry entry = entryAt(index);
+        final RenderableNode previous = entry.node;
+        if (previous != node) {
+            entries.remove(previous);
+            entry.node = node;
+            entries.put(node, entry);
+        }
+        return previous;
+    }
+
+    @Override
+    public RenderableNode remove(int index) {
+        final RenderableNode removed = get(index);
+        removeRange(index, index + 1);
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        final int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        final Entry[] head = split(root, fromIndex);
+        final Entry[] rest = split(head[1], toIndex - fromIndex);
+        forget(rest[0]);
+        root = merge(head[0], rest[1]);
+        structureChanged();
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        entries.clear();
+        structureChanged();
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof RenderableNode)) {
+            return -1;
+        }
+        Entry entry = entries.get(o);
+        if (entry == null) {
+            return -1;
+        }
+        int index = size(entry.left);
+        while (entry.parent != null) {
+            if (entry == entry.parent.right) {
+                index += size(entry.parent.left) + 1;
+            }
+            entry = entry.parent;
+        }
+        return index;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        // a node is only ever in the list once
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof RenderableNode && entries.containsKey(o);
+    }
+
+    /**
+     * Incremented on every structural change (insert/remove). Lets callers that computed something against a snapshot
+     * of this list check that it hasn't changed since.
+     */
+    public int modificationCount() {
+        return modCount;
+    }
+
+    private void structureChanged() {
+        modCount++;
+        lastEntry = null;
+        lastIndex = -1;
+    }
+
+    private Entry newEntry(RenderableNode node) {
+        // xorshift, cheap and well enough spread to keep the tree balanced
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        final Entry entry = new Entry(node, seed);
+        entries.put(node, entry);
+        return entry;
+    }
+
+    /**
+     * Build a treap of nodes in order, in O(k), by keeping the right spine on a stack.
+     */
+    private Entry build(Collection<? extends RenderableNode> nodes) {
+        final Entry[] spine = new Entry[nodes.size()];
+        int top = -1;
+        for (RenderableNode node : nodes) {
+            final Entry entry = newEntry(node);
+            Entry last = null;
+            while (top >= 0 && spine[top].priority < entry.priority) {
+                last = spine[top--];
+                pull(last);
+            }
+            entry.left = last;
+            if (last != null) {
+                last.parent = entry;
+            }
+            if (top >= 0) {
+                spine[top].right = entry;
+                entry.parent = spine[top];
+            }
+            spine[++top] = entry;
+        }
+        while (top > 0) {
+            pull(spine[top--]);
+        }
+        pull(spine[0]);
+        spine[0].parent = null;
+        return spine[0];
+    }
+
+    private Entry entryAt(int index) {
+        Entry entry = root;
+        while (true) {
+            final int leftSize = size(entry.left);
+            if (index < leftSize) {
+                entry = entry.left;
+            } else if (index == leftSize) {
+                return entry;
+            } else {
+                index -= leftSize + 1;
+                entry = entry.right;
+            }
+        }
+    }
+
+    /**
+     * Split tree into its first count entries and the rest. Both halves come back as roots, with no parent.
+     */
+    private static Entry[] split(Entry tree, int count) {
+        if (tree == null) {
+            return new Entry[2];
+        }
+        final Entry[] result;
+        if (size(tree.left) >= count) {
+            result = split(tree.left, count);
+            tree.left = result[1];
+            pull(tree);
+            result[1] = tree;
+        } else {
+            result = split(tree.right, count - size(tree.left) - 1);
+            tree.right = result[0];
+            pull(tree);
+            result[0] = tree;
+        }
+        if (result[0] != null) {
+            result[0].parent = null;
+        }
+        if (result[1] != null) {
+            result[1].parent = null;
+        }
+        return result;
+    }
+
+    /**
+     * Join two trees, every entry of a before every entry of b.
+     */
+    private static Entry merge(Entry a, Entry b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            pull(a);
+            a.parent = null;
+            return a;
+        }
+        b.left = merge(a, b.left);
+        pull(b);
+        b.parent = null;
+        return b;
+    }
+
+    /**
+     * Recompute entry's size from its children, and point them back at it.
+     */
+    private static void pull(Entry entry) {
+        entry.size = 1 + size(entry.left) + size(entry.right);
+        if (entry.left != null) {
+            entry.left.parent = entry;
+        }
+        if (entry.right != null) {
+            entry.right.parent = entry;
+        }
+    }
+
+    private void forget(Entry tree) {
+        if (tree == null) {
+            return;
+        }
+        entries.remove(tree.node);
+        forget(tree.left);
+        forget(tree.right);
+    }
+
+    private static Entry successor(Entry entry) {
+        if (entry.right != null) {
+            entry = entry.right;
+            while (entry.left != null) {
+                entry = entry.left;
+            }
+            return entry;
+        }
+        while (entry.parent != null && entry == entry.parent.right) {
+            entry = entry.parent;
+        }
+        return entry.parent;
+    }
+
+    private static Entry predecessor(Entry entry) {
+        if (entry.left != null) {
+            entry = entry.left;
+            while (entry.right != null) {
+                entry = entry.right;
+            }
+            return entry;
+        }
+        while (entry.parent != null && entry == entry.parent.left) {
+            entry = entry.parent;
+        }
+        return entry.parent;
+    }
+
+    private static int size(Entry entry) {
+        return entry == null ? 0 : entry.size;
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Bound: " + bound);
+        }
+    }
+}
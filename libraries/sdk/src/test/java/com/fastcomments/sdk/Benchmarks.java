@@ -0,0 +1,31 @@
+package com.fastcomments.sdk;
+
+import org.junit.Assume;
+
+import java.util.logging.Logger;
+
+/**
+ * Benchmarks are slow and their timings only mean something on a quiet machine, so they're skipped unless asked for:
+ * <pre>
+ * ./gradlew :libraries:sdk:test -Pbenchmarks
+ * </pre>
+ * Results go to the test log, so they show up in the Gradle test report next to the test that made them.
+ */
+final class Benchmarks {
+
+    private static final Logger LOG = Logger.getLogger("FastCommentsBenchmarks");
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Call from a @BeforeClass method, to skip the whole class unless benchmarks were asked for.
+     */
+    static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks are off, run with -Pbenchmarks", Boolean.getBoolean("fastcomments.benchmarks"));
+    }
+
+    static void report(String name, String result) {
+        LOG.info(name + ": " + result);
+    }
+}
@@ -0,0 +1,83 @@
+package com.fastcomments.sdk;
+
+import android.text.Spanned;
+import android.text.style.ClickableSpan;
+import android.text.style.ImageSpan;
+import android.text.style.URLSpan;
+
+import com.fastcomments.model.PublicComment;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class CommentHtmlCacheTest {
+
+    @Test
+    public void get_sameComment_returnsCachedInstance() {
+        CommentHtmlCache cache = new CommentHtmlCache();
+        PublicComment comment = MockComment.make("c1");
+
+        ParsedCommentHtml first = cache.get(comment, null);
+        assertSame(first, cache.get(comment, null));
+        assertEquals("Test comment", first.getText().toString().trim());
+    }
+
+    @Test
+    public void get_changedHtml_reparses() {
+        CommentHtmlCache cache = new CommentHtmlCache();
+        PublicComment comment = MockComment.make("c1");
+
+        ParsedCommentHtml first = cache.get(comment, null);
+        comment.setCommentHTML("<p>Edited</p>");
+        ParsedCommentHtml second = cache.get(comment, null);
+
+        assertNotSame(first, second);
+        assertEquals("Edited", second.getText().toString().trim());
+    }
+
+    @Test
+    public void get_changedTheme_reparses() {
+        CommentHtmlCache cache = new CommentHtmlCache();
+        PublicComment comment = MockComment.make("c1");
+
+        ParsedCommentHtml first = cache.get(comment, null);
+        assertNotSame(first, cache.get(comment, new FastCommentsTheme.Builder().build()));
+    }
+
+    @Test
+    public void invalidate_dropsEntry() {
+        CommentHtmlCache cache = new CommentHtmlCache();
+        PublicComment comment = MockComment.make("c1");
+
+        ParsedCommentHtml first = cache.get(comment, null);
+        cache.invalidate("c1");
+        assertNotSame(first, cache.get(comment, null));
+    }
+
+    @Test
+    public void get_linksAreClickable() {
+        CommentHtmlCache cache = new CommentHtmlCache();
+        PublicComment comment = MockComment.make("c1");
+        comment.setCommentHTML("<p>see <a href=\"https://fastcomments.com\">here</a></p>");
+
+        Spanned spanned = cache.get(comment, null).getText();
+        assertEquals(0, spanned.getSpans(0, spanned.length(), URLSpan.class).length);
+        assertEquals(1, spanned.getSpans(0, spanned.length(), ClickableSpan.class).length);
+    }
+
+    @Test
+    public void get_imagesKeptAsPlaceholders() {
+        CommentHtmlCache cache = new CommentHtmlCache();
+        PublicComment comment = MockComment.make("c1");
+        comment.setCommentHTML("<p>look <img src=\"https://fastcomments.com/a.png\"></p>");
+
+        ParsedCommentHtml parsed = cache.get(comment, null);
+        assertEquals(1, parsed.getImageCount());
+        Spanned text = parsed.getText();
+        assertEquals(0, text.getSpans(0, text.length(), ImageSpan.class).length);
+    }
+}
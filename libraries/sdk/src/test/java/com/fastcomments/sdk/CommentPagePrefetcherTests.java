@@ -0,0 +1,116 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.APIError;
+import com.fastcomments.model.GetCommentsResponseWithPresencePublicComment;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for holding the next comment page ahead of need.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class CommentPagePrefetcherTests {
+
+    private final List<Integer> requestedSkips = new ArrayList<>();
+    private final List<FCCallback<GetCommentsResponseWithPresencePublicComment>> pending = new ArrayList<>();
+    private CommentPagePrefetcher prefetcher;
+
+    @Before
+    public void setUp() {
+        prefetcher = new CommentPagePrefetcher((skip, limit, callback) -> {
+            requestedSkips.add(skip);
+            pending.add(callback);
+        });
+    }
+
+    private static class Recorder implements FCCallback<GetCommentsResponseWithPresencePublicComment> {
+        final List<GetCommentsResponseWithPresencePublicComment> pages = new ArrayList<>();
+        int failures = 0;
+
+        @Override
+        public boolean onFailure(APIError error) {
+            failures++;
+            return CONSUME;
+        }
+
+        @Override
+        public boolean onSuccess(GetCommentsResponseWithPresencePublicComment response) {
+            pages.add(response);
+            return CONSUME;
+        }
+    }
+
+    @Test
+    public void testRepeatedPrefetchRequestsOnce() {
+        prefetcher.prefetch(30, 30);
+        prefetcher.prefetch(30, 30);
+        prefetcher.prefetch(30, 30);
+
+        assertEquals(1, requestedSkips.size());
+        assertTrue(prefetcher.isFetching(30, 30));
+    }
+
+    @Test
+    public void testTakeUsesPrefetchedPage() {
+        GetCommentsResponseWithPresencePublicComment page = new GetCommentsResponseWithPresencePublicComment();
+        prefetcher.prefetch(30, 30);
+        pending.get(0).onSuccess(page);
+        assertTrue(prefetcher.hasPage(30, 30));
+
+        Recorder recorder = new Recorder();
+        prefetcher.take(30, 30, recorder);
+
+        assertEquals(1, requestedSkips.size());
+        assertSame(page, recorder.pages.get(0));
+        assertFalse(prefetcher.hasPage(30, 30));
+    }
+
+    @Test
+    public void testTakeJoinsInFlightPrefetch() {
+        prefetcher.prefetch(30, 30);
+        Recorder recorder = new Recorder();
+        prefetcher.take(30, 30, recorder);
+
+        assertEquals(1, requestedSkips.size());
+        assertTrue(recorder.pages.isEmpty());
+
+        pending.get(0).onSuccess(new GetCommentsResponseWithPresencePublicComment());
+        assertEquals(1, recorder.pages.size());
+        assertFalse(prefetcher.hasPage(30, 30));
+    }
+
+    @Test
+    public void testFailedPrefetchIsRetriedOnTake() {
+        prefetcher.prefetch(30, 30);
+        pending.get(0).onFailure(new APIError());
+
+        Recorder recorder = new Recorder();
+        prefetcher.take(30, 30, recorder);
+
+        assertEquals(2, requestedSkips.size());
+        assertEquals(0, recorder.failures);
+    }
+
+    @Test
+    public void testClearDropsStaleResponses() {
+        prefetcher.prefetch(30, 30);
+        prefetcher.clear();
+
+        pending.get(0).onSuccess(new GetCommentsResponseWithPresencePublicComment());
+
+        assertFalse(prefetcher.hasPage(30, 30));
+    }
+}
@@ -0,0 +1,141 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.APIError;
+import com.fastcomments.model.GetCommentsResponseWithPresencePublicComment;
+import com.fastcomments.model.PublicComment;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for streaming "Load All" pagination.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class CommentPageStreamTests {
+
+    private final Map<Integer, FCCallback<GetCommentsResponseWithPresencePublicComment>> pending = new LinkedHashMap<>();
+    private final List<Integer> delivered = new ArrayList<>();
+    private Integer completedAt;
+    private Integer failedAt;
+    private CommentPageStream stream;
+
+    @Before
+    public void setUp() {
+        stream = new CommentPageStream(
+                (skip, limit, callback) -> pending.put(skip, callback),
+                new CommentPageStream.Listener() {
+                    @Override
+                    public void onPage(GetCommentsResponseWithPresencePublicComment page, int skip) {
+                        delivered.add(skip);
+                    }
+
+                    @Override
+                    public void onComplete(GetCommentsResponseWithPresencePublicComment lastPage, int lastSkip) {
+                        completedAt = lastSkip;
+                    }
+
+                    @Override
+                    public void onFailure(APIError error, int nextSkip) {
+                        failedAt = nextSkip;
+                    }
+                },
+                10,
+                3);
+    }
+
+    private static GetCommentsResponseWithPresencePublicComment page(int skip, boolean hasMore) {
+        List<PublicComment> comments = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            comments.add(MockComment.make("c" + (skip + i)));
+        }
+        GetCommentsResponseWithPresencePublicComment response = new GetCommentsResponseWithPresencePublicComment();
+        response.setComments(comments);
+        response.setHasMore(hasMore);
+        return response;
+    }
+
+    @Test
+    public void testConcurrencyIsBounded() {
+        stream.start(30);
+
+        assertEquals(3, pending.size());
+        assertTrue(pending.containsKey(30));
+        assertTrue(pending.containsKey(40));
+        assertTrue(pending.containsKey(50));
+    }
+
+    @Test
+    public void testPagesAreDeliveredInOrder() {
+        stream.start(0);
+
+        pending.remove(10).onSuccess(page(10, true));
+        pending.remove(20).onSuccess(page(20, true));
+        assertTrue(delivered.isEmpty());
+
+        pending.remove(0).onSuccess(page(0, true));
+        assertEquals(3, delivered.size());
+        assertEquals(Integer.valueOf(0), delivered.get(0));
+        assertEquals(Integer.valueOf(10), delivered.get(1));
+        assertEquals(Integer.valueOf(20), delivered.get(2));
+        // freed slots were refilled
+        assertEquals(3, pending.size());
+    }
+
+    @Test
+    public void testStopsAtLastPage() {
+        stream.start(0);
+
+        pending.remove(10).onSuccess(page(10, false));
+        // nothing is requested past a page that says it's the last
+        assertEquals(2, pending.size());
+        assertFalse(pending.containsKey(40));
+
+        pending.remove(0).onSuccess(page(0, true));
+        assertEquals(2, delivered.size());
+        assertEquals(Integer.valueOf(10), completedAt);
+        assertFalse(stream.isRunning());
+
+        // the wasted request past the end is ignored
+        pending.remove(20).onSuccess(page(20, false));
+        assertEquals(2, delivered.size());
+    }
+
+    @Test
+    public void testFailureStopsTheStream() {
+        stream.start(0);
+
+        pending.remove(0).onSuccess(page(0, true));
+        pending.remove(10).onFailure(new APIError());
+
+        assertEquals(Integer.valueOf(10), failedAt);
+        assertFalse(stream.isRunning());
+
+        pending.remove(20).onSuccess(page(20, true));
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void testCancelIgnoresResponses() {
+        stream.start(0);
+        stream.cancel();
+
+        pending.remove(0).onSuccess(page(0, false));
+
+        assertTrue(delivered.isEmpty());
+        assertNull(completedAt);
+    }
+}
@@ -0,0 +1,138 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.PublicComment;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Times building, expanding every thread, and removing threads over 50k synthetic comments, with CommentsTree and
+ * with FlatCommentTree. Only runs when benchmarks are asked for, see {@link Benchmarks}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class CommentTreeBenchmarkTests {
+
+    private static final int ROOTS = 10000;
+    private static final int REPLIES_PER_ROOT = 4;
+    // every tenth thread
+    private static final int REMOVE_EVERY = 10;
+
+    @BeforeClass
+    public static void assumeBenchmarks() {
+        Benchmarks.assumeEnabled();
+    }
+
+    private static List<PublicComment> syntheticThreads() {
+        final OffsetDateTime date = OffsetDateTime.now();
+        final List<PublicComment> roots = new ArrayList<>(ROOTS);
+        for (int r = 0; r < ROOTS; r++) {
+            final String rootId = "r" + r;
+            final List<PublicComment> replies = new ArrayList<>(REPLIES_PER_ROOT);
+            for (int c = 0; c < REPLIES_PER_ROOT; c++) {
+                replies.add(MockComment.make(rootId + "-" + c, null, "Test User", "<p>Test reply</p>", rootId, date,
+                        0, true, 0, null, null, null, null));
+            }
+            roots.add(MockComment.make(rootId, null, "Test User", "<p>Test comment</p>", null, date, 0, true,
+                    REPLIES_PER_ROOT, replies, null, null, null));
+        }
+        return roots;
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    @Test
+    public void testBuildExpandAndRemove() {
+        final int total = ROOTS * (1 + REPLIES_PER_ROOT);
+        final int removed = ROOTS / REMOVE_EVERY;
+        final int expectedAfterRemove = total - removed * (1 + REPLIES_PER_ROOT);
+
+        // CommentsTree
+        final CommentsTree tree = new CommentsTree();
+        // don't record 50k+ notifications
+        tree.setAdapter(mock(CommentsAdapter.class, withSettings().stubOnly()));
+        final List<PublicComment> treeInput = syntheticThreads();
+
+        long start = System.nanoTime();
+        tree.build(treeInput);
+        final long treeBuildMs = elapsedMs(start);
+
+        start = System.nanoTime();
+        for (int r = 0; r < ROOTS; r++) {
+            tree.setRepliesVisible(tree.commentsById.get("r" + r), true, null);
+        }
+        final long treeExpandMs = elapsedMs(start);
+        assertEquals(total, tree.visibleNodes.size());
+
+        start = System.nanoTime();
+        int nesting = 0;
+        for (RenderableNode node : tree.visibleNodes) {
+            nesting += node.determineNestingLevel(tree.commentsById);
+        }
+        final long treeNestingMs = elapsedMs(start);
+        assertEquals(ROOTS * REPLIES_PER_ROOT, nesting);
+
+        start = System.nanoTime();
+        for (int r = 0; r < ROOTS; r += REMOVE_EVERY) {
+            tree.removeComment("r" + r);
+        }
+        final long treeRemoveMs = elapsedMs(start);
+
+        // FlatCommentTree
+        final FlatCommentTree flat = new FlatCommentTree();
+        final List<PublicComment> flatInput = syntheticThreads();
+
+        start = System.nanoTime();
+        flat.build(flatInput);
+        final long flatBuildMs = elapsedMs(start);
+
+        start = System.nanoTime();
+        for (int r = 0; r < ROOTS; r++) {
+            flat.expand(flat.nodeOf("r" + r));
+        }
+        final long flatExpandMs = elapsedMs(start);
+        assertEquals(total, flat.visibleCount());
+
+        start = System.nanoTime();
+        nesting = 0;
+        for (int row = 0; row < flat.visibleCount(); row++) {
+            nesting += flat.depth(flat.nodeAtRow(row));
+        }
+        final long flatNestingMs = elapsedMs(start);
+        assertEquals(ROOTS * REPLIES_PER_ROOT, nesting);
+
+        start = System.nanoTime();
+        for (int r = 0; r < ROOTS; r += REMOVE_EVERY) {
+            flat.remove(flat.nodeOf("r" + r));
+        }
+        final long flatRemoveMs = elapsedMs(start);
+
+        assertEquals(expectedAfterRemove, tree.visibleNodes.size());
+        assertEquals(expectedAfterRemove, flat.visibleCount());
+        // the rows left are the same, in the same order
+        int row = 0;
+        for (RenderableNode node : tree.visibleNodes) {
+            assertEquals(((RenderableComment) node).getComment().getId(), flat.comment(flat.nodeAtRow(row++)).getId());
+        }
+
+        Benchmarks.report("CommentsTree, " + total + " comments", "build " + treeBuildMs + "ms, expand all "
+                + treeExpandMs + "ms, nesting levels " + treeNestingMs + "ms, remove " + removed + " threads "
+                + treeRemoveMs + "ms");
+        Benchmarks.report("FlatCommentTree, " + total + " comments", "build " + flatBuildMs + "ms, expand all "
+                + flatExpandMs + "ms, nesting levels " + flatNestingMs + "ms, remove " + removed + " threads "
+                + flatRemoveMs + "ms");
+    }
+}
@@ -1,12 +1,14 @@
 package com.fastcomments.sdk;
 
 import com.fastcomments.model.PublicComment;
+import com.fastcomments.model.SortDirections;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
 
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
@@ -14,14 +16,21 @@ import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 /**
  * Unit tests for CommentsTree in-memory data structure.
@@ -103,6 +112,56 @@ public class CommentsTreeTests {
         assertEquals(1, tree.totalSize());
     }
 
+    @Test
+    public void testAppendDispatchesRangeInsert() {
+        tree.build(Arrays.asList(MockComment.make("c1"), MockComment.make("c2")));
+        CommentsAdapter adapter = tree.getAdapter();
+
+        PublicComment child = MockComment.make("c3-child", null, "c3");
+        PublicComment withReply = MockComment.make("c3", null, "User", "<p>Parent</p>",
+                null, OffsetDateTime.now(), 0, true, 1, Collections.singletonList(child), null, null, null);
+        tree.appendComments(Arrays.asList(MockComment.make("c2"), withReply, MockComment.make("c4")));
+
+        int segmentSize = tree.visibleNodes.size() - 2;
+        assertTrue(segmentSize >= 2);
+        assertEquals("c3", ((RenderableComment) tree.visibleNodes.get(2)).getComment().getId());
+        assertNotNull(tree.commentsById.get("c3-child"));
+        verify(adapter).notifyItemRangeInserted(2, segmentSize);
+        verify(adapter, never()).notifyDataSetChanged();
+    }
+
+    @Test
+    public void testAppendLiveChatContinuesDateSeparators() {
+        tree.setLiveChatStyle(true);
+        OffsetDateTime day1 = OffsetDateTime.of(2024, 1, 15, 10, 0, 0, 0, ZoneOffset.UTC);
+        OffsetDateTime day2 = OffsetDateTime.of(2024, 1, 16, 10, 0, 0, 0, ZoneOffset.UTC);
+        tree.build(Collections.singletonList(
+                MockComment.make("c1", null, "User", "<p>Day 1</p>", null, day1, 0, true, null, null, null, null, null)));
+        CommentsAdapter adapter = tree.getAdapter();
+
+        tree.appendComments(Arrays.asList(
+                MockComment.make("c2", null, "User", "<p>Day 1</p>", null, day1, 0, true, null, null, null, null, null),
+                MockComment.make("c3", null, "User", "<p>Day 2</p>", null, day2, 0, true, null, null, null, null, null)));
+
+        // separator, c1, c2, separator, c3
+        assertEquals(5, tree.visibleNodes.size());
+        assertTrue(tree.visibleNodes.get(2) instanceof RenderableComment);
+        assertTrue(tree.visibleNodes.get(3) instanceof RenderableNode.DateSeparator);
+        verify(adapter).notifyItemRangeInserted(2, 3);
+        verify(adapter, never()).notifyDataSetChanged();
+    }
+
+    @Test
+    public void testAppendOnlyDuplicatesNotifiesNothing() {
+        tree.build(Collections.singletonList(MockComment.make("c1")));
+        CommentsAdapter adapter = tree.getAdapter();
+
+        tree.appendComments(Collections.singletonList(MockComment.make("c1")));
+
+        verify(adapter, never()).notifyItemRangeInserted(anyInt(), anyInt());
+        verify(adapter, never()).notifyDataSetChanged();
+    }
+
     @Test
     public void testAddCommentRootDisplayNow() {
         tree.build(Collections.singletonList(MockComment.make("c1")));
@@ -276,6 +335,37 @@ public class CommentsTreeTests {
         // (subject to the addForUser bug - first comment may not be indexed)
     }
 
+    @Test
+    public void testBulkPresenceUpdateCrossSyncsAndCoalesces() {
+        PublicComment anonAndUser = MockComment.make("c2", "user1");
+        anonAndUser.setAnonUserId("anon1");
+        PublicComment anonOnly = MockComment.make("c3");
+        anonOnly.setAnonUserId("anon1");
+        tree.build(Arrays.asList(
+                MockComment.make("c1", "user1"),
+                anonAndUser,
+                anonOnly,
+                MockComment.make("c4", "user2"),
+                MockComment.make("c5", "user3")
+        ));
+        CommentsAdapter adapter = tree.getAdapter();
+
+        Map<String, Boolean> statuses = new HashMap<>();
+        statuses.put("anon1", true);
+        statuses.put("user3", true);
+        tree.updateUserPresence(statuses);
+
+        // the event only named anon1, but user1's comments are the same person
+        assertTrue(tree.commentsById.get("c1").isOnline);
+        assertTrue(tree.commentsById.get("c2").isOnline);
+        assertTrue(tree.commentsById.get("c3").isOnline);
+        assertFalse(tree.commentsById.get("c4").isOnline);
+        assertTrue(tree.commentsById.get("c5").isOnline);
+        verify(adapter).notifyItemRangeChanged(0, 3);
+        verify(adapter).notifyItemRangeChanged(4, 1);
+        verify(adapter, never()).notifyItemChanged(anyInt());
+    }
+
     @Test
     public void testLiveChatDateSeparators() {
         tree.setLiveChatStyle(true);
@@ -300,6 +390,57 @@ public class CommentsTreeTests {
         assertEquals("Should have 2 date separators (one per day)", 2, separatorCount);
     }
 
+    private static PublicComment sentAt(String id, OffsetDateTime date) {
+        return MockComment.make(id, null, "User", "<p>Message</p>", null, date, 0, true, null, null, null, null, null);
+    }
+
+    @Test
+    public void testLateLiveChatMessageIsPutInDateOrder() {
+        tree.setLiveChatStyle(true);
+        OffsetDateTime day1 = OffsetDateTime.of(2024, 1, 15, 10, 0, 0, 0, ZoneOffset.UTC);
+        tree.build(Arrays.asList(sentAt("c1", day1), sentAt("c3", day1.plusMinutes(2)), sentAt("c4", day1.plusMinutes(3))));
+
+        tree.addComment(sentAt("c2", day1.plusMinutes(1)), true, SortDirections.OF);
+
+        // separator, c1, c2, c3, c4
+        assertEquals(5, tree.visibleNodes.size());
+        assertEquals("c2", idAt(tree, 2));
+        assertEquals("c3", idAt(tree, 3));
+        verify(tree.getAdapter()).notifyItemInserted(2);
+    }
+
+    @Test
+    public void testLateLiveChatMessageFromAnEarlierDayGetsItsSeparator() {
+        tree.setLiveChatStyle(true);
+        OffsetDateTime day1 = OffsetDateTime.of(2024, 1, 15, 10, 0, 0, 0, ZoneOffset.UTC);
+        OffsetDateTime day3 = OffsetDateTime.of(2024, 1, 17, 10, 0, 0, 0, ZoneOffset.UTC);
+        tree.build(Arrays.asList(sentAt("c1", day1), sentAt("c3", day3)));
+
+        tree.addComment(sentAt("c2", day1.plusDays(1)), true, SortDirections.OF);
+        // and one more for the day that was just added
+        tree.addComment(sentAt("c2b", day1.plusDays(1).plusMinutes(1)), true, SortDirections.OF);
+
+        // separator, c1, separator, c2, c2b, separator, c3
+        assertEquals(7, tree.visibleNodes.size());
+        assertEquals(LocalDate.of(2024, 1, 16), ((RenderableNode.DateSeparator) tree.visibleNodes.get(2)).getDate());
+        assertEquals("c2", idAt(tree, 3));
+        assertEquals("c2b", idAt(tree, 4));
+        assertEquals(LocalDate.of(2024, 1, 17), ((RenderableNode.DateSeparator) tree.visibleNodes.get(5)).getDate());
+
+        // a new message still goes at the bottom, under the last separator
+        tree.addComment(sentAt("c4", day3.plusMinutes(1)), true, SortDirections.OF);
+        assertEquals(8, tree.visibleNodes.size());
+        assertEquals("c4", idAt(tree, 7));
+    }
+
+    @Test
+    public void testDateSeparatorTextIsFormattedOnce() {
+        RenderableNode.DateSeparator first = new RenderableNode.DateSeparator(LocalDate.of(2024, 1, 15));
+        RenderableNode.DateSeparator second = new RenderableNode.DateSeparator(LocalDate.of(2024, 1, 15));
+
+        assertSame(first.getFormattedDate(), second.getFormattedDate());
+    }
+
     @Test
     public void testAddForParent() {
         PublicComment parent = MockComment.make("parent", null, "User", "<p>Parent</p>",
@@ -342,6 +483,281 @@ public class CommentsTreeTests {
         assertFalse(tree.commentsById.get("c2").isOnline);
     }
 
+    @Test
+    public void testBatchedChangesDispatchAsRanges() {
+        tree.build(Arrays.asList(
+                MockComment.make("c1"),
+                MockComment.make("c2"),
+                MockComment.make("c3"),
+                MockComment.make("c4"),
+                MockComment.make("c5")
+        ));
+        CommentsAdapter adapter = tree.getAdapter();
+
+        tree.beginUpdate();
+        tree.notifyItemChanged(tree.commentsById.get("c2"));
+        tree.notifyItemChanged(tree.commentsById.get("c1"));
+        tree.notifyItemChanged(tree.commentsById.get("c2"));
+        tree.notifyItemChanged(tree.commentsById.get("c5"));
+        verify(adapter, never()).notifyItemChanged(anyInt());
+        tree.endUpdate();
+
+        verify(adapter).notifyItemRangeChanged(0, 2);
+        verify(adapter).notifyItemRangeChanged(4, 1);
+        verify(adapter, never()).notifyItemChanged(anyInt());
+    }
+
+    @Test
+    public void testBuildAsyncDispatchesDiff() throws Exception {
+        tree.build(Arrays.asList(
+                MockComment.make("c1"),
+                MockComment.make("c2"),
+                MockComment.make("c3")
+        ));
+        CommentsAdapter adapter = tree.getAdapter();
+
+        AtomicBoolean applied = new AtomicBoolean(false);
+        tree.buildAsync(Arrays.asList(
+                MockComment.make("c0"),
+                MockComment.make("c1"),
+                MockComment.make("c2"),
+                MockComment.make("c3")
+        ), () -> applied.set(true));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!applied.get() && System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+            Thread.sleep(10);
+        }
+
+        assertTrue(applied.get());
+        assertEquals(4, tree.visibleNodes.size());
+        assertEquals("c0", ((RenderableComment) tree.visibleNodes.get(0)).getComment().getId());
+        assertNotNull(tree.commentsById.get("c0"));
+        verify(adapter).notifyItemRangeInserted(0, 1);
+        verify(adapter, never()).notifyDataSetChanged();
+    }
+
+    private static void awaitApplied(AtomicBoolean applied) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!applied.get() && System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+            Thread.sleep(10);
+        }
+        assertTrue(applied.get());
+    }
+
+    @Test
+    public void testBuildAsyncRebindsReplacedRows() throws Exception {
+        tree.build(Arrays.asList(
+                MockComment.make("c1"),
+                MockComment.make("c2"),
+                MockComment.make("c3")
+        ));
+        CommentsAdapter adapter = tree.getAdapter();
+
+        AtomicBoolean applied = new AtomicBoolean(false);
+        tree.buildAsync(Arrays.asList(
+                MockComment.make("c1"),
+                MockComment.make("c2"),
+                MockComment.make("c3")
+        ), () -> applied.set(true));
+        awaitApplied(applied);
+
+        // bound rows hold on to the old nodes, so they have to be rebound even though nothing moved
+        verify(adapter).notifyItemRangeChanged(0, 3, null);
+        verify(adapter, never()).notifyDataSetChanged();
+        assertSame(tree.commentsById.get("c1"), tree.visibleNodes.get(0));
+    }
+
+    @Test
+    public void testBuildAsyncReplaysLiveChanges() throws Exception {
+        tree.build(Arrays.asList(
+                MockComment.make("c1"),
+                MockComment.make("c2")
+        ));
+
+        AtomicBoolean applied = new AtomicBoolean(false);
+        tree.buildAsync(Arrays.asList(
+                MockComment.make("c1"),
+                MockComment.make("c2")
+        ), () -> applied.set(true));
+        // live events that arrive while it's building
+        tree.addComment(MockComment.make("live"), true, SortDirections.NF);
+        tree.removeComment("c2");
+        AtomicBoolean replayed = new AtomicBoolean(false);
+        tree.replayAfterBuild(() -> replayed.set(true));
+        awaitApplied(applied);
+
+        assertTrue(replayed.get());
+        assertEquals(2, tree.visibleNodes.size());
+        assertEquals("live", idAt(tree, 0));
+        assertEquals("c1", idAt(tree, 1));
+        assertNull(tree.commentsById.get("c2"));
+
+        // nothing is remembered once it's applied
+        replayed.set(false);
+        tree.replayAfterBuild(() -> replayed.set(true));
+        assertFalse(replayed.get());
+    }
+
+    private static List<PublicComment> roots(int count) {
+        List<PublicComment> comments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            comments.add(MockComment.make("c" + i, "user" + i));
+        }
+        return comments;
+    }
+
+    private static String idAt(CommentsTree tree, int row) {
+        return ((RenderableComment) tree.visibleNodes.get(row)).getComment().getId();
+    }
+
+    @Test
+    public void testLiveChatEvictsOldestMessagesKeepingTheirDateSeparator() {
+        tree.setLiveChatStyle(true);
+        tree.maxRetainedComments = 10;
+        tree.evictionMarginRows = 2;
+        tree.build(roots(10));
+        assertEquals(11, tree.visibleNodes.size());
+
+        tree.addComment(MockComment.make("c10", "user10"), true, SortDirections.OF);
+
+        // trimmed to 10% under the limit, from the top since the newest messages are what's on screen
+        assertEquals(9, tree.commentsById.size());
+        assertNull(tree.commentsById.get("c0"));
+        assertNull(tree.commentsById.get("c1"));
+        assertFalse(tree.commentsByUserId.containsKey("user0"));
+        assertEquals(9, tree.totalSize());
+        assertTrue(tree.visibleNodes.get(0) instanceof RenderableNode.DateSeparator);
+        assertEquals("c2", idAt(tree, 1));
+        assertEquals(2, tree.getEvictedBefore().size());
+        assertEquals("c0", tree.getEvictedBefore().get(0).id);
+        assertEquals("c1", tree.getEvictedBefore().get(1).id);
+        verify(tree.getAdapter()).notifyItemRangeRemoved(1, 2);
+    }
+
+    @Test
+    public void testRestoreEvictedPutsThreadsBackInPlace() {
+        tree.setLiveChatStyle(true);
+        tree.maxRetainedComments = 10;
+        tree.evictionMarginRows = 2;
+        tree.build(roots(10));
+        tree.addComment(MockComment.make("c10", "user10"), true, SortDirections.OF);
+
+        // the fetch may include comments that weren't evicted
+        assertEquals(2, tree.restoreEvicted(true, 2, roots(3), false));
+
+        assertTrue(tree.getEvictedBefore().isEmpty());
+        assertEquals(11, tree.commentsById.size());
+        assertTrue(tree.visibleNodes.get(0) instanceof RenderableNode.DateSeparator);
+        assertEquals("c0", idAt(tree, 1));
+        assertEquals("c1", idAt(tree, 2));
+        // the separator that was kept for c2 isn't repeated
+        assertEquals("c2", idAt(tree, 3));
+        assertEquals(12, tree.visibleNodes.size());
+    }
+
+    @Test
+    public void testEvictsFromTheEndFurthestFromTheScreen() {
+        tree.maxRetainedComments = 5;
+        tree.evictionMarginRows = 2;
+        tree.build(roots(10));
+
+        // the top of the list is on screen, so the bottom goes
+        assertEquals(4, tree.commentsById.size());
+        assertEquals(4, tree.visibleNodes.size());
+        assertEquals(4, tree.rootCount());
+        assertEquals(6, tree.getEvictedAfter().size());
+        assertEquals("c4", tree.getEvictedAfter().get(0).id);
+        assertTrue(tree.getEvictedBefore().isEmpty());
+
+        tree.restoreEvicted(false, 3, roots(10).subList(4, 7), false);
+        assertEquals("c6", idAt(tree, 6));
+        assertEquals("c7", tree.getEvictedAfter().get(0).id);
+    }
+
+    @Test
+    public void testShiftedFetchKeepsTombstonesItMissed() {
+        tree.maxRetainedComments = 5;
+        tree.evictionMarginRows = 2;
+        tree.build(roots(10));
+        assertEquals("c4", tree.getEvictedAfter().get(0).id);
+
+        // a comment deleted above on the server shifted the page by one, so c4 isn't in it
+        assertEquals(0, tree.restoreEvicted(false, 3, roots(10).subList(5, 8), false));
+        assertEquals(6, tree.getEvictedAfter().size());
+        assertEquals(4, tree.visibleNodes.size());
+
+        // a wider fetch finds them all, in order
+        assertEquals(3, tree.restoreEvicted(false, 3, roots(10).subList(3, 9), false));
+        assertEquals("c4", idAt(tree, 4));
+        assertEquals("c6", idAt(tree, 6));
+        assertEquals("c7", tree.getEvictedAfter().get(0).id);
+    }
+
+    @Test
+    public void testMissingThreadsCanBeGivenUpOn() {
+        tree.maxRetainedComments = 5;
+        tree.evictionMarginRows = 2;
+        tree.build(roots(10));
+
+        // c4 was deleted on the server
+        List<PublicComment> fetched = new ArrayList<>(roots(10).subList(5, 7));
+        assertEquals(0, tree.restoreEvicted(false, 3, fetched, false));
+        assertEquals(3, tree.restoreEvicted(false, 3, fetched, true));
+
+        assertEquals("c5", idAt(tree, 4));
+        assertEquals("c6", idAt(tree, 5));
+        assertEquals(6, tree.visibleNodes.size());
+        assertEquals("c7", tree.getEvictedAfter().get(0).id);
+    }
+
+    @Test
+    public void testWholeThreadIsEvictedWithItsReplies() {
+        PublicComment parent = MockComment.make("p0", null, "Test User", "<p>Parent</p>", null, OffsetDateTime.now(), 0,
+                true, 2, Arrays.asList(MockComment.make("r1", null, "p0"), MockComment.make("r2", null, "p0")), null, null, null);
+        tree.maxRetainedComments = 3;
+        tree.evictionMarginRows = 0;
+        tree.setVisibleRange(3, 3);
+        tree.build(Arrays.asList(parent, MockComment.make("p1"), MockComment.make("p2"), MockComment.make("p3")));
+
+        assertNull(tree.commentsById.get("r1"));
+        assertNull(tree.commentsById.get("r2"));
+        assertEquals(2, tree.commentsById.size());
+        assertEquals(3, tree.getEvictedBefore().get(0).commentCount);
+        assertEquals("p2", idAt(tree, 0));
+    }
+
+    @Test
+    public void testOldestTombstonesAreDroppedPastTheLimit() {
+        tree.setLiveChatStyle(true);
+        tree.maxRetainedComments = 10;
+        tree.maxTombstones = 3;
+        tree.evictionMarginRows = 2;
+        tree.build(roots(10));
+        for (int i = 10; i < 14; i++) {
+            tree.addComment(MockComment.make("c" + i, "user" + i), true, SortDirections.OF);
+        }
+
+        // c0 to c3 were evicted, but only the three nearest are remembered
+        assertEquals(3, tree.getEvictedBefore().size());
+        assertEquals("c1", tree.getEvictedBefore().get(0).id);
+        assertEquals(4, tree.evictedBeforeCount());
+        assertEquals("c4", tree.allComments.get(0).getComment().getId());
+        assertEquals("c4", idAt(tree, 1));
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        tree.maxRetainedBytes = CommentsTree.estimateBytes(MockComment.make("c0", "user0")) * 3;
+        tree.evictionMarginRows = 0;
+        tree.build(roots(5));
+
+        assertEquals(2, tree.commentsById.size());
+        assertEquals("c1", idAt(tree, 1));
+    }
+
     private int countVisibleComments() {
         int count = 0;
         for (RenderableNode node : tree.visibleNodes) {
@@ -0,0 +1,58 @@
+package com.fastcomments.sdk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for the on-disk response cache.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DiskCacheTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        DiskCache cache = new DiskCache(folder.newFolder("pages"), 1024 * 1024, 60000);
+        cache.put("tenant|url|NF|0", "{\"comments\":[]}");
+
+        DiskCache.Entry entry = cache.get("tenant|url|NF|0");
+        assertNotNull(entry);
+        assertEquals("{\"comments\":[]}", entry.value);
+        assertNull(cache.get("tenant|url|NF|1"));
+    }
+
+    @Test
+    public void testExpiredEntriesAreNotReturned() throws Exception {
+        DiskCache cache = new DiskCache(folder.newFolder("pages"), 1024 * 1024, -1);
+        cache.put("key", "value");
+
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testOldestEntriesEvictedOverBudget() throws Exception {
+        File dir = folder.newFolder("pages");
+        DiskCache cache = new DiskCache(dir, 25, 60000);
+        cache.put("a", "0123456789");
+        new File(dir, dir.list()[0]).setLastModified(System.currentTimeMillis() - 10000);
+        cache.put("b", "0123456789");
+        cache.put("c", "0123456789");
+
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+}
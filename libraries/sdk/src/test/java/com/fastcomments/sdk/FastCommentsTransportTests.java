@@ -0,0 +1,94 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.api.PublicApi;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the shared HTTP transport.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FastCommentsTransportTests {
+
+    @Before
+    public void setUp() {
+        FastCommentsTransport.reset();
+    }
+
+    @After
+    public void tearDown() {
+        FastCommentsTransport.reset();
+    }
+
+    @Test
+    public void testApisShareOneClient() {
+        PublicApi first = FastCommentsTransport.createApi("https://fastcomments.com");
+        PublicApi second = FastCommentsTransport.createApi("https://eu.fastcomments.com");
+
+        assertNotSame(first.getApiClient(), second.getApiClient());
+        assertSame(first.getApiClient().getHttpClient(), second.getApiClient().getHttpClient());
+        // base paths are per instance
+        assertEquals("https://fastcomments.com", first.getApiClient().getBasePath());
+        assertEquals("https://eu.fastcomments.com", second.getApiClient().getBasePath());
+    }
+
+    @Test
+    public void testHttp2CanBeTurnedOff() {
+        assertTrue(FastCommentsTransport.getHttpClient().protocols().contains(Protocol.HTTP_2));
+
+        OkHttpClient before = FastCommentsTransport.getHttpClient();
+        FastCommentsTransport.setHttp2Enabled(false);
+        OkHttpClient after = FastCommentsTransport.getHttpClient();
+
+        assertEquals(Collections.singletonList(Protocol.HTTP_1_1), after.protocols());
+        assertSame(before.connectionPool(), after.connectionPool());
+    }
+
+    @Test
+    public void testPerHostLimitIsShared() {
+        OkHttpClient client = FastCommentsTransport.getHttpClient();
+        assertEquals(FastCommentsTransport.DEFAULT_MAX_REQUESTS_PER_HOST, client.dispatcher().getMaxRequestsPerHost());
+
+        FastCommentsTransport.setMaxRequestsPerHost(2);
+        assertEquals(2, client.dispatcher().getMaxRequestsPerHost());
+    }
+
+    @Test
+    public void testHttpCacheKeepsPoolAndDispatcher() {
+        OkHttpClient before = FastCommentsTransport.getHttpClient();
+        FastCommentsTransport.enableHttpCache(RuntimeEnvironment.getApplication(), 1024 * 1024);
+        OkHttpClient after = FastCommentsTransport.getHttpClient();
+
+        assertNotNull(after.cache());
+        assertSame(before.connectionPool(), after.connectionPool());
+        assertSame(before.dispatcher(), after.dispatcher());
+    }
+
+    @Test
+    public void testHttpCacheIsOnlyCreatedOnce() {
+        FastCommentsTransport.enableHttpCache(RuntimeEnvironment.getApplication(), 1024 * 1024);
+        OkHttpClient first = FastCommentsTransport.getHttpClient();
+        FastCommentsTransport.enableHttpCache(RuntimeEnvironment.getApplication(), 2 * 1024 * 1024);
+
+        assertSame(first, FastCommentsTransport.getHttpClient());
+        assertEquals(1024 * 1024, first.cache().maxSize());
+    }
+}
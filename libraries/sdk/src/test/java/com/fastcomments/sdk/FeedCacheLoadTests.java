@@ -0,0 +1,114 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.core.CommentWidgetConfig;
+import com.fastcomments.model.APIError;
+import com.fastcomments.model.FeedPost;
+import com.fastcomments.model.PublicFeedPostsResponse;
+import com.fastcomments.model.UserSessionInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for showing the cached start of the feed while load() waits for the network.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FeedCacheLoadTests {
+
+    // nothing is ever enqueued, so requests hang and only a cached feed can be shown
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private FastCommentsFeedSDK makeSDK(String sso) {
+        CommentWidgetConfig config = new CommentWidgetConfig();
+        config.tenantId = "tenant";
+        config.sso = sso;
+        FastCommentsFeedSDK sdk = new FastCommentsFeedSDK(config, server.url("/").toString());
+        // tags that depend on who is signed in, who isn't known yet on a cold start
+        sdk.setTagSupplier(user -> Collections.singletonList(user != null ? "team-" + user.getId() : "everyone"));
+        sdk.enableFeedCache(RuntimeEnvironment.getApplication());
+        return sdk;
+    }
+
+    private static boolean loadCached(FastCommentsFeedSDK sdk, long waitMs) throws InterruptedException {
+        AtomicBoolean cached = new AtomicBoolean(false);
+        sdk.load(new FCCallback<PublicFeedPostsResponse>() {
+            @Override
+            public boolean onFailure(APIError error) {
+                return CONSUME;
+            }
+
+            @Override
+            public boolean onSuccess(PublicFeedPostsResponse response) {
+                return CONSUME;
+            }
+        }, () -> cached.set(true));
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (!cached.get() && System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+            Thread.sleep(10);
+        }
+        return cached.get();
+    }
+
+    @Test
+    public void testColdStartFindsFeedSavedWithTheTagsItWasFetchedWith() throws Exception {
+        FastCommentsFeedSDK first = makeSDK("token-a");
+        FeedPost post = new FeedPost();
+        post.setId("mine");
+        post.setTenantId("tenant");
+        post.setCreatedAt(OffsetDateTime.now());
+        FastCommentsFeedSDK.FeedState state = new FastCommentsFeedSDK.FeedState();
+        state.setPageSize(20);
+        state.setFeedPosts(new ArrayList<>(Collections.singletonList(post)));
+        first.restorePaginationState(state);
+        UserSessionInfo user = new UserSessionInfo();
+        user.setId("user-1");
+        // as on a cold start: fetched with the tags for no one yet, by a response that says who the token is for
+        List<String> tags = Collections.singletonList("everyone");
+        first.saveFeedToCache(tags, user);
+        DiskCache disk = DiskCache.create(RuntimeEnvironment.getApplication(), "feed", 1024 * 1024, 60000);
+        String savedKey = first.feedCacheKey(tags, "user:user-1");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (disk.get(savedKey) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(disk.get(savedKey));
+
+        // the next cold start, with a renewed token for the same user
+        FastCommentsFeedSDK renewed = makeSDK("token-a-renewed");
+
+        assertTrue(loadCached(renewed, 5000));
+        assertEquals("mine", renewed.getFeedPosts().get(0).getId());
+    }
+}
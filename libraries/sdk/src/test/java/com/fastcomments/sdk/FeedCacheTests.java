@@ -0,0 +1,86 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.FeedPost;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the on-disk feed cache.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FeedCacheTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundtrip() throws Exception {
+        FeedCache cache = new FeedCache(new DiskCache(folder.newFolder("feed"), 1024 * 1024, 60000));
+
+        FeedCache.Snapshot snapshot = new FeedCache.Snapshot();
+        snapshot.lastPostId = "post-123";
+        snapshot.hasMore = true;
+        snapshot.likeCounts.put("post-123", 42);
+        Map<String, Boolean> reacts = new HashMap<>();
+        reacts.put("l", true);
+        snapshot.myReacts.put("post-123", reacts);
+        cache.write("tenant|", snapshot);
+
+        FeedCache.Snapshot restored = cache.read("tenant|");
+        assertNotNull(restored);
+        assertEquals("post-123", restored.lastPostId);
+        assertTrue(restored.hasMore);
+        assertEquals(Integer.valueOf(42), restored.likeCounts.get("post-123"));
+        assertTrue(restored.myReacts.get("post-123").get("l"));
+        assertTrue(restored.feedPosts.isEmpty());
+    }
+
+    @Test
+    public void testLongFeedIsTrimmedWithItsCursor() throws Exception {
+        FeedCache cache = new FeedCache(new DiskCache(folder.newFolder("feed"), 1024 * 1024, 60000));
+
+        FeedCache.Snapshot snapshot = new FeedCache.Snapshot();
+        for (int i = 0; i < FeedCache.MAX_POSTS + 10; i++) {
+            FeedPost post = new FeedPost();
+            post.setId("post-" + i);
+            post.setTenantId("tenant");
+            post.setCreatedAt(OffsetDateTime.now());
+            snapshot.feedPosts.add(post);
+        }
+        snapshot.lastPostId = "post-" + (FeedCache.MAX_POSTS + 9);
+        snapshot.hasMore = false;
+        cache.write("tenant|", snapshot);
+
+        FeedCache.Snapshot restored = cache.read("tenant|");
+        assertNotNull(restored);
+        assertEquals(FeedCache.MAX_POSTS, restored.feedPosts.size());
+        // loadMore() carries on right after the last cached post
+        assertEquals("post-" + (FeedCache.MAX_POSTS - 1), restored.lastPostId);
+        assertTrue(restored.hasMore);
+    }
+
+    @Test
+    public void testUnreadableEntryIsDiscarded() throws Exception {
+        DiskCache diskCache = new DiskCache(folder.newFolder("feed"), 1024 * 1024, 60000);
+        diskCache.put("tenant|", "{\"v\":999}");
+        FeedCache cache = new FeedCache(diskCache);
+
+        assertNull(cache.read("tenant|"));
+        assertNull(diskCache.get("tenant|"));
+    }
+}
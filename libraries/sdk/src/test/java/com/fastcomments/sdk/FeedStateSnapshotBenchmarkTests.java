@@ -0,0 +1,185 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.FeedPost;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Times encoding and decoding a FeedState with {@link FeedStateSnapshot}, with a realistic list of posts, and reports
+ * its size against what a Bundle can carry across Binder. Java serialization, the old path, can't write posts at all
+ * since the generated models aren't Serializable, so it's only compared on the cursor and reaction maps.
+ * Only runs when benchmarks are asked for, see {@link Benchmarks}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FeedStateSnapshotBenchmarkTests {
+
+    private static final int POSTS = 2000;
+    private static final int WARMUP = 50;
+    private static final int ITERATIONS = 200;
+    // the whole Binder transaction buffer, shared by everything in flight for the process
+    private static final int BINDER_LIMIT_BYTES = 1024 * 1024;
+    // a long scroll session's worth
+    private static final int FEED_POSTS = 500;
+
+    @BeforeClass
+    public static void assumeBenchmarks() {
+        Benchmarks.assumeEnabled();
+    }
+
+    private static FastCommentsFeedSDK.FeedState syntheticState() {
+        final FastCommentsFeedSDK.FeedState state = new FastCommentsFeedSDK.FeedState();
+        state.setLastPostId("post-" + (POSTS - 1));
+        state.setHasMore(true);
+        state.setPageSize(20);
+        final Map<String, Integer> likeCounts = new HashMap<>();
+        final Map<String, Map<String, Boolean>> myReacts = new HashMap<>();
+        for (int i = 0; i < POSTS; i++) {
+            likeCounts.put("post-" + i, i);
+            final Map<String, Boolean> reacts = new HashMap<>();
+            reacts.put("l", i % 2 == 0);
+            myReacts.put("post-" + i, reacts);
+        }
+        state.setLikeCounts(likeCounts);
+        state.setMyReacts(myReacts);
+        return state;
+    }
+
+    private static FastCommentsFeedSDK.FeedState syntheticFeed() {
+        final FastCommentsFeedSDK.FeedState state = syntheticState();
+        final List<FeedPost> posts = new ArrayList<>(FEED_POSTS);
+        for (int i = 0; i < FEED_POSTS; i++) {
+            final FeedPost post = new FeedPost();
+            post.setId("post-" + i);
+            post.setTenantId("tenant");
+            post.setTitle("Post number " + i);
+            post.setFromUserId("user-" + (i % 50));
+            post.setFromUserDisplayName("Test User " + (i % 50));
+            post.setCreatedAt(OffsetDateTime.now());
+            // a few paragraphs, like a typical post
+            final StringBuilder content = new StringBuilder();
+            for (int p = 0; p < 3; p++) {
+                content.append("<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor ")
+                        .append("incididunt ut labore et dolore magna aliqua, post ").append(i).append(".</p>");
+            }
+            post.setContentHTML(content.toString());
+            posts.add(post);
+        }
+        state.setFeedPosts(posts);
+        return state;
+    }
+
+    private static byte[] serialize(FastCommentsFeedSDK.FeedState state) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(state);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static FastCommentsFeedSDK.FeedState deserialize(byte[] data) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return (FastCommentsFeedSDK.FeedState) in.readObject();
+        }
+    }
+
+    private static long elapsedUs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000;
+    }
+
+    @Test
+    public void testEncodeAndDecode() throws Exception {
+        final FastCommentsFeedSDK.FeedState state = syntheticState();
+        final byte[] snapshot = FeedStateSnapshot.encode(state);
+        final byte[] serialized = serialize(state);
+        for (int i = 0; i < WARMUP; i++) {
+            FeedStateSnapshot.decode(FeedStateSnapshot.encode(state));
+            deserialize(serialize(state));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            FeedStateSnapshot.encode(state);
+        }
+        final long snapshotEncodeUs = elapsedUs(start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            FeedStateSnapshot.decode(snapshot);
+        }
+        final long snapshotDecodeUs = elapsedUs(start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serialize(state);
+        }
+        final long serializeUs = elapsedUs(start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            deserialize(serialized);
+        }
+        final long deserializeUs = elapsedUs(start) / ITERATIONS;
+
+        assertEquals(POSTS, FeedStateSnapshot.decode(snapshot).getMyReacts().size());
+        assertEquals(POSTS, deserialize(serialized).getMyReacts().size());
+
+        Benchmarks.report("FeedStateSnapshot, " + POSTS + " posts", snapshot.length + " bytes, encode "
+                + snapshotEncodeUs + "us, decode " + snapshotDecodeUs + "us");
+        Benchmarks.report("Java serialization, " + POSTS + " posts", serialized.length + " bytes, encode "
+                + serializeUs + "us, decode " + deserializeUs + "us");
+    }
+
+    @Test
+    public void testEncodeAndDecodeWithPosts() throws Exception {
+        final FastCommentsFeedSDK.FeedState state = syntheticFeed();
+        try {
+            serialize(state);
+            fail("Java serialization was expected to fail on posts");
+        } catch (NotSerializableException expected) {
+            // the old path could never save the posts themselves
+        }
+
+        final byte[] snapshot = FeedStateSnapshot.encode(state);
+        for (int i = 0; i < WARMUP; i++) {
+            FeedStateSnapshot.decode(FeedStateSnapshot.encode(state));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            FeedStateSnapshot.encode(state);
+        }
+        final long encodeUs = elapsedUs(start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            FeedStateSnapshot.decode(snapshot);
+        }
+        final long decodeUs = elapsedUs(start) / ITERATIONS;
+
+        assertEquals(FEED_POSTS, FeedStateSnapshot.decode(snapshot).getFeedPosts().size());
+
+        Benchmarks.report("FeedStateSnapshot, " + FEED_POSTS + " posts with content", snapshot.length + " bytes ("
+                + (snapshot.length * 100 / BINDER_LIMIT_BYTES) + "% of the " + BINDER_LIMIT_BYTES + " byte Binder limit, "
+                + (snapshot.length <= FeedStateSnapshot.MAX_INLINE_BYTES ? "inlined in the Bundle" : "spilled to disk")
+                + "), encode " + encodeUs + "us, decode " + decodeUs + "us");
+    }
+}
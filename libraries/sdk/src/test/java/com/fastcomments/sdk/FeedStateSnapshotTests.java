@@ -0,0 +1,185 @@
+package com.fastcomments.sdk;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.fastcomments.model.FeedPost;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the binary FeedState snapshot format.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FeedStateSnapshotTests {
+
+    @Test
+    public void testRoundtrip() throws Exception {
+        FastCommentsFeedSDK.FeedState state = makeState(3, 10);
+
+        FastCommentsFeedSDK.FeedState restored = FeedStateSnapshot.decode(FeedStateSnapshot.encode(state));
+
+        assertEquals("post-2", restored.getLastPostId());
+        assertTrue(restored.isHasMore());
+        assertEquals(20, restored.getPageSize());
+        assertEquals(5, restored.getNewPostsCount());
+        assertEquals(3, restored.getFeedPosts().size());
+        assertEquals("post-1", restored.getFeedPosts().get(1).getId());
+        assertEquals(state.getFeedPosts().get(1).getContentHTML(), restored.getFeedPosts().get(1).getContentHTML());
+        assertEquals(Integer.valueOf(42), restored.getLikeCounts().get("post-0"));
+        assertTrue(restored.getMyReacts().get("post-0").get("l"));
+    }
+
+    @Test
+    public void testNullCollectionsRoundtrip() throws Exception {
+        FastCommentsFeedSDK.FeedState restored = FeedStateSnapshot.decode(FeedStateSnapshot.encode(new FastCommentsFeedSDK.FeedState()));
+
+        assertNull(restored.getLastPostId());
+        assertFalse(restored.isHasMore());
+        assertNull(restored.getFeedPosts());
+        assertNull(restored.getMyReacts());
+        assertNull(restored.getLikeCounts());
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() throws Exception {
+        // posts are left out since the generated models aren't Serializable
+        FastCommentsFeedSDK.FeedState state = makeState(0, 10);
+        Map<String, Integer> likeCounts = new HashMap<>();
+        Map<String, Map<String, Boolean>> myReacts = new HashMap<>();
+        for (int i = 0; i < 500; i++) {
+            likeCounts.put("post-" + i, i);
+            Map<String, Boolean> reacts = new HashMap<>();
+            reacts.put("l", true);
+            myReacts.put("post-" + i, reacts);
+        }
+        state.setLikeCounts(likeCounts);
+        state.setMyReacts(myReacts);
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(state);
+        }
+
+        assertTrue(FeedStateSnapshot.encode(state).length < serialized.size());
+    }
+
+    @Test
+    public void testSmallStateIsInlinedInBundle() {
+        Context context = RuntimeEnvironment.getApplication();
+        Bundle bundle = new Bundle();
+
+        FeedStateSnapshot.save(context, bundle, "feed", makeState(3, 10));
+
+        assertNotNull(bundle.getByteArray("feed"));
+        assertEquals(3, FeedStateSnapshot.restore(context, bundle, "feed").getFeedPosts().size());
+    }
+
+    @Test
+    public void testLargeStateSpillsToDisk() {
+        Context context = RuntimeEnvironment.getApplication();
+        Bundle bundle = new Bundle();
+
+        FeedStateSnapshot.save(context, bundle, "feed", makeState(200, 1000));
+
+        assertNull(bundle.getByteArray("feed"));
+        assertNotNull(bundle.getString("feed.file"));
+        FastCommentsFeedSDK.FeedState restored = FeedStateSnapshot.restore(context, bundle, "feed");
+        assertNotNull(restored);
+        assertEquals(200, restored.getFeedPosts().size());
+    }
+
+    @Test
+    public void testSpillIsWrittenInTheBackgroundToOneFilePerKey() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        File spillDir = new File(context.getCacheDir(), "fastcomments/state");
+
+        for (int i = 0; i < 3; i++) {
+            FeedStateSnapshot.save(context, new Bundle(), "feed", makeState(200, 1000));
+        }
+        Bundle bundle = new Bundle();
+        FeedStateSnapshot.save(context, bundle, "feed", makeState(201, 1000));
+        FastCommentsExecutors.io().submit(() -> { }).get();
+
+        File[] files = spillDir.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        assertEquals(201, FeedStateSnapshot.restore(context, bundle, "feed").getFeedPosts().size());
+    }
+
+    @Test
+    public void testOverwrittenSpillIsNotRestored() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        Bundle stale = new Bundle();
+        FeedStateSnapshot.save(context, stale, "feed", makeState(200, 1000));
+        FeedStateSnapshot.save(context, new Bundle(), "feed", makeState(201, 1000));
+        FastCommentsExecutors.io().submit(() -> { }).get();
+
+        assertNull(FeedStateSnapshot.restore(context, stale, "feed"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownVersionIsRejected() throws Exception {
+        byte[] data = FeedStateSnapshot.encode(makeState(1, 10));
+        data[4] = 99;
+
+        FeedStateSnapshot.decode(data);
+    }
+
+    private static FastCommentsFeedSDK.FeedState makeState(int postCount, int contentLength) {
+        StringBuilder content = new StringBuilder("<p>");
+        for (int i = 0; i < contentLength; i++) {
+            content.append((char) ('a' + i % 26));
+        }
+        content.append("</p>");
+
+        List<FeedPost> posts = new ArrayList<>();
+        for (int i = 0; i < postCount; i++) {
+            FeedPost post = new FeedPost();
+            post.setId("post-" + i);
+            post.setTenantId("tenant");
+            post.setCreatedAt(OffsetDateTime.now());
+            post.setContentHTML(content.toString());
+            posts.add(post);
+        }
+
+        FastCommentsFeedSDK.FeedState state = new FastCommentsFeedSDK.FeedState();
+        state.setLastPostId(postCount > 0 ? "post-" + (postCount - 1) : null);
+        state.setHasMore(true);
+        state.setPageSize(20);
+        state.setNewPostsCount(5);
+        state.setFeedPosts(posts);
+
+        Map<String, Integer> likeCounts = new HashMap<>();
+        likeCounts.put("post-0", 42);
+        state.setLikeCounts(likeCounts);
+
+        Map<String, Map<String, Boolean>> myReacts = new HashMap<>();
+        Map<String, Boolean> reacts = new HashMap<>();
+        reacts.put("l", true);
+        myReacts.put("post-0", reacts);
+        state.setMyReacts(myReacts);
+        return state;
+    }
+}
@@ -0,0 +1,165 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.PublicComment;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the array backed comment tree.
+ */
+public class FlatCommentTreeTests {
+
+    private FlatCommentTree tree;
+
+    private static PublicComment comment(String id, String parentId, PublicComment... children) {
+        return MockComment.make(id, null, "Test User", "<p>Test comment</p>", parentId, OffsetDateTime.now(), 0, true,
+                children.length, new ArrayList<>(Arrays.asList(children)), null, null, null);
+    }
+
+    private List<String> visibleIds() {
+        List<String> ids = new ArrayList<>();
+        for (int row = 0; row < tree.visibleCount(); row++) {
+            ids.add(tree.comment(tree.nodeAtRow(row)).getId());
+        }
+        return ids;
+    }
+
+    @Before
+    public void setUp() {
+        // a
+        //   a1
+        //     a1x
+        //   a2
+        // b
+        //   b1
+        // c
+        tree = new FlatCommentTree();
+        tree.build(Arrays.asList(
+                comment("a", null,
+                        comment("a1", "a", comment("a1x", "a1")),
+                        comment("a2", "a")),
+                comment("b", null, comment("b1", "b")),
+                comment("c", null)
+        ));
+    }
+
+    @Test
+    public void testBuild() {
+        assertEquals(7, tree.size());
+        assertEquals(Arrays.asList("a", "b", "c"), visibleIds());
+        assertEquals(2, tree.depth(tree.nodeOf("a1x")));
+        assertEquals(tree.nodeOf("a1"), tree.parent(tree.nodeOf("a1x")));
+        assertEquals(-1, tree.parent(tree.nodeOf("b")));
+        assertEquals(3, tree.descendantCount(tree.nodeOf("a")));
+        assertEquals(-1, tree.rowOf(tree.nodeOf("a1")));
+        assertEquals(-1, tree.nodeOf("missing"));
+    }
+
+    @Test
+    public void testExpandAndCollapse() {
+        assertEquals(2, tree.expand(tree.nodeOf("a")));
+        assertEquals(Arrays.asList("a", "a1", "a2", "b", "c"), visibleIds());
+        assertEquals(1, tree.expand(tree.nodeOf("a1")));
+        assertEquals(Arrays.asList("a", "a1", "a1x", "a2", "b", "c"), visibleIds());
+        assertEquals(0, tree.expand(tree.nodeOf("a")));
+
+        assertEquals(3, tree.collapse(tree.nodeOf("a")));
+        assertEquals(Arrays.asList("a", "b", "c"), visibleIds());
+
+        // a1 stays expanded underneath, so its reply comes back with it
+        assertEquals(3, tree.expand(tree.nodeOf("a")));
+        assertEquals(Arrays.asList("a", "a1", "a1x", "a2", "b", "c"), visibleIds());
+        assertEquals(4, tree.rowOf(tree.nodeOf("b")));
+    }
+
+    @Test
+    public void testExpandWhileHiddenIsRemembered() {
+        assertEquals(0, tree.expand(tree.nodeOf("a1")));
+        assertTrue(tree.isExpanded(tree.nodeOf("a1")));
+        assertEquals(3, tree.expand(tree.nodeOf("a")));
+        assertEquals(Arrays.asList("a", "a1", "a1x", "a2", "b", "c"), visibleIds());
+    }
+
+    @Test
+    public void testRemoveSubtree() {
+        tree.expand(tree.nodeOf("a"));
+        tree.expand(tree.nodeOf("a1"));
+        tree.expand(tree.nodeOf("b"));
+
+        assertArrayEquals(new int[]{1, 2}, tree.remove(tree.nodeOf("a1")));
+        assertEquals(Arrays.asList("a", "a2", "b", "b1", "c"), visibleIds());
+        assertEquals(-1, tree.nodeOf("a1x"));
+        assertEquals(5, tree.size());
+
+        // collapsing and expanding skips what was removed
+        tree.collapse(tree.nodeOf("a"));
+        assertEquals(1, tree.expand(tree.nodeOf("a")));
+        assertEquals(Arrays.asList("a", "a2", "b", "b1", "c"), visibleIds());
+    }
+
+    @Test
+    public void testRemoveHidden() {
+        assertNull(tree.remove(tree.nodeOf("b1")));
+        assertEquals(Arrays.asList("a", "b", "c"), visibleIds());
+        assertEquals(0, tree.expand(tree.nodeOf("b")));
+    }
+
+    @Test
+    public void testCompactsAfterRemovingMost() {
+        tree.expand(tree.nodeOf("b"));
+        tree.remove(tree.nodeOf("a"));
+        tree.remove(tree.nodeOf("c"));
+
+        assertEquals(2, tree.size());
+        assertEquals(Arrays.asList("b", "b1"), visibleIds());
+        assertEquals(0, tree.nodeOf("b"));
+        assertEquals(1, tree.nodeOf("b1"));
+        assertEquals(0, tree.parent(tree.nodeOf("b1")));
+        assertEquals(1, tree.descendantCount(tree.nodeOf("b")));
+        assertTrue(tree.isExpanded(tree.nodeOf("b")));
+    }
+
+    @Test
+    public void testInsertChildren() {
+        tree.expand(tree.nodeOf("a"));
+        tree.expand(tree.nodeOf("b"));
+
+        assertEquals(2, tree.insertChildren(tree.nodeOf("a"), Arrays.asList(
+                comment("a3", "a", comment("a3x", "a3")),
+                comment("a4", "a"))));
+        assertEquals(Arrays.asList("a", "a1", "a2", "a3", "a4", "b", "b1", "c"), visibleIds());
+        assertEquals(6, tree.descendantCount(tree.nodeOf("a")));
+        assertEquals(2, tree.depth(tree.nodeOf("a3x")));
+        assertEquals(tree.nodeOf("b"), tree.parent(tree.nodeOf("b1")));
+        assertEquals(6, tree.rowOf(tree.nodeOf("b1")));
+
+        // into a hidden parent they stay hidden until it's expanded
+        assertEquals(0, tree.insertChildren(tree.nodeOf("a1x"), Collections.singletonList(comment("deep", "a1x"))));
+        assertEquals(3, tree.depth(tree.nodeOf("deep")));
+        assertEquals(Arrays.asList("a", "a1", "a2", "a3", "a4", "b", "b1", "c"), visibleIds());
+        assertEquals(1, tree.expand(tree.nodeOf("a1")));
+        assertEquals(tree.nodeOf("a1x"), tree.nodeAtRow(2));
+    }
+
+    @Test
+    public void testAppendRoots() {
+        assertEquals(3, tree.appendRoots(Arrays.asList(comment("d", null, comment("d1", "d")), comment("e", null))));
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), visibleIds());
+        assertEquals(1, tree.expand(tree.nodeOf("d")));
+        assertEquals(Arrays.asList("a", "b", "c", "d", "d1", "e"), visibleIds());
+        assertFalse(tree.isExpanded(tree.nodeOf("e")));
+    }
+}
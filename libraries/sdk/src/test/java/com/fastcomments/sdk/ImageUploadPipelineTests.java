@@ -0,0 +1,167 @@
+package com.fastcomments.sdk;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.fastcomments.model.APIError;
+import com.fastcomments.model.FeedPostMediaItem;
+import com.fastcomments.model.FeedPostMediaItemAsset;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the bounded image upload pipeline.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ImageUploadPipelineTests {
+
+    private final Map<File, FCCallback<FeedPostMediaItem>> uploading = new LinkedHashMap<>();
+    private final List<File> prepared = new ArrayList<>();
+    private final List<String> progress = new ArrayList<>();
+    private Context context;
+    private ImageUploadPipeline pipeline;
+    private List<FeedPostMediaItem> result;
+    private APIError error;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        pipeline = new ImageUploadPipeline(
+                (file, callback) -> uploading.put(file, callback),
+                (context, uri, dir) -> {
+                    if ("bad".equals(uri.getLastPathSegment())) {
+                        throw new IOException("unreadable");
+                    }
+                    File file = File.createTempFile("test_", ".jpg", dir);
+                    prepared.add(file);
+                    return new ImageUploadPipeline.PreparedImage(file, true);
+                },
+                Runnable::run);
+        pipeline.maxConcurrentUploads = 2;
+    }
+
+    private static List<Uri> uris(String... names) {
+        List<Uri> uris = new ArrayList<>();
+        for (String name : names) {
+            uris.add(Uri.parse("content://media/" + name));
+        }
+        return uris;
+    }
+
+    private static FeedPostMediaItem item(String src) {
+        FeedPostMediaItem item = new FeedPostMediaItem();
+        item.setSizes(Collections.singletonList(new FeedPostMediaItemAsset().src(src)));
+        return item;
+    }
+
+    private void upload(List<Uri> uris) {
+        pipeline.upload(context, uris, (index, written, total) -> progress.add(index + ":" + written), new FCCallback<List<FeedPostMediaItem>>() {
+            @Override
+            public boolean onFailure(APIError e) {
+                error = e;
+                return CONSUME;
+            }
+
+            @Override
+            public boolean onSuccess(List<FeedPostMediaItem> items) {
+                result = items;
+                return CONSUME;
+            }
+        });
+    }
+
+    private void finishUpload(int index, String src) {
+        uploading.get(prepared.get(index)).onSuccess(item(src));
+        ShadowLooper.idleMainLooper();
+    }
+
+    @Test
+    public void testConcurrencyIsBoundedAndOrderKept() {
+        upload(uris("a", "b", "c"));
+        assertEquals(2, uploading.size());
+
+        // finishing the second frees a slot for the third
+        finishUpload(1, "b");
+        assertEquals(3, uploading.size());
+        finishUpload(2, "c");
+        assertNull(result);
+        finishUpload(0, "a");
+
+        assertEquals(3, result.size());
+        assertEquals("a", result.get(0).getSizes().get(0).getSrc());
+        assertEquals("b", result.get(1).getSizes().get(0).getSrc());
+        assertEquals("c", result.get(2).getSizes().get(0).getSrc());
+    }
+
+    @Test
+    public void testTempFilesAreDeleted() {
+        upload(uris("a", "b"));
+        assertTrue(prepared.get(0).exists());
+
+        finishUpload(0, "a");
+        uploading.get(prepared.get(1)).onFailure(new APIError());
+        ShadowLooper.idleMainLooper();
+
+        assertFalse(prepared.get(0).exists());
+        assertFalse(prepared.get(1).exists());
+    }
+
+    @Test
+    public void testFailureStopsNewUploads() {
+        upload(uris("bad", "b", "c"));
+        ShadowLooper.idleMainLooper();
+
+        // b was already started, c never is
+        assertEquals(1, uploading.size());
+        assertNull(error);
+        finishUpload(0, "b");
+
+        assertEquals(1, uploading.size());
+        assertEquals("Failed to prepare image for upload: unreadable", error.getReason());
+        assertNull(result);
+    }
+
+    @Test
+    public void testProgressIsReportedPerItem() {
+        upload(uris("a", "b"));
+        FCCallback<FeedPostMediaItem> second = uploading.get(prepared.get(1));
+
+        second.onUploadProgress(10, 100, false);
+        // same percentage, not passed on
+        second.onUploadProgress(10, 100, false);
+        second.onUploadProgress(100, 100, true);
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(2, progress.size());
+        assertEquals("1:10", progress.get(0));
+        assertEquals("1:100", progress.get(1));
+    }
+
+    @Test
+    public void testSampleSize() {
+        assertEquals(1, ImageUploadPipeline.sampleSize(2048, 2048));
+        assertEquals(1, ImageUploadPipeline.sampleSize(4000, 2048));
+        assertEquals(2, ImageUploadPipeline.sampleSize(4096, 2048));
+        assertEquals(4, ImageUploadPipeline.sampleSize(12000, 2048));
+    }
+}
@@ -0,0 +1,101 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.LiveEvent;
+import com.fastcomments.model.LiveEventType;
+import com.fastcomments.model.PubSubComment;
+import com.fastcomments.model.PubSubVote;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for folding live events into per-frame batches.
+ */
+public class LiveEventBatcherTests {
+
+    private static LiveEvent vote(LiveEventType type, String commentId, int direction) {
+        PubSubVote vote = new PubSubVote();
+        vote.setCommentId(commentId);
+        vote.setDirection(direction);
+        LiveEvent event = new LiveEvent();
+        event.setType(type);
+        event.setVote(vote);
+        return event;
+    }
+
+    private static LiveEvent comment(LiveEventType type, String commentId) {
+        PubSubComment comment = new PubSubComment();
+        comment.setId(commentId);
+        LiveEvent event = new LiveEvent();
+        event.setType(type);
+        event.setComment(comment);
+        return event;
+    }
+
+    @Test
+    public void testVotesFoldIntoNetDelta() {
+        List<LiveEvent> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            events.add(vote(LiveEventType.NEW_VOTE, "c1", 1));
+        }
+        events.add(vote(LiveEventType.DELETED_VOTE, "c1", 1));
+        events.add(vote(LiveEventType.NEW_VOTE, "c1", -1));
+        events.add(vote(LiveEventType.NEW_VOTE, "c2", 1));
+
+        LiveEventBatcher.Batch batch = LiveEventBatcher.fold(events);
+
+        assertTrue(batch.events.isEmpty());
+        assertEquals(2, batch.voteDeltas.size());
+        assertEquals(9, batch.voteDeltas.get("c1").up);
+        assertEquals(1, batch.voteDeltas.get("c1").down);
+        assertEquals(1, batch.voteDeltas.get("c2").up);
+    }
+
+    @Test
+    public void testOnlyLastUpdatePerCommentIsKept() {
+        LiveEvent newComment = comment(LiveEventType.NEW_COMMENT, "c1");
+        LiveEvent firstUpdate = comment(LiveEventType.UPDATED_COMMENT, "c1");
+        LiveEvent otherUpdate = comment(LiveEventType.UPDATED_COMMENT, "c2");
+        LiveEvent lastUpdate = comment(LiveEventType.UPDATED_COMMENT, "c1");
+
+        LiveEventBatcher.Batch batch = LiveEventBatcher.fold(Arrays.asList(newComment, firstUpdate, otherUpdate, lastUpdate));
+
+        assertEquals(3, batch.events.size());
+        assertSame(newComment, batch.events.get(0));
+        assertSame(otherUpdate, batch.events.get(1));
+        assertSame(lastUpdate, batch.events.get(2));
+    }
+
+    @Test
+    public void testPresenceLastStateWins() {
+        LiveEvent first = new LiveEvent();
+        first.setType(LiveEventType.P_U);
+        first.setUj(Arrays.asList("u1", "u2"));
+        first.setSc(3);
+
+        LiveEvent second = new LiveEvent();
+        second.setType(LiveEventType.P_U);
+        second.setUl(Arrays.asList("u1"));
+        second.setSc(2);
+
+        // A reconnect batched by the server: leave then join means online
+        LiveEvent third = new LiveEvent();
+        third.setType(LiveEventType.P_U);
+        third.setUl(Arrays.asList("u2"));
+        third.setUj(Arrays.asList("u2"));
+
+        LiveEventBatcher.Batch batch = LiveEventBatcher.fold(Arrays.asList(first, second, third));
+
+        assertFalse(batch.presence.get("u1"));
+        assertTrue(batch.presence.get("u2"));
+        assertEquals(Integer.valueOf(2), batch.subscriberCount);
+    }
+}
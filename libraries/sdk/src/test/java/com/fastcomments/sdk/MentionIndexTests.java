@@ -0,0 +1,112 @@
+package com.fastcomments.sdk;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for the mention suggestion prefix trie.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MentionIndexTests {
+
+    private MentionIndex index;
+
+    @Before
+    public void setUp() {
+        index = new MentionIndex();
+        index.add(new UserMention("u1", "alice", null));
+        index.add(new UserMention("u2", "Alfred", null));
+        index.add(new UserMention("u3", "bob", null));
+    }
+
+    @Test
+    public void testPrefixMatchIsCaseInsensitiveAndSorted() {
+        List<UserMention> results = index.search("AL", 10);
+
+        assertEquals(2, results.size());
+        assertEquals("Alfred", results.get(0).getUsername());
+        assertEquals("alice", results.get(1).getUsername());
+        assertTrue(index.search("c", 10).isEmpty());
+    }
+
+    @Test
+    public void testLimit() {
+        assertEquals(1, index.search("a", 1).size());
+        assertEquals(3, index.search("", 10).size());
+    }
+
+    @Test
+    public void testUsersAreIndexedOnceAndRenamesMove() {
+        index.add(new UserMention("u1", "alice", "avatar"));
+        assertEquals(3, index.size());
+        assertEquals("avatar", index.search("alice", 10).get(0).getAvatarUrl());
+
+        index.add(new UserMention("u1", "zed", null));
+        assertEquals(3, index.size());
+        assertEquals(1, index.search("al", 10).size());
+        assertEquals("u1", index.search("z", 10).get(0).getId());
+    }
+
+    @Test
+    public void testResultsAreCopies() {
+        index.search("bob", 10).get(0).setMentioned(true);
+
+        assertFalse(index.search("bob", 10).get(0).isMentioned());
+    }
+
+    @Test
+    public void testAddCommentersSkipsAnonymous() {
+        CommentsTree tree = new CommentsTree();
+        tree.setAdapter(mock(CommentsAdapter.class));
+        tree.build(Arrays.asList(
+                MockComment.make("c1", "u4", "Carol", "<p>Hi</p>", null,
+                        OffsetDateTime.now(), 0, true, null, null, null, null, null),
+                MockComment.make("c2", null, "Anonymous", "<p>Hi</p>", null,
+                        OffsetDateTime.now(), 0, true, null, null, null, null, null)
+        ));
+
+        index.addCommenters(tree);
+
+        assertEquals(4, index.size());
+        assertEquals("u4", index.search("car", 10).get(0).getId());
+        assertTrue(index.search("anon", 10).isEmpty());
+    }
+
+    @Test
+    public void testCommenterDisplayNameDoesNotReplaceUsername() {
+        CommentsTree tree = new CommentsTree();
+        tree.setAdapter(mock(CommentsAdapter.class));
+        tree.build(Arrays.asList(
+                MockComment.make("c1", "u1", "Alice Smith", "<p>Hi</p>", null,
+                        OffsetDateTime.now(), 0, true, null, null, null, null, null),
+                MockComment.make("c2", "u5", "Dave Jones", "<p>Hi</p>", null,
+                        OffsetDateTime.now(), 0, true, null, null, null, null, null)
+        ));
+
+        index.addCommenters(tree);
+
+        assertEquals(4, index.size());
+        assertEquals("alice", index.search("al", 10).get(1).getUsername());
+        assertTrue(index.search("alice s", 10).isEmpty());
+
+        // until a search returns their username, the display name is all we have
+        assertEquals("Dave Jones", index.search("dave", 10).get(0).getUsername());
+        index.add(new UserMention("u5", "djones", null));
+        index.addCommenters(tree);
+        assertEquals("u5", index.search("djones", 10).get(0).getId());
+        assertTrue(index.search("dave", 10).isEmpty());
+    }
+}
@@ -0,0 +1,141 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.APIError;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for debounced, cancellable mention search.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MentionSearchTests {
+
+    private final Map<String, FCCallback<List<UserMention>>> pending = new LinkedHashMap<>();
+    private final List<String> cancelled = new ArrayList<>();
+    private final List<String> requested = new ArrayList<>();
+    private final List<List<UserMention>> delivered = new ArrayList<>();
+    private MentionIndex index;
+    private MentionSearch search;
+
+    @Before
+    public void setUp() {
+        index = new MentionIndex();
+        CommentsTree tree = new CommentsTree();
+        tree.setAdapter(mock(CommentsAdapter.class));
+        search = new MentionSearch(index, tree, (term, callback) -> {
+            requested.add(term);
+            pending.put(term, callback);
+            return () -> cancelled.add(term);
+        });
+        search.maxResults = 2;
+    }
+
+    private void type(String term) {
+        search.search(term, (t, users) -> delivered.add(users));
+    }
+
+    private void waitForDebounce() {
+        ShadowLooper.idleMainLooper(search.debounceMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testTypingFastOnlySearchesTheLastTerm() {
+        type("a");
+        type("al");
+        type("ali");
+        waitForDebounce();
+
+        assertEquals(Collections.singletonList("ali"), requested);
+    }
+
+    @Test
+    public void testNewTermCancelsSearchInFlight() {
+        type("a");
+        waitForDebounce();
+        type("al");
+        waitForDebounce();
+
+        assertEquals(Collections.singletonList("a"), cancelled);
+
+        // a late response for the old term is ignored
+        pending.get("a").onSuccess(Collections.singletonList(new UserMention("u1", "adam", null)));
+        ShadowLooper.idleMainLooper();
+        assertTrue(delivered.isEmpty());
+    }
+
+    @Test
+    public void testServerResultsAreIndexedForNextTime() {
+        type("al");
+        waitForDebounce();
+        pending.get("al").onSuccess(Arrays.asList(
+                new UserMention("u1", "alice", null),
+                new UserMention("u2", "alfred", null)));
+        ShadowLooper.idleMainLooper();
+        assertEquals(1, delivered.size());
+        assertEquals(2, delivered.get(0).size());
+
+        search.cancel();
+        delivered.clear();
+        type("al");
+        waitForDebounce();
+
+        // enough local matches, so no request and an immediate answer
+        assertEquals(1, requested.size());
+        assertEquals(1, delivered.size());
+        assertEquals(2, delivered.get(0).size());
+    }
+
+    @Test
+    public void testLongerTermsAfterAnEmptyResultDontSearch() {
+        type("zz");
+        waitForDebounce();
+        pending.get("zz").onSuccess(new ArrayList<>());
+        ShadowLooper.idleMainLooper();
+
+        type("zzz");
+        waitForDebounce();
+
+        assertEquals(1, requested.size());
+        assertTrue(delivered.get(delivered.size() - 1).isEmpty());
+    }
+
+    @Test
+    public void testFailureKeepsLocalResults() {
+        index.add(new UserMention("u1", "alice", null));
+
+        type("al");
+        assertEquals(1, delivered.size());
+        waitForDebounce();
+        pending.get("al").onFailure(new APIError());
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void testCancelStopsPendingSearch() {
+        type("al");
+        search.cancel();
+        waitForDebounce();
+
+        assertTrue(requested.isEmpty());
+    }
+}
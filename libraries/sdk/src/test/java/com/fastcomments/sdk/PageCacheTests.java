@@ -0,0 +1,163 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.core.CommentWidgetConfig;
+import com.fastcomments.model.APIError;
+import com.fastcomments.model.APIStatus;
+import com.fastcomments.model.GetCommentsResponseWithPresencePublicComment;
+import com.fastcomments.model.UserSessionInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for showing the cached first page while load() waits for the network.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PageCacheTests {
+
+    // nothing is ever enqueued, so requests hang and only a cached page can be shown
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private FastCommentsSDK makeSDK(String sso, boolean pageCache) {
+        CommentWidgetConfig config = new CommentWidgetConfig();
+        config.tenantId = "tenant";
+        config.urlId = "page";
+        config.sso = sso;
+        FastCommentsSDK sdk = new FastCommentsSDK(config, true, server.url("/").toString());
+        sdk.commentsTree.setAdapter(mock(CommentsAdapter.class));
+        if (pageCache) {
+            sdk.enablePageCache(RuntimeEnvironment.getApplication());
+        }
+        return sdk;
+    }
+
+    private static DiskCache pageCache() {
+        return DiskCache.create(RuntimeEnvironment.getApplication(), "pages", 1024 * 1024, 60000);
+    }
+
+    private static GetCommentsResponseWithPresencePublicComment makePage(String commentId) {
+        GetCommentsResponseWithPresencePublicComment page = new GetCommentsResponseWithPresencePublicComment();
+        page.setStatus(APIStatus.SUCCESS);
+        page.setComments(new ArrayList<>(Collections.singletonList(MockComment.make(commentId))));
+        return page;
+    }
+
+    private static void cachePage(FastCommentsSDK sdk, String sso, String commentId) {
+        pageCache().put(sdk.pageCacheKey(0, UserKey.forCache(null, sso)), makePage(commentId).toJson());
+    }
+
+    private static GetCommentsResponseWithPresencePublicComment loadCached(FastCommentsSDK sdk, long waitMs) throws InterruptedException {
+        AtomicReference<GetCommentsResponseWithPresencePublicComment> cached = new AtomicReference<>();
+        sdk.load(new FCCallback<GetCommentsResponseWithPresencePublicComment>() {
+            @Override
+            public boolean onFailure(APIError error) {
+                return CONSUME;
+            }
+
+            @Override
+            public boolean onSuccess(GetCommentsResponseWithPresencePublicComment response) {
+                return CONSUME;
+            }
+        }, cached::set);
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (cached.get() == null && System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+            Thread.sleep(10);
+        }
+        return cached.get();
+    }
+
+    @Test
+    public void testCachedPageIsShownWhileLoading() throws Exception {
+        FastCommentsSDK sdk = makeSDK("token-a", true);
+        cachePage(sdk, "token-a", "cached");
+
+        GetCommentsResponseWithPresencePublicComment cached = loadCached(sdk, 5000);
+
+        assertNotNull(cached);
+        assertEquals(1, sdk.commentsTree.visibleSize());
+        assertEquals("cached", ((RenderableComment) sdk.commentsTree.visibleNodes.get(0)).getComment().getId());
+    }
+
+    @Test
+    public void testCachedPageIsNotShownToAnotherUser() throws Exception {
+        cachePage(makeSDK("token-a", true), "token-a", "only-for-a");
+
+        FastCommentsSDK other = makeSDK("token-b", true);
+        assertNull(loadCached(other, 500));
+        assertEquals(0, other.commentsTree.visibleSize());
+
+        FastCommentsSDK anonymous = makeSDK(null, true);
+        assertNull(loadCached(anonymous, 500));
+    }
+
+    @Test
+    public void testPageCacheIsOffByDefault() throws Exception {
+        FastCommentsSDK sdk = makeSDK("token-a", false);
+        cachePage(sdk, "token-a", "cached");
+
+        assertNull(loadCached(sdk, 500));
+        assertEquals(0, sdk.commentsTree.visibleSize());
+    }
+
+    @Test
+    public void testCachedPageIsFoundAfterTheTokenIsRenewed() throws Exception {
+        UserSessionInfo user = new UserSessionInfo();
+        user.setId("user-1");
+        FastCommentsSDK first = makeSDK("token-a", true);
+        first.savePageToCache(0, user, "token-a", makePage("mine"));
+        String savedKey = first.pageCacheKey(0, "user:user-1");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pageCache().get(savedKey) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(pageCache().get(savedKey));
+
+        // a cold start, with a new token for the same user
+        FastCommentsSDK renewed = makeSDK("token-a-renewed", true);
+        GetCommentsResponseWithPresencePublicComment cached = loadCached(renewed, 5000);
+
+        assertNotNull(cached);
+        assertEquals("mine", ((RenderableComment) renewed.commentsTree.visibleNodes.get(0)).getComment().getId());
+    }
+
+    @Test
+    public void testSigningOutForgetsTheLastUser() {
+        DiskCache cache = pageCache();
+        UserKey.remember(cache, "tenant", "user:user-1");
+        assertEquals("user:user-1", UserKey.lastKnown(cache, "tenant", null, "token-b"));
+
+        UserKey.remember(cache, "tenant", UserKey.ANONYMOUS);
+        assertEquals(UserKey.of("token-b"), UserKey.lastKnown(cache, "tenant", null, "token-b"));
+    }
+}
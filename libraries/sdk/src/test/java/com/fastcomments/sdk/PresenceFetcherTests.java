@@ -0,0 +1,90 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.PublicComment;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for windowed, chunked presence fetching.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PresenceFetcherTests {
+
+    private CommentsTree tree;
+    private final List<List<String>> requests = new ArrayList<>();
+    private final List<Runnable> pending = new ArrayList<>();
+    private PresenceFetcher fetcher;
+
+    @Before
+    public void setUp() {
+        tree = new CommentsTree();
+        List<PublicComment> comments = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            comments.add(MockComment.make("c" + i, "user" + i));
+        }
+        tree.build(comments);
+        fetcher = new PresenceFetcher(tree, (userIds, onDone) -> {
+            requests.add(userIds);
+            pending.add(onDone);
+        });
+        fetcher.marginNodes = 5;
+        fetcher.maxIdsPerRequest = 4;
+        fetcher.maxConcurrentRequests = 2;
+    }
+
+    private int requestedIdCount() {
+        int count = 0;
+        for (List<String> request : requests) {
+            count += request.size();
+        }
+        return count;
+    }
+
+    private void completeAll() {
+        while (!pending.isEmpty()) {
+            pending.remove(0).run();
+        }
+    }
+
+    @Test
+    public void testOnlyFetchesVisibleWindowInBoundedChunks() {
+        fetcher.setVisibleRange(50, 51);
+
+        // 45..56 -> 12 users, 4 per request, 2 at a time
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(0).contains("user45"));
+        assertFalse(requests.get(0).contains("user44"));
+
+        completeAll();
+        assertEquals(3, requests.size());
+        assertEquals(12, requestedIdCount());
+        assertTrue(requests.get(2).contains("user56"));
+    }
+
+    @Test
+    public void testSkipsFreshAndInFlightIds() {
+        tree.updateUserPresence("user0", true);
+        tree.markPresenceChecked(Arrays.asList("user1", "user2"));
+
+        fetcher.setVisibleRange(0, 0);
+        // 0..5, minus the three fresh ones
+        assertEquals(Arrays.asList("user3", "user4", "user5"), requests.get(0));
+
+        // still in flight, so asking again does nothing
+        fetcher.fetchUsers(Arrays.asList("user3", "user4"));
+        assertEquals(1, requests.size());
+    }
+}
@@ -56,4 +56,21 @@ public class RenderableNodeTests {
         // Android returns 1 for orphans (parent not in map but parentId is set)
         assertEquals(1, orphan.determineNestingLevel(map));
     }
+
+    @Test
+    public void testNestingLevelOfOrphanUpdatesWhenParentArrives() {
+        Map<String, RenderableComment> map = new HashMap<>();
+        RenderableComment c2 = new RenderableComment(MockComment.make("c2", null, "c1"));
+        map.put("c2", c2);
+        assertEquals(1, c2.determineNestingLevel(map));
+
+        // not remembered while the chain is incomplete
+        map.put("c1", new RenderableComment(MockComment.make("c1", null, "c0")));
+        map.put("c0", new RenderableComment(MockComment.make("c0")));
+        assertEquals(2, c2.determineNestingLevel(map));
+
+        // remembered once it is
+        map.remove("c1");
+        assertEquals(2, c2.determineNestingLevel(map));
+    }
 }
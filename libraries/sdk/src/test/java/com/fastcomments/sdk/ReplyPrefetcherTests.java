@@ -0,0 +1,128 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.GetCommentsResponseWithPresencePublicComment;
+import com.fastcomments.model.PublicComment;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for prefetching replies of threads likely to be expanded.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ReplyPrefetcherTests {
+
+    private CommentsTree tree;
+    private final List<String> requestedParents = new ArrayList<>();
+    private final List<FCCallback<GetCommentsResponseWithPresencePublicComment>> pending = new ArrayList<>();
+    private ReplyPrefetcher prefetcher;
+
+    @Before
+    public void setUp() {
+        tree = new CommentsTree();
+        tree.setAdapter(mock(CommentsAdapter.class));
+        List<PublicComment> comments = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            comments.add(withReplies("c" + i, i == 3 ? 20 : 2, 0));
+        }
+        comments.add(MockComment.make("no-replies"));
+        tree.build(comments);
+        prefetcher = new ReplyPrefetcher(tree, (parentId, limit, callback) -> {
+            requestedParents.add(parentId);
+            pending.add(callback);
+        });
+        prefetcher.maxConcurrentRequests = 2;
+        prefetcher.maxRequestsPerMinute = 3;
+        prefetcher.marginNodes = 0;
+    }
+
+    private static PublicComment withReplies(String id, int childCount, int votes) {
+        PublicComment comment = MockComment.make(id, null, "User", "<p>Parent</p>",
+                null, OffsetDateTime.now(), votes, true, childCount, null, null, null, null);
+        comment.setHasChildren(true);
+        return comment;
+    }
+
+    private static GetCommentsResponseWithPresencePublicComment replies(String parentId) {
+        GetCommentsResponseWithPresencePublicComment response = new GetCommentsResponseWithPresencePublicComment();
+        response.setComments(new ArrayList<>(Arrays.asList(
+                MockComment.make(parentId + "-r1", null, parentId),
+                MockComment.make(parentId + "-r2", null, parentId))));
+        response.setHasMore(false);
+        return response;
+    }
+
+    @Test
+    public void testMostLikelyThreadIsFetchedFirst() {
+        prefetcher.setVisibleRange(0, 5);
+
+        assertEquals(2, requestedParents.size());
+        assertEquals("c3", requestedParents.get(0));
+        assertEquals("c0", requestedParents.get(1));
+    }
+
+    @Test
+    public void testRequestsPerMinuteAreCapped() {
+        prefetcher.setVisibleRange(0, 9);
+        pending.get(0).onSuccess(replies(requestedParents.get(0)));
+        pending.get(1).onSuccess(replies(requestedParents.get(1)));
+
+        assertEquals(3, requestedParents.size());
+
+        pending.get(2).onSuccess(replies(requestedParents.get(2)));
+        prefetcher.prefetchVisible();
+        assertEquals(3, requestedParents.size());
+
+        ShadowLooper.idleMainLooper(61, TimeUnit.SECONDS);
+        prefetcher.prefetchVisible();
+        assertEquals(5, requestedParents.size());
+    }
+
+    @Test
+    public void testExpandUsesPrefetchedReplies() {
+        prefetcher.setVisibleRange(0, 0);
+        assertEquals(Collections.singletonList("c0"), requestedParents);
+        pending.get(0).onSuccess(replies("c0"));
+
+        RenderableComment parent = tree.commentsById.get("c0");
+        assertNotNull(parent.prefetchedChildren);
+
+        tree.setRepliesVisible(parent, true, (request, callback) -> fail("Replies should not be requested again"));
+
+        assertNull(parent.prefetchedChildren);
+        assertFalse(parent.isLoadingChildren);
+        assertNotNull(tree.commentsById.get("c0-r1"));
+        assertTrue(tree.visibleNodes.get(1) instanceof RenderableComment);
+        assertEquals("c0-r1", ((RenderableComment) tree.visibleNodes.get(1)).getComment().getId());
+    }
+
+    @Test
+    public void testResultIsDroppedIfThreadWasOpenedMeanwhile() {
+        prefetcher.setVisibleRange(0, 0);
+        tree.commentsById.get("c0").isLoadingChildren = true;
+
+        pending.get(0).onSuccess(replies("c0"));
+
+        assertNull(tree.commentsById.get("c0").prefetchedChildren);
+    }
+}
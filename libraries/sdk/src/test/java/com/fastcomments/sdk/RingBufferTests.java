@@ -0,0 +1,98 @@
+package com.fastcomments.sdk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for the circular list behind allComments and visibleNodes.
+ */
+public class RingBufferTests {
+
+    @Test
+    public void testWrapsAroundWithoutGrowing() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            buffer.add(i);
+        }
+        // like a chat at its limit: trim from the front, add at the back
+        for (int i = 4; i < 100; i++) {
+            buffer.subList(0, 1).clear();
+            buffer.add(i);
+        }
+
+        assertEquals(Arrays.asList(96, 97, 98, 99), buffer);
+    }
+
+    @Test
+    public void testAddAtBothEnds() {
+        RingBuffer<String> buffer = new RingBuffer<>(1);
+        buffer.add("b");
+        buffer.add(0, "a");
+        buffer.add("c");
+        buffer.addAll(0, Arrays.asList("x", "y"));
+        buffer.addAll(Arrays.asList("d", "e"));
+
+        assertEquals(Arrays.asList("x", "y", "a", "b", "c", "d", "e"), buffer);
+        assertEquals("x", buffer.remove(0));
+        assertEquals("e", buffer.remove(buffer.size() - 1));
+        assertEquals(Arrays.asList("y", "a", "b", "c", "d"), buffer);
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        RingBuffer<String> buffer = new RingBuffer<>(Arrays.asList("a", "b", "c"));
+        Iterator<String> it = buffer.iterator();
+        it.next();
+        it.next();
+        it.remove();
+
+        assertEquals(Arrays.asList("a", "c"), buffer);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfBounds() {
+        RingBuffer<String> buffer = new RingBuffer<>();
+        buffer.add("a");
+        buffer.get(1);
+    }
+
+    @Test
+    public void testMatchesArrayListUnderRandomMutations() {
+        Random random = new Random(7);
+        RingBuffer<Integer> buffer = new RingBuffer<>(2);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            final int op = random.nextInt(6);
+            if (op <= 1 || expected.isEmpty()) {
+                int index = random.nextInt(expected.size() + 1);
+                expected.add(index, i);
+                buffer.add(index, i);
+            } else if (op == 2) {
+                int index = random.nextInt(expected.size() + 1);
+                List<Integer> values = Arrays.asList(i, -i);
+                expected.addAll(index, values);
+                buffer.addAll(index, values);
+            } else if (op == 3) {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index), buffer.remove(index));
+            } else if (op == 4) {
+                int from = random.nextInt(expected.size());
+                int to = Math.min(expected.size(), from + random.nextInt(5));
+                expected.subList(from, to).clear();
+                buffer.subList(from, to).clear();
+            } else {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.set(index, -1), buffer.set(index, -1));
+            }
+            assertEquals(expected.size(), buffer.size());
+        }
+        assertEquals(expected, buffer);
+    }
+}
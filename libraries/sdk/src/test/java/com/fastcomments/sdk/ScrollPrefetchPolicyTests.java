@@ -0,0 +1,65 @@
+package com.fastcomments.sdk;
+
+import android.Manifest;
+import android.app.Application;
+import android.content.Context;
+import android.os.PowerManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Unit tests for deciding when to prefetch the next page while scrolling.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ScrollPrefetchPolicyTests {
+
+    private ScrollPrefetchPolicy policy;
+
+    @Before
+    public void setUp() {
+        policy = new ScrollPrefetchPolicy(RuntimeEnvironment.getApplication());
+        policy.leadTimeMs = 2000;
+        policy.constrainedLeadTimeMs = 500;
+        policy.minRowsAhead = 5;
+    }
+
+    @Test
+    public void testAlwaysPrefetchesNearTheEnd() {
+        assertTrue(policy.shouldPrefetch(3, 100, 0, true));
+    }
+
+    @Test
+    public void testPrefetchesWhenEndIsWithinLeadTime() {
+        // 50 rows of 100px at 3px/ms is about 1.7s away
+        assertTrue(policy.shouldPrefetch(50, 100, 3, false));
+        // at 1px/ms it's 5s away
+        assertFalse(policy.shouldPrefetch(50, 100, 1, false));
+    }
+
+    @Test
+    public void testConstrainedDevicesPrefetchLater() {
+        assertFalse(policy.shouldPrefetch(50, 100, 3, true));
+        assertTrue(policy.shouldPrefetch(10, 100, 3, true));
+    }
+
+    @Test
+    public void testWithoutNetworkStatePermissionOnlyBatterySaverCounts() {
+        Application application = RuntimeEnvironment.getApplication();
+        shadowOf(application).denyPermissions(Manifest.permission.ACCESS_NETWORK_STATE);
+
+        assertFalse(ScrollPrefetchPolicy.isConstrained(application));
+
+        shadowOf((PowerManager) application.getSystemService(Context.POWER_SERVICE)).setIsPowerSaveMode(true);
+        assertTrue(ScrollPrefetchPolicy.isConstrained(application));
+    }
+}
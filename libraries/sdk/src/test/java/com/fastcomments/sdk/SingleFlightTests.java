@@ -0,0 +1,176 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.model.APIError;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for sharing identical in-flight requests and caching their results.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SingleFlightTests {
+
+    private final List<FCCallback<String>> pending = new ArrayList<>();
+    private final List<String> results = new ArrayList<>();
+    private final List<APIError> failures = new ArrayList<>();
+    private SingleFlight singleFlight;
+
+    @Before
+    public void setUp() {
+        singleFlight = new SingleFlight();
+    }
+
+    private void execute(String key, long ttlMs) {
+        singleFlight.execute(key, ttlMs, pending::add, new FCCallback<String>() {
+            @Override
+            public boolean onFailure(APIError error) {
+                failures.add(error);
+                return CONSUME;
+            }
+
+            @Override
+            public boolean onSuccess(String response) {
+                results.add(response);
+                return CONSUME;
+            }
+        });
+    }
+
+    @Test
+    public void testIdenticalRequestsShareOneCall() {
+        execute("a", 0);
+        execute("a", 0);
+        execute("b", 0);
+
+        assertEquals(2, pending.size());
+        assertEquals(2, singleFlight.getMisses());
+        assertEquals(1, singleFlight.getCoalesced());
+
+        pending.get(0).onSuccess("result");
+        assertEquals(2, results.size());
+        assertEquals("result", results.get(0));
+        assertEquals("result", results.get(1));
+    }
+
+    @Test
+    public void testFailureReachesEveryWaiterAndIsNotCached() {
+        execute("a", 10000);
+        execute("a", 10000);
+
+        pending.get(0).onFailure(new APIError());
+        assertEquals(2, failures.size());
+
+        execute("a", 10000);
+        assertEquals(2, pending.size());
+        assertEquals(0, singleFlight.getHits());
+    }
+
+    @Test
+    public void testResultIsCachedForTtl() {
+        execute("a", 10000);
+        pending.get(0).onSuccess("result");
+
+        execute("a", 10000);
+        assertEquals(1, pending.size());
+        assertEquals(1, singleFlight.getHits());
+        assertEquals(2, results.size());
+
+        ShadowLooper.idleMainLooper(11, TimeUnit.SECONDS);
+        execute("a", 10000);
+        assertEquals(2, pending.size());
+        assertEquals(2, singleFlight.getMisses());
+    }
+
+    @Test
+    public void testZeroTtlIsNotCached() {
+        execute("a", 0);
+        pending.get(0).onSuccess("result");
+
+        execute("a", 0);
+        assertEquals(2, pending.size());
+        assertEquals(0, singleFlight.getHits());
+    }
+
+    @Test
+    public void testClearDropsCacheAndInFlightResults() {
+        execute("a", 10000);
+        pending.get(0).onSuccess("result");
+        execute("b", 10000);
+        singleFlight.clear();
+        // b started before the clear, so its result isn't kept
+        pending.get(1).onSuccess("old");
+
+        execute("a", 10000);
+        execute("b", 10000);
+        assertEquals(4, pending.size());
+        assertEquals(0, singleFlight.getHits());
+    }
+
+    @Test
+    public void testInvalidateByPrefix() {
+        execute("replies:1", 10000);
+        execute("search:x", 10000);
+        pending.get(0).onSuccess("replies");
+        pending.get(1).onSuccess("search");
+
+        singleFlight.invalidate("replies:");
+
+        execute("replies:1", 10000);
+        execute("search:x", 10000);
+        assertEquals(3, pending.size());
+        assertEquals(1, singleFlight.getHits());
+    }
+
+    @Test
+    public void testRequestIsCancelledOnlyOnceEveryCallerDropsOut() {
+        final List<String> cancelled = new ArrayList<>();
+        final SingleFlight.CancellableRequest<String> request = callback -> {
+            pending.add(callback);
+            return () -> cancelled.add("a");
+        };
+        Runnable first = singleFlight.executeCancellable("a", 0, request, recordingCallback());
+        Runnable second = singleFlight.executeCancellable("a", 0, request, recordingCallback());
+        assertEquals(1, pending.size());
+
+        first.run();
+        assertEquals(0, cancelled.size());
+        second.run();
+        assertEquals(1, cancelled.size());
+
+        // the next caller starts over, and the abandoned request finishing doesn't reach anyone
+        singleFlight.executeCancellable("a", 0, request, recordingCallback());
+        assertEquals(2, pending.size());
+        pending.get(0).onFailure(new APIError());
+        assertEquals(0, failures.size());
+        pending.get(1).onSuccess("result");
+        assertEquals(1, results.size());
+    }
+
+    private FCCallback<String> recordingCallback() {
+        return new FCCallback<String>() {
+            @Override
+            public boolean onFailure(APIError error) {
+                failures.add(error);
+                return CONSUME;
+            }
+
+            @Override
+            public boolean onSuccess(String response) {
+                results.add(response);
+                return CONSUME;
+            }
+        };
+    }
+}
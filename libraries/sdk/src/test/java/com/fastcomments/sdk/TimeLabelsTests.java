@@ -0,0 +1,90 @@
+package com.fastcomments.sdk;
+
+import android.text.format.DateUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the shared comment date labels and minute tick.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TimeLabelsTests {
+
+    private static final long NOW = OffsetDateTime.of(2024, 6, 15, 12, 0, 30, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    private static OffsetDateTime ago(long ms) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(NOW - ms), ZoneOffset.UTC);
+    }
+
+    @Test
+    public void testMatchesDateUtils() {
+        final long[] offsets = {
+                0, 59 * 1000, 61 * 1000, 45 * DateUtils.MINUTE_IN_MILLIS, 3 * DateUtils.HOUR_IN_MILLIS,
+                23 * DateUtils.HOUR_IN_MILLIS, 26 * DateUtils.HOUR_IN_MILLIS, 5 * DateUtils.DAY_IN_MILLIS,
+                30 * DateUtils.DAY_IN_MILLIS, 400 * DateUtils.DAY_IN_MILLIS, -5 * DateUtils.MINUTE_IN_MILLIS
+        };
+        for (long offset : offsets) {
+            final OffsetDateTime date = ago(offset);
+            final String expected = DateUtils.getRelativeTimeSpanString(date.toInstant().toEpochMilli(), NOW,
+                    DateUtils.MINUTE_IN_MILLIS).toString();
+            assertEquals(expected, TimeLabels.relative(date, NOW));
+        }
+    }
+
+    @Test
+    public void testSameBucketGivesTheSameString() {
+        final String first = TimeLabels.relative(ago(3 * DateUtils.MINUTE_IN_MILLIS), NOW);
+        final String second = TimeLabels.relative(ago(3 * DateUtils.MINUTE_IN_MILLIS + 20 * 1000), NOW);
+
+        assertSame(first, second);
+        assertNotEquals(first, TimeLabels.relative(ago(4 * DateUtils.MINUTE_IN_MILLIS), NOW));
+    }
+
+    @Test
+    public void testAbsolute() {
+        final OffsetDateTime date = ago(0);
+        assertEquals(TimeLabels.absolute(date, Locale.US), TimeLabels.absolute(date, Locale.US));
+        assertTrue(TimeLabels.absolute(date, Locale.US).contains("2024"));
+    }
+
+    @Test
+    public void testOneTickForAllListeners() {
+        final AtomicInteger first = new AtomicInteger();
+        final AtomicInteger second = new AtomicInteger();
+        final Runnable firstListener = first::incrementAndGet;
+        final Runnable secondListener = second::incrementAndGet;
+        TimeLabels.addTickListener(firstListener);
+        TimeLabels.addTickListener(secondListener);
+        // adding again doesn't tick twice
+        TimeLabels.addTickListener(firstListener);
+
+        ShadowLooper.idleMainLooper(61, TimeUnit.SECONDS);
+        final int ticks = first.get();
+        assertTrue(ticks >= 1);
+        assertEquals(ticks, second.get());
+
+        TimeLabels.removeTickListener(firstListener);
+        ShadowLooper.idleMainLooper(61, TimeUnit.SECONDS);
+        assertEquals(ticks, first.get());
+        assertTrue(second.get() > ticks);
+
+        TimeLabels.removeTickListener(secondListener);
+    }
+}
@@ -0,0 +1,149 @@
+package com.fastcomments.sdk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Connection;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares connection counts and latency for a burst of concurrent REST calls over HTTP/1.1 and HTTP/2, against a
+ * local mock server. Only runs when benchmarks are asked for, see {@link Benchmarks}.
+ * <p>
+ * MockWebServer only speaks HTTP/2 without TLS using prior knowledge, whereas in production HTTP/2 is negotiated with
+ * ALPN. Once a connection is up the multiplexing is the same.
+ */
+public class TransportBenchmarkTests {
+
+    private static final int CONCURRENT_CALLS = 16;
+    private static final long SERVER_DELAY_MS = 100;
+
+    private MockWebServer server;
+
+    @BeforeClass
+    public static void assumeBenchmarks() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Before
+    public void setUp() {
+        FastCommentsTransport.reset();
+        server = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        FastCommentsTransport.reset();
+    }
+
+    private static class Result {
+        final int connections;
+        final long elapsedMs;
+
+        Result(int connections, long elapsedMs) {
+            this.connections = connections;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
+    private Result runBurst(Protocol protocol) throws Exception {
+        server.setProtocols(protocol == Protocol.HTTP_1_1
+                ? Collections.singletonList(Protocol.HTTP_1_1)
+                : Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+        for (int i = 0; i <= CONCURRENT_CALLS; i++) {
+            server.enqueue(new MockResponse().setBody("{}").setHeadersDelay(SERVER_DELAY_MS, TimeUnit.MILLISECONDS));
+        }
+        server.start();
+
+        final Set<Connection> connections = Collections.newSetFromMap(new IdentityHashMap<>());
+        // its own dispatcher allowing the whole burst at once, so only the protocol differs between runs
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(CONCURRENT_CALLS);
+        final OkHttpClient client = FastCommentsTransport.getHttpClient().newBuilder()
+                .protocols(Collections.singletonList(protocol))
+                .dispatcher(dispatcher)
+                .eventListener(new EventListener() {
+                    @Override
+                    public void connectionAcquired(Call call, Connection connection) {
+                        synchronized (connections) {
+                            connections.add(connection);
+                        }
+                    }
+                })
+                .build();
+
+        // warm up, so both runs start with one open connection
+        try (Response response = client.newCall(request()).execute()) {
+            assertEquals(200, response.code());
+        }
+
+        final CountDownLatch latch = new CountDownLatch(CONCURRENT_CALLS);
+        final AtomicInteger failures = new AtomicInteger();
+        final long start = System.nanoTime();
+        for (int i = 0; i < CONCURRENT_CALLS; i++) {
+            client.newCall(request()).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    failures.incrementAndGet();
+                    latch.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        final long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(0, failures.get());
+
+        client.connectionPool().evictAll();
+        final Result result = new Result(connections.size(), elapsedMs);
+        Benchmarks.report("Transport " + protocol, CONCURRENT_CALLS + " calls, "
+                + result.connections + " connections, " + result.elapsedMs + "ms");
+        return result;
+    }
+
+    private Request request() {
+        return new Request.Builder().url(server.url("/comments/demo")).build();
+    }
+
+    @Test
+    public void testHttp1OpensAConnectionPerConcurrentCall() throws Exception {
+        final Result result = runBurst(Protocol.HTTP_1_1);
+        assertTrue(result.connections > 1);
+    }
+
+    @Test
+    public void testHttp2MultiplexesOverOneConnection() throws Exception {
+        final Result result = runBurst(Protocol.H2_PRIOR_KNOWLEDGE);
+        assertEquals(1, result.connections);
+        // the calls ran side by side, not one after another
+        assertTrue(result.elapsedMs < SERVER_DELAY_MS * CONCURRENT_CALLS);
+    }
+}
@@ -0,0 +1,283 @@
+package com.fastcomments.sdk;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.fastcomments.model.APIError;
+import com.fastcomments.model.FeedPostMediaItem;
+import com.fastcomments.model.FeedPostMediaItemAsset;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the persistent, retrying upload queue.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class UploadQueueTests {
+
+    private static class Upload {
+        final File file;
+        final FCCallback<FeedPostMediaItem> callback;
+
+        Upload(File file, FCCallback<FeedPostMediaItem> callback) {
+            this.file = file;
+            this.callback = callback;
+        }
+    }
+
+    private final List<Upload> uploads = new ArrayList<>();
+    private final List<String> prepared = new ArrayList<>();
+    private Context context;
+    private File dir;
+    private List<FeedPostMediaItem> completed;
+    private String completedPayload;
+    private APIError failed;
+
+    private final UploadQueue.Listener listener = new UploadQueue.Listener() {
+        @Override
+        public void onComplete(String batchId, String payload, List<FeedPostMediaItem> media) {
+            completed = media;
+            completedPayload = payload;
+        }
+
+        @Override
+        public void onFailed(String batchId, String payload, APIError error) {
+            failed = error;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        dir = new File(context.getFilesDir(), "upload-queue-test");
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private UploadQueue newQueue() {
+        final UploadQueue queue = new UploadQueue(context, dir,
+                (file, callback) -> uploads.add(new Upload(file, callback)),
+                (context, uri, dir) -> {
+                    prepared.add(uri.getLastPathSegment());
+                    File file = File.createTempFile("upload_" + uri.getLastPathSegment() + "_", ".jpg", dir);
+                    return new ImageUploadPipeline.PreparedImage(file, true);
+                },
+                Runnable::run,
+                Runnable::run);
+        queue.baseRetryDelayMs = 1000;
+        queue.maxRetryDelayMs = 4000;
+        return queue;
+    }
+
+    private static List<Uri> uris(String... names) {
+        List<Uri> uris = new ArrayList<>();
+        for (String name : names) {
+            uris.add(Uri.parse("content://media/" + name));
+        }
+        return uris;
+    }
+
+    private static FeedPostMediaItem item(String src) {
+        FeedPostMediaItem item = new FeedPostMediaItem();
+        item.setSizes(Collections.singletonList(new FeedPostMediaItemAsset().src(src)));
+        return item;
+    }
+
+    private void succeed(int upload, String src) {
+        uploads.get(upload).callback.onSuccess(item(src));
+        ShadowLooper.idleMainLooper();
+    }
+
+    private void fail(int upload) {
+        uploads.get(upload).callback.onFailure(new APIError());
+        ShadowLooper.idleMainLooper();
+    }
+
+    private int filesInDir() {
+        final File[] files = dir.listFiles();
+        return files != null ? files.length : 0;
+    }
+
+    @Test
+    public void testOnlyTheFailedImageIsRetried() {
+        final UploadQueue queue = newQueue();
+        queue.enqueue(uris("a", "b"), "post", listener);
+        ShadowLooper.idleMainLooper();
+        assertEquals(2, uploads.size());
+
+        succeed(0, "a");
+        fail(1);
+        assertEquals(2, uploads.size());
+
+        // the retry waits for the backoff
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+        assertEquals(3, uploads.size());
+        assertEquals(uploads.get(1).file, uploads.get(2).file);
+        succeed(2, "b");
+
+        assertEquals("post", completedPayload);
+        assertEquals("a", completed.get(0).getSizes().get(0).getSrc());
+        assertEquals("b", completed.get(1).getSizes().get(0).getSrc());
+        // each image was prepared once, and nothing is left on disk
+        assertEquals(2, prepared.size());
+        assertEquals(0, filesInDir());
+    }
+
+    @Test
+    public void testRetryAfterGivingUpOnlySendsWhatsMissing() {
+        final UploadQueue queue = newQueue();
+        queue.maxAttempts = 2;
+        final String batchId = queue.enqueue(uris("a", "b"), "post", listener);
+        ShadowLooper.idleMainLooper();
+        succeed(0, "a");
+        fail(1);
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+        fail(2);
+        assertNotNull(failed);
+        assertNull(completed);
+
+        // no more attempts on their own
+        ShadowLooper.idleMainLooper(10, TimeUnit.SECONDS);
+        assertEquals(3, uploads.size());
+
+        assertFalse(queue.retry(batchId, "post", uris("a", "c"), listener));
+        assertTrue(queue.retry(batchId, "edited", uris("a", "b"), listener));
+        ShadowLooper.idleMainLooper();
+        assertEquals(4, uploads.size());
+        succeed(3, "b");
+
+        assertEquals("edited", completedPayload);
+        assertEquals(2, completed.size());
+        assertFalse(queue.has(batchId));
+    }
+
+    @Test
+    public void testUnfinishedBatchIsResumedAfterRestart() {
+        newQueue().enqueue(uris("a", "b"), "post", listener);
+        ShadowLooper.idleMainLooper();
+        succeed(0, "a");
+        // the app is killed while b is uploading
+
+        final UploadQueue restarted = newQueue();
+        restarted.resume(listener);
+        ShadowLooper.idleMainLooper();
+
+        // only b is sent again, from the copy made before
+        assertEquals(3, uploads.size());
+        assertEquals(uploads.get(1).file, uploads.get(2).file);
+        assertEquals(2, prepared.size());
+        succeed(2, "b");
+
+        assertEquals("a", completed.get(0).getSizes().get(0).getSrc());
+        assertEquals("b", completed.get(1).getSizes().get(0).getSrc());
+        assertEquals(0, filesInDir());
+    }
+
+    @Test
+    public void testCancelDeletesEverything() {
+        final UploadQueue queue = newQueue();
+        final String batchId = queue.enqueue(uris("a", "b"), "post", listener);
+        ShadowLooper.idleMainLooper();
+        assertEquals(3, filesInDir());
+
+        queue.cancel(batchId);
+        assertEquals(0, filesInDir());
+
+        // results arriving afterwards are ignored
+        succeed(0, "a");
+        succeed(1, "b");
+        assertNull(completed);
+        assertEquals(0, filesInDir());
+    }
+
+    @Test
+    public void testResumeDeletesLeftoverFiles() throws IOException {
+        assertTrue(dir.mkdirs() || dir.exists());
+        final File orphan = new File(dir, "upload_orphan.jpg");
+        assertTrue(orphan.createNewFile());
+        assertTrue(orphan.setLastModified(System.currentTimeMillis() - 60000));
+
+        newQueue().resume(listener);
+        ShadowLooper.idleMainLooper();
+
+        assertFalse(orphan.exists());
+        assertTrue(uploads.isEmpty());
+    }
+
+    @Test
+    public void testBatchIsOnlyResumedForItsOwner() {
+        newQueue().enqueue(uris("a"), "post", "user:1", listener);
+        ShadowLooper.idleMainLooper();
+        assertEquals(1, uploads.size());
+
+        final UploadQueue otherUser = newQueue();
+        otherUser.resume("user:2", listener);
+        ShadowLooper.idleMainLooper();
+        // left on disk for its owner
+        assertEquals(1, uploads.size());
+        assertEquals(2, filesInDir());
+
+        final UploadQueue owner = newQueue();
+        owner.resume("user:1", listener);
+        ShadowLooper.idleMainLooper();
+        assertEquals(2, uploads.size());
+        succeed(1, "a");
+        assertEquals("post", completedPayload);
+        assertEquals(0, filesInDir());
+    }
+
+    @Test
+    public void testSweepDeletesLeftoverFilesWithoutResuming() throws IOException {
+        final UploadQueue failedQueue = newQueue();
+        failedQueue.maxAttempts = 1;
+        failedQueue.enqueue(uris("a"), "post", listener);
+        ShadowLooper.idleMainLooper();
+        fail(0);
+        assertNotNull(failed);
+        assertEquals(2, filesInDir());
+        final File orphan = new File(dir, "upload_orphan.jpg");
+        assertTrue(orphan.createNewFile());
+        for (File file : dir.listFiles()) {
+            assertTrue(file.setLastModified(System.currentTimeMillis() - 60000));
+        }
+
+        newQueue().sweep();
+
+        assertEquals(0, filesInDir());
+        assertEquals(1, uploads.size());
+    }
+
+    @Test
+    public void testRetryDelayBacksOffUpToTheMax() {
+        final UploadQueue queue = newQueue();
+        assertEquals(1000, queue.retryDelayMs(1));
+        assertEquals(2000, queue.retryDelayMs(2));
+        assertEquals(4000, queue.retryDelayMs(3));
+        assertEquals(4000, queue.retryDelayMs(10));
+    }
+}
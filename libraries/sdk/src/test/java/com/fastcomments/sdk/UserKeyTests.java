@@ -0,0 +1,48 @@
+package com.fastcomments.sdk;
+
+import com.fastcomments.core.CommentWidgetConfig;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Unit tests for keying per-user caches by who the requests are made as.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class UserKeyTests {
+
+    private static FastCommentsSDK makeSDK(String sso) {
+        CommentWidgetConfig config = new CommentWidgetConfig();
+        config.tenantId = "tenant";
+        config.urlId = "page";
+        config.sso = sso;
+        return new FastCommentsSDK(config, true, "http://localhost/");
+    }
+
+    @Test
+    public void testKeyIsADigestOfTheToken() {
+        assertEquals(UserKey.ANONYMOUS, UserKey.of(null));
+        assertEquals(UserKey.ANONYMOUS, UserKey.of(""));
+        assertEquals(64, UserKey.of("token-a").length());
+        assertEquals(UserKey.of("token-a"), UserKey.of("token-a"));
+        assertNotEquals(UserKey.of("token-a"), UserKey.of("token-b"));
+    }
+
+    @Test
+    public void testSearchResultsAreKeyedByUser() {
+        String a = makeSDK("token-a").searchUsersKey("al");
+
+        assertEquals(a, makeSDK("token-a").searchUsersKey("al"));
+        assertNotEquals(a, makeSDK("token-b").searchUsersKey("al"));
+        assertNotEquals(a, makeSDK(null).searchUsersKey("al"));
+        assertNotEquals(a, makeSDK("token-a").searchUsersKey("bo"));
+        assertFalse(a.contains("token-a"));
+    }
+}
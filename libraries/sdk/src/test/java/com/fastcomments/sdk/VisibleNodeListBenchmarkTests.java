@@ -0,0 +1,70 @@
+package com.fastcomments.sdk;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times a live thread's worth of replies inserted mid-list, each followed by the lookups a vote or presence update
+ * makes, with VisibleNodeList and with a plain ArrayList. Only runs when benchmarks are asked for, see
+ * {@link Benchmarks}.
+ */
+public class VisibleNodeListBenchmarkTests {
+
+    private static final int INITIAL = 50000;
+    private static final int EVENTS = 20000;
+    private static final int LOOKUPS_PER_EVENT = 4;
+
+    @BeforeClass
+    public static void assumeBenchmarks() {
+        Benchmarks.assumeEnabled();
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    private static long run(List<RenderableNode> list, List<RenderableNode> pool, long seed) {
+        final Random random = new Random(seed);
+        long checksum = 0;
+        for (int e = 0; e < EVENTS; e++) {
+            list.add(random.nextInt(list.size() + 1), pool.get(INITIAL + e));
+            for (int l = 0; l < LOOKUPS_PER_EVENT; l++) {
+                checksum += list.indexOf(pool.get(random.nextInt(INITIAL + e + 1)));
+            }
+        }
+        return checksum;
+    }
+
+    @Test
+    public void testInterleavedMidListInsertsAndLookups() {
+        final List<RenderableNode> pool = new ArrayList<>(INITIAL + EVENTS);
+        for (int i = 0; i < INITIAL + EVENTS; i++) {
+            pool.add(new RenderableComment(MockComment.make("c" + i)));
+        }
+
+        final VisibleNodeList visibleNodes = new VisibleNodeList(INITIAL);
+        visibleNodes.addAll(pool.subList(0, INITIAL));
+        long start = System.nanoTime();
+        final long visibleChecksum = run(visibleNodes, pool, 42);
+        final long visibleMs = elapsedMs(start);
+
+        final List<RenderableNode> arrayList = new ArrayList<>(pool.subList(0, INITIAL));
+        start = System.nanoTime();
+        final long arrayChecksum = run(arrayList, pool, 42);
+        final long arrayMs = elapsedMs(start);
+
+        assertEquals(arrayChecksum, visibleChecksum);
+        assertEquals(arrayList, visibleNodes);
+
+        final String shape = INITIAL + " rows, " + EVENTS + " mid-list inserts each followed by " + LOOKUPS_PER_EVENT
+                + " lookups";
+        Benchmarks.report("VisibleNodeList, " + shape, visibleMs + "ms");
+        Benchmarks.report("ArrayList, " + shape, arrayMs + "ms");
+    }
+}
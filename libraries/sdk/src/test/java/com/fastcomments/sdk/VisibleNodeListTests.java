@@ -0,0 +1,177 @@
+package com.fastcomments.sdk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the position index behind CommentsTree.visibleNodes.
+ */
+public class VisibleNodeListTests {
+
+    private static RenderableComment node(String id) {
+        return new RenderableComment(MockComment.make(id));
+    }
+
+    @Test
+    public void testIndexOfAfterAppends() {
+        VisibleNodeList list = new VisibleNodeList();
+        RenderableComment a = node("a");
+        RenderableComment b = node("b");
+        RenderableComment c = node("c");
+        list.add(a);
+        list.add(b);
+        list.add(c);
+
+        assertEquals(0, list.indexOf(a));
+        assertEquals(1, list.indexOf(b));
+        assertEquals(2, list.indexOf(c));
+        assertEquals(-1, list.indexOf(node("missing")));
+    }
+
+    @Test
+    public void testIndexOfAfterInsertAtHead() {
+        VisibleNodeList list = new VisibleNodeList();
+        RenderableComment a = node("a");
+        RenderableComment b = node("b");
+        list.add(a);
+        list.add(b);
+        assertEquals(1, list.indexOf(b));
+
+        RenderableComment head = node("head");
+        list.add(0, head);
+
+        assertEquals(0, list.indexOf(head));
+        assertEquals(1, list.indexOf(a));
+        assertEquals(2, list.indexOf(b));
+    }
+
+    @Test
+    public void testIndexOfAfterRemoveAndSet() {
+        VisibleNodeList list = new VisibleNodeList();
+        RenderableComment a = node("a");
+        RenderableComment b = node("b");
+        RenderableComment c = node("c");
+        list.addAll(Arrays.asList(a, b, c));
+
+        assertTrue(list.remove(a));
+        assertEquals(-1, list.indexOf(a));
+        assertEquals(0, list.indexOf(b));
+        assertEquals(1, list.indexOf(c));
+
+        RenderableButton button = new RenderableButton(RenderableButton.TYPE_NEW_ROOT_COMMENTS, 1);
+        list.set(0, button);
+        assertEquals(0, list.indexOf(button));
+        assertFalse(list.contains(b));
+    }
+
+    @Test
+    public void testIteratorRemoveKeepsIndex() {
+        VisibleNodeList list = new VisibleNodeList();
+        RenderableComment a = node("a");
+        RenderableComment b = node("b");
+        RenderableComment c = node("c");
+        list.addAll(Arrays.asList(a, b, c));
+
+        Iterator<RenderableNode> it = list.iterator();
+        it.next();
+        it.next();
+        it.remove();
+
+        assertEquals(-1, list.indexOf(b));
+        assertEquals(1, list.indexOf(c));
+    }
+
+    @Test
+    public void testIndexSurvivesTrimFromHead() {
+        VisibleNodeList list = new VisibleNodeList(4);
+        List<RenderableComment> added = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            RenderableComment n = node("n" + i);
+            added.add(n);
+            list.add(n);
+        }
+        assertEquals(9, list.indexOf(added.get(9)));
+
+        // trimming the oldest moves every position, but nothing needs re-indexing
+        list.subList(0, 3).clear();
+        list.remove(0);
+        assertEquals(-1, list.indexOf(added.get(2)));
+        assertEquals(0, list.indexOf(added.get(4)));
+        assertEquals(5, list.indexOf(added.get(9)));
+
+        RenderableComment head = node("head");
+        list.add(0, head);
+        assertEquals(0, list.indexOf(head));
+        assertEquals(6, list.indexOf(added.get(9)));
+    }
+
+    @Test
+    public void testMatchesArrayListUnderRandomMutations() {
+        Random random = new Random(42);
+        VisibleNodeList list = new VisibleNodeList();
+        List<RenderableNode> expected = new ArrayList<>();
+        List<RenderableNode> pool = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final int op = random.nextInt(5);
+            if (op <= 1 || expected.isEmpty()) {
+                RenderableComment n = node("n" + i);
+                pool.add(n);
+                int index = random.nextInt(expected.size() + 1);
+                expected.add(index, n);
+                list.add(index, n);
+            } else if (op == 2) {
+                int index = random.nextInt(expected.size());
+                expected.remove(index);
+                list.remove(index);
+            } else if (op == 3) {
+                int from = random.nextBoolean() ? 0 : random.nextInt(expected.size());
+                int to = Math.min(expected.size(), from + random.nextInt(4));
+                expected.subList(from, to).clear();
+                list.subList(from, to).clear();
+            } else {
+                RenderableNode probe = pool.get(random.nextInt(pool.size()));
+                assertEquals(expected.indexOf(probe), list.indexOf(probe));
+            }
+        }
+        assertEquals(expected, list);
+        for (RenderableNode n : pool) {
+            assertEquals(expected.indexOf(n), list.indexOf(n));
+        }
+    }
+
+    @Test
+    public void testAddAllMidListAndSteppingBothWays() {
+        VisibleNodeList list = new VisibleNodeList();
+        List<RenderableNode> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            RenderableComment n = node("n" + i);
+            expected.add(n);
+            list.add(n);
+        }
+        List<RenderableNode> replies = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            replies.add(node("r" + i));
+        }
+        expected.addAll(40, replies);
+        list.addAll(40, replies);
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), list.get(i));
+        }
+        for (int i = expected.size() - 1; i >= 0; i--) {
+            assertEquals(expected.get(i), list.get(i));
+        }
+        assertEquals(40, list.indexOf(replies.get(0)));
+        assertEquals(90, list.indexOf(expected.get(90)));
+        assertEquals(149, list.indexOf(expected.get(149)));
+    }
+}
@@ -4,6 +4,7 @@
 #
 # Usage:
 #   ./run_tests.sh sdk      # Robolectric unit + integration tests
+#   ./run_tests.sh bench    # SDK benchmarks, which the sdk tests skip
 #   ./run_tests.sh single   # Single-emulator UI tests (CRUD, vote, moderation, etc.)
 #   ./run_tests.sh dual     # Dual-emulator live event tests
 #   ./run_tests.sh all      # All of the above
@@ -17,6 +18,11 @@ run_sdk_tests() {
     ./gradlew :libraries:sdk:test
 }
 
+run_benchmarks() {
+    echo "=== Running SDK benchmarks ==="
+    ./gradlew :libraries:sdk:test -Pbenchmarks --tests '*Benchmark*'
+}
+
 run_single_tests() {
     echo "=== Running single-emulator UI tests ==="
     python3 run_dual_emu_tests.py --single "$@"
@@ -31,6 +37,9 @@ case "${1:-all}" in
     sdk)
         run_sdk_tests
         ;;
+    bench)
+        run_benchmarks
+        ;;
     single)
         shift
         run_single_tests "$@"
@@ -46,7 +55,7 @@ case "${1:-all}" in
         run_dual_tests "$@"
         ;;
     *)
-        echo "Usage: $0 {sdk|single|dual|all} [--e2e-key KEY]"
+        echo "Usage: $0 {sdk|bench|single|dual|all} [--e2e-key KEY]"
         exit 1
         ;;
 esac